@@ -0,0 +1,12 @@
+package ae.teletronics.storage.adapters;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enables {@code @Scheduled} background jobs (e.g. the orphan blob collector).
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
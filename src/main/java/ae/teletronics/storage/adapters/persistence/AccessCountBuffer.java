@@ -0,0 +1,158 @@
+package ae.teletronics.storage.adapters.persistence;
+
+import ae.teletronics.storage.domain.model.DownloadLink;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-behind for {@code download_links.accessCount}: downloads bump an in-memory
+ * {@link LongAdder} per token (no lock, no Mongo write), and the totals are written as one
+ * unordered bulk of {@code $inc} updates every {@code storage.download.access-count.flush-interval},
+ * or as soon as {@code max-pending} increments are waiting, and once more on shutdown.
+ * <p>
+ * A crash loses at most {@code max-pending} increments (plus those arriving while a flush is in
+ * flight). A failed flush puts its counts back for the next one. Tokens that had nothing to flush
+ * are dropped from the map, so it only holds recently downloaded links.
+ * <p>
+ * Metrics: {@code storage.download.access.pending} gauge, {@code .flushed} counter (increments
+ * written), {@code .flush} timer and {@code .flush.failures} counter.
+ */
+@Component
+public class AccessCountBuffer implements DisposableBean {
+
+    private static final Duration SHUTDOWN_FLUSH_TIMEOUT = Duration.ofSeconds(10);
+
+    private final ReactiveMongoTemplate mongo;
+    private final long maxPending;
+    private final ConcurrentHashMap<String, LongAdder> counts = new ConcurrentHashMap<>();
+    private final LongAdder pending = new LongAdder();
+    private final AtomicBoolean flushing = new AtomicBoolean();
+
+    private final Counter flushed;
+    private final Counter failures;
+    private final Timer flushes;
+
+    public AccessCountBuffer(ReactiveMongoTemplate mongo,
+                             MeterRegistry meters,
+                             @Value("${storage.download.access-count.max-pending:10000}") long maxPending) {
+        this.mongo = mongo;
+        this.maxPending = Math.max(1, maxPending);
+        Gauge.builder("storage.download.access.pending", pending, LongAdder::sum).register(meters);
+        this.flushed = meters.counter("storage.download.access.flushed");
+        this.failures = meters.counter("storage.download.access.flush.failures");
+        this.flushes = meters.timer("storage.download.access.flush");
+    }
+
+    public void increment(String token) {
+        add(token, 1);
+        if (pending.sum() >= maxPending) flush().subscribe();
+    }
+
+    private void add(String token, long n) {
+        LongAdder adder = counts.computeIfAbsent(token, k -> new LongAdder());
+        adder.add(n);
+        pending.add(n);
+        if (counts.get(token) != adder) {
+            // a flush dropped this adder as idle just now; move whatever it did not drain
+            long late = adder.sumThenReset();
+            if (late > 0) {
+                pending.add(-late);
+                add(token, late);
+            }
+        }
+    }
+
+    @Scheduled(initialDelayString = "${storage.download.access-count.flush-interval:5s}",
+            fixedDelayString = "${storage.download.access-count.flush-interval:5s}")
+    public Mono<Void> scheduledFlush() {
+        return flush();
+    }
+
+    /** Writes everything accumulated so far; a no-op while another flush runs. */
+    public Mono<Void> flush() {
+        return Mono.defer(() -> {
+            if (!flushing.compareAndSet(false, true)) return Mono.empty();
+            final Map<String, Long> batch = drain();
+            if (batch.isEmpty()) {
+                flushing.set(false);
+                return Mono.empty();
+            }
+            final Timer.Sample sample = Timer.start();
+            ReactiveBulkOperations bulk = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, DownloadLink.class);
+            long total = 0;
+            for (Map.Entry<String, Long> e : batch.entrySet()) {
+                bulk.updateOne(Query.query(Criteria.where("token").is(e.getKey())),
+                        new Update().inc("accessCount", e.getValue()));
+                total += e.getValue();
+            }
+            final long written = total;
+            return bulk.execute()
+                    .doOnSuccess(r -> flushed.increment(written))
+                    .onErrorResume(e -> {
+                        failures.increment();
+                        batch.forEach(this::add); // retried by the next flush
+                        return Mono.empty();
+                    })
+                    .doFinally(sig -> {
+                        sample.stop(flushes);
+                        flushing.set(false);
+                    })
+                    .then();
+        });
+    }
+
+    private Map<String, Long> drain() {
+        Map<String, Long> batch = new HashMap<>();
+        for (Map.Entry<String, LongAdder> e : counts.entrySet()) {
+            LongAdder adder = e.getValue();
+            long n = adder.sumThenReset();
+            if (n > 0) {
+                pending.add(-n);
+                batch.put(e.getKey(), n);
+            } else if (counts.remove(e.getKey(), adder)) { // idle since the last flush
+                // an increment that landed between the sum and the removal; later ones see the
+                // adder gone and move themselves (see add)
+                long late = adder.sumThenReset();
+                if (late > 0) {
+                    pending.add(-late);
+                    batch.put(e.getKey(), late);
+                }
+            }
+        }
+        return batch;
+    }
+
+    @Override
+    public void destroy() {
+        // wait out a flush already in flight, then write what is left
+        for (int i = 0; i < 100 && flushing.get(); i++) {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        flush().block(SHUTDOWN_FLUSH_TIMEOUT);
+    }
+}
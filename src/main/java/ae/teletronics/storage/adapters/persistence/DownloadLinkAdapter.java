@@ -2,34 +2,41 @@ package ae.teletronics.storage.adapters.persistence;
 
 import ae.teletronics.storage.adapters.persistence.repo.DownloadLinkReactiveRepository;
 import ae.teletronics.storage.domain.model.DownloadLink;
+import ae.teletronics.storage.domain.model.FileEntry;
 import ae.teletronics.storage.ports.DownloadLinkQueryPort;
+import org.bson.Document;
 import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
-import org.springframework.data.mongodb.core.query.Criteria;
-import org.springframework.data.mongodb.core.query.Query;
-import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Component
 public class DownloadLinkAdapter implements DownloadLinkQueryPort {
     private final DownloadLinkReactiveRepository repo;
     private final ReactiveMongoTemplate mongo;
+    private final ResolvedLinkCache cache;
+    private final AccessCountBuffer accessCounts;
 
-    public DownloadLinkAdapter(DownloadLinkReactiveRepository repo, ReactiveMongoTemplate mongo){
+    public DownloadLinkAdapter(DownloadLinkReactiveRepository repo, ReactiveMongoTemplate mongo,
+                               ResolvedLinkCache cache, AccessCountBuffer accessCounts){
         this.repo = repo;
         this.mongo = mongo;
+        this.cache = cache;
+        this.accessCounts = accessCounts;
     }
 
     public Mono<DownloadLink> findByToken(String token) {
         return repo.findByToken(token);
     }
 
+    /** Buffered; written by the {@link AccessCountBuffer}'s next flush. */
     public Mono<Void> incrementAccessCountByToken(String token) {
-        return mongo.updateFirst(
-                Query.query(Criteria.where("token").is(token)),
-                new Update().inc("accessCount", 1),
-                DownloadLink.class
-        ).then();
+        return Mono.fromRunnable(() -> accessCounts.increment(token));
     }
 
     @Override
@@ -40,4 +47,65 @@ public class DownloadLinkAdapter implements DownloadLinkQueryPort {
     @Override
     public Mono<Void> deleteAllByFileId(String fileId) { return repo.deleteAllByFileId(fileId); }
 
+    /**
+     * Served from the {@link ResolvedLinkCache} when possible. Otherwise one aggregation: the
+     * link by token, its {@code files} entry and the blob's {@code fs.files} chunk size, joined
+     * server-side. Ids are stored as hex strings on the referencing side, so the joins convert
+     * them (an unparseable id simply matches nothing).
+     */
+    @Override
+    public Mono<ResolvedLink> resolve(String token) {
+        return Mono.defer(() -> {
+            ResolvedLink cached = cache.get(token);
+            if (cached != null) return Mono.just(cached);
+            final long generation = cache.generation();
+            return lookup(token).doOnNext(resolved -> cache.put(token, resolved, generation));
+        });
+    }
+
+    /** Local only; other instances hear of the change through the {@link ResolvedLinkInvalidator}. */
+    @Override
+    public Mono<Void> evictFile(String fileId) {
+        return Mono.fromRunnable(() -> cache.invalidateFile(fileId));
+    }
+
+    private Mono<ResolvedLink> lookup(String token) {
+        Aggregation pipeline = Aggregation.newAggregation(
+                stage(new Document("$match", new Document("token", token))),
+                stage(new Document("$limit", 1)),
+                stage(lookupById("files", "$fileId", "file", null)),
+                stage(new Document("$unwind", new Document("path", "$file").append("preserveNullAndEmptyArrays", true))),
+                stage(lookupById("fs.files", "$file.gridFsId", "blob", new Document("chunkSize", 1))));
+        return mongo.aggregate(pipeline, "download_links", Document.class)
+                .next()
+                .map(this::toResolved);
+    }
+
+    private ResolvedLink toResolved(Document d) {
+        DownloadLink link = mongo.getConverter().read(DownloadLink.class, d);
+        Document fileDoc = d.get("file", Document.class);
+        FileEntry file = fileDoc == null ? null : mongo.getConverter().read(FileEntry.class, fileDoc);
+        List<Document> blob = d.getList("blob", Document.class, List.of());
+        int chunkSize = !blob.isEmpty() && blob.get(0).get("chunkSize") instanceof Number n
+                ? n.intValue()
+                : file != null ? file.getChunkSize() : 0;
+        return new ResolvedLink(link, file, chunkSize);
+    }
+
+    private static AggregationOperation stage(Document stage) {
+        return ctx -> stage;
+    }
+
+    private static Document lookupById(String from, String idExpr, String as, @Nullable Document project) {
+        Document toObjectId = new Document("$convert", new Document("input", idExpr)
+                .append("to", "objectId").append("onError", null).append("onNull", null));
+        List<Document> inner = new ArrayList<>(2);
+        inner.add(new Document("$match", new Document("$expr", new Document("$eq", List.of("$_id", "$$id")))));
+        if (project != null) inner.add(new Document("$project", project));
+        return new Document("$lookup", new Document("from", from)
+                .append("let", new Document("id", toObjectId))
+                .append("pipeline", inner)
+                .append("as", as));
+    }
+
 }
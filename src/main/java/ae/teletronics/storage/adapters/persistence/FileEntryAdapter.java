@@ -13,9 +13,14 @@ import org.springframework.stereotype.Component;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Collection;
+
 @Component
 public class FileEntryAdapter implements FileEntryQueryPort {
 
+    /** Listings never need the bytes of inline files; a page of them would be up to 16KB a row. */
+    private static final String INLINE_DATA = "inlineData";
+
     private final FileEntryReactiveRepository repo;
     private final ReactiveMongoTemplate mongo;
 
@@ -40,6 +45,13 @@ public class FileEntryAdapter implements FileEntryQueryPort {
         return repo.existsByOwnerIdAndContentSha256(ownerId, sha256);
     }
 
+    @Override
+    public Flux<String> findReferencedGridFsIds(Collection<String> gridFsIds) {
+        Query q = Query.query(Criteria.where("gridFsId").in(gridFsIds));
+        q.fields().include("gridFsId");
+        return mongo.find(q, FileEntry.class).map(FileEntry::getGridFsId);
+    }
+
     @Override
     public Mono<FileEntry> save(FileEntry entry) {
         return repo.save(entry);
@@ -52,6 +64,7 @@ public class FileEntryAdapter implements FileEntryQueryPort {
             c = c.and("tags").is(tag);
         }
         Query q = Query.query(c).with(pageable);
+        q.fields().exclude(INLINE_DATA);
         return mongo.find(q, FileEntry.class);
     }
 
@@ -62,6 +75,7 @@ public class FileEntryAdapter implements FileEntryQueryPort {
             c = c.and("tags").is(tag);
         }
         Query q = Query.query(c).with(pageable);
+        q.fields().exclude(INLINE_DATA);
         return mongo.find(q, FileEntry.class);
     }
 
@@ -0,0 +1,37 @@
+package ae.teletronics.storage.adapters.persistence;
+
+import ae.teletronics.storage.domain.model.FilenameReservation;
+import ae.teletronics.storage.ports.FilenameReservationPort;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+
+@Component
+public class FilenameReservationAdapter implements FilenameReservationPort {
+    private final ReactiveMongoTemplate mongo;
+
+    public FilenameReservationAdapter(ReactiveMongoTemplate mongo) {
+        this.mongo = mongo;
+    }
+
+    @Override
+    public Mono<String> reserve(String ownerId, String filenameLc, Duration ttl) {
+        Instant now = Instant.now();
+        // The unique (ownerId, filenameLc) index arbitrates concurrent claims
+        return mongo.insert(new FilenameReservation(ownerId, filenameLc, now, now.plus(ttl)))
+                .map(FilenameReservation::getId)
+                .onErrorResume(DuplicateKeyException.class, ex -> Mono.empty());
+    }
+
+    @Override
+    public Mono<Void> release(String reservationId) {
+        return mongo.remove(Query.query(Criteria.where("_id").is(reservationId)), FilenameReservation.class)
+                .then();
+    }
+}
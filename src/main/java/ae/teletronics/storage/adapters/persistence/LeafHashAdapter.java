@@ -0,0 +1,33 @@
+package ae.teletronics.storage.adapters.persistence;
+
+import ae.teletronics.storage.domain.model.LeafHashes;
+import ae.teletronics.storage.ports.LeafHashPort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+@Component
+public class LeafHashAdapter implements LeafHashPort {
+    private final ReactiveMongoTemplate mongo;
+
+    public LeafHashAdapter(ReactiveMongoTemplate mongo) {
+        this.mongo = mongo;
+    }
+
+    @Override
+    public Mono<Void> save(LeafHashes hashes) {
+        return mongo.save(hashes).then(); // upsert by _id: a shared blob's leaves are identical
+    }
+
+    @Override
+    public Mono<LeafHashes> findByGridFsId(String gridFsId) {
+        return mongo.findById(gridFsId, LeafHashes.class);
+    }
+
+    @Override
+    public Mono<Void> deleteByGridFsId(String gridFsId) {
+        return mongo.remove(Query.query(Criteria.where("_id").is(gridFsId)), LeafHashes.class).then();
+    }
+}
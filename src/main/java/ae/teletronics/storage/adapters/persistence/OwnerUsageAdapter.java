@@ -0,0 +1,61 @@
+package ae.teletronics.storage.adapters.persistence;
+
+import ae.teletronics.storage.domain.model.FileEntry;
+import ae.teletronics.storage.domain.model.OwnerUsage;
+import ae.teletronics.storage.ports.OwnerUsagePort;
+import org.bson.Document;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+@Component
+public class OwnerUsageAdapter implements OwnerUsagePort {
+    private final ReactiveMongoTemplate mongo;
+
+    public OwnerUsageAdapter(ReactiveMongoTemplate mongo) {
+        this.mongo = mongo;
+    }
+
+    @Override
+    public Mono<OwnerUsage> get(String ownerId) {
+        return mongo.findById(ownerId, OwnerUsage.class).switchIfEmpty(Mono.defer(() -> seed(ownerId)));
+    }
+
+    /** One-off aggregation for owners whose files predate the counters. */
+    private Mono<OwnerUsage> seed(String ownerId) {
+        Aggregation totals = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("ownerId").is(ownerId)),
+                Aggregation.group().sum("size").as("bytes").count().as("files"));
+        return mongo.aggregate(totals, FileEntry.class, Document.class)
+                .next()
+                .map(d -> new OwnerUsage(ownerId, ((Number) d.get("bytes")).longValue(),
+                        ((Number) d.get("files")).longValue()))
+                .defaultIfEmpty(new OwnerUsage(ownerId, 0, 0))
+                .flatMap(mongo::insert)
+                // a concurrent first upload seeded it already
+                .onErrorResume(DuplicateKeyException.class, e -> mongo.findById(ownerId, OwnerUsage.class));
+    }
+
+    @Override
+    public Mono<Boolean> charge(String ownerId, long bytes, long limit) {
+        Criteria c = Criteria.where("_id").is(ownerId);
+        if (limit >= 0) c = c.and("bytes").lte(limit - bytes);
+        Query q = Query.query(c);
+        Update u = new Update().inc("bytes", bytes).inc("files", 1).currentDate("updatedAt");
+        return mongo.updateFirst(q, u, OwnerUsage.class).map(r -> r.getMatchedCount() > 0);
+    }
+
+    @Override
+    public Mono<Void> add(String ownerId, long bytes, long files) {
+        // no upsert: an owner without counters is seeded from its files, which already reflect this
+        return mongo.updateFirst(Query.query(Criteria.where("_id").is(ownerId)),
+                        new Update().inc("bytes", bytes).inc("files", files).currentDate("updatedAt"),
+                        OwnerUsage.class)
+                .then();
+    }
+}
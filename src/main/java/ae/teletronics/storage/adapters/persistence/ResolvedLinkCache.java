@@ -0,0 +1,206 @@
+package ae.teletronics.storage.adapters.persistence;
+
+import ae.teletronics.storage.domain.model.FileEntry;
+import ae.teletronics.storage.ports.DownloadLinkQueryPort.ResolvedLink;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-process LRU of resolved download tokens, so popular links are served without touching
+ * Mongo.
+ * <p>
+ * An entry lives for {@code storage.download.cache.ttl} but never past its link's
+ * {@code expiresAt}. The cache is bounded by {@code storage.download.cache.max-size}, where an
+ * entry weighs a fixed overhead plus any inline file bytes; it is off (0) unless configured.
+ * Deletes and renames evict their file's tokens locally at once; {@link ResolvedLinkInvalidator}
+ * drops entries when their file or link changes on any instance. A lookup that raced with an
+ * invalidation is not cached, so a stale result cannot outlive the event that should have
+ * removed it. Cached {@link FileEntry} snapshots are shared and must not be modified.
+ * <p>
+ * Metrics: {@code storage.download.cache} counter tagged {@code result=hit|miss},
+ * {@code storage.download.cache.evictions} tagged {@code cause=size|expired|invalidated}, and
+ * the {@code .size} (bytes) and {@code .hit.ratio} gauges.
+ */
+@Component
+public class ResolvedLinkCache {
+
+    private static final long ENTRY_OVERHEAD = 1024; // rough heap cost of a link + file snapshot
+
+    private final long capacity;
+    private final Duration ttl;
+    private final Clock clock;
+
+    // guarded by this
+    private final LinkedHashMap<String, Entry> byToken = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<String, Set<String>> tokensByFile = new HashMap<>();
+    private final Map<String, String> tokenByLinkId = new HashMap<>();
+    private long weight;
+    private long generation; // bumped by every invalidation
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictedForSize;
+    private final Counter expired;
+    private final Counter invalidated;
+
+    @Autowired
+    public ResolvedLinkCache(MeterRegistry meters,
+                             @Value("${storage.download.cache.max-size:0}") DataSize capacity,
+                             @Value("${storage.download.cache.ttl:30s}") Duration ttl) {
+        this(meters, capacity.toBytes(), ttl, Clock.systemUTC());
+    }
+
+    ResolvedLinkCache(MeterRegistry meters, long capacity, Duration ttl, Clock clock) {
+        this.capacity = Math.max(0, capacity);
+        this.ttl = ttl;
+        this.clock = clock;
+        this.hits = Counter.builder("storage.download.cache").tag("result", "hit").register(meters);
+        this.misses = Counter.builder("storage.download.cache").tag("result", "miss").register(meters);
+        this.evictedForSize = Counter.builder("storage.download.cache.evictions").tag("cause", "size").register(meters);
+        this.expired = Counter.builder("storage.download.cache.evictions").tag("cause", "expired").register(meters);
+        this.invalidated = Counter.builder("storage.download.cache.evictions").tag("cause", "invalidated")
+                .register(meters);
+        Gauge.builder("storage.download.cache.size", this, ResolvedLinkCache::weight).baseUnit("bytes").register(meters);
+        Gauge.builder("storage.download.cache.hit.ratio", this, ResolvedLinkCache::hitRatio).register(meters);
+    }
+
+    /** Caches nothing; for tests and tools. */
+    public static ResolvedLinkCache disabled() {
+        return new ResolvedLinkCache(new SimpleMeterRegistry(), 0, Duration.ZERO, Clock.systemUTC());
+    }
+
+    boolean enabled() {
+        return capacity > 0 && !ttl.isZero() && !ttl.isNegative();
+    }
+
+    @Nullable
+    ResolvedLink get(String token) {
+        if (!enabled()) return null;
+        synchronized (this) {
+            Entry e = byToken.get(token);
+            if (e != null && e.expiresAt.isAfter(clock.instant())) {
+                hits.increment();
+                return e.resolved;
+            }
+            if (e != null) {
+                remove(token);
+                expired.increment();
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /** Pass to {@link #put} what this returned before the lookup started. */
+    synchronized long generation() {
+        return generation;
+    }
+
+    void put(String token, ResolvedLink resolved, long generationAtLookup) {
+        if (!enabled() || resolved.file() == null) return;
+        Instant now = clock.instant();
+        Instant expiresAt = now.plus(ttl);
+        Instant linkExpiry = resolved.link().getExpiresAt();
+        if (linkExpiry != null && linkExpiry.isBefore(expiresAt)) expiresAt = linkExpiry;
+        if (!expiresAt.isAfter(now)) return;
+        byte[] inline = resolved.file().getInlineData();
+        Entry entry = new Entry(resolved, expiresAt, ENTRY_OVERHEAD + (inline == null ? 0 : inline.length));
+        if (entry.weight > capacity) return;
+
+        synchronized (this) {
+            if (generation != generationAtLookup) return; // invalidated while we were reading
+            remove(token);
+            byToken.put(token, entry);
+            tokensByFile.computeIfAbsent(resolved.file().getId(), k -> new HashSet<>()).add(token);
+            if (resolved.link().getId() != null) tokenByLinkId.put(resolved.link().getId(), token);
+            weight += entry.weight;
+            Iterator<Map.Entry<String, Entry>> eldest = byToken.entrySet().iterator();
+            while (weight > capacity && eldest.hasNext()) {
+                Map.Entry<String, Entry> victim = eldest.next();
+                eldest.remove();
+                forget(victim.getKey(), victim.getValue());
+                evictedForSize.increment();
+            }
+        }
+    }
+
+    /** Drops every token of the file (deleted, renamed, visibility changed, ...). */
+    void invalidateFile(String fileId) {
+        synchronized (this) {
+            generation++;
+            Set<String> tokens = tokensByFile.remove(fileId);
+            if (tokens == null) return;
+            for (String token : tokens) {
+                if (remove(token)) invalidated.increment();
+            }
+        }
+    }
+
+    /** Drops the token of a deleted link. */
+    void invalidateLink(String linkId) {
+        synchronized (this) {
+            generation++;
+            String token = tokenByLinkId.get(linkId);
+            if (token != null && remove(token)) invalidated.increment();
+        }
+    }
+
+    /** Drops everything, e.g. after invalidation events may have been missed. */
+    void invalidateAll() {
+        synchronized (this) {
+            generation++;
+            invalidated.increment(byToken.size());
+            byToken.clear();
+            tokensByFile.clear();
+            tokenByLinkId.clear();
+            weight = 0;
+        }
+    }
+
+    synchronized long weight() {
+        return weight;
+    }
+
+    private double hitRatio() {
+        double h = hits.count(), total = h + misses.count();
+        return total == 0 ? 0 : h / total;
+    }
+
+    // callers hold the lock
+    private boolean remove(String token) {
+        Entry e = byToken.remove(token);
+        if (e == null) return false;
+        forget(token, e);
+        return true;
+    }
+
+    // callers hold the lock; the entry is already out of byToken
+    private void forget(String token, Entry e) {
+        weight -= e.weight;
+        Set<String> tokens = tokensByFile.get(e.resolved.file().getId());
+        if (tokens != null && tokens.remove(token) && tokens.isEmpty()) {
+            tokensByFile.remove(e.resolved.file().getId());
+        }
+        String linkId = e.resolved.link().getId();
+        if (linkId != null) tokenByLinkId.remove(linkId, token);
+    }
+
+    private record Entry(ResolvedLink resolved, Instant expiresAt, long weight) {}
+}
@@ -0,0 +1,117 @@
+package ae.teletronics.storage.adapters.persistence;
+
+import ae.teletronics.storage.domain.model.DownloadLink;
+import ae.teletronics.storage.domain.model.FileEntry;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.Consumer;
+
+/**
+ * Keeps every instance's {@link ResolvedLinkCache} coherent: watches {@code files} for updates,
+ * replaces and deletes (rename, visibility, delete, ...) and {@code download_links} for deletes
+ * (including TTL expiry), and drops the affected tokens. Access-count updates on links are
+ * filtered out server-side, so downloads do not invalidate their own entries.
+ * <p>
+ * Change streams need a replica set. If a stream fails, everything cached is dropped (events may
+ * have been missed) and the watch is retried with backoff; entries then only live for the TTL.
+ * <p>
+ * Metrics: {@code storage.download.cache.invalidation.lag} timer (commit to invalidation) and the
+ * {@code storage.download.cache.watch.restarts} counter.
+ */
+@Component
+@ConditionalOnProperty(prefix = "storage.download.cache", name = "watch", havingValue = "true", matchIfMissing = true)
+public class ResolvedLinkInvalidator implements DisposableBean {
+
+    private final ReactiveMongoTemplate mongo;
+    private final ResolvedLinkCache cache;
+    private final Timer lag;
+    private final Counter restarts;
+    @Nullable
+    private volatile Disposable watch;
+
+    public ResolvedLinkInvalidator(ReactiveMongoTemplate mongo, ResolvedLinkCache cache, MeterRegistry meters) {
+        this.mongo = mongo;
+        this.cache = cache;
+        this.lag = Timer.builder("storage.download.cache.invalidation.lag").register(meters);
+        this.restarts = meters.counter("storage.download.cache.watch.restarts");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!cache.enabled() || watch != null) return;
+        watch = events()
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofMinutes(1))
+                        .doBeforeRetry(sig -> {
+                            cache.invalidateAll();
+                            restarts.increment();
+                        }))
+                .subscribe();
+    }
+
+    @Override
+    public void destroy() {
+        Disposable w = watch;
+        if (w != null) w.dispose();
+    }
+
+    Flux<Void> events() {
+        Flux<Void> files = watch(mongo.getCollectionName(FileEntry.class), cache::invalidateFile,
+                "update", "replace", "delete");
+        Flux<Void> links = watch(mongo.getCollectionName(DownloadLink.class), cache::invalidateLink, "delete");
+        return Flux.merge(files, links);
+    }
+
+    private Flux<Void> watch(String collection, Consumer<String> invalidate, String... operations) {
+        ChangeStreamOptions options = ChangeStreamOptions.builder()
+                .filter(Aggregation.newAggregation(Aggregation.match(Criteria.where("operationType").in(operations))))
+                .build();
+        return mongo.changeStream(collection, options, Document.class)
+                .doOnNext(event -> {
+                    String id = idOf(event.getRaw());
+                    if (id != null) invalidate.accept(id);
+                    Instant committed = committedAt(event);
+                    if (committed != null) lag.record(Duration.between(committed, Instant.now()));
+                })
+                .thenMany(Flux.empty());
+    }
+
+    @Nullable
+    private static String idOf(@Nullable ChangeStreamDocument<Document> raw) {
+        BsonDocument key = raw == null ? null : raw.getDocumentKey();
+        BsonValue id = key == null ? null : key.get("_id");
+        if (id == null) return null;
+        if (id.isObjectId()) return id.asObjectId().getValue().toHexString();
+        return id.isString() ? id.asString().getValue() : null;
+    }
+
+    /** Wall-clock commit time (ms) when the server reports it, else the cluster time (s). */
+    @Nullable
+    private static Instant committedAt(ChangeStreamEvent<Document> event) {
+        ChangeStreamDocument<Document> raw = event.getRaw();
+        if (raw != null && raw.getWallTime() != null) return Instant.ofEpochMilli(raw.getWallTime().getValue());
+        return event.getTimestamp();
+    }
+}
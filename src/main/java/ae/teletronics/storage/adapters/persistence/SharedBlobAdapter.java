@@ -0,0 +1,80 @@
+package ae.teletronics.storage.adapters.persistence;
+
+import ae.teletronics.storage.domain.model.SharedBlob;
+import ae.teletronics.storage.ports.SharedBlobPort;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Instant;
+import java.util.Collection;
+
+@Component
+public class SharedBlobAdapter implements SharedBlobPort {
+    private final ReactiveMongoTemplate mongo;
+
+    public SharedBlobAdapter(ReactiveMongoTemplate mongo) {
+        this.mongo = mongo;
+    }
+
+    @Override
+    public Mono<String> acquire(String sha256, String gridFsId, long size) {
+        Update update = new Update()
+                .inc("refCount", 1)
+                .setOnInsert("gridFsId", gridFsId)
+                .setOnInsert("size", size)
+                .setOnInsert("createdAt", Instant.now());
+        return mongo.findAndModify(
+                        Query.query(Criteria.where("_id").is(sha256)),
+                        update,
+                        FindAndModifyOptions.options().upsert(true).returnNew(true),
+                        SharedBlob.class)
+                // two concurrent upserts of a new hash: the loser retries and finds the winner's doc
+                .retryWhen(Retry.max(1).filter(DuplicateKeyException.class::isInstance))
+                .map(SharedBlob::getGridFsId);
+    }
+
+    @Override
+    public Mono<String> acquireExisting(String sha256) {
+        return mongo.findAndModify(
+                        Query.query(Criteria.where("_id").is(sha256).and("refCount").gt(0)),
+                        new Update().inc("refCount", 1),
+                        FindAndModifyOptions.options().returnNew(true),
+                        SharedBlob.class)
+                .map(SharedBlob::getGridFsId);
+    }
+
+    @Override
+    public Mono<Boolean> exists(String sha256) {
+        return mongo.exists(Query.query(Criteria.where("_id").is(sha256).and("refCount").gt(0)), SharedBlob.class);
+    }
+
+    @Override
+    public Mono<String> release(String sha256) {
+        return mongo.findAndModify(
+                        Query.query(Criteria.where("_id").is(sha256)),
+                        new Update().inc("refCount", -1),
+                        FindAndModifyOptions.options().returnNew(true),
+                        SharedBlob.class)
+                .filter(b -> b.getRefCount() <= 0)
+                // conditional remove: a concurrent acquire() that revived the count keeps the blob
+                .flatMap(b -> mongo.findAndRemove(
+                        Query.query(Criteria.where("_id").is(sha256).and("refCount").lte(0)),
+                        SharedBlob.class))
+                .map(SharedBlob::getGridFsId);
+    }
+
+    @Override
+    public Flux<String> findReferencedGridFsIds(Collection<String> gridFsIds) {
+        Query q = Query.query(Criteria.where("gridFsId").in(gridFsIds));
+        q.fields().include("gridFsId");
+        return mongo.find(q, SharedBlob.class).map(SharedBlob::getGridFsId);
+    }
+}
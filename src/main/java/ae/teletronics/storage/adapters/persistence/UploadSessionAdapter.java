@@ -0,0 +1,78 @@
+package ae.teletronics.storage.adapters.persistence;
+
+import ae.teletronics.storage.adapters.persistence.repo.UploadSessionReactiveRepository;
+import ae.teletronics.storage.domain.model.UploadSession;
+import ae.teletronics.storage.ports.UploadSessionQueryPort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+@Component
+public class UploadSessionAdapter implements UploadSessionQueryPort {
+    private final UploadSessionReactiveRepository repo;
+    private final ReactiveMongoTemplate mongo;
+
+    public UploadSessionAdapter(UploadSessionReactiveRepository repo, ReactiveMongoTemplate mongo) {
+        this.repo = repo;
+        this.mongo = mongo;
+    }
+
+    @Override
+    public Mono<UploadSession> findById(String id) {
+        return repo.findById(id);
+    }
+
+    @Override
+    public Mono<UploadSession> save(UploadSession session) {
+        return repo.save(session);
+    }
+
+    @Override
+    public Mono<UploadSession> appendSegment(String id, long expectedOffset, UploadSession.Segment segment,
+                                             byte[] hashState, @Nullable byte[] head) {
+        Update update = new Update()
+                .push("segments", segment)
+                .inc("segmentCount", 1)
+                .set("committedOffset", expectedOffset + segment.size())
+                .set("hashState", hashState);
+        if (head != null) update.set("head", head);
+
+        return mongo.findAndModify(
+                Query.query(Criteria.where("_id").is(id).and("committedOffset").is(expectedOffset)),
+                update,
+                FindAndModifyOptions.options().returnNew(true),
+                UploadSession.class);
+    }
+
+    @Override
+    public Mono<UploadSession> putPart(String id, UploadSession.Part part, @Nullable byte[] head) {
+        Update update = new Update().set("parts." + part.number(), part);
+        if (head != null) update.set("head", head);
+
+        return mongo.findAndModify(
+                Query.query(Criteria.where("_id").is(id)),
+                update,
+                FindAndModifyOptions.options().returnNew(false),
+                UploadSession.class);
+    }
+
+    @Override
+    public Mono<Void> deleteById(String id) {
+        return repo.deleteById(id);
+    }
+
+    @Override
+    public Flux<String> findExistingIds(Collection<String> ids) {
+        Query q = Query.query(Criteria.where("_id").in(ids));
+        q.fields().include("_id");
+        return mongo.find(q, UploadSession.class).map(UploadSession::getId);
+    }
+}
@@ -3,20 +3,28 @@ package ae.teletronics.storage.adapters.persistence.repo;
 import ae.teletronics.storage.domain.Visibility;
 import ae.teletronics.storage.domain.model.FileEntry;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 public interface FileEntryReactiveRepository extends ReactiveMongoRepository<FileEntry, String> {
 
+    String WITHOUT_INLINE_DATA = "{ 'inlineData': 0 }";
+
     Mono<Boolean> existsByOwnerIdAndFilenameLc(String ownerId, String filenameLc);
 
     Mono<Boolean> existsByOwnerIdAndContentSha256(String ownerId, String sha256);
 
+    // listings: inline file bytes are left out of the rows
+    @Query(fields = WITHOUT_INLINE_DATA)
     Flux<FileEntry> findByOwnerId(String ownerId, Pageable pageable);
+    @Query(fields = WITHOUT_INLINE_DATA)
     Flux<FileEntry> findByOwnerIdAndTagsIgnoreCaseContaining(String ownerId, String tag, Pageable pageable);
 
+    @Query(fields = WITHOUT_INLINE_DATA)
     Flux<FileEntry> findByVisibility(Visibility visibility, Pageable pageable);
+    @Query(fields = WITHOUT_INLINE_DATA)
     Flux<FileEntry> findByVisibilityAndTagsIgnoreCaseContaining(Visibility visibility, String tag, Pageable pageable);
 
 
@@ -0,0 +1,7 @@
+package ae.teletronics.storage.adapters.persistence.repo;
+
+import ae.teletronics.storage.domain.model.UploadSession;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+
+public interface UploadSessionReactiveRepository extends ReactiveMongoRepository<UploadSession, String> {
+}
@@ -0,0 +1,59 @@
+package ae.teletronics.storage.adapters.storage;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Picks the GridFS chunk size of a new blob.
+ * <p>
+ * Blobs use {@code storage.gridfs.chunk-size} unless {@code storage.gridfs.adaptive} is on and
+ * the expected size is known; then the base size is doubled until the file fits in
+ * {@code target-chunks} chunks, as long as the result stays within {@code max-chunk-size}. A 400 GB upload thus becomes
+ * ~100k 4 MB chunks instead of ~1.6M 255 KB ones, while small files keep small chunks.
+ * Doubling keeps every choice a power-of-two multiple of the base, so session segments sized in
+ * base chunks stay aligned. The chosen size is stored in {@code fs.files.chunkSize}, which is
+ * what range reads seek by.
+ */
+@Component
+public class ChunkSizePolicy {
+
+    private static final int MAX_BSON_CHUNK = 15 * 1024 * 1024; // leave room under the 16 MB document limit
+
+    private final int base;
+    private final boolean adaptive;
+    private final long targetChunks;
+    private final int max;
+
+    @Autowired
+    public ChunkSizePolicy(@Value("${storage.gridfs.chunk-size:255KB}") DataSize base,
+                           @Value("${storage.gridfs.adaptive:false}") boolean adaptive,
+                           @Value("${storage.gridfs.target-chunks:1024}") long targetChunks,
+                           @Value("${storage.gridfs.max-chunk-size:4MB}") DataSize max) {
+        this.base = (int) Math.max(1, Math.min(MAX_BSON_CHUNK, base.toBytes()));
+        this.adaptive = adaptive;
+        this.targetChunks = Math.max(1, targetChunks);
+        this.max = (int) Math.max(this.base, Math.min(MAX_BSON_CHUNK, max.toBytes()));
+    }
+
+    /** Always {@code chunkSize}; for tests and tools. */
+    public static ChunkSizePolicy fixed(int chunkSize) {
+        return new ChunkSizePolicy(DataSize.ofBytes(chunkSize), false, 1, DataSize.ofBytes(chunkSize));
+    }
+
+    /** The size for blobs whose length isn't known up front (e.g. session segments). */
+    public int base() {
+        return base;
+    }
+
+    /** @param expectedSize expected blob length, or a negative value when unknown */
+    public int chunkSizeFor(long expectedSize) {
+        if (!adaptive || expectedSize <= 0) return base;
+        long size = base;
+        while (size * 2 <= max && (expectedSize + size - 1) / size > targetChunks) {
+            size *= 2;
+        }
+        return (int) size;
+    }
+}
@@ -0,0 +1,323 @@
+package ae.teletronics.storage.adapters.storage;
+
+import ae.teletronics.storage.ports.BlobFileCachePort;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Read-through cache of whole blobs as files under {@code storage.download.disk-cache.dir},
+ * named by their SHA-256, so hot medium and large files are sent from local disk instead of
+ * being pulled out of GridFS again.
+ * <p>
+ * The first full download of a blob of at least {@code min-file-size} is teed to a temporary
+ * file with asynchronous writes while it streams to the client. The copy is moved into place
+ * only when it is complete and hashes to the file's {@code contentSha256}. A slow disk never
+ * holds back the client; once {@link #MAX_PENDING_WRITES} writes queue up the copy is abandoned.
+ * Total size is bounded by {@code max-size} (0 turns the cache off), evicting the least recently
+ * used files. Evicted files are deleted after {@link #EVICTION_GRACE}, so sends that already
+ * started finish. Content under a digest never changes, so entries need no invalidation. Files
+ * left by a previous run are indexed at startup, oldest first.
+ * <p>
+ * Metrics: {@code storage.download.disk-cache} counter tagged {@code result=hit|miss},
+ * {@code .served} (bytes), {@code .populated}, {@code .rejected} (incomplete or digest
+ * mismatch), {@code .evictions}, and the {@code .size} / {@code .capacity} (bytes) and
+ * {@code .hit.ratio} gauges.
+ */
+@Component
+public class DiskBlobCache implements BlobFileCachePort {
+
+    static final int MAX_PENDING_WRITES = 32;
+    static final Duration EVICTION_GRACE = Duration.ofMinutes(1);
+    private static final String PART_SUFFIX = ".part";
+    private static final Pattern DIGEST = Pattern.compile("[0-9a-f]{64}");
+
+    private final Path dir;
+    private final long capacity;
+    private final long minFileSize;
+
+    // guarded by this
+    private final LinkedHashMap<String, Long> files = new LinkedHashMap<>(64, 0.75f, true);
+    private long size;
+    private final Set<String> populating = ConcurrentHashMap.newKeySet();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter served;
+    private final Counter populated;
+    private final Counter rejected;
+    private final Counter evictions;
+
+    public DiskBlobCache(MeterRegistry meters,
+                         @Value("${storage.download.disk-cache.dir:${java.io.tmpdir}/storage-blob-cache}") Path dir,
+                         @Value("${storage.download.disk-cache.max-size:0}") DataSize capacity,
+                         @Value("${storage.download.disk-cache.min-file-size:1MB}") DataSize minFileSize) {
+        this.dir = dir;
+        this.capacity = Math.max(0, capacity.toBytes());
+        this.minFileSize = Math.max(1, minFileSize.toBytes());
+        this.hits = Counter.builder("storage.download.disk-cache").tag("result", "hit").register(meters);
+        this.misses = Counter.builder("storage.download.disk-cache").tag("result", "miss").register(meters);
+        this.served = Counter.builder("storage.download.disk-cache.served").baseUnit("bytes").register(meters);
+        this.populated = meters.counter("storage.download.disk-cache.populated");
+        this.rejected = meters.counter("storage.download.disk-cache.rejected");
+        this.evictions = meters.counter("storage.download.disk-cache.evictions");
+        Gauge.builder("storage.download.disk-cache.size", this, DiskBlobCache::size).baseUnit("bytes").register(meters);
+        Gauge.builder("storage.download.disk-cache.capacity", this, c -> c.capacity).baseUnit("bytes").register(meters);
+        Gauge.builder("storage.download.disk-cache.hit.ratio", this, DiskBlobCache::hitRatio).register(meters);
+        if (enabled()) index();
+    }
+
+    boolean enabled() {
+        return capacity > 0;
+    }
+
+    @Override
+    @Nullable
+    public Path lookup(String sha256, long size) {
+        if (!cacheable(sha256, size)) return null;
+        Long cached;
+        synchronized (this) {
+            cached = files.get(sha256);
+        }
+        if (cached != null && cached == size) {
+            hits.increment();
+            return dir.resolve(sha256);
+        }
+        misses.increment();
+        return null;
+    }
+
+    @Override
+    public Flux<DataBuffer> populate(String sha256, long size, Flux<DataBuffer> content) {
+        if (!cacheable(sha256, size)) return content;
+        return Flux.defer(() -> {
+            synchronized (this) {
+                if (files.containsKey(sha256) || !populating.add(sha256)) return content;
+            }
+            final Copy copy;
+            try {
+                copy = new Copy(sha256, size);
+            } catch (IOException e) {
+                populating.remove(sha256);
+                return content;
+            }
+            return content
+                    .doOnNext(copy::accept)
+                    .doFinally(copy::streamEnded);
+        });
+    }
+
+    @Override
+    public void served(long bytes) {
+        served.increment(bytes);
+    }
+
+    synchronized long size() {
+        return size;
+    }
+
+    private boolean cacheable(String sha256, long size) {
+        return enabled() && size >= minFileSize && size <= capacity && DIGEST.matcher(sha256).matches();
+    }
+
+    private double hitRatio() {
+        double h = hits.count(), total = h + misses.count();
+        return total == 0 ? 0 : h / total;
+    }
+
+    /** Picks up the files of a previous run (least recently written first) and drops partial copies. */
+    private void index() {
+        try {
+            Files.createDirectories(dir);
+            List<Path> kept = new ArrayList<>();
+            try (Stream<Path> listing = Files.list(dir)) {
+                for (Path p : (Iterable<Path>) listing::iterator) {
+                    String name = p.getFileName().toString();
+                    if (name.endsWith(PART_SUFFIX)) Files.deleteIfExists(p);
+                    else if (DIGEST.matcher(name).matches() && Files.isRegularFile(p)) kept.add(p);
+                }
+            }
+            Map<Path, BasicFileAttributes> attrs = new LinkedHashMap<>();
+            for (Path p : kept) attrs.put(p, Files.readAttributes(p, BasicFileAttributes.class));
+            kept.sort(Comparator.comparing(p -> attrs.get(p).lastModifiedTime()));
+            for (Path p : kept) add(p.getFileName().toString(), attrs.get(p).size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot use download disk cache directory " + dir, e);
+        }
+    }
+
+    /** Registers a file that is in place, evicting least recently used ones past the capacity. */
+    private void add(String sha256, long length) {
+        List<String> victims = new ArrayList<>();
+        synchronized (this) {
+            Long previous = files.put(sha256, length);
+            if (previous != null) size -= previous;
+            size += length;
+            Iterator<Map.Entry<String, Long>> eldest = files.entrySet().iterator();
+            while (size > capacity && eldest.hasNext()) {
+                Map.Entry<String, Long> victim = eldest.next();
+                if (victim.getKey().equals(sha256)) continue;
+                eldest.remove();
+                size -= victim.getValue();
+                victims.add(victim.getKey());
+                evictions.increment();
+            }
+        }
+        for (String victim : victims) {
+            Mono.delay(EVICTION_GRACE, Schedulers.boundedElastic())
+                    .subscribe(t -> deleteUnlessReused(victim));
+        }
+    }
+
+    private void deleteUnlessReused(String sha256) {
+        synchronized (this) {
+            if (files.containsKey(sha256) || populating.contains(sha256)) return;
+            try {
+                Files.deleteIfExists(dir.resolve(sha256));
+            } catch (IOException ignore) {
+                // retried when the directory is indexed again
+            }
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * One tee of a download to disk. Buffers are retained until their positional write completes;
+     * {@code pending} counts those writes plus one for the stream itself, and whoever brings it
+     * to zero finishes the copy.
+     */
+    private final class Copy {
+        final String sha256;
+        final long expected;
+        final Path part;
+        final AsynchronousFileChannel channel;
+        final MessageDigest digest = sha256();
+        final AtomicInteger pending = new AtomicInteger(1);
+        long position; // only touched by the (serial) stream
+        volatile boolean failed;
+        volatile boolean complete;
+
+        Copy(String sha256, long expected) throws IOException {
+            this.sha256 = sha256;
+            this.expected = expected;
+            this.part = Files.createTempFile(dir, sha256 + ".", PART_SUFFIX);
+            this.channel = AsynchronousFileChannel.open(part, StandardOpenOption.WRITE);
+        }
+
+        void accept(DataBuffer db) {
+            if (failed) return;
+            if (pending.get() > MAX_PENDING_WRITES) {
+                failed = true; // the disk can't keep up; serve the client, skip the copy
+                return;
+            }
+            int n = db.readableByteCount();
+            digest.update(db.asByteBuffer());
+            pending.incrementAndGet();
+            DataBufferUtils.retain(db);
+            write(db, db.asByteBuffer(), position);
+            position += n;
+        }
+
+        private void write(DataBuffer db, ByteBuffer bytes, long at) {
+            channel.write(bytes, at, null, new CompletionHandler<Integer, Void>() {
+                @Override
+                public void completed(Integer written, Void attachment) {
+                    if (bytes.hasRemaining() && !failed) {
+                        write(db, bytes, at + written);
+                        return;
+                    }
+                    DataBufferUtils.release(db);
+                    done();
+                }
+
+                @Override
+                public void failed(Throwable e, Void attachment) {
+                    Copy.this.failed = true;
+                    DataBufferUtils.release(db);
+                    done();
+                }
+            });
+        }
+
+        void streamEnded(SignalType signal) {
+            if (signal == SignalType.ON_COMPLETE) complete = true;
+            else failed = true;
+            done();
+        }
+
+        private void done() {
+            if (pending.decrementAndGet() == 0) {
+                Schedulers.boundedElastic().schedule(this::finish);
+            }
+        }
+
+        private void finish() {
+            try {
+                channel.close();
+                boolean whole = !failed && complete;
+                boolean intact = whole && position == expected
+                        && HexFormat.of().formatHex(digest.digest()).equals(sha256);
+                if (intact) {
+                    Files.move(part, dir.resolve(sha256), StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                    add(sha256, expected);
+                    populated.increment();
+                } else {
+                    if (whole) rejected.increment(); // truncated or not the content it claims to be
+                    Files.deleteIfExists(part);
+                }
+            } catch (IOException e) {
+                try {
+                    Files.deleteIfExists(part);
+                } catch (IOException ignore) {
+                    // dropped at the next startup
+                }
+            } finally {
+                populating.remove(sha256);
+            }
+        }
+    }
+}
@@ -1,35 +1,176 @@
 package ae.teletronics.storage.adapters.storage;
 
 import ae.teletronics.storage.ports.ReactiveStoragePort;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.types.Binary;
 import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.buffer.DataBuffer;
 import org.bson.Document;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.data.mongodb.gridfs.ReactiveGridFsResource;
 import org.springframework.data.mongodb.gridfs.ReactiveGridFsTemplate;
+import org.springframework.data.mongodb.gridfs.ReactiveGridFsUpload;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Component
 public class GridFsReactiveAdapter implements ReactiveStoragePort {
+    static final String FILES = "fs.files";
+    static final String CHUNKS = "fs.chunks";
+    private static final Duration LATE_CHUNK_SWEEP = Duration.ofSeconds(5);
+
     private final ReactiveGridFsTemplate gridFs;
+    private final ReactiveMongoTemplate mongo;
+    private final DataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+    private final MemoryBudget budget;
+    private final ChunkSizePolicy chunkSizes;
+    private final HotBlobCache hot;
+    @Nullable
+    private final PipelinedChunkWriter pipelined; // null = one chunk at a time via the template
+    @Nullable
+    private final PrefetchingChunkReader prefetching; // null = the driver's download stream
+    @Nullable
+    private final SharedChunkReads shared; // null = every download reads its own chunks
+    private final ConcurrentHashMap<String, CompletableFuture<Loaded>> loads = new ConcurrentHashMap<>();
+
+    private final Counter abortedUploads;
+    private final Counter abortedBytes;
 
-    public GridFsReactiveAdapter(ReactiveGridFsTemplate gridFs){
+    public GridFsReactiveAdapter(ReactiveGridFsTemplate gridFs, ReactiveMongoTemplate mongo, MeterRegistry meters,
+                                 MemoryBudget budget,
+                                 ChunkSizePolicy chunkSizes,
+                                 HotBlobCache hot,
+                                 @Value("${storage.gridfs.write-concurrency:4}") int writeConcurrency,
+                                 @Value("${storage.gridfs.write-batch:2}") int writeBatch,
+                                 @Value("${storage.gridfs.read-ahead:0}") int readAhead,
+                                 @Value("${storage.gridfs.read-parallelism:2}") int readParallelism,
+                                 @Value("${storage.gridfs.shared-read-window:0}") int sharedReadWindow){
         this.gridFs = gridFs;
+        this.mongo = mongo;
+        this.budget = budget;
+        this.chunkSizes = chunkSizes;
+        this.hot = hot;
+        this.pipelined = writeConcurrency > 0
+                ? new PipelinedChunkWriter(mongo, budget, writeBatch, writeConcurrency)
+                : null;
+        this.prefetching = readAhead > 0
+                ? new PrefetchingChunkReader(mongo, readAhead, readParallelism)
+                : null;
+        this.shared = sharedReadWindow > 0 ? new SharedChunkReads(sharedReadWindow, meters) : null;
+        this.abortedUploads = meters.counter("storage.upload.aborted");
+        this.abortedBytes = meters.counter("storage.upload.aborted.bytes");
     }
 
+    /**
+     * Streams straight into GridFS under a pre-generated id, so that when the body errors or the
+     * subscriber cancels (client gone) the chunks written so far can be removed right away.
+     * Inbound buffers draw from the shared {@link MemoryBudget}. With
+     * {@code storage.gridfs.write-concurrency > 0} chunks are written by a
+     * {@link PipelinedChunkWriter} (several inserts in flight, {@code fs.files} last) and the
+     * stored length is reported; 0 keeps the template's one-chunk-per-round-trip store.
+     * Blobs of unknown size get the base chunk size.
+     */
     @Override
     public Mono<StorageSaveResult> save(Flux<DataBuffer> content,
                                         String filename,
                                         String contentType,
                                         Map<String,Object> metadata) {
+        return save(content, filename, contentType, metadata, -1);
+    }
+
+    /** The chunk size comes from {@link ChunkSizePolicy} for {@code expectedSize}. */
+    @Override
+    public Mono<StorageSaveResult> save(Flux<DataBuffer> content,
+                                        String filename,
+                                        String contentType,
+                                        Map<String,Object> metadata,
+                                        long expectedSize) {
+        final ObjectId id = new ObjectId();
+        final int chunkSize = chunkSizes.chunkSizeFor(expectedSize);
+        final AtomicLong written = new AtomicLong();
+        Flux<DataBuffer> governed = budget.govern(content, MemoryBudget.Direction.UPLOAD)
+                .doOnNext(db -> written.addAndGet(db.readableByteCount()));
+
+        if (pipelined != null) {
+            return pipelined.write(id, chunkSize, governed, filename, contentType, metadata)
+                    .map(length -> new StorageSaveResult(id.toHexString(), length, chunkSize))
+                    // inserts already on the wire when it failed or was cancelled can land after the
+                    // first sweep
+                    .onErrorResume(e -> discardPartial(id, written.get())
+                            .doFinally(sig -> sweepLateChunks(id))
+                            .then(Mono.error(e)))
+                    .doOnCancel(() -> discardPartial(id, written.get())
+                            .doFinally(sig -> sweepLateChunks(id))
+                            .subscribe());
+        }
+
+        // the template gives no sign of when it is done with a buffer: it gets a copy, and the
+        // charged buffer is released (returning its budget) right away
+        ReactiveGridFsUpload.ReactiveGridFsUploadBuilder<ObjectId> upload = ReactiveGridFsUpload
+                .fromPublisher(governed.map(db -> {
+                    byte[] copy = new byte[db.readableByteCount()];
+                    db.read(copy);
+                    DataBufferUtils.release(db);
+                    return bufferFactory.wrap(copy);
+                }))
+                .id(id)
+                .chunkSize(chunkSize)
+                .filename(filename)
+                .metadata(new Document(metadata));
+        if (contentType != null) upload.contentType(contentType);
+
 // Directly stream to GridFS; no aggregation in memory
-        return gridFs.store(content, filename, contentType, new Document(metadata))
-                .map(id -> new StorageSaveResult(id.toString(), -1L));
+        return gridFs.store(upload.build())
+                .map(stored -> new StorageSaveResult(stored.toString(), -1L, chunkSize))
+                .onErrorResume(e -> discardPartial(id, written.get()).then(Mono.error(e)))
+                .doOnCancel(() -> discardPartial(id, written.get()).subscribe());
+    }
+
+    /** Best-effort removal of a partial write; the orphan collector is the safety net. */
+    private Mono<Void> discardPartial(ObjectId id, long bytes) {
+        abortedUploads.increment();
+        abortedBytes.increment(bytes);
+        return mongo.remove(Query.query(Criteria.where("files_id").is(id)), CHUNKS)
+                .then(mongo.remove(Query.query(Criteria.where("_id").is(id)), FILES))
+                .then()
+                .onErrorResume(e -> Mono.empty());
+    }
+
+    /** Second pass of {@link #discardPartial}, after in-flight chunk inserts have settled. */
+    private void sweepLateChunks(ObjectId id) {
+        Mono.delay(LATE_CHUNK_SWEEP)
+                .then(mongo.remove(Query.query(Criteria.where("files_id").is(id)), CHUNKS))
+                .onErrorResume(e -> Mono.empty())
+                .subscribe();
     }
 
     public Mono<ReactiveGridFsResource> open(String gridFsId) {
@@ -37,7 +178,321 @@ public class GridFsReactiveAdapter implements ReactiveStoragePort {
                 .flatMap(gridFs::getResource);
     }
 
+    /**
+     * Seeks by chunk number: only the {@code fs.chunks} documents covering
+     * [offset, offset + length) are fetched, and the first/last chunk are trimmed. Blobs in the
+     * {@link HotBlobCache} are sliced from memory.
+     */
+    @Override
+    public Flux<DataBuffer> read(String gridFsId, long offset, long length) {
+        if (length <= 0) return Flux.empty();
+        ByteBuffer cached = hot.get(gridFsId);
+        if (cached != null) return slice(cached, offset, length);
+        ObjectId id = new ObjectId(gridFsId);
+        return gridFs.findOne(Query.query(Criteria.where("_id").is(id)))
+                .flatMapMany(file -> readMiss(id, file.getChunkSize(), file.getLength(), offset, length));
+    }
+
+    /** With a known chunk size the {@code fs.files} lookup is skipped. */
+    @Override
+    public Flux<DataBuffer> read(String gridFsId, int chunkSize, long offset, long length) {
+        if (chunkSize <= 0) return read(gridFsId, offset, length);
+        if (length <= 0) return Flux.empty();
+        ByteBuffer cached = hot.get(gridFsId);
+        if (cached != null) return slice(cached, offset, length);
+        return readMiss(new ObjectId(gridFsId), chunkSize, -1, offset, length);
+    }
+
+    /**
+     * With {@code storage.gridfs.read-ahead > 0} chunks come from a {@link PrefetchingChunkReader}
+     * (a window of chunks fetched ahead, optionally by parallel range queries); 0 keeps the
+     * driver's download stream.
+     */
+    @Override
+    public Flux<DataBuffer> content(ReactiveGridFsResource resource) {
+        if (prefetching == null && !hot.enabled()) {
+            return budget.govern(resource.getDownloadStream(), MemoryBudget.Direction.DOWNLOAD);
+        }
+        return resource.getGridFSFile().flatMapMany(file -> {
+            if (file.getLength() == 0) return Flux.<DataBuffer>empty();
+            ByteBuffer cached = hot.get(file.getObjectId().toHexString());
+            if (cached != null) return slice(cached, 0, file.getLength());
+            if (prefetching == null && !hot.worthLoading(file.getObjectId().toHexString(), file.getLength())) {
+                return budget.govern(resource.getDownloadStream(), MemoryBudget.Direction.DOWNLOAD);
+            }
+            return readMiss(file.getObjectId(), file.getChunkSize(), file.getLength(), 0, file.getLength());
+        });
+    }
+
+    /**
+     * A blob short enough for the {@link HotBlobCache} and read often enough to get in is loaded
+     * whole, offered to the cache and sliced; anything else streams its chunks. {@code fileLength}
+     * is -1 when unknown: the load then fetches at most one chunk past the entry limit and gives
+     * up (remembering the id) if the blob is longer. A loaded blob the cache turned down is served
+     * once, charged to the {@link MemoryBudget} like streamed chunks.
+     */
+    private Flux<DataBuffer> readMiss(ObjectId id, int chunkSize, long fileLength, long offset, long length) {
+        String key = id.toHexString();
+        long bound = fileLength >= 0 ? fileLength : offset + length;
+        if (!hot.worthLoading(key, bound)) {
+            return stream(id, chunkSize, offset, length);
+        }
+        return loadWhole(id, chunkSize)
+                .flatMapMany(loaded -> loaded.cached()
+                        ? slice(loaded.blob(), offset, length)
+                        : budget.govern(window(loaded.blob(), offset, length), MemoryBudget.Direction.DOWNLOAD))
+                .switchIfEmpty(Flux.defer(() -> stream(id, chunkSize, offset, length)));
+    }
+
+    /**
+     * Chunks of the range, charged to the {@link MemoryBudget}. With
+     * {@code storage.gridfs.shared-read-window > 0} concurrent reads of the same range share one
+     * chunk stream ({@link SharedChunkReads}); a reader dropped from it continues from where it was.
+     */
+    private Flux<DataBuffer> stream(ObjectId id, int chunkSize, long offset, long length) {
+        Flux<DataBuffer> chunks = shared == null
+                ? readChunks(id, chunkSize, offset, length)
+                : shared.read(id.toHexString() + ':' + offset + ':' + length,
+                        () -> readChunks(id, chunkSize, offset, length),
+                        skip -> skip >= length ? Flux.<DataBuffer>empty()
+                                : readChunks(id, chunkSize, offset + skip, length - skip));
+        return budget.govern(chunks, MemoryBudget.Direction.DOWNLOAD);
+    }
+
+    /**
+     * Concurrent misses on the same blob share one load. It runs to the end even when its readers
+     * go away, so the ones still waiting get it; it is at most one cache entry long.
+     */
+    private Mono<Loaded> loadWhole(ObjectId id, int chunkSize) {
+        String key = id.toHexString();
+        return Mono.defer(() -> {
+            CompletableFuture<Loaded> mine = new CompletableFuture<>();
+            CompletableFuture<Loaded> inFlight = loads.putIfAbsent(key, mine);
+            if (inFlight == null) {
+                fetchWhole(id, chunkSize)
+                        .doFinally(sig -> loads.remove(key, mine))
+                        .subscribe(mine::complete, mine::completeExceptionally, () -> mine.complete(null));
+                inFlight = mine;
+            }
+            return Mono.fromFuture(inFlight, true);
+        });
+    }
+
+    /** Empty when the blob has no chunks (deleted), a gap, or is over the entry limit. */
+    private Mono<Loaded> fetchWhole(ObjectId id, int chunkSize) {
+        String key = id.toHexString();
+        long limit = hot.maxEntrySize();
+        Query q = Query.query(Criteria.where("files_id").is(id).and("n").lte((int) (limit / chunkSize)))
+                .with(Sort.by(Sort.Direction.ASC, "n"));
+        return mongo.find(q, Document.class, CHUNKS)
+                .collectList()
+                .flatMap(chunks -> {
+                    if (chunks.isEmpty()) return Mono.empty();
+                    List<byte[]> parts = new ArrayList<>(chunks.size());
+                    long total = 0;
+                    for (Document chunk : chunks) {
+                        if (chunk.getInteger("n") != parts.size()) return Mono.empty(); // gap: let the reader report it
+                        byte[] data = chunk.get("data", Binary.class).getData();
+                        parts.add(data);
+                        total += data.length;
+                    }
+                    if (total > limit) {
+                        hot.oversized(key);
+                        return Mono.empty();
+                    }
+                    ByteBuffer cached = hot.put(key, parts, (int) total);
+                    return Mono.just(cached != null
+                            ? new Loaded(cached, true)
+                            : new Loaded(joined(parts, (int) total), false));
+                });
+    }
+
+    private static ByteBuffer joined(List<byte[]> parts, int length) {
+        if (parts.size() == 1) return ByteBuffer.wrap(parts.get(0)).asReadOnlyBuffer();
+        ByteBuffer blob = ByteBuffer.allocate(length);
+        for (byte[] part : parts) blob.put(part);
+        return blob.flip().asReadOnlyBuffer();
+    }
+
+    /** From the {@link HotBlobCache}. */
+    private Flux<DataBuffer> slice(ByteBuffer blob, long offset, long length) {
+        return window(blob, offset, length).doOnNext(db -> hot.served(db.readableByteCount()));
+    }
+
+    private Flux<DataBuffer> window(ByteBuffer blob, long offset, long length) {
+        int from = (int) Math.min(offset, blob.limit());
+        int to = (int) Math.min(blob.limit(), offset + length);
+        if (to <= from) return Flux.empty();
+        return Flux.just(bufferFactory.wrap(blob.slice(from, to - from)));
+    }
+
+    private Flux<DataBuffer> readChunks(ObjectId id, int chunkSize, long offset, long length) {
+        final long end = offset + length; // exclusive
+        final int first = (int) (offset / chunkSize);
+        final int last = (int) ((end - 1) / chunkSize);
+
+        Flux<Document> chunks;
+        if (prefetching != null) {
+            chunks = prefetching.chunks(id, first, last);
+        } else {
+            Query q = Query.query(Criteria.where("files_id").is(id).and("n").gte(first).lte(last))
+                    .with(Sort.by(Sort.Direction.ASC, "n"));
+            chunks = mongo.find(q, Document.class, CHUNKS);
+        }
+        return chunks
+                .map(chunk -> {
+                    long chunkStart = (long) chunk.getInteger("n") * chunkSize;
+                    byte[] data = chunk.get("data", Binary.class).getData();
+                    int from = (int) Math.max(0, offset - chunkStart);
+                    int to = (int) Math.min(data.length, end - chunkStart);
+                    return bufferFactory.wrap(ByteBuffer.wrap(data, from, to - from));
+                });
+    }
+
+    /**
+     * When every source except the last is a whole number of chunks (same chunk size), the
+     * chunks are re-pointed and renumbered server-side and only a new {@code fs.files}
+     * document is written; no bytes are copied. Otherwise falls back to a streaming copy.
+     * <p>
+     * A relink is several writes, so it is made recoverable: the target id is derived from the
+     * source ids, and its {@code fs.files} document is written first with the chunk offset of
+     * each source ({@code metadata.relinkBases}). Every move only matches chunks still pointing
+     * at their source, so composing the same sources again after a failure or crash finds that
+     * document and finishes the job instead of starting over.
+     */
+    @Override
+    public Mono<StorageSaveResult> compose(List<String> sourceIds, String filename,
+                                           String contentType, Map<String, Object> metadata) {
+        if (sourceIds.isEmpty()) return Mono.error(new IllegalArgumentException("Nothing to compose"));
+        List<ObjectId> ids = sourceIds.stream().map(ObjectId::new).toList();
+        ObjectId target = relinkTarget(ids);
+        return mongo.findById(target, Document.class, FILES)
+                .flatMap(started -> resumeRelink(started, ids))
+                .switchIfEmpty(Mono.defer(() -> gridFs.find(Query.query(Criteria.where("_id").in(ids)))
+                        .collectMap(f -> f.getObjectId().toHexString())
+                        .flatMap(byId -> {
+                            List<GridFSFile> ordered = new ArrayList<>(sourceIds.size());
+                            for (String id : sourceIds) {
+                                GridFSFile f = byId.get(id);
+                                if (f == null) {
+                                    return Mono.error(new IllegalStateException("Missing source blob " + id));
+                                }
+                                ordered.add(f);
+                            }
+                            if (!chunkAligned(ordered)) {
+                                return ReactiveStoragePort.super.compose(sourceIds, filename, contentType, metadata);
+                            }
+                            return relink(target, ordered, ids, filename, contentType, metadata);
+                        })));
+    }
+
+    /** The chunk size of blobs saved without an expected length (session segments and parts). */
+    @Override
+    public int baseChunkSize() {
+        return chunkSizes.base();
+    }
+
+    private static boolean chunkAligned(List<GridFSFile> ordered) {
+        int chunkSize = ordered.get(0).getChunkSize();
+        for (int i = 0; i < ordered.size(); i++) {
+            GridFSFile f = ordered.get(i);
+            if (f.getChunkSize() != chunkSize) return false;
+            if (i < ordered.size() - 1 && f.getLength() % chunkSize != 0) return false;
+        }
+        return true;
+    }
+
+    /** Same sources, same target: a SHA-256 of the ordered source ids, cut to an ObjectId. */
+    static ObjectId relinkTarget(List<ObjectId> sourceIds) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (ObjectId id : sourceIds) digest.update(id.toByteArray());
+            return new ObjectId(Arrays.copyOf(digest.digest(), 12));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Mono<StorageSaveResult> relink(ObjectId target, List<GridFSFile> ordered, List<ObjectId> sourceIds,
+                                           String filename, String contentType, Map<String, Object> metadata) {
+        final int chunkSize = ordered.get(0).getChunkSize();
+        List<Integer> bases = new ArrayList<>(ordered.size());
+        long total = 0;
+        for (GridFSFile f : ordered) {
+            bases.add((int) (total / chunkSize));
+            total += f.getLength();
+        }
+
+        Document meta = new Document(metadata);
+        if (contentType != null) meta.put("_contentType", contentType);
+        meta.put("relinkBases", bases);
+        Document fileDoc = new Document("_id", target)
+                .append("length", total)
+                .append("chunkSize", chunkSize)
+                .append("uploadDate", new Date())
+                .append("filename", filename)
+                .append("metadata", meta);
+
+        final long length = total;
+        return mongo.insert(fileDoc, FILES)
+                .onErrorResume(DuplicateKeyException.class, e -> Mono.empty()) // a concurrent commit started it
+                .then(moveChunks(target, sourceIds, bases, length, chunkSize));
+    }
+
+    /** Picks up a relink that got as far as writing its target; a finished one has no bases left. */
+    private Mono<StorageSaveResult> resumeRelink(Document started, List<ObjectId> sourceIds) {
+        long length = ((Number) started.get("length")).longValue();
+        int chunkSize = ((Number) started.get("chunkSize")).intValue();
+        Document meta = started.get("metadata", Document.class);
+        List<Integer> bases = meta == null ? null : meta.getList("relinkBases", Integer.class);
+        if (bases == null) {
+            return Mono.just(new StorageSaveResult(started.getObjectId("_id").toHexString(), length, chunkSize));
+        }
+        if (bases.size() != sourceIds.size()) {
+            return Mono.error(new IllegalStateException(
+                    "Relink target " + started.get("_id") + " does not match its sources"));
+        }
+        return moveChunks(started.getObjectId("_id"), sourceIds, bases, length, chunkSize);
+    }
+
+    private Mono<StorageSaveResult> moveChunks(ObjectId target, List<ObjectId> sourceIds, List<Integer> bases,
+                                               long length, int chunkSize) {
+        List<Mono<?>> moves = new ArrayList<>(sourceIds.size());
+        for (int i = 0; i < sourceIds.size(); i++) {
+            moves.add(mongo.updateMulti(
+                    Query.query(Criteria.where("files_id").is(sourceIds.get(i))),
+                    AggregationUpdate.update()
+                            .set("files_id").toValue(target)
+                            .set("n").toValue(ArithmeticOperators.valueOf("n").add(bases.get(i))),
+                    CHUNKS));
+        }
+        return Flux.concat(moves)
+                .then(mongo.remove(Query.query(Criteria.where("_id").in(sourceIds)), FILES))
+                .then(mongo.updateFirst(Query.query(Criteria.where("_id").is(target)),
+                        new Update().unset("metadata.relinkBases"), FILES))
+                .doFinally(sig -> sourceIds.forEach(id -> hot.invalidate(id.toHexString())))
+                .thenReturn(new StorageSaveResult(target.toHexString(), length, chunkSize));
+    }
+
+    @Override
+    public Flux<StoredBlob> listStoredBefore(Instant cutoff) {
+        Query q = Query.query(Criteria.where("uploadDate").lt(Date.from(cutoff)))
+                .with(Sort.by(Sort.Direction.ASC, "uploadDate"));
+        return gridFs.find(q).map(f -> new StoredBlob(
+                f.getObjectId().toHexString(),
+                f.getLength(),
+                f.getChunkSize(),
+                f.getUploadDate().toInstant(),
+                f.getMetadata() != null ? f.getMetadata().getString("uploadSessionId") : null));
+    }
+
+    /** Also drops the blob from the {@link HotBlobCache}, again once deleted in case a read reloaded it. */
     @Override public Mono<Void> delete(String id) {
-        return gridFs.delete(Query.query(Criteria.where("_id").is(new ObjectId(id))));
+        return Mono.fromRunnable(() -> hot.invalidate(id))
+                .then(gridFs.delete(Query.query(Criteria.where("_id").is(new ObjectId(id)))))
+                .doFinally(sig -> hot.invalidate(id));
     }
+
+    /** A blob loaded whole; {@code cached} when it is the {@link HotBlobCache}'s own buffer. */
+    private record Loaded(ByteBuffer blob, boolean cached) {}
 }
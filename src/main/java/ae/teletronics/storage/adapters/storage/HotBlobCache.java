@@ -0,0 +1,250 @@
+package ae.teletronics.storage.adapters.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Whole-blob cache for small, frequently read GridFS blobs, so hot files are served without
+ * streaming their chunks again.
+ * <p>
+ * Blobs up to {@code storage.gridfs.hot-cache.max-entry-size} are kept, up to
+ * {@code max-size} bytes in total (0 turns the cache off). With {@code off-heap} (the default)
+ * the bytes live in direct buffers, outside the heap; size {@code -XX:MaxDirectMemorySize}
+ * accordingly. Admission is TinyLFU-style: every lookup counts towards a key's frequency in a
+ * small count-min sketch that halves itself periodically, and when the cache is full a new blob
+ * only gets in if it has been read more often than the least recently used entries it would
+ * push out. So a one-off download of a small file does not evict the hot set.
+ * <p>
+ * Keys are GridFS ids. Blobs are immutable once written and identical content shares a blob
+ * when content addressing is on, so the id also stands for the content's SHA-256. Entries are
+ * dropped by {@link GridFsReactiveAdapter#delete} and when a compose consumes a blob; a blob
+ * deleted by another instance is no longer reachable through a file entry, and its entry ages
+ * out. Cached buffers are shared and handed out read-only. The cache is bounded by its own
+ * {@code max-size}, apart from the {@link MemoryBudget}.
+ * <p>
+ * Metrics: {@code storage.gridfs.hot-cache} counter tagged {@code result=hit|miss},
+ * {@code .served} (bytes sent from the cache), {@code .evictions}, {@code .rejected} (not
+ * admitted) and the {@code .size} gauge (bytes).
+ */
+@Component
+public class HotBlobCache {
+
+    private static final int OVERSIZED_MEMORY = 1024; // ids known to be too large, to skip their probe
+
+    private final long capacity;
+    private final long maxEntrySize;
+    private final boolean offHeap;
+
+    // guarded by this
+    private final LinkedHashMap<String, ByteBuffer> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final LinkedHashMap<String, Boolean> oversized = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > OVERSIZED_MEMORY;
+        }
+    };
+    private final FrequencySketch sketch;
+    private long size;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter served;
+    private final Counter evictions;
+    private final Counter rejected;
+
+    @Autowired
+    public HotBlobCache(MeterRegistry meters,
+                        @Value("${storage.gridfs.hot-cache.max-size:0}") DataSize capacity,
+                        @Value("${storage.gridfs.hot-cache.max-entry-size:1MB}") DataSize maxEntrySize,
+                        @Value("${storage.gridfs.hot-cache.off-heap:true}") boolean offHeap) {
+        this.capacity = Math.max(0, capacity.toBytes());
+        this.maxEntrySize = Math.max(0, Math.min(Integer.MAX_VALUE, Math.min(this.capacity, maxEntrySize.toBytes())));
+        this.offHeap = offHeap;
+        this.sketch = new FrequencySketch((int) Math.min(1 << 20, Math.max(64, this.capacity / 1024)));
+        this.hits = Counter.builder("storage.gridfs.hot-cache").tag("result", "hit").register(meters);
+        this.misses = Counter.builder("storage.gridfs.hot-cache").tag("result", "miss").register(meters);
+        this.served = Counter.builder("storage.gridfs.hot-cache.served").baseUnit("bytes").register(meters);
+        this.evictions = meters.counter("storage.gridfs.hot-cache.evictions");
+        this.rejected = meters.counter("storage.gridfs.hot-cache.rejected");
+        Gauge.builder("storage.gridfs.hot-cache.size", this, HotBlobCache::size).baseUnit("bytes").register(meters);
+    }
+
+    /** Caches nothing; for tests and tools. */
+    public static HotBlobCache disabled() {
+        return new HotBlobCache(new SimpleMeterRegistry(), DataSize.ofBytes(0), DataSize.ofBytes(0), false);
+    }
+
+    boolean enabled() {
+        return maxEntrySize > 0;
+    }
+
+    long maxEntrySize() {
+        return maxEntrySize;
+    }
+
+    /** The cached blob (read-only, position 0), or null; counts towards the key's frequency. */
+    @Nullable
+    ByteBuffer get(String id) {
+        if (!enabled()) return null;
+        ByteBuffer blob;
+        synchronized (this) {
+            sketch.increment(id);
+            blob = entries.get(id);
+        }
+        (blob != null ? hits : misses).increment();
+        return blob == null ? null : blob.duplicate();
+    }
+
+    /** Whether a miss on a blob of at most {@code length} bytes (-1 unknown) is worth loading. */
+    boolean worthLoading(String id, long length) {
+        if (!enabled() || length > maxEntrySize) return false;
+        synchronized (this) {
+            if (oversized.containsKey(id)) return false;
+            if (size + Math.max(0, length) <= capacity || entries.isEmpty()) return true;
+            String eldest = entries.keySet().iterator().next();
+            return sketch.frequency(id) > sketch.frequency(eldest);
+        }
+    }
+
+    /** Remembers that {@code id} turned out larger than an entry may be. */
+    void oversized(String id) {
+        synchronized (this) {
+            oversized.put(id, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Offers the blob made of {@code parts} to the cache. Returns the cached buffer (read-only,
+     * position 0), or null when it is not admitted; its memory is only allocated once admission
+     * has been decided, so rejected blobs cost the caller nothing beyond the parts it loaded.
+     */
+    @Nullable
+    ByteBuffer put(String id, List<byte[]> parts, int length) {
+        if (length > maxEntrySize) return null;
+        synchronized (this) {
+            ByteBuffer present = entries.get(id);
+            if (present != null) return present.duplicate(); // loaded concurrently
+            if (victims(id, length) == null) {
+                rejected.increment();
+                return null;
+            }
+        }
+        // copied outside the lock: allocateDirect may stall when direct memory runs short
+        ByteBuffer blob = offHeap ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length);
+        for (byte[] part : parts) blob.put(part);
+        blob.flip();
+        blob = blob.asReadOnlyBuffer();
+
+        synchronized (this) {
+            ByteBuffer present = entries.get(id);
+            if (present != null) return present.duplicate();
+            List<String> victims = victims(id, length); // again: the cache moved on while we copied
+            if (victims == null) {
+                rejected.increment();
+                return null;
+            }
+            for (String victim : victims) {
+                size -= entries.remove(victim).capacity();
+                evictions.increment();
+            }
+            entries.put(id, blob);
+            size += length;
+        }
+        return blob.duplicate();
+    }
+
+    /**
+     * TinyLFU: the least recently used entries to push out to make room for {@code length} bytes
+     * of {@code id}, or null when one of them is read at least as often as the newcomer. Callers
+     * hold the lock.
+     */
+    @Nullable
+    private List<String> victims(String id, int length) {
+        int candidate = sketch.frequency(id);
+        List<String> victims = new ArrayList<>();
+        long freed = 0;
+        for (Map.Entry<String, ByteBuffer> e : entries.entrySet()) { // least recently used first
+            if (size - freed + length <= capacity) break;
+            if (sketch.frequency(e.getKey()) >= candidate) return null;
+            victims.add(e.getKey());
+            freed += e.getValue().capacity();
+        }
+        return victims;
+    }
+
+    void invalidate(String id) {
+        synchronized (this) {
+            ByteBuffer removed = entries.remove(id);
+            if (removed != null) size -= removed.capacity();
+        }
+    }
+
+    void served(long bytes) {
+        served.increment(bytes);
+    }
+
+    synchronized long size() {
+        return size;
+    }
+
+    /**
+     * Count-min sketch of 4 rows with counters capped at 15; all counters are halved after
+     * {@code 10 * width} increments, so old popularity fades. Callers hold the cache lock.
+     */
+    static final class FrequencySketch {
+        private static final int ROWS = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x9E3779B1, 0x85EBCA77, 0xC2B2AE3D, 0x27D4EB2F};
+
+        private final int[] table;
+        private final int width;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int width) {
+            this.width = Integer.highestOneBit(Math.max(16, width - 1) << 1);
+            this.table = new int[ROWS * this.width];
+            this.sampleSize = 10 * this.width;
+        }
+
+        void increment(String key) {
+            int h = key.hashCode();
+            for (int row = 0; row < ROWS; row++) {
+                int i = index(h, row);
+                if (table[i] < MAX_COUNT) table[i]++;
+            }
+            if (++additions >= sampleSize) age();
+        }
+
+        int frequency(String key) {
+            int h = key.hashCode();
+            int min = MAX_COUNT;
+            for (int row = 0; row < ROWS; row++) min = Math.min(min, table[index(h, row)]);
+            return min;
+        }
+
+        private int index(int hash, int row) {
+            int h = hash * SEEDS[row];
+            h ^= h >>> 16;
+            return row * width + (h & (width - 1));
+        }
+
+        private void age() {
+            for (int i = 0; i < table.length; i++) table[i] >>>= 1;
+            additions /= 2;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package ae.teletronics.storage.adapters.storage;
+
+import io.micrometer.core.instrument.Gauge;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide cap on the bytes that upload and download streams hold in flight.
+ * <p>
+ * A governed stream charges each buffer against the budget before passing it on, and asks its
+ * source for the next buffer only once the charge is granted; while the budget is exhausted the
+ * stream simply stops demanding, so Netty stops reading the socket (uploads) or GridFS stops
+ * fetching chunks (downloads) instead of the JVM running out of memory.
+ * <p>
+ * A buffer stays charged until it is released, wherever that happens: in Netty once the response
+ * bytes are written out (or copied to its direct outbound buffer), in the chunk writer once they
+ * are copied into a chunk, in the disk cache once the copy is on disk. Bytes parked in an outbound
+ * queue therefore count. Every such holder lets go without needing more input, so waiting on them
+ * cannot deadlock. Chunks being inserted, held outside any governed stream, are counted with
+ * {@link #hold}, which never waits. A single buffer larger than the whole budget is admitted when
+ * nothing else is charged. Waiters are served in arrival order.
+ * <p>
+ * Read-ahead upstream of a download's governed stream is not counted: prefetched chunk windows
+ * ({@link PrefetchingChunkReader}) and the ring of a shared read ({@link SharedChunkReads}). They
+ * are only handed on as that same stream is admitted, so charging them here could leave streams
+ * waiting on each other's prefetch. Both are bounded per download instead; the budget is sized
+ * with them left out (see the README).
+ * <p>
+ * Metrics: {@code storage.memory.budget.used} / {@code .capacity} gauges (bytes) and the
+ * {@code storage.memory.budget.stall} timer, tagged {@code direction=upload|download}.
+ */
+@Component
+public class MemoryBudget {
+
+    private final long capacity;
+    private long used;                                      // guarded by this
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>(); // guarded by this
+
+    private final Timer uploadStalls;
+    private final Timer downloadStalls;
+
+    private static final NettyDataBufferFactory CHARGED = new NettyDataBufferFactory(ByteBufAllocator.DEFAULT);
+
+    @Autowired
+    public MemoryBudget(MeterRegistry meters,
+                        @Value("${storage.memory.budget:128MB}") DataSize capacity) {
+        this(capacity.toBytes(), meters);
+    }
+
+    MemoryBudget(long capacity, MeterRegistry meters) {
+        this.capacity = Math.max(1, capacity);
+        Gauge.builder("storage.memory.budget.used", this, MemoryBudget::used).baseUnit("bytes").register(meters);
+        Gauge.builder("storage.memory.budget.capacity", this, b -> b.capacity).baseUnit("bytes").register(meters);
+        this.uploadStalls = Timer.builder("storage.memory.budget.stall").tag("direction", "upload").register(meters);
+        this.downloadStalls = Timer.builder("storage.memory.budget.stall").tag("direction", "download").register(meters);
+    }
+
+    public enum Direction { UPLOAD, DOWNLOAD }
+
+    /**
+     * Charges every buffer of {@code in} against the budget; see the class comment. The buffers
+     * emitted carry their charge: releasing one returns it.
+     */
+    public Flux<DataBuffer> govern(Flux<DataBuffer> in, Direction direction) {
+        final Timer stalls = direction == Direction.UPLOAD ? uploadStalls : downloadStalls;
+        return in
+                .concatMap(db -> admit(db, stalls), 0) // no prefetch: one buffer at a time
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    /**
+     * Counts {@code bytes} held outside any governed stream until the returned handle is run (it
+     * runs once). Never waits, so it can take the budget past its capacity; governed streams then
+     * wait until it is given back.
+     */
+    Runnable hold(long bytes) {
+        if (bytes <= 0) return () -> {};
+        synchronized (this) {
+            used += bytes;
+        }
+        AtomicBoolean held = new AtomicBoolean(true);
+        return () -> {
+            if (held.getAndSet(false)) release(bytes);
+        };
+    }
+
+    synchronized long used() {
+        return used;
+    }
+
+    /** Emits {@code db}, charged, once the budget has room for it. */
+    private Mono<DataBuffer> admit(DataBuffer db, Timer stalls) {
+        final long bytes = db.readableByteCount();
+        return Mono.create(sink -> {
+            Waiter w = null;
+            synchronized (this) {
+                if (waiters.isEmpty() && fits(bytes)) {
+                    used += bytes;
+                } else {
+                    w = new Waiter(bytes, db, sink, stalls);
+                    waiters.add(w);
+                }
+            }
+            if (w == null) {
+                sink.success(charged(db, bytes));
+                return;
+            }
+            final Waiter waiter = w;
+            sink.onCancel(() -> {
+                boolean queued;
+                synchronized (this) {
+                    queued = waiters.remove(waiter);
+                }
+                if (waiter.state.compareAndSet(Waiter.WAITING, Waiter.CANCELLED)) {
+                    if (!queued) release(bytes); // granted, never delivered
+                    DataBufferUtils.release(db);
+                }
+            });
+        });
+    }
+
+    /**
+     * {@code db} as a buffer whose last release also returns {@code bytes} to the budget. The
+     * bytes are not copied; Netty buffers keep their own reference counting underneath.
+     */
+    private DataBuffer charged(DataBuffer db, long bytes) {
+        ByteBuf content;
+        if (db instanceof NettyDataBuffer n) {
+            content = n.getNativeBuffer();
+        } else if (db instanceof DefaultDataBuffer d) {
+            ByteBuffer readable = d.getNativeBuffer().duplicate().clear()
+                    .limit(d.writePosition()).position(d.readPosition());
+            content = Unpooled.wrappedBuffer(readable);
+        } else {
+            byte[] copy = new byte[(int) bytes];
+            db.read(copy);
+            DataBufferUtils.release(db);
+            content = Unpooled.wrappedBuffer(copy);
+        }
+        return CHARGED.wrap(new ChargedByteBuf(content, () -> release(bytes)));
+    }
+
+    private boolean fits(long bytes) {
+        return used + bytes <= capacity || used == 0;
+    }
+
+    private void release(long bytes) {
+        if (bytes <= 0) return;
+        synchronized (this) {
+            used -= bytes;
+        }
+        drain();
+    }
+
+    private void drain() {
+        List<Waiter> granted = null;
+        synchronized (this) {
+            while (!waiters.isEmpty() && fits(waiters.peek().bytes)) {
+                Waiter w = waiters.poll();
+                used += w.bytes;
+                if (granted == null) granted = new ArrayList<>(2);
+                granted.add(w);
+            }
+        }
+        if (granted == null) return;
+        for (Waiter w : granted) {
+            if (!w.state.compareAndSet(Waiter.WAITING, Waiter.GRANTED)) continue; // cancel handler releases
+            w.stalls.record(System.nanoTime() - w.since, TimeUnit.NANOSECONDS);
+            // a stream that ended meanwhile discards (releases) it, which returns the charge
+            w.sink.success(charged(w.buffer, w.bytes));
+        }
+    }
+
+    /** One component whose deallocation, after every reference is released, runs {@code onFree}. */
+    private static final class ChargedByteBuf extends CompositeByteBuf {
+        private final Runnable onFree;
+
+        ChargedByteBuf(ByteBuf content, Runnable onFree) {
+            super(content.alloc(), content.isDirect(), 1, content);
+            this.onFree = onFree;
+        }
+
+        @Override
+        protected void deallocate() {
+            try {
+                super.deallocate();
+            } finally {
+                onFree.run();
+            }
+        }
+    }
+
+    private static final class Waiter {
+        static final int WAITING = 0, GRANTED = 1, CANCELLED = 2;
+
+        final long bytes;
+        final DataBuffer buffer;
+        final MonoSink<DataBuffer> sink;
+        final Timer stalls;
+        final long since = System.nanoTime();
+        final AtomicInteger state = new AtomicInteger(WAITING);
+
+        Waiter(long bytes, DataBuffer buffer, MonoSink<DataBuffer> sink, Timer stalls) {
+            this.bytes = bytes;
+            this.buffer = buffer;
+            this.sink = sink;
+            this.stalls = stalls;
+        }
+    }
+}
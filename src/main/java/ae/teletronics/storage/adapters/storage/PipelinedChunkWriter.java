@@ -0,0 +1,159 @@
+package ae.teletronics.storage.adapters.storage;
+
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.lang.Nullable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a GridFS file with several {@code fs.chunks} inserts in flight instead of one round
+ * trip per chunk.
+ * <p>
+ * The body is cut into pieces of the blob's chunk size numbered from 0, grouped {@code batch}
+ * chunks per {@code insertMany}, and up to {@code concurrency} batches are written at once. The
+ * {@code fs.files} document goes in last, only after every chunk is acknowledged, so a reader
+ * never sees a file with missing chunks. The layout (chunk fields, {@code files} fields,
+ * {@code metadata._contentType}, indexes) is the one {@code ReactiveGridFsTemplate} and the
+ * driver's GridFS bucket read.
+ * <p>
+ * At most {@code concurrency * batch} chunks are held in memory per upload. Batches on their way to
+ * Mongo are counted against the {@link MemoryBudget} until their insert ends; the batch still
+ * being filled is not (it waits for more body, which may itself wait for budget).
+ */
+final class PipelinedChunkWriter {
+
+    private final ReactiveMongoTemplate mongo;
+    private final MemoryBudget budget;
+    private final int batch;
+    private final int concurrency;
+    private volatile boolean indexed;
+
+    PipelinedChunkWriter(ReactiveMongoTemplate mongo, MemoryBudget budget, int batch, int concurrency) {
+        this.mongo = mongo;
+        this.budget = budget;
+        this.batch = Math.max(1, batch);
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    /**
+     * What the GridFS bucket creates on its first write; needed by every reader. A failure does
+     * not fail the write, and the next write tries again.
+     */
+    private Mono<Void> indexes() {
+        if (indexed) return Mono.empty();
+        return Mono.when(
+                        mongo.indexOps(GridFsReactiveAdapter.CHUNKS).ensureIndex(new Index()
+                                .on("files_id", Sort.Direction.ASC).on("n", Sort.Direction.ASC).unique()),
+                        mongo.indexOps(GridFsReactiveAdapter.FILES).ensureIndex(new Index()
+                                .on("filename", Sort.Direction.ASC).on("uploadDate", Sort.Direction.ASC)))
+                .doOnSuccess(v -> indexed = true)
+                .onErrorResume(e -> Mono.empty());
+    }
+
+    /** Emits the stored length once {@code fs.files} is written. */
+    Mono<Long> write(ObjectId id, int chunkSize, Flux<DataBuffer> content, String filename,
+                     @Nullable String contentType, Map<String, Object> metadata) {
+        return indexes().then(Mono.defer(() -> {
+            final Chunker chunker = new Chunker(id, chunkSize);
+            return content
+                    .concatMapIterable(chunker::accept, 1)
+                    .concatWith(Mono.fromSupplier(chunker::last))
+                    .buffer(batch)
+                    .flatMap(docs -> {
+                        Runnable held = budget.hold(bytes(docs));
+                        return mongo.insert(docs, GridFsReactiveAdapter.CHUNKS).then().doFinally(sig -> held.run());
+                    }, concurrency, 1)
+                    .then(Mono.fromSupplier(() ->
+                            fileDocument(id, chunker.length, chunkSize, filename, contentType, metadata)))
+                    .flatMap(doc -> mongo.insert(doc, GridFsReactiveAdapter.FILES))
+                    .thenReturn(chunker.length)
+                    .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+        }));
+    }
+
+    private static long bytes(List<Document> chunks) {
+        long n = 0;
+        for (Document chunk : chunks) n += chunk.get("data", Binary.class).length();
+        return n;
+    }
+
+    private static Document fileDocument(ObjectId id, long length, int chunkSize, String filename,
+                                         @Nullable String contentType, Map<String, Object> metadata) {
+        Document meta = new Document(metadata);
+        if (contentType != null) meta.put("_contentType", contentType);
+        return new Document("_id", id)
+                .append("length", length)
+                .append("chunkSize", chunkSize)
+                .append("uploadDate", new Date())
+                .append("filename", filename)
+                .append("metadata", meta);
+    }
+
+    /** Re-cuts arbitrary buffers into whole chunks; one instance per upload, used serially. */
+    private static final class Chunker {
+        final ObjectId filesId;
+        final int chunkSize;
+        byte[] current;
+        int filled;
+        int n;
+        long length;
+
+        Chunker(ObjectId filesId, int chunkSize) {
+            this.filesId = filesId;
+            this.chunkSize = chunkSize;
+            this.current = new byte[chunkSize];
+        }
+
+        List<Document> accept(DataBuffer db) {
+            List<Document> full = List.of();
+            try {
+                int left = db.readableByteCount();
+                length += left;
+                while (left > 0) {
+                    int take = Math.min(left, chunkSize - filled);
+                    db.read(current, filled, take);
+                    filled += take;
+                    left -= take;
+                    if (filled == chunkSize) {
+                        if (full.isEmpty()) full = new ArrayList<>(2);
+                        full.add(chunk(current));
+                        current = new byte[chunkSize];
+                        filled = 0;
+                    }
+                }
+                return full;
+            } finally {
+                DataBufferUtils.release(db);
+            }
+        }
+
+        /** The trailing partial chunk, or null when the length is a multiple of the chunk size. */
+        @Nullable
+        Document last() {
+            if (filled == 0) return null;
+            byte[] tail = new byte[filled];
+            System.arraycopy(current, 0, tail, 0, filled);
+            filled = 0;
+            return chunk(tail);
+        }
+
+        private Document chunk(byte[] data) {
+            return new Document("_id", new ObjectId())
+                    .append("files_id", filesId)
+                    .append("n", n++)
+                    .append("data", new Binary(data));
+        }
+    }
+}
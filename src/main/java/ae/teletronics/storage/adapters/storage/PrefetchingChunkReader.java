@@ -0,0 +1,74 @@
+package ae.teletronics.storage.adapters.storage;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reads a run of {@code fs.chunks} documents with a window of chunks fetched ahead of the
+ * client, instead of the driver's download stream, which asks for the next cursor batch only
+ * once the previous one is consumed.
+ * <p>
+ * The run is cut into windows of {@code window} consecutive chunk numbers, each fetched by its
+ * own range query with a cursor batch of the whole window. Up to {@code parallelism} windows are
+ * queried at once and their chunks are emitted strictly in order; a further window is only
+ * queried as earlier ones are drained, so a slow client holds at most
+ * {@code window * parallelism} chunks. A gap in the numbering fails the stream, as the driver's
+ * reader does.
+ * <p>
+ * Those chunks are not charged to the {@link MemoryBudget} (it governs what comes out of here),
+ * so they come on top of it: up to {@code window * parallelism * chunk size} per download.
+ */
+final class PrefetchingChunkReader {
+
+    private final ReactiveMongoTemplate mongo;
+    private final int window;
+    private final int parallelism;
+
+    PrefetchingChunkReader(ReactiveMongoTemplate mongo, int window, int parallelism) {
+        this.mongo = mongo;
+        this.window = Math.max(1, window);
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /** Chunks {@code first..last} (inclusive) of file {@code id}, in order. */
+    Flux<Document> chunks(ObjectId id, int first, int last) {
+        final int windows = (last - first) / window + 1;
+        return Flux.defer(() -> {
+            final int[] expected = {first}; // touched serially, downstream of the merge
+            return Flux.range(0, windows)
+                    .flatMapSequential(w -> {
+                        int from = first + w * window;
+                        return range(id, from, Math.min(last, from + window - 1));
+                    }, parallelism, window)
+                    .<Document>handle((chunk, sink) -> {
+                        int n = chunk.getInteger("n");
+                        if (n != expected[0]) {
+                            sink.error(missing(id, expected[0]));
+                            return;
+                        }
+                        expected[0]++;
+                        sink.next(chunk);
+                    })
+                    .concatWith(Mono.defer(() -> expected[0] > last
+                            ? Mono.empty()
+                            : Mono.error(missing(id, expected[0]))));
+        });
+    }
+
+    private Flux<Document> range(ObjectId id, int from, int to) {
+        Query q = Query.query(Criteria.where("files_id").is(id).and("n").gte(from).lte(to))
+                .with(Sort.by(Sort.Direction.ASC, "n"))
+                .cursorBatchSize(to - from + 1);
+        return mongo.find(q, Document.class, GridFsReactiveAdapter.CHUNKS);
+    }
+
+    private static IllegalStateException missing(ObjectId id, int n) {
+        return new IllegalStateException("Missing chunk " + n + " of GridFS file " + id);
+    }
+}
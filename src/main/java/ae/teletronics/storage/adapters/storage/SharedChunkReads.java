@@ -0,0 +1,246 @@
+package ae.teletronics.storage.adapters.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.reactivestreams.Subscription;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.lang.Nullable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight reads: concurrent readers of the same blob range share one upstream chunk
+ * stream instead of opening a cursor each (a flash crowd on a newly shared file).
+ * <p>
+ * The first reader of a key starts a flight. The flight keeps the last {@code window} buffers it
+ * read, and anyone arriving before the first of those is dropped joins and replays from the
+ * start. Upstream is pulled as fast as the fastest member asks. A member that falls more than
+ * {@code window} buffers behind (a slow client) leaves the flight and continues on its own read
+ * from the byte it had reached, so it never holds the others back. Late arrivals start their
+ * own flight, which later readers can join in turn. The flight is cancelled when its last member
+ * leaves.
+ * <p>
+ * Upstream buffers must be heap buffers (as chunk reads produce): members receive read-only
+ * views of them. The ring is not charged to the {@link MemoryBudget}: each flight holds up to
+ * {@code window} chunks on top of it. Metrics: {@code storage.gridfs.shared-read} counter tagged
+ * {@code role=leader|follower} (reads that started vs joined a flight) and
+ * {@code storage.gridfs.shared-read.fallbacks} (members that left for their own read).
+ */
+final class SharedChunkReads {
+
+    private final int window;
+    private final DataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+    private final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<>();
+
+    private final Counter leaders;
+    private final Counter followers;
+    private final Counter fallbacks;
+
+    SharedChunkReads(int window, MeterRegistry meters) {
+        this.window = Math.max(1, window);
+        this.leaders = Counter.builder("storage.gridfs.shared-read").tag("role", "leader").register(meters);
+        this.followers = Counter.builder("storage.gridfs.shared-read").tag("role", "follower").register(meters);
+        this.fallbacks = meters.counter("storage.gridfs.shared-read.fallbacks");
+    }
+
+    /**
+     * The range {@code source} stands for, shared with concurrent readers of {@code key};
+     * {@code own.apply(skip)} must read the same range without its first {@code skip} bytes.
+     */
+    Flux<DataBuffer> read(String key, Supplier<Flux<DataBuffer>> source, LongFunction<Flux<DataBuffer>> own) {
+        return Flux.defer(() -> {
+            final Member[] joined = new Member[1];
+            flights.compute(key, (k, current) -> {
+                if (current != null && (joined[0] = current.join()) != null) {
+                    followers.increment();
+                    return current;
+                }
+                Flight started = new Flight(k, source.get());
+                joined[0] = started.join();
+                leaders.increment();
+                return started;
+            });
+            final Member member = joined[0];
+            return Flux.concat(
+                    Flux.<DataBuffer>create(member::attach),
+                    Flux.defer(() -> member.finished ? Flux.empty() : own.apply(member.bytes)));
+        });
+    }
+
+    /** One upstream read and its members; ring slots are indexed by buffer number mod window. */
+    private final class Flight extends BaseSubscriber<DataBuffer> {
+        final String key;
+        final Flux<DataBuffer> source;
+        final AtomicInteger wip = new AtomicInteger();
+
+        // guarded by this
+        final ByteBuffer[] ring = new ByteBuffer[window];
+        final List<Member> members = new ArrayList<>(2);
+        long head; // buffers received so far
+        boolean subscribed;
+        boolean requested; // one buffer asked for and not yet received
+        boolean done;
+        boolean abandoned;
+        @Nullable
+        Throwable error;
+
+        Flight(String key, Flux<DataBuffer> source) {
+            this.key = key;
+            this.source = source;
+        }
+
+        /** A new member replaying from the start, or null once buffers have been dropped. */
+        @Nullable
+        synchronized Member join() {
+            if (head > window || abandoned || error != null) return null;
+            Member m = new Member(this);
+            members.add(m);
+            return m;
+        }
+
+        void leave(Member m) {
+            synchronized (this) {
+                members.remove(m);
+                if (!members.isEmpty() || done || abandoned) return;
+                abandoned = true;
+            }
+            flights.remove(key, this);
+            cancel();
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            drain(); // request once a member wants data
+        }
+
+        @Override
+        protected void hookOnNext(DataBuffer db) {
+            ByteBuffer view = db.asByteBuffer().asReadOnlyBuffer();
+            DataBufferUtils.release(db);
+            synchronized (this) {
+                ring[(int) (head % window)] = view;
+                head++;
+                requested = false;
+            }
+            drain();
+        }
+
+        @Override
+        protected void hookOnComplete() {
+            finish(null);
+        }
+
+        @Override
+        protected void hookOnError(Throwable e) {
+            finish(e);
+        }
+
+        private void finish(@Nullable Throwable e) {
+            synchronized (this) {
+                done = true;
+                error = e;
+            }
+            flights.remove(key, this);
+            drain();
+        }
+
+        /** Serialized: only one thread emits at a time; others just flag another pass. */
+        void drain() {
+            if (wip.getAndIncrement() != 0) return;
+            int missed = 1;
+            do {
+                List<Member> snapshot;
+                synchronized (this) {
+                    snapshot = new ArrayList<>(members);
+                }
+                boolean wanted = false;
+                for (Member m : snapshot) wanted |= m.emit();
+                boolean subscribe = false;
+                boolean request = false;
+                synchronized (this) {
+                    if (wanted && !done && !abandoned) {
+                        if (!subscribed) subscribe = subscribed = true;
+                        else if (!requested && upstream() != null) request = requested = true;
+                    }
+                }
+                if (subscribe) source.subscribe(this);
+                if (request) request(1);
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        @Nullable
+        synchronized ByteBuffer at(long index) {
+            return index < head && index >= head - window ? ring[(int) (index % window)] : null;
+        }
+    }
+
+    /** One reader: where it is in the flight and how many bytes it has been sent. */
+    private final class Member {
+        final Flight flight;
+        @Nullable
+        FluxSink<DataBuffer> sink;
+        long index; // next buffer number; touched by the draining thread only
+        volatile long bytes;
+        volatile boolean finished; // got everything from the flight (or its error)
+        boolean detached;
+
+        Member(Flight flight) {
+            this.flight = flight;
+        }
+
+        void attach(FluxSink<DataBuffer> sink) {
+            this.sink = sink;
+            sink.onDispose(() -> flight.leave(this));
+            sink.onRequest(n -> flight.drain());
+        }
+
+        /** Sends what it can; true when it waits for a buffer the flight hasn't read yet. */
+        boolean emit() {
+            FluxSink<DataBuffer> out = sink;
+            if (out == null || detached) return false;
+            while (true) {
+                long head;
+                boolean done;
+                Throwable error;
+                synchronized (flight) {
+                    head = flight.head;
+                    done = flight.done;
+                    error = flight.error;
+                }
+                if (index < head - window) { // dropped from the ring: continue on our own read
+                    detached = true;
+                    fallbacks.increment();
+                    out.complete();
+                    return false;
+                }
+                if (index == head) {
+                    if (!done) return out.requestedFromDownstream() > 0;
+                    detached = true;
+                    finished = true;
+                    if (error != null) out.error(error);
+                    else out.complete();
+                    return false;
+                }
+                if (out.requestedFromDownstream() == 0) return false;
+                ByteBuffer next = flight.at(index);
+                if (next == null) continue; // overwritten just now; re-check against the new head
+                index++;
+                bytes += next.remaining();
+                out.next(bufferFactory.wrap(next.duplicate()));
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package ae.teletronics.storage.adapters.web;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.lang.Nullable;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Resolves {@code Range} / {@code If-Range} request headers against a stored entity (RFC 9110 §14).
+ */
+final class ByteRanges {
+
+    /** More ranges than this in one request are ignored and the full entity is served. */
+    static final int MAX_RANGES = 16;
+
+    /** Inclusive byte slice of the entity. */
+    record Slice(long start, long end) {
+        long length() { return end - start + 1; }
+        String contentRange(long size) { return "bytes " + start + "-" + end + "/" + size; }
+    }
+
+    private ByteRanges() { }
+
+    /**
+     * Returns {@code null} when the full entity should be served (no/ignored Range header, more
+     * than {@link #MAX_RANGES} ranges or stale If-Range), an empty list when no requested range is
+     * satisfiable (416), else the slices in ascending order, with overlapping or adjacent ranges
+     * merged, so no byte is sent twice (RFC 9110 §14.2 lets a server coalesce them).
+     */
+    @Nullable
+    static List<Slice> resolve(HttpHeaders request, long size,
+                               @Nullable String etag, @Nullable Instant lastModified) {
+        String header = request.getFirst(HttpHeaders.RANGE);
+        if (header == null || header.isBlank()) return null;
+        if (!ifRangeMatches(request.getFirst(HttpHeaders.IF_RANGE), etag, lastModified)) return null;
+
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(header);
+        } catch (IllegalArgumentException ex) {
+            return null; // malformed Range is ignored, not an error
+        }
+        if (ranges.isEmpty() || ranges.size() > MAX_RANGES) return null;
+
+        List<Slice> slices = new ArrayList<>(ranges.size());
+        for (HttpRange r : ranges) {
+            if (size == 0) continue;
+            long start = r.getRangeStart(size);
+            if (start >= size) continue;              // unsatisfiable, skip
+            long end = r.getRangeEnd(size);
+            if (end < start) continue;
+            slices.add(new Slice(start, end));
+        }
+        return merged(slices);
+    }
+
+    private static List<Slice> merged(List<Slice> slices) {
+        if (slices.size() < 2) return slices;
+        slices.sort(Comparator.comparingLong(Slice::start));
+        List<Slice> out = new ArrayList<>(slices.size());
+        Slice current = slices.get(0);
+        for (Slice next : slices.subList(1, slices.size())) {
+            if (next.start() <= current.end() + 1) {
+                current = new Slice(current.start(), Math.max(current.end(), next.end()));
+            } else {
+                out.add(current);
+                current = next;
+            }
+        }
+        out.add(current);
+        return out;
+    }
+
+    /** Strong ETag comparison or exact Last-Modified match; absent If-Range always matches. */
+    private static boolean ifRangeMatches(@Nullable String ifRange,
+                                          @Nullable String etag, @Nullable Instant lastModified) {
+        if (ifRange == null || ifRange.isBlank()) return true;
+        String v = ifRange.trim();
+        if (v.startsWith("\"") || v.startsWith("W/")) {
+            return etag != null && !v.startsWith("W/") && v.equals(etag);
+        }
+        if (lastModified == null) return false;
+        try {
+            Instant since = ZonedDateTime.parse(v, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return since.getEpochSecond() == lastModified.getEpochSecond();
+        } catch (Exception ignore) {
+            return false;
+        }
+    }
+}
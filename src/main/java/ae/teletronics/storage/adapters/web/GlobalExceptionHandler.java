@@ -4,6 +4,7 @@ import ae.teletronics.storage.adapters.web.dto.ErrorResponse;
 import ae.teletronics.storage.application.exceptions.*;
 import org.springframework.core.io.buffer.DataBufferLimitException;
 import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -37,12 +38,26 @@ public class GlobalExceptionHandler {
                 .body(new ErrorResponse("STALE_UPDATE", ex.getMessage()));
     }
 
+    @ExceptionHandler(OffsetMismatchException.class)
+    public ResponseEntity<ErrorResponse> handleOffsetMismatch(OffsetMismatchException ex) {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .header("Upload-Offset", String.valueOf(ex.getCommittedOffset()))
+                .body(new ErrorResponse("OFFSET_MISMATCH", ex.getMessage()));
+    }
+
     @ExceptionHandler(OptimisticLockingFailureException.class)
     public ResponseEntity<ErrorResponse> handleOptimistic(OptimisticLockingFailureException ex) {
         return ResponseEntity.status(HttpStatus.CONFLICT)
                 .body(new ErrorResponse("STALE_UPDATE", "File was modified concurrently, please retry"));
     }
 
+    // ---- 400: Declared checksum/size did not match the streamed body ----
+    @ExceptionHandler(ChecksumMismatchException.class)
+    public ResponseEntity<ErrorResponse> handleChecksumMismatch(ChecksumMismatchException ex) {
+        return ResponseEntity.badRequest()
+                .body(new ErrorResponse("CHECKSUM_MISMATCH", ex.getMessage()));
+    }
+
     // ---- 403 / 404 ----
     @ExceptionHandler(ForbiddenOperationException.class)
     public ResponseEntity<ErrorResponse> handleForbidden(ForbiddenOperationException ex) {
@@ -79,6 +94,13 @@ public class GlobalExceptionHandler {
                 .body(new ErrorResponse("VALIDATION_ERROR", details));
     }
 
+    // ---- 413: Owner storage quota ----
+    @ExceptionHandler(QuotaExceededException.class)
+    public ResponseEntity<ErrorResponse> handleQuota(QuotaExceededException ex) {
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                .body(new ErrorResponse("QUOTA_EXCEEDED", ex.getMessage()));
+    }
+
     // ---- 413: Request body too large (useful for big uploads) ----
     @ExceptionHandler(DataBufferLimitException.class)
     public ResponseEntity<ErrorResponse> handleTooLarge(DataBufferLimitException ex) {
@@ -86,6 +108,15 @@ public class GlobalExceptionHandler {
                 .body(new ErrorResponse("PAYLOAD_TOO_LARGE", "Request body too large"));
     }
 
+    // ---- 429: Upload admission (queue full / waited too long) ----
+    @ExceptionHandler(TooManyUploadsException.class)
+    public ResponseEntity<ErrorResponse> handleTooManyUploads(TooManyUploadsException ex) {
+        long seconds = Math.max(1, (ex.getRetryAfter().toMillis() + 999) / 1000);
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(seconds))
+                .body(new ErrorResponse("TOO_MANY_UPLOADS", ex.getMessage()));
+    }
+
     // ---- 415: Unsupported media type ----
     @ExceptionHandler(UnsupportedMediaTypeStatusException.class)
     public ResponseEntity<ErrorResponse> handleUnsupported(UnsupportedMediaTypeStatusException ex) {
@@ -0,0 +1,86 @@
+package ae.teletronics.storage.adapters.web;
+
+import ae.teletronics.storage.adapters.web.dto.ErrorResponse;
+import ae.teletronics.storage.application.ReactiveUploadService;
+import ae.teletronics.storage.application.exceptions.DuplicateFileException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Answers {@code Expect: 100-continue} uploads (multipart or raw) that declare an {@code X-Content-SHA256} the
+ * owner already stored with 409 before the body is read. Reactor Netty only sends
+ * "100 Continue" when the body is first subscribed, so the client never transmits the bytes.
+ * <p>
+ * Runs ahead of multipart parsing (which reads the body to find the parts) and therefore
+ * writes the error itself; {@link GlobalExceptionHandler} does not see WebFilter errors.
+ */
+@Component
+public class PreflightDuplicateFilter implements WebFilter {
+
+    private static final String HEX64 = "[0-9a-fA-F]{64}";
+
+    private final ReactiveUploadService uploads;
+    private final ObjectMapper json;
+
+    public PreflightDuplicateFilter(ReactiveUploadService uploads, ObjectMapper json) {
+        this.uploads = uploads;
+        this.json = json;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest req = exchange.getRequest();
+        if (!isUpload(req) || !expectsContinue(req.getHeaders())) {
+            return chain.filter(exchange);
+        }
+        String ownerId = req.getHeaders().getFirst("X-User-Id");
+        String sha256 = req.getHeaders().getFirst(ReactiveFileController.CONTENT_SHA256);
+        if (ownerId == null || sha256 == null || !sha256.trim().matches(HEX64)) {
+            return chain.filter(exchange); // the controller reports malformed input
+        }
+        return uploads.checkDuplicate(ownerId, sha256.trim())
+                .then(chain.filter(exchange))
+                .onErrorResume(DuplicateFileException.class, ex -> reject(exchange.getResponse(), ex));
+    }
+
+    /** POST /files (multipart) or PUT /files/{filename} (raw). */
+    private static boolean isUpload(ServerHttpRequest req) {
+        String path = req.getPath().value();
+        if (HttpMethod.POST.equals(req.getMethod())) return "/files".equals(path);
+        return HttpMethod.PUT.equals(req.getMethod())
+                && path.startsWith("/files/") && path.indexOf('/', "/files/".length()) < 0;
+    }
+
+    private static boolean expectsContinue(HttpHeaders headers) {
+        String expect = headers.getFirst(HttpHeaders.EXPECT);
+        return expect != null && expect.toLowerCase(Locale.ROOT).contains("100-continue");
+    }
+
+    private Mono<Void> reject(ServerHttpResponse response, DuplicateFileException ex) {
+        if (response.isCommitted()) return Mono.error(ex);
+        byte[] body;
+        try {
+            body = json.writeValueAsBytes(new ErrorResponse("DUPLICATE_" + ex.getKind().name(), ex.getMessage()));
+        } catch (JsonProcessingException e) {
+            body = ex.getMessage().getBytes(StandardCharsets.UTF_8);
+        }
+        response.setStatusCode(HttpStatus.CONFLICT);
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        response.getHeaders().set(HttpHeaders.CONNECTION, "close"); // the unread body is not drained
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(body)));
+    }
+}
@@ -1,21 +1,35 @@
 package ae.teletronics.storage.adapters.web;
 
 import ae.teletronics.storage.adapters.web.dto.FileEntryDto;
+import ae.teletronics.storage.adapters.web.dto.UsageResponse;
 import ae.teletronics.storage.application.DeleteFileServiceReactive;
 import ae.teletronics.storage.application.ReactiveUploadService;
+import ae.teletronics.storage.application.RenameFileServiceReactive;
+import ae.teletronics.storage.application.UsageServiceReactive;
+import ae.teletronics.storage.application.dto.DeclaredContent;
 import ae.teletronics.storage.application.exceptions.NotFoundException;
+import ae.teletronics.storage.domain.FingerprintMode;
 import ae.teletronics.storage.domain.Visibility;
 import ae.teletronics.storage.domain.model.FileEntry;
+import ae.teletronics.storage.ports.BlobFileCachePort;
 import ae.teletronics.storage.ports.FileEntryQueryPort;
 import ae.teletronics.storage.ports.DownloadLinkQueryPort;
 import ae.teletronics.storage.ports.ReactiveStoragePort;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.http.ZeroCopyHttpOutputMessage;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.lang.Nullable;
+import org.springframework.util.MimeTypeUtils;
 import org.springframework.util.MultiValueMap;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
@@ -23,6 +37,11 @@ import org.springframework.http.server.reactive.ServerHttpResponse;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
@@ -34,22 +53,35 @@ import java.util.Optional;
 @Validated
 public class ReactiveFileController {
 
+    static final String CONTENT_SHA256 = "X-Content-SHA256";
+    static final String CONTENT_SIZE = "X-Content-Size";
+    private static final int FILE_BUFFER_SIZE = 64 * 1024;
+
     private final ReactiveUploadService uploadService;
     private final DeleteFileServiceReactive deleteService;
+    private final RenameFileServiceReactive renameService;
     private final FileEntryQueryPort files;
     private final DownloadLinkQueryPort links;
     private final ReactiveStoragePort storage;
+    private final BlobFileCachePort diskCache;
+    private final UsageServiceReactive usage;
 
     public ReactiveFileController(ReactiveUploadService uploadService,
                                   DeleteFileServiceReactive deleteService,
+                                  RenameFileServiceReactive renameService,
                                   FileEntryQueryPort files,
                                   DownloadLinkQueryPort links,
-                                  ReactiveStoragePort storage) {
+                                  ReactiveStoragePort storage,
+                                  BlobFileCachePort diskCache,
+                                  UsageServiceReactive usage) {
         this.uploadService = uploadService;
         this.deleteService = deleteService;
+        this.renameService = renameService;
         this.files = files;
         this.links = links;
         this.storage = storage;
+        this.diskCache = diskCache;
+        this.usage = usage;
     }
 
     @PostMapping(path = "/files",
@@ -59,7 +91,10 @@ public class ReactiveFileController {
                                      @RequestPart("file") FilePart file,
                                      @RequestPart(name = "filename", required = false) String filename,
                                      @RequestPart(name = "visibility", required = false) String visibilityStr,
-                                     @RequestPart(name = "tag", required = false) Flux<String> tagParts) {
+                                     @RequestPart(name = "tag", required = false) Flux<String> tagParts,
+                                     @RequestHeader(name = CONTENT_SHA256, required = false) String declaredSha256,
+                                     @RequestHeader(name = CONTENT_SIZE, required = false) Long declaredSize,
+                                     ServerHttpRequest request) {
 
         final String effectiveFilename = Optional.ofNullable(filename).filter(s -> !s.isBlank())
                 .orElse(file.filename());
@@ -80,11 +115,67 @@ public class ReactiveFileController {
                         visibility,
                         safeTags,
                         contentType.toString(),
-                        file.content()
+                        file.content(),
+                        DeclaredContent.of(declaredSha256, declaredSize),
+                        expectedSize(declaredSize, request) // whole multipart body: close enough to queue by
                 ).flatMap(r -> files.findById(r.fileId()).map(FileEntryDto::from))
         );
     }
 
+    /**
+     * Raw upload: the request body is the file, streamed straight into the upload pipeline with
+     * no multipart parsing. Metadata comes from the path, query and headers; the request
+     * Content-Type is the file's (octet-stream = detect).
+     */
+    @PutMapping(path = "/files/{filename}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<FileEntryDto> uploadRaw(@RequestHeader("X-User-Id") String ownerId,
+                                        @PathVariable String filename,
+                                        @RequestParam(name = "visibility", required = false) String visibilityStr,
+                                        @RequestParam(name = "tag", required = false) List<String> tags,
+                                        @RequestHeader(name = CONTENT_SHA256, required = false) String declaredSha256,
+                                        @RequestHeader(name = CONTENT_SIZE, required = false) Long declaredSize,
+                                        ServerHttpRequest request) {
+        if (filename.isBlank()) {
+            return Mono.error(new IllegalArgumentException("filename is required"));
+        }
+        final Visibility visibility = parseVisibility(visibilityStr).orElse(Visibility.PRIVATE);
+        final MediaType contentType = Optional.ofNullable(request.getHeaders().getContentType())
+                .orElse(MediaType.APPLICATION_OCTET_STREAM);
+        final List<String> safeTags = tags == null ? List.of() : tags.stream()
+                .map(String::trim)
+                .filter(s -> !s.isBlank())
+                .distinct()
+                .toList();
+
+        return uploadService.upload(
+                ownerId,
+                filename,
+                visibility,
+                safeTags,
+                contentType.toString(),
+                request.getBody(),
+                DeclaredContent.of(declaredSha256, declaredSize),
+                expectedSize(declaredSize, request)
+        ).flatMap(r -> files.findById(r.fileId()).map(FileEntryDto::from));
+    }
+
+    /**
+     * Pre-flight duplicate check: 204 when the owner has no file with this SHA-256, 409 otherwise.
+     * Lets a client skip the transfer entirely.
+     */
+    @GetMapping("/files/me/check")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public Mono<Void> checkDuplicate(@RequestHeader("X-User-Id") String ownerId,
+                                     @RequestParam("sha256") String sha256) {
+        DeclaredContent declared = new DeclaredContent(sha256, -1); // validates the hex form
+        return uploadService.checkDuplicate(ownerId, declared.sha256());
+    }
+
+    /** Declared size if any, else the request Content-Length (-1 when neither is known). */
+    private static long expectedSize(Long declaredSize, ServerHttpRequest request) {
+        return declaredSize != null ? declaredSize : request.getHeaders().getContentLength();
+    }
+
     private Optional<Visibility> parseVisibility(String raw) {
         if (raw == null || raw.isBlank()) return Optional.empty();
         try {
@@ -107,16 +198,7 @@ public class ReactiveFileController {
                 .filter(s -> !s.isBlank())
                 .orElseThrow(() -> new IllegalArgumentException("filename is required"));
 
-        return files.findById(id)
-                .switchIfEmpty(Mono.error(new NotFoundException("File not found")))
-                .flatMap(fe -> {
-                    if (!ownerId.equals(fe.getOwnerId())) return Mono.error(new NotFoundException("File not found"));
-                    fe.setFilename(newName);
-                    fe.setFilenameLc(newName.toLowerCase(Locale.ROOT));
-                    fe.setUpdatedAt(Instant.now());
-                    return files.save(fe);
-                })
-                .map(FileEntryDto::from);
+        return renameService.rename(ownerId, id, newName).map(FileEntryDto::from);
     }
 
     // ---- List "my files" (paged/sorted/filtered by tag) ----
@@ -133,6 +215,12 @@ public class ReactiveFileController {
         return files.findByOwnerId(ownerId, pageable).map(FileEntryDto::from);
     }
 
+    // ---- My usage (maintained counters, no aggregation) ----
+    @GetMapping(path = "/files/me/usage", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<UsageResponse> myUsage(@RequestHeader("X-User-Id") String ownerId) {
+        return usage.usage(ownerId).map(UsageResponse::from);
+    }
+
     // ---- List public files (paged/sorted/filtered by tag) ----
     @GetMapping("/files/public")
     public Flux<FileEntryDto> listPublic(@RequestParam(defaultValue = "0") int page,
@@ -171,27 +259,122 @@ public class ReactiveFileController {
 
     // ---- Download by unguessable token ----
     @GetMapping("/download/{token}")
-    public Mono<Void> download(@PathVariable String token, ServerHttpResponse response) {
-        return links.findByToken(token)
+    public Mono<Void> download(@PathVariable String token, ServerHttpRequest request, ServerHttpResponse response) {
+        return links.resolve(token)
+                .filter(resolved -> resolved.file() != null)
                 .switchIfEmpty(Mono.error(new NotFoundException("File not found")))
-                .flatMap(link -> files.findById(link.getFileId()))
-                .switchIfEmpty(Mono.error(new NotFoundException("File not found")))
-                .flatMap(fe -> storage.open(fe.getGridFsId())
-                        .flatMap(res -> {
-                            MediaType ct = Optional.ofNullable(fe.getContentType())
-                                    .map(s -> {
-                                        try { return MediaType.parseMediaType(s); } catch (Exception ignore) { return MediaType.APPLICATION_OCTET_STREAM; }
-                                    })
-                                    .orElse(MediaType.APPLICATION_OCTET_STREAM);
-                            response.getHeaders().setContentType(ct);
-                            response.getHeaders().set(HttpHeaders.CONTENT_LENGTH, String.valueOf(fe.getSize()));
-                            ContentDisposition cd = ContentDisposition.attachment()
-                                    .filename(fe.getFilename(), java.nio.charset.StandardCharsets.UTF_8)
-                                    .build();
-                            response.getHeaders().setContentDisposition(cd);
-
-                            return response.writeWith(res.getDownloadStream());
-                        }));
+                .flatMap(resolved -> {
+                    FileEntry fe = resolved.file();
+                    int chunkSize = resolved.chunkSize();
+                    MediaType ct = Optional.ofNullable(fe.getContentType())
+                            .map(s -> {
+                                try { return MediaType.parseMediaType(s); } catch (Exception ignore) { return MediaType.APPLICATION_OCTET_STREAM; }
+                            })
+                            .orElse(MediaType.APPLICATION_OCTET_STREAM);
+                    String etag = fe.getContentSha256() != null ? "\"" + fe.getContentSha256() + "\"" : null;
+                    Instant lastModified = fe.getUpdatedAt() != null ? fe.getUpdatedAt() : fe.getCreatedAt();
+
+                    HttpHeaders out = response.getHeaders();
+                    out.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+                    if (etag != null) out.setETag(etag);
+                    if (lastModified != null) out.setLastModified(lastModified);
+                    ContentDisposition cd = ContentDisposition.attachment()
+                            .filename(fe.getFilename(), java.nio.charset.StandardCharsets.UTF_8)
+                            .build();
+                    out.setContentDisposition(cd);
+
+                    List<ByteRanges.Slice> slices = ByteRanges.resolve(request.getHeaders(), fe.getSize(), etag, lastModified);
+                    if (slices != null && slices.isEmpty()) {
+                        response.setStatusCode(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+                        out.set(HttpHeaders.CONTENT_RANGE, "bytes */" + fe.getSize());
+                        return response.setComplete();
+                    }
+                    // buffered counter, never fails the download
+                    Mono<Void> counted = links.incrementAccessCountByToken(token).onErrorResume(e -> Mono.empty());
+                    if (slices == null) {
+                        out.setContentType(ct);
+                        out.set(HttpHeaders.CONTENT_LENGTH, String.valueOf(fe.getSize()));
+                        return counted.then(writeBody(response, fe, chunkSize, 0, fe.getSize()));
+                    }
+                    response.setStatusCode(HttpStatus.PARTIAL_CONTENT);
+                    if (slices.size() == 1) {
+                        ByteRanges.Slice slice = slices.get(0);
+                        out.setContentType(ct);
+                        out.set(HttpHeaders.CONTENT_RANGE, slice.contentRange(fe.getSize()));
+                        out.setContentLength(slice.length());
+                        return counted.then(writeBody(response, fe, chunkSize, slice.start(), slice.length()));
+                    }
+                    return counted.then(writeMultipartRanges(response, fe, chunkSize, ct, slices));
+                });
+    }
+
+    /**
+     * Writes {@code length} bytes from {@code offset}. A blob in the local disk cache is sent
+     * zero-copy (sendfile) when the server supports it; a full read of one that isn't is teed
+     * into the cache.
+     */
+    private Mono<Void> writeBody(ServerHttpResponse response, FileEntry fe, int chunkSize, long offset, long length) {
+        String sha256 = diskCacheKey(fe);
+        if (sha256 == null || length <= 0) return response.writeWith(bytes(response, fe, chunkSize, offset, length));
+        Path cached = diskCache.lookup(sha256, fe.getSize());
+        if (cached != null) {
+            diskCache.served(length);
+            if (response instanceof ZeroCopyHttpOutputMessage zeroCopy) return zeroCopy.writeWith(cached, offset, length);
+            return response.writeWith(DataBufferUtils.takeUntilByteCount(DataBufferUtils.readAsynchronousFileChannel(
+                    () -> AsynchronousFileChannel.open(cached, StandardOpenOption.READ),
+                    offset, response.bufferFactory(), FILE_BUFFER_SIZE), length));
+        }
+        Flux<DataBuffer> body = bytes(response, fe, chunkSize, offset, length);
+        if (offset == 0 && length == fe.getSize()) body = diskCache.populate(sha256, fe.getSize(), body);
+        return response.writeWith(body);
+    }
+
+    /** Files are cached on disk by their plain SHA-256; inline files and other fingerprints are not. */
+    @Nullable
+    private static String diskCacheKey(FileEntry fe) {
+        if (fe.isInline() || fe.getContentSha256() == null || fe.getFingerprintMode() != FingerprintMode.SHA256) {
+            return null;
+        }
+        return fe.getContentSha256();
+    }
+
+    /** {@code length} bytes from {@code offset}: sliced from an inline file, else a storage range read. */
+    private Flux<DataBuffer> bytes(ServerHttpResponse response, FileEntry fe, int chunkSize, long offset, long length) {
+        if (fe.isInline()) {
+            return length <= 0 ? Flux.empty()
+                    : Flux.just(response.bufferFactory().wrap(
+                            ByteBuffer.wrap(fe.getInlineData(), (int) offset, (int) length)));
+        }
+        return storage.read(fe.getGridFsId(), chunkSize, offset, length);
+    }
+
+    /** multipart/byteranges body: one part per slice, each fetched with its own range read. */
+    private Mono<Void> writeMultipartRanges(ServerHttpResponse response, FileEntry fe, int chunkSize, MediaType ct,
+                                            List<ByteRanges.Slice> slices) {
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        List<byte[]> partHeaders = new ArrayList<>(slices.size());
+        long contentLength = 0;
+        for (ByteRanges.Slice slice : slices) {
+            byte[] header = ("\r\n--" + boundary + "\r\n"
+                    + HttpHeaders.CONTENT_TYPE + ": " + ct + "\r\n"
+                    + HttpHeaders.CONTENT_RANGE + ": " + slice.contentRange(fe.getSize()) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(header);
+            contentLength += header.length + slice.length();
+        }
+        byte[] closing = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        contentLength += closing.length;
+
+        response.getHeaders().setContentType(MediaType.parseMediaType("multipart/byteranges; boundary=" + boundary));
+        response.getHeaders().setContentLength(contentLength);
+
+        DataBufferFactory factory = response.bufferFactory();
+        Flux<DataBuffer> body = Flux.range(0, slices.size())
+                .concatMap(i -> Flux.concat(
+                        Mono.fromSupplier(() -> factory.wrap(partHeaders.get(i))),
+                        bytes(response, fe, chunkSize, slices.get(i).start(), slices.get(i).length())))
+                .concatWith(Mono.fromSupplier(() -> factory.wrap(closing)));
+        return response.writeWith(body);
     }
 
     // ---- Delete ----
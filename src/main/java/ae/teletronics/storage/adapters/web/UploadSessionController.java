@@ -0,0 +1,133 @@
+package ae.teletronics.storage.adapters.web;
+
+import ae.teletronics.storage.adapters.web.dto.CreateUploadSessionRequest;
+import ae.teletronics.storage.adapters.web.dto.FileEntryDto;
+import ae.teletronics.storage.adapters.web.dto.UploadPartResponse;
+import ae.teletronics.storage.adapters.web.dto.UploadSessionResponse;
+import ae.teletronics.storage.application.UploadSessionServiceReactive;
+import ae.teletronics.storage.domain.Visibility;
+import ae.teletronics.storage.domain.model.UploadSession;
+import ae.teletronics.storage.ports.FileEntryQueryPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Resumable upload sessions (see {@link UploadSessionServiceReactive}).
+ * The committed offset is echoed in the {@code Upload-Offset} header on every response.
+ */
+@RestController
+@RequestMapping("/uploads")
+@Validated
+public class UploadSessionController {
+
+    static final String UPLOAD_OFFSET = "Upload-Offset";
+
+    private final UploadSessionServiceReactive sessions;
+    private final FileEntryQueryPort files;
+
+    public UploadSessionController(UploadSessionServiceReactive sessions, FileEntryQueryPort files) {
+        this.sessions = sessions;
+        this.files = files;
+    }
+
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<UploadSessionResponse>> create(@RequestHeader("X-User-Id") String ownerId,
+                                                              @RequestBody CreateUploadSessionRequest body) {
+        Visibility visibility = parseVisibility(body.visibility());
+        List<String> tags = Optional.ofNullable(body.tags()).orElse(List.of());
+        long size = Optional.ofNullable(body.size()).orElse(-1L);
+        return sessions.create(ownerId, body.filename(), visibility, tags, body.contentType(), size)
+                .map(s -> ResponseEntity.created(URI.create("/uploads/" + s.getId()))
+                        .header(UPLOAD_OFFSET, String.valueOf(s.getCommittedOffset()))
+                        .body(toResponse(s)));
+    }
+
+    @GetMapping(path = "/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<UploadSessionResponse>> status(@RequestHeader("X-User-Id") String ownerId,
+                                                              @PathVariable String id) {
+        return sessions.status(ownerId, id).map(this::ok);
+    }
+
+    /** Offset-addressed segment: {@code Upload-Offset} header or {@code offset} query param. */
+    @PutMapping(path = "/{id}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<UploadSessionResponse>> appendAt(@RequestHeader("X-User-Id") String ownerId,
+                                                                @PathVariable String id,
+                                                                @RequestHeader(name = UPLOAD_OFFSET, required = false) Long offsetHeader,
+                                                                @RequestParam(name = "offset", required = false) Long offsetParam,
+                                                                ServerHttpRequest request) {
+        Long offset = offsetHeader != null ? offsetHeader : offsetParam;
+        if (offset == null) {
+            return Mono.error(new IllegalArgumentException(UPLOAD_OFFSET + " header or offset parameter is required"));
+        }
+        return sessions.appendAt(ownerId, id, offset, request.getBody(), request.getHeaders().getContentLength())
+                .map(this::ok);
+    }
+
+    /** Numbered segment: {@code n} must be the next segment number. */
+    @PutMapping(path = "/{id}/segments/{n}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<UploadSessionResponse>> appendSegment(@RequestHeader("X-User-Id") String ownerId,
+                                                                     @PathVariable String id,
+                                                                     @PathVariable int n,
+                                                                     ServerHttpRequest request) {
+        return sessions.appendSegment(ownerId, id, n, request.getBody(), request.getHeaders().getContentLength())
+                .map(this::ok);
+    }
+
+    /** Parallel part: any order, any concurrency; re-sending a number replaces that part. */
+    @PutMapping(path = "/{id}/parts/{n}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<UploadPartResponse>> putPart(@RequestHeader("X-User-Id") String ownerId,
+                                                            @PathVariable String id,
+                                                            @PathVariable int n,
+                                                            ServerHttpRequest request) {
+        return sessions.putPart(ownerId, id, n, request.getBody(), request.getHeaders().getContentLength())
+                .map(p -> ResponseEntity.ok()
+                        .eTag("\"" + p.sha256() + "\"")
+                        .body(UploadPartResponse.from(p)));
+    }
+
+    @PostMapping(path = "/{id}/commit", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<FileEntryDto> commit(@RequestHeader("X-User-Id") String ownerId, @PathVariable String id) {
+        return sessions.commit(ownerId, id)
+                .flatMap(r -> files.findById(r.fileId()).map(FileEntryDto::from));
+    }
+
+    @DeleteMapping("/{id}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public Mono<Void> abort(@RequestHeader("X-User-Id") String ownerId, @PathVariable String id) {
+        return sessions.abort(ownerId, id);
+    }
+
+    // ---- helpers ----
+
+    private ResponseEntity<UploadSessionResponse> ok(UploadSession s) {
+        return ResponseEntity.ok()
+                .header(UPLOAD_OFFSET, String.valueOf(s.getCommittedOffset()))
+                .body(toResponse(s));
+    }
+
+    private UploadSessionResponse toResponse(UploadSession s) {
+        return UploadSessionResponse.from(s, sessions.segmentSize());
+    }
+
+    private static Visibility parseVisibility(String raw) {
+        if (raw == null || raw.isBlank()) return Visibility.PRIVATE;
+        try {
+            return Visibility.valueOf(raw.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException iae) {
+            return Visibility.PRIVATE;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package ae.teletronics.storage.adapters.web.dto;
+
+import java.util.List;
+
+public record CreateUploadSessionRequest(
+        String filename,
+        String visibility,
+        List<String> tags,
+        String contentType,
+        Long size // optional total size; enables completeness check on commit
+) {}
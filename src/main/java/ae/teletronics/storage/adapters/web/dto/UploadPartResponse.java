@@ -0,0 +1,13 @@
+package ae.teletronics.storage.adapters.web.dto;
+
+import ae.teletronics.storage.domain.model.UploadSession;
+
+public record UploadPartResponse(
+        int part,
+        long size,
+        String sha256     // of this part only
+) {
+    public static UploadPartResponse from(UploadSession.Part p) {
+        return new UploadPartResponse(p.number(), p.size(), p.sha256());
+    }
+}
@@ -0,0 +1,23 @@
+package ae.teletronics.storage.adapters.web.dto;
+
+import ae.teletronics.storage.domain.model.UploadSession;
+
+import java.time.Instant;
+
+public record UploadSessionResponse(
+        String id,
+        long offset,          // bytes committed so far = where the next segment starts
+        int segments,         // committed segment count = number of the next segment
+        long segmentSize,     // recommended segment size
+        Instant expiresAt
+) {
+    public static UploadSessionResponse from(UploadSession s, long segmentSize) {
+        return new UploadSessionResponse(
+                s.getId(),
+                s.getCommittedOffset(),
+                s.getSegmentCount(),
+                segmentSize,
+                s.getExpiresAt()
+        );
+    }
+}
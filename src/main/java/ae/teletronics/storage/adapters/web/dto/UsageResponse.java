@@ -0,0 +1,17 @@
+package ae.teletronics.storage.adapters.web.dto;
+
+import ae.teletronics.storage.application.dto.UsageResult;
+
+public record UsageResponse(
+        long bytes,
+        long files,
+        Long quotaBytes,     // null = unlimited
+        Long remainingBytes  // null = unlimited
+) {
+    public static UsageResponse from(UsageResult u) {
+        boolean unlimited = u.quotaBytes() < 0;
+        return new UsageResponse(u.bytes(), u.files(),
+                unlimited ? null : u.quotaBytes(),
+                unlimited ? null : u.remaining());
+    }
+}
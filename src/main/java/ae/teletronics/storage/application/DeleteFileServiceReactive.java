@@ -1,10 +1,13 @@
 package ae.teletronics.storage.application;
 
 import ae.teletronics.storage.application.exceptions.NotFoundException;
+import ae.teletronics.storage.domain.FingerprintMode;
 import ae.teletronics.storage.domain.model.FileEntry;
 import ae.teletronics.storage.ports.DownloadLinkQueryPort;
 import ae.teletronics.storage.ports.FileEntryQueryPort;
+import ae.teletronics.storage.ports.LeafHashPort;
 import ae.teletronics.storage.ports.ReactiveStoragePort;
+import ae.teletronics.storage.ports.SharedBlobPort;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
@@ -14,21 +17,33 @@ public class DeleteFileServiceReactive {
     private final FileEntryQueryPort files;
     private final DownloadLinkQueryPort links;
     private final ReactiveStoragePort storage;
+    private final SharedBlobPort sharedBlobs;
+    private final LeafHashPort leafHashes;
+    private final UsageServiceReactive usage;
 
     public DeleteFileServiceReactive(FileEntryQueryPort files,
                                      DownloadLinkQueryPort links,
-                                     ReactiveStoragePort storage) {
+                                     ReactiveStoragePort storage,
+                                     SharedBlobPort sharedBlobs,
+                                     LeafHashPort leafHashes,
+                                     UsageServiceReactive usage) {
         this.files = files;
         this.links = links;
         this.storage = storage;
+        this.sharedBlobs = sharedBlobs;
+        this.leafHashes = leafHashes;
+        this.usage = usage;
     }
 
     /**
      * Deletes a file owned by {@code ownerId}:
      * 1) Verify ownership
      * 2) Delete all DownloadLink docs for this file
-     * 3) Delete GridFS content
+     * 3) Delete GridFS content (a shared blob only loses a reference; bytes go with the last one),
+     *    with its leaf digests for TREE fingerprints; inline files have none
      * 4) Delete FileEntry metadata (last, to avoid dangling metadata)
+     * 5) Drop the file's links from this instance's resolved-link cache
+     * 6) Give the bytes back to the owner's quota
      */
     public Mono<Void> delete(String ownerId, String fileId) {
         return files.findById(fileId)
@@ -37,9 +52,23 @@ public class DeleteFileServiceReactive {
                     if (!ownerId.equals(fe.getOwnerId())) {
                         return Mono.error(new NotFoundException("File not found")); // don't leak existence
                     }
+                    boolean tree = fe.getFingerprintMode() == FingerprintMode.TREE;
+                    Mono<Void> blob = fe.isInline() ? Mono.empty()
+                            : fe.isSharedBlob()
+                            ? sharedBlobs.release(fe.getContentSha256()).flatMap(id -> dropBlob(id, tree))
+                            : dropBlob(fe.getGridFsId(), tree);
                     return links.deleteAllByFileId(fileId)     // best-effort cascade of tokens
-                            .then(storage.delete(fe.getGridFsId())) // remove blob
-                            .then(files.deleteById(fileId));        // remove metadata last
+                            .then(blob)                         // remove blob
+                            .then(files.deleteById(fileId))         // remove metadata last
+                            .then(links.evictFile(fileId))          // tokens stop resolving here now
+                            .then(Mono.defer(() -> usage.refund(ownerId, fe.getSize())));
                 });
     }
+
+    private Mono<Void> dropBlob(String gridFsId, boolean tree) {
+        Mono<Void> leaves = tree
+                ? leafHashes.deleteByGridFsId(gridFsId).onErrorResume(e -> Mono.empty())
+                : Mono.empty();
+        return storage.delete(gridFsId).then(leaves);
+    }
 }
@@ -0,0 +1,149 @@
+package ae.teletronics.storage.application;
+
+import ae.teletronics.storage.ports.FileEntryQueryPort;
+import ae.teletronics.storage.ports.LeafHashPort;
+import ae.teletronics.storage.ports.ReactiveStoragePort;
+import ae.teletronics.storage.ports.ReactiveStoragePort.StoredBlob;
+import ae.teletronics.storage.ports.SharedBlobPort;
+import ae.teletronics.storage.ports.UploadSessionQueryPort;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Background sweeper for blobs no FileEntry (or shared blob) points at: left behind by the filename-duplicate
+ * branch, by a failure between {@code storage.save} and {@code files.save}, or by a delete
+ * that failed midway.
+ * <p>
+ * Only blobs older than the grace period are considered, so uploads that are still between
+ * storing and saving their FileEntry are never touched. Blobs tagged with an
+ * {@code uploadSessionId} are kept while that session exists. Work is done in small batches
+ * with a pause in between, so a sweep never competes with foreground I/O for long.
+ */
+@Service
+@ConditionalOnProperty(prefix = "storage.gc", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class OrphanBlobCollector {
+
+    private final ReactiveStoragePort storage;
+    private final FileEntryQueryPort files;
+    private final UploadSessionQueryPort sessions;
+    private final SharedBlobPort sharedBlobs;
+    private final LeafHashPort leafHashes;
+    private final Duration grace;
+    private final int batchSize;
+    private final Duration batchPause;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final Counter reclaimedBlobs;
+    private final Counter reclaimedBytes;
+    private final Counter reclaimedChunks;
+    private final Counter failures;
+    private final Timer sweeps;
+
+    public OrphanBlobCollector(ReactiveStoragePort storage,
+                               FileEntryQueryPort files,
+                               UploadSessionQueryPort sessions,
+                               SharedBlobPort sharedBlobs,
+                               LeafHashPort leafHashes,
+                               MeterRegistry meters,
+                               @Value("${storage.gc.grace:1h}") Duration grace,
+                               @Value("${storage.gc.batch-size:100}") int batchSize,
+                               @Value("${storage.gc.batch-pause:1s}") Duration batchPause) {
+        this.storage = storage;
+        this.files = files;
+        this.sessions = sessions;
+        this.sharedBlobs = sharedBlobs;
+        this.leafHashes = leafHashes;
+        this.grace = grace;
+        this.batchSize = Math.max(1, batchSize);
+        this.batchPause = batchPause;
+        this.reclaimedBlobs = meters.counter("storage.gc.reclaimed.blobs");
+        this.reclaimedBytes = meters.counter("storage.gc.reclaimed.bytes");
+        this.reclaimedChunks = meters.counter("storage.gc.reclaimed.chunks");
+        this.failures = meters.counter("storage.gc.failures");
+        this.sweeps = meters.timer("storage.gc.sweeps");
+    }
+
+    /** Totals of one sweep. */
+    public record SweepResult(long blobs, long bytes, long chunks) {
+        static final SweepResult NONE = new SweepResult(0, 0, 0);
+
+        SweepResult plus(StoredBlob b) {
+            return new SweepResult(blobs + 1, bytes + b.size(), chunks + chunksOf(b));
+        }
+    }
+
+    @Scheduled(initialDelayString = "${storage.gc.initial-delay:10m}", fixedDelayString = "${storage.gc.interval:1h}")
+    public Mono<Void> scheduledSweep() {
+        return sweep().then();
+    }
+
+    /** One pass over everything older than the grace period; a no-op while another pass runs. */
+    public Mono<SweepResult> sweep() {
+        return Mono.defer(() -> {
+            if (!running.compareAndSet(false, true)) return Mono.just(SweepResult.NONE);
+            final Timer.Sample sample = Timer.start();
+            return storage.listStoredBefore(Instant.now().minus(grace))
+                    .buffer(batchSize)
+                    .concatMap(batch -> orphansIn(batch)
+                            .concatMap(this::reclaim)
+                            .concatWith(Mono.delay(batchPause).then(Mono.<StoredBlob>empty())), 1)
+                    .reduce(SweepResult.NONE, SweepResult::plus)
+                    .doFinally(sig -> {
+                        sample.stop(sweeps);
+                        running.set(false);
+                    });
+        });
+    }
+
+    private Flux<StoredBlob> orphansIn(List<StoredBlob> batch) {
+        Set<String> blobIds = batch.stream().map(StoredBlob::gridFsId).collect(Collectors.toSet());
+        Set<String> sessionIds = batch.stream().map(StoredBlob::uploadSessionId)
+                .filter(Objects::nonNull).collect(Collectors.toSet());
+
+        Mono<Set<String>> referenced = Flux.merge(
+                        files.findReferencedGridFsIds(blobIds),
+                        sharedBlobs.findReferencedGridFsIds(blobIds))
+                .collect(Collectors.toSet());
+        Mono<Set<String>> liveSessions = sessionIds.isEmpty()
+                ? Mono.just(Set.of())
+                : sessions.findExistingIds(sessionIds).collect(Collectors.toSet());
+
+        return Mono.zip(referenced, liveSessions).flatMapMany(t -> Flux.fromIterable(batch)
+                .filter(b -> !t.getT1().contains(b.gridFsId()))
+                .filter(b -> b.uploadSessionId() == null || !t.getT2().contains(b.uploadSessionId())));
+    }
+
+    private Mono<StoredBlob> reclaim(StoredBlob blob) {
+        return storage.delete(blob.gridFsId())
+                .then(leafHashes.deleteByGridFsId(blob.gridFsId()).onErrorResume(e -> Mono.empty()))
+                .then(Mono.fromSupplier(() -> {
+                    reclaimedBlobs.increment();
+                    reclaimedBytes.increment(blob.size());
+                    reclaimedChunks.increment(chunksOf(blob));
+                    return blob;
+                }))
+                .onErrorResume(e -> {
+                    failures.increment(); // next sweep retries
+                    return Mono.empty();
+                });
+    }
+
+    private static long chunksOf(StoredBlob b) {
+        return b.chunkSize() <= 0 ? 0 : (b.size() + b.chunkSize() - 1) / b.chunkSize();
+    }
+}
@@ -1,28 +1,46 @@
 package ae.teletronics.storage.application;
 
+import ae.teletronics.storage.application.admission.UploadAdmission;
+import ae.teletronics.storage.application.dto.DeclaredContent;
 import ae.teletronics.storage.application.dto.UploadFileResult;
+import ae.teletronics.storage.application.exceptions.ChecksumMismatchException;
+import ae.teletronics.storage.application.exceptions.ConflictException;
 import ae.teletronics.storage.application.exceptions.DuplicateFileException;
+import ae.teletronics.storage.application.exceptions.QuotaExceededException;
+import ae.teletronics.storage.application.hashing.HashingStage;
+import ae.teletronics.storage.application.hashing.TreeHasher;
+import ae.teletronics.storage.application.hashing.TreeHashing;
+import ae.teletronics.storage.application.hashing.UploadTee;
+import ae.teletronics.storage.domain.FingerprintMode;
 import ae.teletronics.storage.domain.Visibility;
 import ae.teletronics.storage.domain.model.DownloadLink;
 import ae.teletronics.storage.domain.model.FileEntry;
+import ae.teletronics.storage.domain.model.LeafHashes;
+import ae.teletronics.storage.ports.ContentTypeDetector;
 import ae.teletronics.storage.ports.DownloadLinkQueryPort;
 import ae.teletronics.storage.ports.FileEntryQueryPort;
+import ae.teletronics.storage.ports.FilenameReservationPort;
+import ae.teletronics.storage.ports.LeafHashPort;
 import ae.teletronics.storage.ports.ReactiveStoragePort;
+import ae.teletronics.storage.ports.SharedBlobPort;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SynchronousSink;
 import reactor.util.function.Tuple2;
 import reactor.util.function.Tuples;
 
-import java.io.ByteArrayOutputStream;
-import java.nio.ByteBuffer;
 import java.security.MessageDigest;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 public class ReactiveUploadService {
@@ -30,13 +48,46 @@ public class ReactiveUploadService {
     private final FileEntryQueryPort files;     // exists/save/etc.
     private final DownloadLinkQueryPort links;  // create/save links
     private final ReactiveStoragePort storage;
+    private final FilenameReservationPort reservations;
+    private final SharedBlobPort sharedBlobs;   // cross-owner dedup, when enabled
+    private final HashingStage hashing;         // SHA-256/sniff off the event loop
+    private final TreeHashing treeHashing;      // fingerprint mode (flat SHA-256, or a Merkle root)
+    private final LeafHashPort leafHashes;
+    private final ContentTypeDetector detector; // shared, warmed at startup
+    private final UploadAdmission admission;    // concurrency caps + fair queue
+    private final UsageServiceReactive usage;   // per-owner quota
+    private final long inlineMaxSize;           // smaller files skip GridFS; 0 = never
+    private final Duration reservationTtl;
+    private final boolean casEnabled;
 
     public ReactiveUploadService(FileEntryQueryPort files,
                                  DownloadLinkQueryPort links,
-                                 ReactiveStoragePort storage) {
+                                 ReactiveStoragePort storage,
+                                 FilenameReservationPort reservations,
+                                 SharedBlobPort sharedBlobs,
+                                 HashingStage hashing,
+                                 TreeHashing treeHashing,
+                                 LeafHashPort leafHashes,
+                                 ContentTypeDetector detector,
+                                 UploadAdmission admission,
+                                 UsageServiceReactive usage,
+                                 @Value("${storage.inline.max-size:16KB}") DataSize inlineMaxSize,
+                                 @Value("${storage.reservations.ttl:1h}") Duration reservationTtl,
+                                 @Value("${storage.cas.enabled:false}") boolean casEnabled) {
         this.files = files;
         this.links = links;
         this.storage = storage;
+        this.reservations = reservations;
+        this.sharedBlobs = sharedBlobs;
+        this.hashing = hashing;
+        this.treeHashing = treeHashing;
+        this.leafHashes = leafHashes;
+        this.detector = detector;
+        this.admission = admission;
+        this.usage = usage;
+        this.inlineMaxSize = Math.max(0, inlineMaxSize.toBytes());
+        this.reservationTtl = reservationTtl;
+        this.casEnabled = casEnabled;
     }
 
     /**
@@ -48,99 +99,369 @@ public class ReactiveUploadService {
                                          List<String> tags,
                                          @Nullable String contentType,
                                          Flux<DataBuffer> body) {
+        return upload(ownerId, filename, visibility, tags, contentType, body, null);
+    }
 
+    /**
+     * Same as above, with the content the client declared up front. A declared SHA-256 that the
+     * owner already stored is rejected before the body is subscribed; otherwise the declared
+     * values are checked against the streamed digest/size once storage has consumed the body.
+     * The filename is reserved before the first byte is written and released once the
+     * FileEntry owns it (or the upload fails).
+     */
+    public Mono<UploadFileResult> upload(String ownerId,
+                                         String filename,
+                                         Visibility visibility,
+                                         List<String> tags,
+                                         @Nullable String contentType,
+                                         Flux<DataBuffer> body,
+                                         @Nullable DeclaredContent declared) {
+        return upload(ownerId, filename, visibility, tags, contentType, body, declared,
+                declared == null ? -1 : declared.size());
+    }
+
+    /**
+     * Same as above, with the expected body size (e.g. the request Content-Length; negative when
+     * unknown) used to place the upload in the admission queue and to keep files no larger than
+     * {@code storage.inline.max-size} inline in their FileEntry instead of GridFS. The body is not subscribed
+     * until the upload is admitted; see {@link UploadAdmission}. A declared size beyond the
+     * owner's remaining quota is rejected up front, and the stream is cut off as soon as it
+     * overshoots.
+     */
+    public Mono<UploadFileResult> upload(String ownerId,
+                                         String filename,
+                                         Visibility visibility,
+                                         List<String> tags,
+                                         @Nullable String contentType,
+                                         Flux<DataBuffer> body,
+                                         @Nullable DeclaredContent declared,
+                                         long expectedSize) {
+        Mono<Void> preflight = (declared == null || declared.sha256() == null)
+                ? Mono.empty()
+                : checkDuplicate(ownerId, declared.sha256());
+        return preflight.then(admission.admit(ownerId, expectedSize, () -> usage.remaining(ownerId)
+                .flatMap(remaining -> declared != null && declared.size() > remaining
+                        ? Mono.error(new QuotaExceededException("Storage quota exceeded"))
+                        : Mono.usingWhen(
+                                reserveFilename(ownerId, filename, reservationTtl),
+                                reservationId -> stream(ownerId, filename, visibility, tags, contentType,
+                                        body, declared, remaining, expectedSize),
+                                reservations::release,
+                                (reservationId, err) -> reservations.release(reservationId),
+                                reservations::release))));
+    }
+
+    /**
+     * Claims (owner, filename) for {@code ttl}; fails fast with a FILENAME duplicate when a file
+     * or another in-flight upload already has the name. Emits the reservation id.
+     */
+    Mono<String> reserveFilename(String ownerId, String filename, Duration ttl) {
         final String filenameLc = filename.toLowerCase(Locale.ROOT);
+        Mono<String> taken = Mono.error(new DuplicateFileException(
+                DuplicateFileException.Kind.FILENAME, "Filename already exists"));
+        return files.existsByOwnerIdAndFilenameLc(ownerId, filenameLc)
+                .flatMap(exists -> exists ? taken
+                        : reservations.reserve(ownerId, filenameLc, ttl).switchIfEmpty(taken));
+    }
+
+    Mono<Void> releaseFilename(@Nullable String reservationId) {
+        return reservationId == null ? Mono.empty() : reservations.release(reservationId);
+    }
 
-        // 1) Tee to compute SHA-256 + sniff head + size (no full buffering)
-        Tuple2<Flux<DataBuffer>, Mono<Tuple2<String, SniffResult>>> tee =
-                teeWithSha256AndSniff(body, 16 * 1024); // 16 KB head
+    /** Pre-flight: errors with a CONTENT duplicate when the owner already has this SHA-256. */
+    public Mono<Void> checkDuplicate(String ownerId, String sha256) {
+        return files.existsByOwnerIdAndContentSha256(ownerId, sha256.toLowerCase(Locale.ROOT))
+                .flatMap(dup -> dup
+                        ? Mono.<Void>error(new DuplicateFileException(
+                                DuplicateFileException.Kind.CONTENT, "File content already exists"))
+                        : Mono.<Void>empty());
+    }
+
+    private Mono<UploadFileResult> stream(String ownerId,
+                                          String filename,
+                                          Visibility visibility,
+                                          List<String> tags,
+                                          @Nullable String contentType,
+                                          Flux<DataBuffer> body,
+                                          @Nullable DeclaredContent declared,
+                                          long quotaLeft,
+                                          long expectedSize) {
+
+        // 1) Tee to compute the content key + sniff head + size (no full buffering), within the quota
+        Tuple2<Flux<DataBuffer>, Mono<Tuple2<String, SniffResult>>> tee = teeWithSha256AndSniff(
+                capped(body, quotaLeft), 16 * 1024, declared != null && declared.sha256() != null); // 16 KB head
         Flux<DataBuffer> toStore = tee.getT1();
         Mono<Tuple2<String, SniffResult>> metaMono = tee.getT2();
 
-        // 2) Store immediately (streaming). Cache to avoid double subscription.
-        Mono<ReactiveStoragePort.StorageSaveResult> storeMono =
-                storage.save(toStore, filename, contentType, Map.of("ownerId", ownerId))
-                        .cache();
-
-        // 3) IMPORTANT: finalize SHA/size AFTER storage has fully consumed the stream
-        Mono<Tuple2<String, SniffResult>> metaAfterStore = storeMono.then(metaMono);
-
-        // 4) Combine results (store result + finalized meta)
-        return storeMono.zipWith(metaAfterStore)
-                .flatMap(tuple -> {
-                    ReactiveStoragePort.StorageSaveResult stored = tuple.getT1();
-                    String sha256 = tuple.getT2().getT1();
-                    SniffResult sniff = tuple.getT2().getT2();
-
-                    // Owner-scoped duplicate content check (fast path)
-                    return files.existsByOwnerIdAndContentSha256(ownerId, sha256).flatMap(dup -> {
-                        if (dup) {
-                            // Content duplicate detected: cleanup blob and return domain error
-                            return storage.delete(stored.gridFsId())
-                                    .then(Mono.error(new DuplicateFileException(
-                                            DuplicateFileException.Kind.CONTENT,
-                                            "File content already exists")));
-                        }
-
-                        // Decide final content type: prefer provided, else detected, else octet-stream
-                        String provided = contentType;
-                        String detected = detectContentType(sniff.head, filename);
-                        String finalCt = isMeaningful(provided) ? provided
-                                : isMeaningful(detected) ? detected
-                                : "application/octet-stream";
-
-                        // Prefer storage-reported size; fall back to sniff.size
-                        long finalSize = (stored.size() >= 0) ? stored.size() : sniff.size;
-
-                        // Persist metadata
-                        FileEntry fe = new FileEntry();
-                        fe.setOwnerId(ownerId);
-                        fe.setFilename(filename);
-                        fe.setFilenameLc(filenameLc);
-                        fe.setVisibility(visibility);
-                        fe.setTags(normalizeTags(tags));
-                        fe.setContentType(finalCt);
-                        fe.setSize(finalSize);
-                        fe.setGridFsId(stored.gridFsId());
-                        fe.setContentSha256(sha256);
-                        fe.setCreatedAt(Instant.now());
-
-                        return files.save(fe)
-                                .onErrorResume(DuplicateKeyException.class, ex -> {
-                                    // content duplicate -> cleanup blob
-                                    if (isDupOn(ex, "uniq_owner_sha256")) {
-                                        return storage.delete(stored.gridFsId()).onErrorResume(e -> Mono.empty())
-                                                .then(Mono.error(new DuplicateFileException(
-                                                        DuplicateFileException.Kind.CONTENT,
-                                                        "File content already exists")));
-                                    }
-                                    // filename duplicate -> keep blob (surviving blob kept)
-                                    if (isDupOn(ex, "uniq_owner_filename")) {
-                                        return Mono.error(new DuplicateFileException(
-                                                DuplicateFileException.Kind.FILENAME,
-                                                "Filename already exists"));
-                                    }
-                                    // unknown duplicate -> bubble up
-                                    return Mono.error(ex);
-                                })
-                                .flatMap(saved -> {
-                                    DownloadLink link = new DownloadLink(
-                                            UUID.randomUUID().toString().replace("-", ""),
-                                            saved.getId(),
-                                            ownerId,
-                                            null
-                                    );
-                                    return links.save(link)
-                                            .map(savedLink -> new UploadFileResult(saved.getId(),
-                                                    savedLink.getToken(),
-                                                    saved.getFilename()));
-                                });
-                    });
+        if (inlineMaxSize > 0 && expectedSize >= 0 && expectedSize <= inlineMaxSize) {
+            return inline(ownerId, filename, visibility, tags, contentType, toStore, metaMono, declared);
+        }
+
+        // With CAS, bytes whose declared hash is already a shared blob are verified but not written
+        // (not in TREE mode: its blobs are keyed by the root, which can't be declared)
+        Mono<Boolean> reuse = (casEnabled && declared != null && declared.sha256() != null
+                && treeHashing.mode() != FingerprintMode.TREE)
+                ? sharedBlobs.exists(declared.sha256())
+                : Mono.just(false);
+
+        return reuse.flatMap(shared -> shared
+                ? verifyAndShare(ownerId, filename, visibility, tags, contentType, toStore, metaMono, declared)
+                // 2) Store immediately (streaming). Subscribed exactly once, so a cancelled upload
+                //    (client gone) cancels the storage write too and the partial blob is discarded.
+                // 3) IMPORTANT: finalize SHA/size AFTER storage has fully consumed the stream
+                : storage.save(toStore, filename, contentType, Map.of("ownerId", ownerId), expectedSize)
+                        .flatMap(stored -> metaMono.flatMap(meta -> {
+                            String sha256 = meta.getT1();
+                            SniffResult sniff = meta.getT2();
+                            String mismatch = verifyDeclared(declared, sha256, sniff);
+                            if (mismatch != null) {
+                                return storage.delete(stored.gridFsId()).onErrorResume(e -> Mono.empty())
+                                        .then(Mono.error(new ChecksumMismatchException(mismatch)));
+                            }
+                            return complete(ownerId, filename, visibility, tags, contentType, stored, sha256, sniff);
+                        })));
+    }
+
+    /**
+     * Small-file path: the body is collected (it is known to be tiny) and stored in the FileEntry
+     * itself, so there is no GridFS write and no separate duplicate pre-check; the unique index
+     * reports content duplicates on save.
+     */
+    private Mono<UploadFileResult> inline(String ownerId,
+                                          String filename,
+                                          Visibility visibility,
+                                          List<String> tags,
+                                          @Nullable String contentType,
+                                          Flux<DataBuffer> hashed,
+                                          Mono<Tuple2<String, SniffResult>> metaMono,
+                                          @Nullable DeclaredContent declared) {
+        return DataBufferUtils.join(hashed, (int) inlineMaxSize)
+                .onErrorMap(DataBufferLimitException.class, e -> new ChecksumMismatchException(
+                        "Content is larger than its declared size"))
+                .map(joined -> {
+                    byte[] bytes = new byte[joined.readableByteCount()];
+                    joined.read(bytes);
+                    DataBufferUtils.release(joined);
+                    return bytes;
+                })
+                .defaultIfEmpty(new byte[0])
+                .flatMap(bytes -> metaMono.flatMap(meta -> {
+                    String sha256 = meta.getT1();
+                    SniffResult sniff = meta.getT2();
+                    String mismatch = verifyDeclared(declared, sha256, sniff);
+                    if (mismatch != null) {
+                        return Mono.error(new ChecksumMismatchException(mismatch));
+                    }
+                    return persist(ownerId, filename, visibility, tags, contentType,
+                            Placement.inline(bytes), bytes.length, sha256, sniff);
+                }));
+    }
+
+    /**
+     * Write-skip path: the body is hashed and discarded, and once it matches the declared hash
+     * the FileEntry references the existing shared blob.
+     */
+    private Mono<UploadFileResult> verifyAndShare(String ownerId,
+                                                  String filename,
+                                                  Visibility visibility,
+                                                  List<String> tags,
+                                                  @Nullable String contentType,
+                                                  Flux<DataBuffer> hashed,
+                                                  Mono<Tuple2<String, SniffResult>> metaMono,
+                                                  DeclaredContent declared) {
+        return hashed.doOnNext(DataBufferUtils::release)
+                .then(metaMono)
+                .flatMap(meta -> {
+                    String sha256 = meta.getT1();
+                    SniffResult sniff = meta.getT2();
+                    String mismatch = verifyDeclared(declared, sha256, sniff);
+                    if (mismatch != null) {
+                        return Mono.error(new ChecksumMismatchException(mismatch));
+                    }
+                    return sharedBlobs.acquireExisting(sha256)
+                            .switchIfEmpty(Mono.error(new ConflictException(
+                                    "Shared content was removed concurrently, please retry")))
+                            .flatMap(gridFsId -> persist(ownerId, filename, visibility, tags, contentType,
+                                    new Placement(gridFsId, true, 0), sniff.size, sha256, sniff));
+                });
+    }
+
+    /**
+     * Second half of an upload, shared with resumable sessions: duplicate checks against an
+     * already stored blob, content-type resolution, metadata persistence and DownloadLink creation.
+     */
+    Mono<UploadFileResult> complete(String ownerId,
+                                    String filename,
+                                    Visibility visibility,
+                                    List<String> tags,
+                                    @Nullable String contentType,
+                                    ReactiveStoragePort.StorageSaveResult stored,
+                                    String sha256,
+                                    SniffResult sniff) {
+        // Owner-scoped duplicate content check (fast path)
+        return files.existsByOwnerIdAndContentSha256(ownerId, sha256).flatMap(dup -> {
+            if (dup) {
+                // Content duplicate detected: cleanup blob and return domain error
+                return storage.delete(stored.gridFsId())
+                        .then(Mono.error(new DuplicateFileException(
+                                DuplicateFileException.Kind.CONTENT,
+                                "File content already exists")));
+            }
+
+            // Prefer storage-reported size; fall back to sniff.size
+            long finalSize = (stored.size() >= 0) ? stored.size() : sniff.size;
+
+            return place(sha256, stored, finalSize)
+                    .flatMap(placement -> persist(ownerId, filename, visibility, tags, contentType,
+                            placement, finalSize, sha256, sniff));
+        });
+    }
+
+    /**
+     * Where a FileEntry's bytes live: a blob it owns, a reference-counted shared blob, or inline
+     * in the entry. {@code chunkSize} is 0 when the blob was written by someone else.
+     */
+    private record Placement(@Nullable String gridFsId, boolean shared, int chunkSize, @Nullable byte[] inline) {
+        Placement(String gridFsId, boolean shared, int chunkSize) {
+            this(gridFsId, shared, chunkSize, null);
+        }
+
+        static Placement inline(byte[] bytes) {
+            return new Placement(null, false, 0, bytes);
+        }
+    }
+
+    /** Without CAS the stored blob is used as is; with CAS it is registered (or found redundant). */
+    private Mono<Placement> place(String sha256, ReactiveStoragePort.StorageSaveResult stored, long size) {
+        final String gridFsId = stored.gridFsId();
+        if (!casEnabled) return Mono.just(new Placement(gridFsId, false, stored.chunkSize()));
+        return sharedBlobs.acquire(sha256, gridFsId, size)
+                .flatMap(canonical -> canonical.equals(gridFsId)
+                        ? Mono.just(new Placement(gridFsId, true, stored.chunkSize()))
+                        // someone (any owner) already stored these bytes: drop our copy
+                        : storage.delete(gridFsId).onErrorResume(e -> Mono.empty())
+                                .thenReturn(new Placement(canonical, true, 0)));
+    }
+
+    /** Gives up a placement whose FileEntry was not saved. */
+    private Mono<Void> discard(Placement placement, String sha256) {
+        if (placement.inline() != null) return Mono.empty();
+        Mono<Void> drop = placement.shared()
+                ? sharedBlobs.release(sha256).flatMap(storage::delete)
+                : storage.delete(placement.gridFsId());
+        return drop.onErrorResume(e -> Mono.empty());
+    }
+
+    private Mono<UploadFileResult> persist(String ownerId,
+                                           String filename,
+                                           Visibility visibility,
+                                           List<String> tags,
+                                           @Nullable String contentType,
+                                           Placement placement,
+                                           long finalSize,
+                                           String sha256,
+                                           SniffResult sniff) {
+        final String filenameLc = filename.toLowerCase(Locale.ROOT);
+
+        // Decide final content type: prefer provided, else detected, else octet-stream
+        String provided = contentType;
+        String detected = detectContentType(sniff.head, filename);
+        String finalCt = isMeaningful(provided) ? provided
+                : isMeaningful(detected) ? detected
+                : "application/octet-stream";
+
+        // Persist metadata
+        FileEntry fe = new FileEntry();
+        fe.setOwnerId(ownerId);
+        fe.setFilename(filename);
+        fe.setFilenameLc(filenameLc);
+        fe.setVisibility(visibility);
+        fe.setTags(normalizeTags(tags));
+        fe.setContentType(finalCt);
+        fe.setSize(finalSize);
+        fe.setGridFsId(placement.gridFsId());
+        fe.setSharedBlob(placement.shared());
+        fe.setContentSha256(sha256);
+        fe.setFingerprintMode(sniff.mode);
+        fe.setTreeRoot(sniff.tree != null ? sniff.tree.rootHex() : null);
+        fe.setLeafSize(hasLeaves(placement, sniff) ? sniff.tree.leafSize() : 0);
+        fe.setChunkSize(placement.chunkSize());
+        fe.setInlineData(placement.inline());
+        fe.setCreatedAt(Instant.now());
+
+        // Counted before the save so concurrent uploads can't overshoot the quota together
+        Mono<Void> charge = usage.charge(ownerId, finalSize)
+                .onErrorResume(QuotaExceededException.class, ex -> discard(placement, sha256).then(Mono.error(ex)));
+
+        Mono<FileEntry> save = Mono.defer(() -> files.save(fe))
+                .onErrorResume(DuplicateKeyException.class, ex -> {
+                    // content duplicate -> cleanup blob
+                    if (isDupOn(ex, "uniq_owner_sha256")) {
+                        return discard(placement, sha256)
+                                .then(Mono.error(new DuplicateFileException(
+                                        DuplicateFileException.Kind.CONTENT,
+                                        "File content already exists")));
+                    }
+                    // filename duplicate -> cleanup blob too: nothing references it, and a shared
+                    // reference is given back so the count keeps matching the FileEntries
+                    if (isDupOn(ex, "uniq_owner_filename")) {
+                        return discard(placement, sha256)
+                                .then(Mono.error(new DuplicateFileException(
+                                        DuplicateFileException.Kind.FILENAME,
+                                        "Filename already exists")));
+                    }
+                    // unknown duplicate -> bubble up
+                    return Mono.error(ex);
+                })
+                .onErrorResume(ex -> usage.refund(ownerId, finalSize).then(Mono.error(ex)));
+
+        return charge.then(save)
+                .flatMap(saved -> saveLeaves(placement, sniff).thenReturn(saved))
+                .flatMap(saved -> {
+                    DownloadLink link = new DownloadLink(
+                            UUID.randomUUID().toString().replace("-", ""),
+                            saved.getId(),
+                            ownerId,
+                            null
+                    );
+                    return links.save(link)
+                            .map(savedLink -> new UploadFileResult(saved.getId(),
+                                    savedLink.getToken(),
+                                    saved.getFilename()));
                 });
     }
 
+    /**
+     * Leaf digests are advisory: without them a TREE file just can't be checked leaf by leaf. A
+     * leaf set too large for one document is not written at all (the entry's leafSize says so).
+     */
+    private Mono<Void> saveLeaves(Placement placement, SniffResult sniff) {
+        if (!hasLeaves(placement, sniff)) return Mono.empty();
+        TreeHasher.Tree tree = sniff.tree;
+        return leafHashes.save(new LeafHashes(placement.gridFsId(), tree.leafSize(), tree.size(), tree.leafDigests()))
+                .onErrorResume(e -> Mono.empty()); // transient failure: same as having no leaves
+    }
+
+    /** Inline entries are re-hashed from the entry itself. */
+    private static boolean hasLeaves(Placement placement, SniffResult sniff) {
+        return sniff.tree != null && placement.inline() == null && sniff.tree.leafCount() <= LeafHashes.MAX_LEAVES;
+    }
+
     // --- helpers --------------------------------------------------------------
 
+    @Nullable
+    private static String verifyDeclared(@Nullable DeclaredContent declared, String sha256, SniffResult sniff) {
+        if (declared == null) return null;
+        String plain = sniff.tree != null ? sniff.plainSha256 : sha256;
+        if (declared.sha256() != null && !declared.sha256().equals(plain)) {
+            return "Content SHA-256 does not match the declared value";
+        }
+        if (declared.size() >= 0 && declared.size() != sniff.size) {
+            return "Content size " + sniff.size + " does not match the declared size " + declared.size();
+        }
+        return null;
+    }
+
     private static boolean isDupOn(Throwable t, String indexName) {
         return t instanceof DuplicateKeyException
                 && t.getMessage() != null
@@ -148,12 +469,10 @@ public class ReactiveUploadService {
     }
 
     @Nullable
-    private static String detectContentType(byte[] head, String filenameHint) {
+    private String detectContentType(byte[] head, String filenameHint) {
         try {
-            org.apache.tika.Tika tika = new org.apache.tika.Tika(); // tika-core
-            String detected = (filenameHint != null && !filenameHint.isBlank())
-                    ? tika.detect(head, filenameHint)
-                    : tika.detect(head);
+            String hint = (filenameHint != null && !filenameHint.isBlank()) ? filenameHint : null;
+            String detected = detector.detect(head, hint);
             if (detected == null || detected.isBlank()) return null;
             String s = detected.trim().toLowerCase(Locale.ROOT);
             return "application/octet-stream".equals(s) ? null : detected;
@@ -176,21 +495,21 @@ public class ReactiveUploadService {
                 .toList();
     }
 
-    /** Returns (passthrough Flux, Mono<sha256>) computing sha while forwarding buffers. */
-    private static Tuple2<Flux<DataBuffer>, Mono<String>> teeWithSha256(Flux<DataBuffer> in) {
-        final MessageDigest digest = newDigest();
-        final AtomicLong size = new AtomicLong();
-
-        Flux<DataBuffer> out = in.doOnNext(db -> {
-            ByteBuffer nio = db.asByteBuffer();
-            size.addAndGet(nio.remaining());
-            digest.update(nio);
+    /** Fails the body with {@link QuotaExceededException} as soon as it passes {@code limit} bytes. */
+    static Flux<DataBuffer> capped(Flux<DataBuffer> in, long limit) {
+        if (limit == Long.MAX_VALUE) return in;
+        return Flux.defer(() -> {
+            final long[] seen = {0};
+            return in.handle((DataBuffer db, SynchronousSink<DataBuffer> sink) -> {
+                seen[0] += db.readableByteCount();
+                if (seen[0] > limit) {
+                    DataBufferUtils.release(db);
+                    sink.error(new QuotaExceededException("Storage quota exceeded"));
+                } else {
+                    sink.next(db);
+                }
+            });
         });
-
-        // SHA value will be requested AFTER stream consumption by sequencing at call site
-        Mono<String> sha = Mono.fromSupplier(() -> HexFormat.of().formatHex(digest.digest()));
-
-        return Tuples.of(out, sha);
     }
 
     private static MessageDigest newDigest() {
@@ -201,37 +520,30 @@ public class ReactiveUploadService {
         }
     }
 
-    private static Tuple2<Flux<DataBuffer>, Mono<Tuple2<String, SniffResult>>> teeWithSha256AndSniff(
-            Flux<DataBuffer> in, int sniffBytes) {
-
-        final MessageDigest digest = newDigest();
-        final AtomicLong size = new AtomicLong();
-        final ByteArrayOutputStream headBuf = new ByteArrayOutputStream(Math.min(sniffBytes, 16384));
-        final int sniffLimit = Math.max(0, sniffBytes);
-
-        Flux<DataBuffer> out = in.doOnNext(db -> {
-            ByteBuffer nio = db.asByteBuffer();
-            size.addAndGet(nio.remaining());
-            digest.update(nio.duplicate()); // hash without mutating the DataBuffer
-
-            // copy head bytes for sniffing
-            if (headBuf.size() < sniffLimit) {
-                ByteBuffer slice = nio.slice();
-                int toCopy = Math.min(slice.remaining(), sniffLimit - headBuf.size());
-                if (toCopy > 0) {
-                    slice.limit(toCopy);
-                    byte[] tmp = new byte[toCopy];
-                    slice.get(tmp);
-                    headBuf.write(tmp, 0, toCopy);
-                }
-            }
-        });
+    /**
+     * The emitted key is the plain SHA-256, or in TREE mode the tree's key; the plain digest is
+     * then only computed ({@code plainNeeded}) to check a declared one, since it runs on one core.
+     */
+    private Tuple2<Flux<DataBuffer>, Mono<Tuple2<String, SniffResult>>> teeWithSha256AndSniff(
+            Flux<DataBuffer> in, int sniffBytes, boolean plainNeeded) {
+
+        // TREE: leaves are hashed in parallel on the tree pool, waiting (not blocking) for slots
+        final TreeHasher tree = treeHashing.mode() == FingerprintMode.TREE ? treeHashing.newHasher() : null;
+        final MessageDigest digest = (tree == null || plainNeeded) ? newDigest() : null;
+        final UploadTee tee = new UploadTee(digest != null ? digest::update : (src, off, len) -> { }, sniffBytes);
+
+        // The digest runs on the hashing scheduler, pipelined with the storage write; head and
+        // size alone are cheap enough for the delivering thread
+        Flux<DataBuffer> fed = tree != null ? tree.feed(in) : in;
+        Flux<DataBuffer> out = digest != null ? hashing.apply(fed, tee) : fed.doOnNext(tee);
 
         // Meta (sha + sniff) will be finalized AFTER storage consumption by sequencing at call site
-        Mono<Tuple2<String, SniffResult>> meta =
-                Mono.fromSupplier(() -> {
+        Mono<Tuple2<String, SniffResult>> meta = tree != null
+                ? Mono.defer(tree::finish).map(t -> Tuples.of(t.key(), new SniffResult(tee.head(), tee.size(), t,
+                        digest != null ? HexFormat.of().formatHex(digest.digest()) : null)))
+                : Mono.fromSupplier(() -> {
                     String sha = HexFormat.of().formatHex(digest.digest());
-                    return Tuples.of(sha, new SniffResult(headBuf.toByteArray(), size.get()));
+                    return Tuples.of(sha, new SniffResult(tee.head(), tee.size()));
                 });
 
         return Tuples.of(out, meta);
@@ -240,6 +552,19 @@ public class ReactiveUploadService {
     static final class SniffResult {
         final byte[] head;   // first few KB to sniff type
         final long size;     // total bytes seen
-        SniffResult(byte[] head, long size) { this.head = head; this.size = size; }
+        @Nullable
+        final TreeHasher.Tree tree; // TREE fingerprint only
+        @Nullable
+        final String plainSha256;   // TREE only, when a declared SHA-256 has to be checked
+        final FingerprintMode mode; // how the sha256 passed along with this was computed
+        SniffResult(byte[] head, long size) { this(head, size, FingerprintMode.SHA256); }
+        SniffResult(byte[] head, long size, FingerprintMode mode) { this(head, size, null, null, mode); }
+        SniffResult(byte[] head, long size, TreeHasher.Tree tree, @Nullable String plainSha256) {
+            this(head, size, tree, plainSha256, FingerprintMode.TREE);
+        }
+        private SniffResult(byte[] head, long size, @Nullable TreeHasher.Tree tree, @Nullable String plainSha256,
+                            FingerprintMode mode) {
+            this.head = head; this.size = size; this.tree = tree; this.plainSha256 = plainSha256; this.mode = mode;
+        }
     }
 }
@@ -4,25 +4,42 @@ package ae.teletronics.storage.application;
 import ae.teletronics.storage.application.exceptions.DuplicateFileException;
 import ae.teletronics.storage.application.exceptions.NotFoundException;
 import ae.teletronics.storage.domain.model.FileEntry;
+import ae.teletronics.storage.ports.DownloadLinkQueryPort;
 import ae.teletronics.storage.ports.FileEntryQueryPort;
+import ae.teletronics.storage.ports.FilenameReservationPort;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Locale;
 
 @Service
 public class RenameFileServiceReactive {
 
     private final FileEntryQueryPort files;
+    private final DownloadLinkQueryPort links;
+    private final FilenameReservationPort reservations;
+    private final Duration reservationTtl;
 
-    public RenameFileServiceReactive(FileEntryQueryPort files) {
+    public RenameFileServiceReactive(FileEntryQueryPort files,
+                                     DownloadLinkQueryPort links,
+                                     FilenameReservationPort reservations,
+                                     @Value("${storage.reservations.ttl:1h}") Duration reservationTtl) {
         this.files = files;
+        this.links = links;
+        this.reservations = reservations;
+        this.reservationTtl = reservationTtl;
     }
 
     /**
      * Rename a file owned by {@code ownerId} to {@code newFilename}.
-     * - Enforces (ownerId, filenameLc) uniqueness.
+     * - Enforces (ownerId, filenameLc) uniqueness, holding the same reservation uploads take, so
+     *   a rename cannot land on a name an in-flight upload has claimed (or the other way round).
      * - Case-insensitive comparison for conflicts.
+     * - Download links of this instance serve the new name at once (the resolved-link cache is evicted).
      * - Returns the updated FileEntry.
      */
     public Mono<FileEntry> rename(String ownerId, String fileId, String newFilename) {
@@ -44,24 +61,41 @@ public class RenameFileServiceReactive {
                             return Mono.just(existing); // no-op
                         }
                         existing.setFilename(normalized);
-                        return files.save(existing);
+                        existing.setUpdatedAt(Instant.now());
+                        return save(existing);
                     }
 
-                    // Otherwise enforce uniqueness on (ownerId, filenameLc)
-                    return files.existsByOwnerIdAndFilenameLc(ownerId, normalizedLc)
-                            .flatMap(exists -> {
-                                if (exists) {
-                                    return Mono.error(new DuplicateFileException(DuplicateFileException.Kind.FILENAME,"Filename already exists"));
-                                }
-                                existing.setFilename(normalized);
-                                existing.setFilenameLc(normalizedLc);
-                                return files.save(existing);
-                            });
+                    // Otherwise enforce uniqueness on (ownerId, filenameLc), under the reservation
+                    return Mono.usingWhen(
+                            reservations.reserve(ownerId, normalizedLc, reservationTtl).switchIfEmpty(taken()),
+                            reservationId -> files.existsByOwnerIdAndFilenameLc(ownerId, normalizedLc)
+                                    .flatMap(exists -> {
+                                        if (exists) {
+                                            return taken();
+                                        }
+                                        existing.setFilename(normalized);
+                                        existing.setFilenameLc(normalizedLc);
+                                        existing.setUpdatedAt(Instant.now());
+                                        return save(existing);
+                                    })
+                                    // a file saved with the name since the check
+                                    .onErrorResume(DuplicateKeyException.class, e -> taken()),
+                            reservations::release,
+                            (reservationId, err) -> reservations.release(reservationId),
+                            reservations::release);
                 });
     }
 
     // ---- helpers ----
 
+    private Mono<FileEntry> save(FileEntry entry) {
+        return files.save(entry).flatMap(saved -> links.evictFile(saved.getId()).thenReturn(saved));
+    }
+
+    private static <T> Mono<T> taken() {
+        return Mono.error(new DuplicateFileException(DuplicateFileException.Kind.FILENAME, "Filename already exists"));
+    }
+
     private static String normalizeFilename(String name) {
         if (name == null || name.isBlank()) {
             throw new IllegalArgumentException("New filename must not be blank");
@@ -0,0 +1,358 @@
+package ae.teletronics.storage.application;
+
+import ae.teletronics.storage.application.admission.UploadAdmission;
+import ae.teletronics.storage.application.dto.UploadFileResult;
+import ae.teletronics.storage.application.exceptions.NotFoundException;
+import ae.teletronics.storage.application.exceptions.OffsetMismatchException;
+import ae.teletronics.storage.application.exceptions.QuotaExceededException;
+import ae.teletronics.storage.application.hashing.HashingStage;
+import ae.teletronics.storage.application.hashing.ResumableSha256;
+import ae.teletronics.storage.application.hashing.UploadTee;
+import ae.teletronics.storage.domain.FingerprintMode;
+import ae.teletronics.storage.domain.Visibility;
+import ae.teletronics.storage.domain.model.UploadSession;
+import ae.teletronics.storage.ports.ReactiveStoragePort;
+import ae.teletronics.storage.ports.UploadSessionQueryPort;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongFunction;
+
+/**
+ * Resumable uploads: create a session, append segments (each stored as its own blob and
+ * hashed incrementally from the last checkpoint), query the committed offset, then commit.
+ * Or, in parallel mode, upload numbered parts concurrently over separate connections.
+ * Commit composes the pieces into one blob and reuses {@link ReactiveUploadService#complete}
+ * for duplicate rules, metadata and DownloadLink creation.
+ */
+@Service
+public class UploadSessionServiceReactive {
+
+    static final int SNIFF_BYTES = 16 * 1024;
+    static final int MAX_PARTS = 10_000;
+    static final int SEGMENT_CHUNKS = 32;
+    private static final int DEFAULT_CHUNK = 255 * 1024; // GridFS default, for backends without chunks
+
+    private final UploadSessionQueryPort sessions;
+    private final ReactiveStoragePort storage;
+    private final ReactiveUploadService uploads;
+    private final HashingStage hashing;
+    private final UploadAdmission admission;
+    private final UsageServiceReactive usage;
+    private final Duration ttl;
+    private final long segmentSize;
+
+    public UploadSessionServiceReactive(UploadSessionQueryPort sessions,
+                                        ReactiveStoragePort storage,
+                                        ReactiveUploadService uploads,
+                                        HashingStage hashing,
+                                        UploadAdmission admission,
+                                        UsageServiceReactive usage,
+                                        @Value("${storage.upload-sessions.ttl:24h}") Duration ttl,
+                                        @Value("${storage.upload-sessions.segment-size:0}") long segmentSize) {
+        this.sessions = sessions;
+        this.storage = storage;
+        this.uploads = uploads;
+        this.hashing = hashing;
+        this.admission = admission;
+        this.usage = usage;
+        this.ttl = ttl;
+        int chunk = storage.baseChunkSize();
+        if (segmentSize <= 0) {
+            segmentSize = (long) SEGMENT_CHUNKS * (chunk > 0 ? chunk : DEFAULT_CHUNK);
+        } else if (chunk > 0 && segmentSize % chunk != 0) {
+            throw new IllegalArgumentException("storage.upload-sessions.segment-size (" + segmentSize
+                    + ") must be a multiple of the GridFS chunk size (" + chunk + ")");
+        }
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Recommended segment size; a multiple of the GridFS chunk size so commit can re-link chunks.
+     * Unset ({@code 0}), it is {@value #SEGMENT_CHUNKS} chunks.
+     */
+    public long segmentSize() { return segmentSize; }
+
+    public Mono<UploadSession> create(String ownerId,
+                                      String filename,
+                                      Visibility visibility,
+                                      List<String> tags,
+                                      @Nullable String contentType,
+                                      long declaredSize) {
+        if (filename == null || filename.isBlank()) {
+            return Mono.error(new IllegalArgumentException("filename is required"));
+        }
+        if (filename.contains("/") || filename.contains("\\")) {
+            return Mono.error(new IllegalArgumentException("Filename must not contain path separators"));
+        }
+        final String name = filename.trim();
+        UploadSession s = new UploadSession();
+        s.setOwnerId(ownerId);
+        s.setFilename(name);
+        s.setVisibility(visibility == null ? Visibility.PRIVATE : visibility);
+        s.setTags(tags);
+        s.setContentType(contentType);
+        s.setDeclaredSize(declaredSize >= 0 ? declaredSize : -1);
+        s.setCreatedAt(Instant.now());
+        s.setExpiresAt(Instant.now().plus(ttl));
+        // Name conflicts surface now, not after gigabytes have been uploaded
+        return uploads.reserveFilename(ownerId, name, ttl)
+                .flatMap(reservationId -> {
+                    s.setReservationId(reservationId);
+                    return sessions.save(s);
+                });
+    }
+
+    public Mono<UploadSession> status(String ownerId, String sessionId) {
+        return owned(ownerId, sessionId);
+    }
+
+    /** Offset-addressed append: {@code offset} must equal the committed offset. */
+    public Mono<UploadSession> appendAt(String ownerId, String sessionId, long offset, Flux<DataBuffer> body) {
+        return appendAt(ownerId, sessionId, offset, body, -1);
+    }
+
+    /**
+     * Same as above, with the expected segment size (the request Content-Length; negative when
+     * unknown). Like single-request uploads, each segment or part waits for {@link UploadAdmission}
+     * before the session is read and the body subscribed, and is held to the owner's quota: the
+     * bytes the session already stores count against it (they are charged at commit), an owner
+     * with nothing left or a larger expected size is refused up front, and a body is cut off as
+     * soon as it overshoots.
+     */
+    public Mono<UploadSession> appendAt(String ownerId, String sessionId, long offset, Flux<DataBuffer> body,
+                                        long expectedSize) {
+        return admission.admit(ownerId, expectedSize, () -> owned(ownerId, sessionId).flatMap(s -> {
+            if (offset != s.getCommittedOffset()) {
+                return Mono.error(new OffsetMismatchException(s.getCommittedOffset()));
+            }
+            return withinQuota(ownerId, s.getCommittedOffset(), expectedSize, limit -> append(s, body, limit));
+        }));
+    }
+
+    /** Numbered append: {@code segmentNumber} must equal the number of committed segments. */
+    public Mono<UploadSession> appendSegment(String ownerId, String sessionId, int segmentNumber, Flux<DataBuffer> body) {
+        return appendSegment(ownerId, sessionId, segmentNumber, body, -1);
+    }
+
+    /** Same as above, admitted and held to the quota like {@link #appendAt(String, String, long, Flux, long)}. */
+    public Mono<UploadSession> appendSegment(String ownerId, String sessionId, int segmentNumber, Flux<DataBuffer> body,
+                                             long expectedSize) {
+        return admission.admit(ownerId, expectedSize, () -> owned(ownerId, sessionId).flatMap(s -> {
+            if (segmentNumber != s.getSegmentCount()) {
+                return Mono.error(new OffsetMismatchException(s.getCommittedOffset()));
+            }
+            return withinQuota(ownerId, s.getCommittedOffset(), expectedSize, limit -> append(s, body, limit));
+        }));
+    }
+
+    /**
+     * Parallel mode: stores part {@code partNumber} as its own blob. Parts may arrive concurrently
+     * and in any order; re-uploading a number replaces (and deletes) the previous blob.
+     */
+    public Mono<UploadSession.Part> putPart(String ownerId, String sessionId, int partNumber, Flux<DataBuffer> body) {
+        return putPart(ownerId, sessionId, partNumber, body, -1);
+    }
+
+    /** Same as above, admitted and held to the quota like {@link #appendAt(String, String, long, Flux, long)}. */
+    public Mono<UploadSession.Part> putPart(String ownerId, String sessionId, int partNumber, Flux<DataBuffer> body,
+                                            long expectedSize) {
+        if (partNumber < 1 || partNumber > MAX_PARTS) {
+            return Mono.error(new IllegalArgumentException("Part number must be between 1 and " + MAX_PARTS));
+        }
+        return admission.admit(ownerId, expectedSize, () -> owned(ownerId, sessionId).flatMap(s -> {
+            if (!s.getSegments().isEmpty()) {
+                return Mono.error(new IllegalArgumentException("Session already uses sequential segments"));
+            }
+            long otherParts = s.getParts().values().stream()
+                    .filter(p -> p.number() != partNumber) // a re-sent part replaces its old bytes
+                    .mapToLong(UploadSession.Part::size).sum();
+            return withinQuota(ownerId, otherParts, expectedSize, limit -> storePart(s, partNumber, body, limit));
+        }));
+    }
+
+    public Mono<UploadFileResult> commit(String ownerId, String sessionId) {
+        return owned(ownerId, sessionId).flatMap(s -> {
+            if (!s.getParts().isEmpty()) {
+                return commitParts(s);
+            }
+            if (s.getSegments().isEmpty()) {
+                return Mono.error(new IllegalArgumentException("No data uploaded"));
+            }
+            if (s.getDeclaredSize() >= 0 && s.getCommittedOffset() != s.getDeclaredSize()) {
+                return Mono.error(new IllegalArgumentException(
+                        "Upload incomplete: " + s.getCommittedOffset() + " of " + s.getDeclaredSize() + " bytes"));
+            }
+            // Hash comes from the checkpoint: no byte is re-read for it
+            String sha256 = HexFormat.of().formatHex(ResumableSha256.restore(s.getHashState()).digest());
+            List<String> ids = s.getSegments().stream().map(UploadSession.Segment::gridFsId).toList();
+            return finish(s, ids, s.getCommittedOffset(), sha256, FingerprintMode.SHA256);
+        });
+    }
+
+    /**
+     * Parts were hashed independently as they arrived, so commit reads no byte again: the file is
+     * keyed by the composite of their digests ({@link FingerprintMode#PARTS}), which feeds the
+     * per-owner dedup rule like a plain SHA-256. A single part's digest is the plain SHA-256.
+     */
+    private Mono<UploadFileResult> commitParts(UploadSession s) {
+        if (!s.getSegments().isEmpty()) {
+            return Mono.error(new IllegalArgumentException("Session mixes segments and parts"));
+        }
+        List<UploadSession.Part> ordered = s.getParts().values().stream()
+                .sorted(Comparator.comparingInt(UploadSession.Part::number))
+                .toList();
+        long total = ordered.stream().mapToLong(UploadSession.Part::size).sum();
+        if (s.getDeclaredSize() >= 0 && total != s.getDeclaredSize()) {
+            return Mono.error(new IllegalArgumentException(
+                    "Upload incomplete: " + total + " of " + s.getDeclaredSize() + " bytes"));
+        }
+
+        List<String> ids = ordered.stream().map(UploadSession.Part::gridFsId).toList();
+        return ordered.size() == 1
+                ? finish(s, ids, total, ordered.get(0).sha256(), FingerprintMode.SHA256)
+                : finish(s, ids, total, compositeSha256(ordered), FingerprintMode.PARTS);
+    }
+
+    /** See {@link FingerprintMode#PARTS}. */
+    static String compositeSha256(List<UploadSession.Part> ordered) {
+        MessageDigest digest = newDigest();
+        for (UploadSession.Part p : ordered) digest.update(HexFormat.of().parseHex(p.sha256()));
+        return HexFormat.of().formatHex(digest.digest()) + "-" + ordered.size();
+    }
+
+    /** Composes the stored pieces into one blob, drops the session and runs the shared upload tail. */
+    private Mono<UploadFileResult> finish(UploadSession s, List<String> ids, long size, String sha256,
+                                          FingerprintMode mode) {
+        // Tagged with the session so a compose interrupted midway is kept (and resumed by the next
+        // commit) rather than collected while the session lives
+        Mono<ReactiveStoragePort.StorageSaveResult> stored = ids.size() == 1
+                ? Mono.just(new ReactiveStoragePort.StorageSaveResult(ids.get(0), size))
+                : storage.compose(ids, s.getFilename(), s.getContentType(),
+                        Map.of("ownerId", s.getOwnerId(), "uploadSessionId", s.getId()));
+
+        byte[] head = s.getHead() != null ? s.getHead() : new byte[0];
+        // The session is dropped only once the FileEntry exists (or the commit failed for good):
+        // until then it keeps its blobs visible to the orphan collector. Pieces are consumed now.
+        // The filename claim is given back even when dropping the session fails.
+        Mono<Void> cleanup = Mono.whenDelayError(sessions.deleteById(s.getId()),
+                uploads.releaseFilename(s.getReservationId()));
+        return stored.flatMap(res -> uploads.complete(s.getOwnerId(), s.getFilename(), s.getVisibility(),
+                                s.getTags(), s.getContentType(), res, sha256,
+                                new ReactiveUploadService.SniffResult(head, size, mode))
+                        .onErrorResume(e -> cleanup.then(Mono.error(e))))
+                .flatMap(r -> cleanup.thenReturn(r));
+    }
+
+    public Mono<Void> abort(String ownerId, String sessionId) {
+        return owned(ownerId, sessionId).flatMap(s -> Flux.concat(
+                        Flux.fromIterable(s.getSegments()).map(UploadSession.Segment::gridFsId),
+                        Flux.fromIterable(s.getParts().values()).map(UploadSession.Part::gridFsId))
+                .concatMap(id -> storage.delete(id).onErrorResume(e -> Mono.empty()))
+                .then(sessions.deleteById(sessionId))
+                .then(uploads.releaseFilename(s.getReservationId())));
+    }
+
+    // ---- helpers ----
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (Exception e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private Mono<UploadSession> owned(String ownerId, String sessionId) {
+        return sessions.findById(sessionId)
+                .filter(s -> ownerId.equals(s.getOwnerId()))   // don't leak foreign sessions
+                .switchIfEmpty(Mono.error(new NotFoundException("Upload session not found")));
+    }
+
+    /** Streams one part into its own blob, then records it; a replaced part's blob is deleted. */
+    private Mono<UploadSession.Part> storePart(UploadSession s, int partNumber, Flux<DataBuffer> body, long limit) {
+        final String ownerId = s.getOwnerId(), sessionId = s.getId();
+        final MessageDigest digest = newDigest();
+        final UploadTee tee = new UploadTee(digest::update, partNumber == 1 ? SNIFF_BYTES : 0);
+        Flux<DataBuffer> hashed = hashing.apply(ReactiveUploadService.capped(body, limit), tee);
+
+        Map<String, Object> meta = Map.of("ownerId", ownerId, "uploadSessionId", sessionId);
+        return storage.save(hashed, s.getFilename() + ".part" + partNumber, null, meta)
+                .flatMap(stored -> {
+                    UploadSession.Part part = new UploadSession.Part(partNumber, stored.gridFsId(),
+                            tee.size(), HexFormat.of().formatHex(digest.digest()));
+                    byte[] head = partNumber == 1 ? tee.head() : null;
+                    return sessions.putPart(sessionId, part, head)
+                            .switchIfEmpty(Mono.defer(() -> storage.delete(stored.gridFsId())
+                                    .then(Mono.error(new NotFoundException("Upload session not found")))))
+                            .flatMap(before -> {
+                                UploadSession.Part replaced = before.getParts().get(String.valueOf(partNumber));
+                                return replaced == null ? Mono.just(part)
+                                        : storage.delete(replaced.gridFsId()).onErrorResume(e -> Mono.empty())
+                                        .thenReturn(part);
+                            });
+                });
+    }
+
+    /**
+     * Runs {@code write} with the bytes it may store before the owner is over quota, counting
+     * {@code stored} bytes of the session as already used; refuses up front when nothing (or less
+     * than {@code expectedSize}) is left.
+     */
+    private <T> Mono<T> withinQuota(String ownerId, long stored, long expectedSize, LongFunction<Mono<T>> write) {
+        return usage.remaining(ownerId).flatMap(remaining -> {
+            long limit = remaining == Long.MAX_VALUE ? Long.MAX_VALUE : remaining - stored;
+            if (limit <= 0 || expectedSize > limit) {
+                return Mono.error(new QuotaExceededException("Storage quota exceeded"));
+            }
+            return write.apply(limit);
+        });
+    }
+
+    /**
+     * Streams one segment into its own blob while continuing the checkpointed SHA-256, then
+     * commits it with a conditional update on the offset. A losing racer deletes its blob.
+     */
+    private Mono<UploadSession> append(UploadSession s, Flux<DataBuffer> body, long limit) {
+        if (!s.getParts().isEmpty()) {
+            return Mono.error(new IllegalArgumentException("Session already uses parallel parts"));
+        }
+        final long expected = s.getCommittedOffset();
+        final ResumableSha256 sha = ResumableSha256.restore(s.getHashState());
+        final byte[] previousHead = s.getHead() != null ? s.getHead() : new byte[0];
+        final UploadTee tee = new UploadTee(sha::update, SNIFF_BYTES, previousHead);
+        Flux<DataBuffer> hashed = hashing.apply(ReactiveUploadService.capped(body, limit), tee);
+
+        Map<String, Object> meta = Map.of("ownerId", s.getOwnerId(), "uploadSessionId", s.getId());
+        return storage.save(hashed, s.getFilename() + ".part" + s.getSegmentCount(), null, meta)
+                .flatMap(stored -> {
+                    long size = tee.size();
+                    if (size == 0) {
+                        return storage.delete(stored.gridFsId()).thenReturn(s);
+                    }
+                    if (s.getDeclaredSize() >= 0 && expected + size > s.getDeclaredSize()) {
+                        return storage.delete(stored.gridFsId())
+                                .then(Mono.error(new IllegalArgumentException("Segment exceeds declared size")));
+                    }
+                    byte[] head = previousHead.length < SNIFF_BYTES ? tee.head() : null;
+                    UploadSession.Segment segment = new UploadSession.Segment(stored.gridFsId(), expected, size);
+                    return sessions.appendSegment(s.getId(), expected, segment, sha.exportState(), head)
+                            .switchIfEmpty(Mono.defer(() -> storage.delete(stored.gridFsId())
+                                    .then(sessions.findById(s.getId()))
+                                    .flatMap(current -> Mono.<UploadSession>error(
+                                            new OffsetMismatchException(current.getCommittedOffset())))
+                                    .switchIfEmpty(Mono.error(new NotFoundException("Upload session not found")))));
+                });
+    }
+}
@@ -0,0 +1,72 @@
+package ae.teletronics.storage.application;
+
+import ae.teletronics.storage.application.dto.UsageResult;
+import ae.teletronics.storage.application.exceptions.QuotaExceededException;
+import ae.teletronics.storage.domain.model.OwnerUsage;
+import ae.teletronics.storage.ports.OwnerUsagePort;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Mono;
+
+/**
+ * Per-owner usage and quota. Uploads read the remaining quota before streaming (so the body can
+ * be cut off as soon as it overshoots) and are charged atomically when the FileEntry is
+ * committed, which is what actually enforces the limit under concurrent uploads. Deletes give
+ * the bytes back.
+ */
+@Service
+public class UsageServiceReactive {
+
+    @Nullable
+    private final OwnerUsagePort usage; // null = untracked
+    private final long defaultQuota;    // bytes, -1 = unlimited
+
+    @Autowired
+    public UsageServiceReactive(OwnerUsagePort usage,
+                                @Value("${storage.quota.default:0}") DataSize defaultQuota) {
+        this(usage, defaultQuota.toBytes() > 0 ? defaultQuota.toBytes() : -1);
+    }
+
+    private UsageServiceReactive(@Nullable OwnerUsagePort usage, long defaultQuota) {
+        this.usage = usage;
+        this.defaultQuota = defaultQuota;
+    }
+
+    /** Counts nothing and limits nothing; for tests and tools. */
+    public static UsageServiceReactive untracked() {
+        return new UsageServiceReactive(null, -1);
+    }
+
+    public Mono<UsageResult> usage(String ownerId) {
+        if (usage == null) return Mono.just(new UsageResult(0, 0, -1));
+        return usage.get(ownerId).map(u -> new UsageResult(u.getBytes(), u.getFiles(), quotaOf(u)));
+    }
+
+    /** Bytes the owner may still upload; {@link Long#MAX_VALUE} when unlimited. */
+    public Mono<Long> remaining(String ownerId) {
+        return usage(ownerId).map(UsageResult::remaining);
+    }
+
+    /** Counts a committed file, or fails with {@link QuotaExceededException} when it doesn't fit. */
+    public Mono<Void> charge(String ownerId, long bytes) {
+        if (usage == null) return Mono.empty();
+        return usage.get(ownerId)
+                .flatMap(u -> usage.charge(ownerId, bytes, quotaOf(u)))
+                .flatMap(counted -> counted
+                        ? Mono.<Void>empty()
+                        : Mono.<Void>error(new QuotaExceededException("Storage quota exceeded")));
+    }
+
+    /** Gives back a charged file (deleted, or not committed after all). Best-effort. */
+    public Mono<Void> refund(String ownerId, long bytes) {
+        if (usage == null) return Mono.empty();
+        return usage.add(ownerId, -bytes, -1).onErrorResume(e -> Mono.empty());
+    }
+
+    private long quotaOf(OwnerUsage u) {
+        return u.getQuotaBytes() != null ? u.getQuotaBytes() : defaultQuota;
+    }
+}
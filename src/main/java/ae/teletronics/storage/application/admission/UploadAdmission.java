@@ -0,0 +1,259 @@
+package ae.teletronics.storage.application.admission;
+
+import ae.teletronics.storage.application.exceptions.TooManyUploadsException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Decides when an upload may start streaming, so one owner's bulk upload cannot take the whole
+ * GridFS write path.
+ * <p>
+ * At most {@code max-concurrent} uploads run at once, and at most {@code per-owner} of them for
+ * the same owner. Uploads that cannot start wait in a weighted-fair queue (self-clocked fair
+ * queueing): each waiter is stamped with a finish tag of
+ * {@code max(virtual time, owner's last tag) + cost}, where cost is the expected size clamped to
+ * [{@code small-size}, {@code large-size}] and unknown sizes cost {@code large-size}. The waiter
+ * with the smallest tag whose owner is under its cap goes next, so small files overtake large
+ * ones and an owner with many queued uploads is served in turn with everyone else.
+ * <p>
+ * A full queue, or a wait longer than {@code max-wait}, fails with
+ * {@link TooManyUploadsException} (HTTP 429 + {@code Retry-After}). Nothing is read from the
+ * request body before admission, so a waiting upload only holds its connection.
+ */
+@Component
+public class UploadAdmission {
+
+    private final int maxConcurrent;
+    private final int perOwner;
+    private final int queueSize;
+    private final Duration maxWait;
+    private final Duration retryAfter;
+    private final long smallCost;
+    private final long largeCost;
+
+    // guarded by this
+    private final List<Ticket> queue = new ArrayList<>();
+    private final Map<String, Integer> activeByOwner = new HashMap<>();
+    private final Map<String, Long> lastTagByOwner = new HashMap<>();
+    private int active;
+    private long virtualTime;
+
+    private final Timer waitSmall;
+    private final Timer waitLarge;
+    private final Counter rejectedFull;
+    private final Counter rejectedTimeout;
+
+    @Autowired
+    public UploadAdmission(MeterRegistry meters,
+                           @Value("${storage.admission.max-concurrent:64}") int maxConcurrent,
+                           @Value("${storage.admission.per-owner:4}") int perOwner,
+                           @Value("${storage.admission.queue-size:256}") int queueSize,
+                           @Value("${storage.admission.max-wait:30s}") Duration maxWait,
+                           @Value("${storage.admission.retry-after:5s}") Duration retryAfter,
+                           @Value("${storage.admission.small-size:1MB}") DataSize smallSize,
+                           @Value("${storage.admission.large-size:1GB}") DataSize largeSize) {
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.perOwner = Math.max(1, perOwner);
+        this.queueSize = Math.max(0, queueSize);
+        this.maxWait = maxWait;
+        this.retryAfter = retryAfter;
+        this.smallCost = Math.max(1, smallSize.toBytes());
+        this.largeCost = Math.max(this.smallCost, largeSize.toBytes());
+
+        Gauge.builder("storage.upload.admission.queued", this, UploadAdmission::queued)
+                .description("Uploads waiting for admission").register(meters);
+        Gauge.builder("storage.upload.admission.active", this, UploadAdmission::active)
+                .description("Uploads currently streaming").register(meters);
+        this.waitSmall = waitTimer(meters, "small");
+        this.waitLarge = waitTimer(meters, "large");
+        this.rejectedFull = Counter.builder("storage.upload.admission.rejected")
+                .tag("reason", "queue_full").register(meters);
+        this.rejectedTimeout = Counter.builder("storage.upload.admission.rejected")
+                .tag("reason", "timeout").register(meters);
+    }
+
+    private static Timer waitTimer(MeterRegistry meters, String size) {
+        return Timer.builder("storage.upload.admission.wait")
+                .description("Time an upload waited before it could start")
+                .tag("size", size)
+                .publishPercentileHistogram()
+                .register(meters);
+    }
+
+    /** Admits everything immediately; for tests and tools. */
+    public static UploadAdmission unbounded() {
+        return new UploadAdmission(new SimpleMeterRegistry(), Integer.MAX_VALUE, Integer.MAX_VALUE, 0,
+                Duration.ZERO, Duration.ZERO, DataSize.ofBytes(1), DataSize.ofBytes(1));
+    }
+
+    /**
+     * Subscribes to {@code upload} once the upload is admitted and holds its slot until the
+     * upload terminates or is cancelled.
+     *
+     * @param expectedSize expected byte count, or a negative value when unknown
+     */
+    public <T> Mono<T> admit(String ownerId, long expectedSize, Supplier<Mono<T>> upload) {
+        return Mono.usingWhen(
+                acquire(ownerId, expectedSize),
+                slot -> upload.get(),
+                Slot::release,
+                (slot, err) -> slot.release(),
+                Slot::release);
+    }
+
+    synchronized int queued() {
+        return queue.size();
+    }
+
+    synchronized int active() {
+        return active;
+    }
+
+    private Mono<Slot> acquire(String ownerId, long expectedSize) {
+        final long cost = expectedSize < 0 ? largeCost : Math.min(Math.max(expectedSize, smallCost), largeCost);
+        final Timer waits = cost <= smallCost ? waitSmall : waitLarge;
+        Mono<Slot> slot = Mono.create(sink -> {
+            Ticket t;
+            synchronized (this) {
+                if (queue.isEmpty() && active < maxConcurrent && running(ownerId) < perOwner) {
+                    t = null;
+                    start(ownerId);
+                } else if (queue.size() >= queueSize) {
+                    rejectedFull.increment();
+                    sink.error(new TooManyUploadsException("Too many uploads in progress, retry later", retryAfter));
+                    return;
+                } else {
+                    long tag = Math.max(virtualTime, lastTagByOwner.getOrDefault(ownerId, 0L)) + cost;
+                    lastTagByOwner.put(ownerId, tag);
+                    t = new Ticket(ownerId, tag, sink, waits);
+                    queue.add(t);
+                }
+            }
+            if (t == null) {
+                waits.record(0, TimeUnit.NANOSECONDS);
+                sink.success(new Slot(ownerId));
+                return;
+            }
+            final Ticket ticket = t;
+            sink.onCancel(() -> {
+                boolean queued;
+                synchronized (this) {
+                    queued = queue.remove(ticket);
+                }
+                if (ticket.state.compareAndSet(Ticket.WAITING, Ticket.CANCELLED) && !queued) {
+                    finish(ownerId); // started but never delivered
+                }
+            });
+            dispatch();
+        });
+        if (!maxWait.isZero() && !maxWait.isNegative()) {
+            slot = slot.timeout(maxWait).onErrorMap(TimeoutException.class, e -> {
+                rejectedTimeout.increment();
+                return new TooManyUploadsException("Upload was not admitted in time, retry later", retryAfter);
+            });
+        }
+        return slot.doOnDiscard(Slot.class, Slot::releaseNow); // started just as the caller gave up
+    }
+
+    private int running(String ownerId) {
+        return activeByOwner.getOrDefault(ownerId, 0);
+    }
+
+    private void start(String ownerId) {
+        active++;
+        activeByOwner.merge(ownerId, 1, Integer::sum);
+    }
+
+    private void finish(String ownerId) {
+        synchronized (this) {
+            active--;
+            if (activeByOwner.merge(ownerId, -1, Integer::sum) <= 0) activeByOwner.remove(ownerId);
+        }
+        dispatch();
+    }
+
+    /** Starts the best eligible waiters while there is room. */
+    private void dispatch() {
+        List<Ticket> started = null;
+        synchronized (this) {
+            while (active < maxConcurrent) {
+                Ticket best = null;
+                for (Ticket t : queue) {
+                    if (running(t.ownerId) < perOwner && (best == null || t.tag < best.tag)) best = t;
+                }
+                if (best == null) break;
+                queue.remove(best);
+                start(best.ownerId);
+                virtualTime = Math.max(virtualTime, best.tag);
+                if (started == null) started = new ArrayList<>(2);
+                started.add(best);
+            }
+            if (started != null) {
+                // owners with nothing queued don't need their tag once virtual time has passed it
+                lastTagByOwner.values().removeIf(tag -> tag <= virtualTime);
+            }
+        }
+        if (started == null) return;
+        for (Ticket t : started) {
+            if (!t.state.compareAndSet(Ticket.WAITING, Ticket.STARTED)) continue; // cancel handler finishes
+            t.waits.record(System.nanoTime() - t.since, TimeUnit.NANOSECONDS);
+            t.sink.success(new Slot(t.ownerId));
+        }
+    }
+
+    /** One admitted upload; released exactly once. */
+    private final class Slot {
+        final String ownerId;
+        final AtomicBoolean released = new AtomicBoolean();
+
+        Slot(String ownerId) {
+            this.ownerId = ownerId;
+        }
+
+        Mono<Void> release() {
+            return Mono.fromRunnable(this::releaseNow);
+        }
+
+        void releaseNow() {
+            if (released.compareAndSet(false, true)) finish(ownerId);
+        }
+    }
+
+    private static final class Ticket {
+        static final int WAITING = 0, STARTED = 1, CANCELLED = 2;
+
+        final String ownerId;
+        final long tag;
+        final MonoSink<Slot> sink;
+        final Timer waits;
+        final long since = System.nanoTime();
+        final AtomicInteger state = new AtomicInteger(WAITING);
+
+        Ticket(String ownerId, long tag, MonoSink<Slot> sink, Timer waits) {
+            this.ownerId = ownerId;
+            this.tag = tag;
+            this.sink = sink;
+            this.waits = waits;
+        }
+    }
+}
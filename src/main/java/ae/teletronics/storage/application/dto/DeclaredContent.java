@@ -0,0 +1,33 @@
+package ae.teletronics.storage.application.dto;
+
+import org.springframework.lang.Nullable;
+
+import java.util.Locale;
+
+/**
+ * What the client says it is about to upload. A declared hash lets duplicates be rejected
+ * before any byte is read; both values are verified against the streamed content.
+ *
+ * @param sha256 lowercase hex SHA-256, or null when not declared
+ * @param size   byte count, or -1 when not declared
+ */
+public record DeclaredContent(@Nullable String sha256, long size) {
+
+    public DeclaredContent {
+        if (sha256 != null) {
+            sha256 = sha256.trim().toLowerCase(Locale.ROOT);
+            if (!sha256.matches("[0-9a-f]{64}")) {
+                throw new IllegalArgumentException("Declared SHA-256 must be 64 hex characters");
+            }
+        }
+        if (size < 0) size = -1;
+    }
+
+    /** Null when neither value was declared. */
+    @Nullable
+    public static DeclaredContent of(@Nullable String sha256, @Nullable Long size) {
+        boolean noSha = sha256 == null || sha256.isBlank();
+        if (noSha && size == null) return null;
+        return new DeclaredContent(noSha ? null : sha256, size == null ? -1 : size);
+    }
+}
@@ -0,0 +1,17 @@
+package ae.teletronics.storage.application.dto;
+
+/**
+ * An owner's stored bytes and file count against the quota.
+ *
+ * @param quotaBytes byte limit, or -1 when unlimited
+ */
+public record UsageResult(
+        long bytes,
+        long files,
+        long quotaBytes
+) {
+    /** Bytes still allowed; {@link Long#MAX_VALUE} when unlimited. */
+    public long remaining() {
+        return quotaBytes < 0 ? Long.MAX_VALUE : Math.max(0, quotaBytes - bytes);
+    }
+}
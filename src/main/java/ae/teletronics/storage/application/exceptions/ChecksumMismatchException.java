@@ -0,0 +1,11 @@
+package ae.teletronics.storage.application.exceptions;
+
+/**
+ * Thrown when the streamed content does not match the SHA-256 or size declared by the client.
+ * The stored blob has already been discarded; mapped to HTTP 400.
+ */
+public class ChecksumMismatchException extends RuntimeException {
+    public ChecksumMismatchException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,16 @@
+package ae.teletronics.storage.application.exceptions;
+
+/**
+ * Thrown when a resumable upload segment does not start at the session's committed offset.
+ * Carries the offset the client should resume from; mapped to HTTP 409.
+ */
+public class OffsetMismatchException extends RuntimeException {
+    private final long committedOffset;
+
+    public OffsetMismatchException(long committedOffset) {
+        super("Segment must start at offset " + committedOffset);
+        this.committedOffset = committedOffset;
+    }
+
+    public long getCommittedOffset() { return committedOffset; }
+}
@@ -0,0 +1,10 @@
+package ae.teletronics.storage.application.exceptions;
+
+/**
+ * Thrown when an upload would take its owner past the storage quota; mapped to HTTP 413.
+ */
+public class QuotaExceededException extends RuntimeException {
+    public QuotaExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,18 @@
+package ae.teletronics.storage.application.exceptions;
+
+import java.time.Duration;
+
+/**
+ * Thrown when an upload cannot be admitted: the admission queue is full or the upload waited
+ * too long for a slot. Carries a retry hint; mapped to HTTP 429 with {@code Retry-After}.
+ */
+public class TooManyUploadsException extends RuntimeException {
+    private final Duration retryAfter;
+
+    public TooManyUploadsException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() { return retryAfter; }
+}
@@ -0,0 +1,92 @@
+package ae.teletronics.storage.application.hashing;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Moves per-buffer upload work (SHA-256, head sniffing) off the thread that delivers the
+ * body, usually a Netty event loop, onto a dedicated bounded scheduler.
+ * <p>
+ * The stage is pipelined: while a worker hashes buffer n, the event loop keeps reading up to
+ * {@code prefetch} buffers ahead and the storage writes buffers already hashed. The prefetch
+ * queue is the only extra memory, so backpressure from storage still reaches the socket.
+ */
+@Component
+public class HashingStage implements DisposableBean {
+
+    @Nullable
+    private final Scheduler scheduler; // null = run inline on the delivering thread
+    private final int prefetch;
+    private final Timer offloaded;
+    private final DistributionSummary throughput;
+
+    @Autowired
+    public HashingStage(MeterRegistry meters,
+                        @Value("${storage.hashing.threads:0}") int threads,
+                        @Value("${storage.hashing.prefetch:8}") int prefetch) {
+        this(Schedulers.newParallel("upload-hash",
+                threads > 0 ? threads : Runtime.getRuntime().availableProcessors(), true), prefetch, meters);
+    }
+
+    private HashingStage(@Nullable Scheduler scheduler, int prefetch, MeterRegistry meters) {
+        this.scheduler = scheduler;
+        this.prefetch = Math.max(1, prefetch);
+        this.offloaded = Timer.builder("storage.hash.offloaded")
+                .description("Hashing time moved off the event loop")
+                .register(meters);
+        this.throughput = DistributionSummary.builder("storage.hash.throughput")
+                .description("Per-upload hashing throughput")
+                .baseUnit("bytes/s")
+                .register(meters);
+    }
+
+    /** Runs the work on the subscribing thread; for tests and tools. */
+    public static HashingStage inline() {
+        return new HashingStage(null, 1, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Applies {@code work} to every buffer on the hashing scheduler, in order, before passing
+     * the buffer downstream. {@code work} must not retain or release the buffer.
+     */
+    public Flux<DataBuffer> apply(Flux<DataBuffer> in, Consumer<DataBuffer> work) {
+        return Flux.defer(() -> {
+            final long[] totals = new long[2]; // bytes, nanos; only touched by the serial worker
+            Flux<DataBuffer> source = scheduler == null ? in : in.publishOn(scheduler, prefetch);
+            return source
+                    .doOnNext(db -> {
+                        int bytes = db.readableByteCount();
+                        long t0 = System.nanoTime();
+                        work.accept(db);
+                        long spent = System.nanoTime() - t0;
+                        totals[0] += bytes;
+                        totals[1] += spent;
+                        if (scheduler != null) offloaded.record(spent, TimeUnit.NANOSECONDS);
+                    })
+                    .doOnComplete(() -> {
+                        if (totals[1] > 0) throughput.record(totals[0] * 1e9 / totals[1]);
+                    })
+                    .doOnDiscard(DataBuffer.class, DataBufferUtils::release); // queued buffers on cancel
+        });
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) scheduler.dispose();
+    }
+}
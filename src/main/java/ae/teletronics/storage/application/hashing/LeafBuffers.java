@@ -0,0 +1,60 @@
+package ae.teletronics.storage.application.hashing;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Leaf buffers shared by every TREE hasher in the process, so the bytes held in leaves (filling
+ * or being hashed) stay under one cap however many uploads run. Buffers are recycled; at the
+ * cap {@link #take} hands out a future that completes with the next buffer given back, so no
+ * thread ever waits for one.
+ */
+final class LeafBuffers {
+
+    private final int leafSize;
+    private final int max;
+    private final AtomicInteger allocated = new AtomicInteger();
+    private final ConcurrentLinkedQueue<byte[]> free = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<CompletableFuture<byte[]>> waiters = new ConcurrentLinkedQueue<>();
+
+    LeafBuffers(int leafSize, long maxBytes) {
+        if (leafSize <= 0) throw new IllegalArgumentException("leafSize must be > 0");
+        this.leafSize = leafSize;
+        this.max = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxBytes / leafSize));
+    }
+
+    int leafSize() { return leafSize; }
+
+    /** Buffers handed out and not given back. */
+    int inUse() { return allocated.get() - free.size(); }
+
+    CompletableFuture<byte[]> take() {
+        byte[] b = free.poll();
+        if (b != null) return CompletableFuture.completedFuture(b);
+        if (allocated.incrementAndGet() <= max) return CompletableFuture.completedFuture(new byte[leafSize]);
+        allocated.decrementAndGet();
+
+        CompletableFuture<byte[]> waiter = new CompletableFuture<>();
+        waiters.offer(waiter);
+        // a buffer may have come back between the poll above and the offer
+        b = free.poll();
+        if (b != null) give(b);
+        return waiter;
+    }
+
+    void give(byte[] b) {
+        CompletableFuture<byte[]> w;
+        while ((w = waiters.poll()) != null) {
+            if (w.complete(b)) return;
+        }
+        free.offer(b);
+        // a waiter may have queued between the poll above and the offer
+        if (!waiters.isEmpty() && (b = free.poll()) != null) give(b);
+    }
+
+    /** Withdraws a {@link #take} nobody will use; a buffer it already got goes back. */
+    void abandon(CompletableFuture<byte[]> taken) {
+        if (!taken.cancel(false)) give(taken.join());
+    }
+}
@@ -0,0 +1,159 @@
+package ae.teletronics.storage.application.hashing;
+
+import java.nio.ByteBuffer;
+
+/**
+ * SHA-256 (FIPS 180-4) whose intermediate state can be exported and restored.
+ * <p>
+ * {@link java.security.MessageDigest} cannot be serialized, so resumable uploads
+ * checkpoint this state after every committed segment instead of re-hashing from byte 0.
+ * Not thread-safe.
+ */
+public final class ResumableSha256 {
+
+    private static final int[] K = {
+            0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+            0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+            0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+            0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7, 0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+            0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13, 0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+            0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3, 0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+            0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5, 0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+            0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2
+    };
+
+    private static final int[] IV = {
+            0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a, 0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19
+    };
+
+    /** Exported layout: 8 state words, 8-byte message length, then the pending partial block. */
+    private static final int STATE_HEADER = 8 * 4 + 8;
+
+    private final int[] h = IV.clone();
+    private final byte[] block = new byte[64];
+    private final int[] w = new int[64];
+    private int blockLen;
+    private long byteCount;
+    private byte[] scratch; // staging for off-heap input, allocated on first use
+
+    public ResumableSha256() { }
+
+    /** Restores a digest from {@link #exportState()}; an empty/null state starts from scratch. */
+    public static ResumableSha256 restore(byte[] state) {
+        ResumableSha256 sha = new ResumableSha256();
+        if (state == null || state.length == 0) return sha;
+        if (state.length < STATE_HEADER || state.length > STATE_HEADER + 63) {
+            throw new IllegalArgumentException("Invalid SHA-256 checkpoint");
+        }
+        ByteBuffer in = ByteBuffer.wrap(state);
+        for (int i = 0; i < 8; i++) sha.h[i] = in.getInt();
+        sha.byteCount = in.getLong();
+        sha.blockLen = in.remaining();
+        in.get(sha.block, 0, sha.blockLen);
+        if (sha.byteCount % 64 != sha.blockLen) {
+            throw new IllegalArgumentException("Invalid SHA-256 checkpoint");
+        }
+        return sha;
+    }
+
+    /** Snapshot of the running state (at most 103 bytes); the digest keeps accepting input. */
+    public byte[] exportState() {
+        ByteBuffer out = ByteBuffer.allocate(STATE_HEADER + blockLen);
+        for (int v : h) out.putInt(v);
+        out.putLong(byteCount);
+        out.put(block, 0, blockLen);
+        return out.array();
+    }
+
+    /** Number of bytes hashed so far. */
+    public long byteCount() { return byteCount; }
+
+    public void update(byte[] src, int off, int len) {
+        byteCount += len;
+        if (blockLen > 0) {
+            int n = Math.min(len, 64 - blockLen);
+            System.arraycopy(src, off, block, blockLen, n);
+            blockLen += n;
+            off += n;
+            len -= n;
+            if (blockLen < 64) return;
+            compress(block, 0);
+            blockLen = 0;
+        }
+        while (len >= 64) {
+            compress(src, off);
+            off += 64;
+            len -= 64;
+        }
+        if (len > 0) {
+            System.arraycopy(src, off, block, 0, len);
+            blockLen = len;
+        }
+    }
+
+    /** Consumes the remaining bytes of {@code src}. */
+    public void update(ByteBuffer src) {
+        if (src.hasArray()) {
+            int len = src.remaining();
+            update(src.array(), src.arrayOffset() + src.position(), len);
+            src.position(src.position() + len);
+            return;
+        }
+        if (scratch == null) scratch = new byte[8192];
+        while (src.hasRemaining()) {
+            int n = Math.min(scratch.length, src.remaining());
+            src.get(scratch, 0, n);
+            update(scratch, 0, n);
+        }
+    }
+
+    /** Final digest of everything hashed so far; does not modify this instance. */
+    public byte[] digest() {
+        int[] state = h.clone();
+        byte[] tail = new byte[blockLen < 56 ? 64 : 128];
+        System.arraycopy(block, 0, tail, 0, blockLen);
+        tail[blockLen] = (byte) 0x80;
+        long bits = byteCount << 3;
+        for (int i = 0; i < 8; i++) {
+            tail[tail.length - 1 - i] = (byte) (bits >>> (8 * i));
+        }
+        int[] scratch = new int[64];
+        for (int off = 0; off < tail.length; off += 64) {
+            compress(state, scratch, tail, off);
+        }
+        ByteBuffer out = ByteBuffer.allocate(32);
+        for (int v : state) out.putInt(v);
+        return out.array();
+    }
+
+    private void compress(byte[] buf, int off) {
+        compress(h, w, buf, off);
+    }
+
+    private static void compress(int[] h, int[] w, byte[] buf, int off) {
+        for (int t = 0; t < 16; t++) {
+            int i = off + (t << 2);
+            w[t] = (buf[i] << 24) | ((buf[i + 1] & 0xff) << 16) | ((buf[i + 2] & 0xff) << 8) | (buf[i + 3] & 0xff);
+        }
+        for (int t = 16; t < 64; t++) {
+            int w15 = w[t - 15];
+            int w2 = w[t - 2];
+            int s0 = Integer.rotateRight(w15, 7) ^ Integer.rotateRight(w15, 18) ^ (w15 >>> 3);
+            int s1 = Integer.rotateRight(w2, 17) ^ Integer.rotateRight(w2, 19) ^ (w2 >>> 10);
+            w[t] = w[t - 16] + s0 + w[t - 7] + s1;
+        }
+        int a = h[0], b = h[1], c = h[2], d = h[3], e = h[4], f = h[5], g = h[6], hh = h[7];
+        for (int t = 0; t < 64; t++) {
+            int s1 = Integer.rotateRight(e, 6) ^ Integer.rotateRight(e, 11) ^ Integer.rotateRight(e, 25);
+            int ch = (e & f) ^ (~e & g);
+            int t1 = hh + s1 + ch + K[t] + w[t];
+            int s0 = Integer.rotateRight(a, 2) ^ Integer.rotateRight(a, 13) ^ Integer.rotateRight(a, 22);
+            int maj = (a & b) ^ (a & c) ^ (b & c);
+            int t2 = s0 + maj;
+            hh = g; g = f; f = e; e = d + t1;
+            d = c; c = b; b = a; a = t1 + t2;
+        }
+        h[0] += a; h[1] += b; h[2] += c; h[3] += d;
+        h[4] += e; h[5] += f; h[6] += g; h[7] += hh;
+    }
+}
@@ -0,0 +1,222 @@
+package ae.teletronics.storage.application.hashing;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.lang.Nullable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Merkle-tree SHA-256 over fixed-size leaves, for one stream. {@link #feed} only copies bytes
+ * into the current leaf; full leaves are hashed on the pool, so a single large upload uses as
+ * many cores as there are leaves in flight.
+ * <p>
+ * Leaf = SHA-256(0x00 || bytes), node = SHA-256(0x01 || left || right), an odd node is promoted
+ * unchanged (RFC 6962 domain separation, so a leaf can never pass for a node). An empty stream
+ * has one empty leaf.
+ * <p>
+ * Nothing blocks: with {@code maxInFlight} leaves of this stream still hashing, or with every
+ * shared {@link LeafBuffers} buffer taken, the next body buffer waits for one to free up and
+ * backpressure holds the source meanwhile. A stream thus holds at most
+ * {@code (maxInFlight + 1) * leafSize}, and all streams together no more than the shared cap.
+ */
+public final class TreeHasher {
+
+    private final int leafSize;
+    private final int maxInFlight;
+    private final Executor pool;
+    private final LeafBuffers buffers;
+    private final List<CompletableFuture<byte[]>> leaves = new ArrayList<>();
+
+    // Touched by one buffer at a time (concatMap), but from whichever thread resumed it
+    @Nullable
+    private byte[] leaf;
+    @Nullable
+    private CompletableFuture<byte[]> pending; // leaf buffer being waited for
+    private int fill;
+    private int settled; // leaves[0, settled) are known to be done
+    private long size;
+    private boolean sealed;
+    private boolean abandoned;
+
+    /** Unbounded buffers; for tests. */
+    TreeHasher(int leafSize, int maxInFlight, Executor pool) {
+        this(new LeafBuffers(leafSize, Long.MAX_VALUE), maxInFlight, pool);
+    }
+
+    TreeHasher(LeafBuffers buffers, int maxInFlight, Executor pool) {
+        this.leafSize = buffers.leafSize();
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.pool = pool;
+        this.buffers = buffers;
+    }
+
+    public int leafSize() { return leafSize; }
+
+    public long size() { return size; }
+
+    /**
+     * Hashes {@code in} on its way through, in order; subscribe once. The tail leaf is submitted
+     * when {@code in} completes; a cancelled or failed stream gives its buffers back.
+     */
+    public Flux<DataBuffer> feed(Flux<DataBuffer> in) {
+        return in.concatMap(db -> absorb(db.asByteBuffer()).thenReturn(db)
+                        .doOnCancel(() -> DataBufferUtils.release(db))
+                        .doOnError(e -> DataBufferUtils.release(db)), 0)
+                .doOnComplete(this::seal)
+                .doFinally(signal -> {
+                    if (signal != SignalType.ON_COMPLETE) abandon();
+                });
+    }
+
+    /** Combines all leaves; call once {@link #feed} has completed. */
+    public Mono<Tree> finish() {
+        seal();
+        List<CompletableFuture<byte[]>> all = List.copyOf(leaves);
+        return Mono.fromFuture(CompletableFuture.allOf(all.toArray(CompletableFuture[]::new))
+                .thenApply(v -> {
+                    List<byte[]> digests = all.stream().map(CompletableFuture::join).toList();
+                    return new Tree(root(digests), concat(digests), leafSize, size);
+                }));
+    }
+
+    /** Copies {@code src} into leaves, pausing (not blocking) whenever a new leaf has to wait. */
+    private Mono<Void> absorb(ByteBuffer src) {
+        return Mono.defer(() -> {
+            synchronized (this) {
+                while (!abandoned && src.hasRemaining()) {
+                    if (leaf == null) {
+                        CompletableFuture<byte[]> busy = oldestIfFull();
+                        if (busy != null) return Mono.fromFuture(busy, true).then(absorb(src));
+                        if (pending == null) pending = buffers.take();
+                        if (!pending.isDone()) return Mono.fromFuture(pending, true).then(absorb(src));
+                        leaf = pending.join();
+                        pending = null;
+                    }
+                    int n = Math.min(src.remaining(), leafSize - fill);
+                    src.get(leaf, fill, n);
+                    fill += n;
+                    size += n;
+                    if (fill == leafSize) submitLeaf();
+                }
+                return Mono.empty();
+            }
+        });
+    }
+
+    @Nullable
+    private CompletableFuture<byte[]> oldestIfFull() {
+        while (settled < leaves.size() && leaves.get(settled).isDone()) settled++;
+        return leaves.size() - settled >= maxInFlight ? leaves.get(settled) : null;
+    }
+
+    private void submitLeaf() {
+        final byte[] data = leaf;
+        final int len = fill;
+        leaf = null;
+        fill = 0;
+        leaves.add(CompletableFuture.supplyAsync(() -> {
+            try {
+                return leafHash(data, 0, len);
+            } finally {
+                buffers.give(data);
+            }
+        }, pool));
+    }
+
+    private synchronized void seal() {
+        if (sealed) return;
+        sealed = true;
+        if (leaf != null) {
+            submitLeaf();
+        } else if (leaves.isEmpty()) {
+            leaves.add(CompletableFuture.completedFuture(leafHash(new byte[0], 0, 0)));
+        }
+    }
+
+    private void abandon() {
+        byte[] partial;
+        CompletableFuture<byte[]> waiting;
+        synchronized (this) {
+            abandoned = true;
+            partial = leaf;
+            waiting = pending;
+            leaf = null;
+            pending = null;
+        }
+        // outside the lock: giving back may resume another stream's hasher right here
+        if (partial != null) buffers.give(partial);
+        if (waiting != null) buffers.abandon(waiting);
+    }
+
+    /** Result of a finished tree. */
+    public record Tree(byte[] root, byte[] leafDigests, int leafSize, long size) {
+        public String rootHex() { return HexFormat.of().formatHex(root); }
+        public int leafCount() { return leafDigests.length / 32; }
+
+        /** The file's content key: scoped to the mode, so it never equals a plain SHA-256. */
+        public String key() { return "tree:" + rootHex(); }
+    }
+
+    // --- tree math (also used to verify single leaves) ------------------------
+
+    public static byte[] leafHash(byte[] data, int off, int len) {
+        MessageDigest md = sha256();
+        md.update((byte) 0x00);
+        md.update(data, off, len);
+        return md.digest();
+    }
+
+    public static byte[] leafHash(ByteBuffer data) {
+        MessageDigest md = sha256();
+        md.update((byte) 0x00);
+        md.update(data);
+        return md.digest();
+    }
+
+    public static byte[] root(List<byte[]> leafDigests) {
+        if (leafDigests.isEmpty()) throw new IllegalArgumentException("no leaves");
+        List<byte[]> level = leafDigests;
+        while (level.size() > 1) {
+            List<byte[]> up = new ArrayList<>((level.size() + 1) / 2);
+            for (int i = 0; i < level.size(); i += 2) {
+                if (i + 1 == level.size()) {
+                    up.add(level.get(i));
+                } else {
+                    MessageDigest md = sha256();
+                    md.update((byte) 0x01);
+                    md.update(level.get(i));
+                    md.update(level.get(i + 1));
+                    up.add(md.digest());
+                }
+            }
+            level = up;
+        }
+        return level.get(0);
+    }
+
+    private static byte[] concat(List<byte[]> digests) {
+        byte[] out = new byte[digests.size() * 32];
+        for (int i = 0; i < digests.size(); i++) {
+            System.arraycopy(digests.get(i), 0, out, i * 32, 32);
+        }
+        return out;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (Exception e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
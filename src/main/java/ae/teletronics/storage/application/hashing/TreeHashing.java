@@ -0,0 +1,71 @@
+package ae.teletronics.storage.application.hashing;
+
+import ae.teletronics.storage.domain.FingerprintMode;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Locale;
+
+/**
+ * Fingerprint mode for single-request uploads, plus the shared pool TREE leaves are hashed on
+ * and the shared leaf buffers ({@code storage.fingerprint.max-buffered} across all uploads).
+ * <p>
+ * In {@code tree} mode no flat SHA-256 runs over the body unless the client declared one to
+ * check: the file is keyed by {@link TreeHasher.Tree#key()}, which takes the plain digest's
+ * place in the owner dedup index and the shared-blob keys. It only matches other TREE uploads.
+ */
+@Component
+public class TreeHashing implements DisposableBean {
+
+    private final FingerprintMode mode;
+    private final int leafSize;
+    private final int maxInFlight;
+    @Nullable
+    private final Scheduler pool; // null = hash leaves inline
+    private final LeafBuffers buffers;
+
+    @Autowired
+    public TreeHashing(@Value("${storage.fingerprint.mode:sha256}") String mode,
+                       @Value("${storage.fingerprint.leaf-size:1MB}") DataSize leafSize,
+                       @Value("${storage.fingerprint.parallelism:0}") int parallelism,
+                       @Value("${storage.fingerprint.max-buffered:64MB}") DataSize maxBuffered) {
+        this.mode = FingerprintMode.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+        this.leafSize = (int) Math.min(Integer.MAX_VALUE - 8, leafSize.toBytes());
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.maxInFlight = threads;
+        this.pool = this.mode == FingerprintMode.TREE ? Schedulers.newParallel("tree-hash", threads, true) : null;
+        this.buffers = new LeafBuffers(this.leafSize, maxBuffered.toBytes());
+    }
+
+    private TreeHashing(FingerprintMode mode, int leafSize) {
+        this.mode = mode;
+        this.leafSize = leafSize;
+        this.maxInFlight = 2;
+        this.pool = null;
+        this.buffers = new LeafBuffers(leafSize, Long.MAX_VALUE);
+    }
+
+    /** Hashes leaves on the calling thread; for tests and tools. */
+    public static TreeHashing inline(FingerprintMode mode, int leafSize) {
+        return new TreeHashing(mode, leafSize);
+    }
+
+    public FingerprintMode mode() { return mode; }
+
+    public int leafSize() { return leafSize; }
+
+    public TreeHasher newHasher() {
+        return new TreeHasher(buffers, maxInFlight, pool == null ? Runnable::run : pool::schedule);
+    }
+
+    @Override
+    public void destroy() {
+        if (pool != null) pool.dispose();
+    }
+}
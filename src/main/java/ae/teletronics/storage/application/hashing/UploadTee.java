@@ -0,0 +1,111 @@
+package ae.teletronics.storage.application.hashing;
+
+import io.netty.buffer.ByteBuf;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Per-upload observer for the body as it passes to storage: feeds every byte to a hash and
+ * keeps the first {@code headLimit} bytes for content sniffing, without touching the buffer's
+ * read position.
+ * <p>
+ * Nothing is allocated per buffer: array-backed buffers are hashed in place, others are copied
+ * through one scratch array, and the head goes into one array sized up front. Not thread-safe;
+ * the hashing stage calls {@link #accept} serially.
+ */
+public final class UploadTee implements Consumer<DataBuffer> {
+
+    private static final int SCRATCH_BYTES = 8 * 1024;
+
+    /** Where the bytes go, e.g. {@code MessageDigest::update}. */
+    @FunctionalInterface
+    public interface Sink {
+        void update(byte[] src, int off, int len);
+    }
+
+    private final Sink sink;
+    private final byte[] head;
+    private int headLen;
+    private long size;
+    private byte[] scratch; // only for buffers without an accessible array
+
+    public UploadTee(Sink sink, int headLimit) {
+        this(sink, headLimit, null);
+    }
+
+    /** Continues a head captured earlier (resumable sessions); {@code seed} counts towards the limit. */
+    public UploadTee(Sink sink, int headLimit, byte[] seed) {
+        this.sink = sink;
+        this.head = new byte[Math.max(0, headLimit)];
+        if (seed != null) {
+            headLen = Math.min(seed.length, head.length);
+            System.arraycopy(seed, 0, head, 0, headLen);
+        }
+    }
+
+    @Override
+    public void accept(DataBuffer db) {
+        int len = db.readableByteCount();
+        if (len == 0) return;
+        size += len;
+
+        if (db instanceof NettyDataBuffer n) {
+            ByteBuf bb = n.getNativeBuffer();
+            if (bb.hasArray()) {
+                consume(bb.array(), bb.arrayOffset() + bb.readerIndex(), len);
+            } else {
+                int index = bb.readerIndex();
+                for (int done = 0; done < len; ) {
+                    int c = Math.min(len - done, scratch().length);
+                    bb.getBytes(index + done, scratch, 0, c);
+                    consume(scratch, 0, c);
+                    done += c;
+                }
+            }
+            return;
+        }
+        if (db instanceof DefaultDataBuffer d) {
+            ByteBuffer nb = d.getNativeBuffer();
+            if (nb.hasArray()) {
+                consume(nb.array(), nb.arrayOffset() + d.readPosition(), len);
+                return;
+            }
+        }
+        // Generic path: read through the scratch array, then put the read position back
+        int pos = db.readPosition();
+        for (int done = 0; done < len; ) {
+            int c = Math.min(len - done, scratch().length);
+            db.read(scratch, 0, c);
+            consume(scratch, 0, c);
+            done += c;
+        }
+        db.readPosition(pos);
+    }
+
+    private void consume(byte[] src, int off, int len) {
+        if (headLen < head.length) {
+            int c = Math.min(len, head.length - headLen);
+            System.arraycopy(src, off, head, headLen, c);
+            headLen += c;
+        }
+        sink.update(src, off, len);
+    }
+
+    private byte[] scratch() {
+        if (scratch == null) scratch = new byte[SCRATCH_BYTES];
+        return scratch;
+    }
+
+    /** Bytes seen so far. */
+    public long size() { return size; }
+
+    /** Captured head, trimmed to what was seen (one copy per upload at most). */
+    public byte[] head() {
+        return headLen == head.length ? head : Arrays.copyOf(head, headLen);
+    }
+}
@@ -0,0 +1,20 @@
+package ae.teletronics.storage.domain;
+
+/**
+ * How {@code FileEntry.contentSha256} was computed.
+ */
+public enum FingerprintMode {
+    /** Plain SHA-256 over the whole stream. */
+    SHA256,
+    /**
+     * Root of a binary SHA-256 Merkle tree over fixed-size leaves (hashed in parallel), as
+     * {@code tree:} and the root in hex, so it never collides with a plain SHA-256.
+     */
+    TREE,
+    /**
+     * Composite of a parallel part upload, S3-multipart style: SHA-256 over the parts' own
+     * SHA-256 digests (raw, in part order), in hex, then {@code -} and the part count. It depends
+     * on where the parts were split, so it only matches the same upload split the same way.
+     */
+    PARTS
+}
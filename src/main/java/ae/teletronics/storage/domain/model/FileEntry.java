@@ -1,5 +1,6 @@
 package ae.teletronics.storage.domain.model;
 
+import ae.teletronics.storage.domain.FingerprintMode;
 import ae.teletronics.storage.domain.Visibility;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
@@ -18,7 +19,8 @@ import java.util.Objects;
 
 /**
  * Mongo document that stores metadata about an uploaded file.
- * The actual bytes are stored via a StoragePort implementation.
+ * The actual bytes are stored via a StoragePort implementation, except for small files,
+ * whose bytes are kept inline in this document.
  *
  * Uniqueness rules (scoped to the owner):
  *  - (ownerId + filenameLc) must be unique
@@ -69,10 +71,22 @@ public class FileEntry {
 
     /**
      * SHA-256 of the content for duplicate-by-content detection (per owner).
-     * (Hex-encoded lowercase string)
+     * (Hex-encoded lowercase string; how it was computed depends on {@link #fingerprintMode})
      */
     private String contentSha256;
 
+    /** How contentSha256 was computed; null on entries written before the modes existed (= SHA256). */
+    private FingerprintMode fingerprintMode;
+
+    /** Merkle root (hex) of a TREE fingerprint; null otherwise. */
+    private String treeRoot;
+
+    /** Leaf size of a TREE fingerprint whose leaf digests live in file_leaf_hashes; 0 otherwise. */
+    private int leafSize;
+
+    /** GridFS chunk size the bytes were written with (fs.files.chunkSize is authoritative); 0 = unknown. */
+    private int chunkSize;
+
     /** Auditing & concurrency. */
     @CreatedDate
     @Indexed(name = "idx_createdAt") // useful for default sort & pagination
@@ -81,8 +95,14 @@ public class FileEntry {
     @LastModifiedDate
     private Instant updatedAt;
 
+    @Indexed(name = "idx_gridFsId") // reference lookups by the orphan collector
     String gridFsId; // ObjectId string
 
+    /** True when gridFsId is a reference-counted SharedBlob (keyed by contentSha256), not owned outright. */
+    private boolean sharedBlob;
+
+    /** The whole content of a small file, kept here instead of in GridFS (gridFsId is null then). */
+    private byte[] inlineData;
 
     @Version
     private Long version;
@@ -165,6 +185,20 @@ public class FileEntry {
     public String getContentSha256() { return contentSha256; }
     public void setContentSha256(String contentSha256) { this.contentSha256 = contentSha256; }
 
+    public FingerprintMode getFingerprintMode() {
+        return fingerprintMode == null ? FingerprintMode.SHA256 : fingerprintMode;
+    }
+    public void setFingerprintMode(FingerprintMode fingerprintMode) { this.fingerprintMode = fingerprintMode; }
+
+    public String getTreeRoot() { return treeRoot; }
+    public void setTreeRoot(String treeRoot) { this.treeRoot = treeRoot; }
+
+    public int getLeafSize() { return leafSize; }
+    public void setLeafSize(int leafSize) { this.leafSize = leafSize; }
+
+    public int getChunkSize() { return chunkSize; }
+    public void setChunkSize(int chunkSize) { this.chunkSize = chunkSize; }
+
     public Instant getCreatedAt() { return createdAt; }
     public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
 
@@ -182,6 +216,13 @@ public class FileEntry {
         this.gridFsId = gridFsId;
     }
 
+    public boolean isSharedBlob() { return sharedBlob; }
+    public void setSharedBlob(boolean sharedBlob) { this.sharedBlob = sharedBlob; }
+
+    public byte[] getInlineData() { return inlineData; }
+    public void setInlineData(byte[] inlineData) { this.inlineData = inlineData; }
+    public boolean isInline() { return inlineData != null; }
+
     /* -------------------- Equality by id -------------------- */
 
     @Override
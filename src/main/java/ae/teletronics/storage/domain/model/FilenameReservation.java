@@ -0,0 +1,67 @@
+package ae.teletronics.storage.domain.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Claim on (ownerId, filenameLc) held while an upload streams, so a second upload of the
+ * same name fails before it writes a byte. Released once the FileEntry is saved (which
+ * then owns the name through its own unique index) or the upload fails.
+ * Claims left behind by a crash expire via TTL on `expiresAt`.
+ */
+@Document(collection = "filename_reservations")
+@CompoundIndex(name = "uniq_owner_filename", def = "{'ownerId': 1, 'filenameLc': 1}", unique = true)
+public class FilenameReservation {
+
+    @Id
+    private String id;
+
+    private String ownerId;
+
+    private String filenameLc;
+
+    private Instant createdAt;
+
+    @Indexed(name = "ttl_expiresAt", expireAfterSeconds = 0)
+    private Instant expiresAt;
+
+    public FilenameReservation() {}
+
+    public FilenameReservation(String ownerId, String filenameLc, Instant createdAt, Instant expiresAt) {
+        this.ownerId = ownerId;
+        this.filenameLc = filenameLc;
+        this.createdAt = createdAt;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getOwnerId() { return ownerId; }
+    public void setOwnerId(String ownerId) { this.ownerId = ownerId; }
+
+    public String getFilenameLc() { return filenameLc; }
+    public void setFilenameLc(String filenameLc) { this.filenameLc = filenameLc; }
+
+    public Instant getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+
+    public Instant getExpiresAt() { return expiresAt; }
+    public void setExpiresAt(Instant expiresAt) { this.expiresAt = expiresAt; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof FilenameReservation)) return false;
+        FilenameReservation that = (FilenameReservation) o;
+        return Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() { return Objects.hash(id); }
+}
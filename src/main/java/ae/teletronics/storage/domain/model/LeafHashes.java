@@ -0,0 +1,75 @@
+package ae.teletronics.storage.domain.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Leaf digests of a TREE-fingerprinted blob, so a leaf (e.g. one covered by a range read) can
+ * be verified on its own. Keyed by gridFsId: files sharing a blob share its leaves.
+ * <p>
+ * {@code digests} is the concatenation of the 32-byte leaf hashes in order. A document holds at
+ * most {@link #MAX_LEAVES} of them (16 MiB BSON limit): about 512 GiB at 1 MiB leaves. Blobs with
+ * more leaves get none stored.
+ */
+@Document(collection = "file_leaf_hashes")
+public class LeafHashes {
+
+    public static final int DIGEST_BYTES = 32;
+
+    /** Leaves that fit one document, with room to spare for the other fields. */
+    public static final int MAX_LEAVES = (16 * 1024 * 1024 - 64 * 1024) / DIGEST_BYTES;
+
+    @Id
+    private String gridFsId;
+
+    private int leafSize;
+
+    private long size;
+
+    private byte[] digests;
+
+    public LeafHashes() {}
+
+    public LeafHashes(String gridFsId, int leafSize, long size, byte[] digests) {
+        this.gridFsId = gridFsId;
+        this.leafSize = leafSize;
+        this.size = size;
+        this.digests = digests;
+    }
+
+    public int leafCount() {
+        return digests == null ? 0 : digests.length / DIGEST_BYTES;
+    }
+
+    /** Digest of leaf {@code index} (covering bytes {@code [index * leafSize, (index + 1) * leafSize)}). */
+    public byte[] leaf(int index) {
+        Objects.checkIndex(index, leafCount());
+        return Arrays.copyOfRange(digests, index * DIGEST_BYTES, (index + 1) * DIGEST_BYTES);
+    }
+
+    public String getGridFsId() { return gridFsId; }
+    public void setGridFsId(String gridFsId) { this.gridFsId = gridFsId; }
+
+    public int getLeafSize() { return leafSize; }
+    public void setLeafSize(int leafSize) { this.leafSize = leafSize; }
+
+    public long getSize() { return size; }
+    public void setSize(long size) { this.size = size; }
+
+    public byte[] getDigests() { return digests; }
+    public void setDigests(byte[] digests) { this.digests = digests; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof LeafHashes)) return false;
+        LeafHashes that = (LeafHashes) o;
+        return Objects.equals(gridFsId, that.gridFsId);
+    }
+
+    @Override
+    public int hashCode() { return Objects.hash(gridFsId); }
+}
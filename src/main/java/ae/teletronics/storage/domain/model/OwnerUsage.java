@@ -0,0 +1,50 @@
+package ae.teletronics.storage.domain.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Running totals of what one owner stores, kept in step with FileEntry commits and deletes so
+ * quota checks and the usage endpoint never aggregate {@code files}. {@code quotaBytes}
+ * overrides the configured default for this owner when set.
+ */
+@Document(collection = "owner_usage")
+public class OwnerUsage {
+
+    @Id
+    private String ownerId;
+
+    private long bytes;
+
+    private long files;
+
+    private Long quotaBytes;
+
+    private Instant updatedAt;
+
+    public OwnerUsage() {}
+
+    public OwnerUsage(String ownerId, long bytes, long files) {
+        this.ownerId = ownerId;
+        this.bytes = bytes;
+        this.files = files;
+        this.updatedAt = Instant.now();
+    }
+
+    public String getOwnerId() { return ownerId; }
+    public void setOwnerId(String ownerId) { this.ownerId = ownerId; }
+
+    public long getBytes() { return bytes; }
+    public void setBytes(long bytes) { this.bytes = bytes; }
+
+    public long getFiles() { return files; }
+    public void setFiles(long files) { this.files = files; }
+
+    public Long getQuotaBytes() { return quotaBytes; }
+    public void setQuotaBytes(Long quotaBytes) { this.quotaBytes = quotaBytes; }
+
+    public Instant getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
+}
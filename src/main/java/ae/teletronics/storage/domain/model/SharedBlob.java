@@ -0,0 +1,58 @@
+package ae.teletronics.storage.domain.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Content-addressed blob shared across owners (only used when `storage.cas.enabled`).
+ * Keyed by SHA-256; `refCount` is the number of FileEntry documents pointing at `gridFsId`.
+ * The blob is dropped when the last reference is released.
+ */
+@Document(collection = "blobs")
+public class SharedBlob {
+
+    /** Lowercase hex SHA-256 of the content. */
+    @Id
+    private String sha256;
+
+    @Indexed(name = "idx_gridFsId")
+    private String gridFsId;
+
+    private long size;
+
+    private long refCount;
+
+    private Instant createdAt;
+
+    public SharedBlob() {}
+
+    public String getSha256() { return sha256; }
+    public void setSha256(String sha256) { this.sha256 = sha256; }
+
+    public String getGridFsId() { return gridFsId; }
+    public void setGridFsId(String gridFsId) { this.gridFsId = gridFsId; }
+
+    public long getSize() { return size; }
+    public void setSize(long size) { this.size = size; }
+
+    public long getRefCount() { return refCount; }
+    public void setRefCount(long refCount) { this.refCount = refCount; }
+
+    public Instant getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SharedBlob)) return false;
+        SharedBlob that = (SharedBlob) o;
+        return Objects.equals(sha256, that.sha256);
+    }
+
+    @Override
+    public int hashCode() { return Objects.hash(sha256); }
+}
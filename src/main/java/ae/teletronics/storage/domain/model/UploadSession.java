@@ -0,0 +1,149 @@
+package ae.teletronics.storage.domain.model;
+
+import ae.teletronics.storage.domain.Visibility;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A resumable upload in progress.
+ * Segments are stored as independent blobs as they arrive; the running SHA-256 state is
+ * checkpointed with each committed segment so a resume never re-hashes earlier bytes.
+ * Alternatively, numbered parts may be uploaded concurrently (S3-multipart style) and are
+ * stitched in part-number order on commit; a session uses either segments or parts, not both.
+ * Abandoned sessions expire via TTL on `expiresAt`.
+ */
+@Document(collection = "upload_sessions")
+public class UploadSession {
+
+    @Id
+    private String id;
+
+    @Indexed(name = "idx_owner")
+    private String ownerId;
+
+    /** Target metadata, applied on commit. */
+    private String filename;
+    private Visibility visibility = Visibility.PRIVATE;
+    private List<String> tags = new ArrayList<>();
+    private String contentType;
+
+    /** Filename reservation held until commit/abort (see FilenameReservation). */
+    private String reservationId;
+
+    /** Total size announced by the client at creation, or -1 when unknown. */
+    private long declaredSize = -1;
+
+    /** Bytes durably stored so far (= offset of the next segment). */
+    private long committedOffset;
+
+    /** Number of committed segments (= number of the next segment). */
+    private int segmentCount;
+
+    /** Committed segments in byte order. */
+    private List<Segment> segments = new ArrayList<>();
+
+    /** Parts uploaded in parallel, keyed by part number (as string: Mongo field names). */
+    private Map<String, Part> parts = new HashMap<>();
+
+    /** Exported {@code ResumableSha256} state covering [0, committedOffset). */
+    private byte[] hashState;
+
+    /** First bytes of the content, kept for content-type sniffing at commit. */
+    private byte[] head;
+
+    @CreatedDate
+    private Instant createdAt;
+
+    @Indexed(name = "ttl_expiresAt", expireAfterSeconds = 0)
+    private Instant expiresAt;
+
+    public UploadSession() {}
+
+    /** One stored segment: a standalone blob covering [offset, offset + size). */
+    public record Segment(String gridFsId, long offset, long size) {}
+
+    /** One independently stored part; {@code sha256} covers this part only. */
+    public record Part(int number, String gridFsId, long size, String sha256) {}
+
+    // Getters/setters
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getOwnerId() { return ownerId; }
+    public void setOwnerId(String ownerId) { this.ownerId = ownerId; }
+
+    public String getFilename() { return filename; }
+    public void setFilename(String filename) { this.filename = filename; }
+
+    public Visibility getVisibility() { return visibility; }
+    public void setVisibility(Visibility visibility) { this.visibility = visibility; }
+
+    public List<String> getTags() { return tags; }
+    public void setTags(List<String> tags) { this.tags = tags == null ? new ArrayList<>() : tags; }
+
+    public String getContentType() { return contentType; }
+    public void setContentType(String contentType) { this.contentType = contentType; }
+
+    public String getReservationId() { return reservationId; }
+    public void setReservationId(String reservationId) { this.reservationId = reservationId; }
+
+    public long getDeclaredSize() { return declaredSize; }
+    public void setDeclaredSize(long declaredSize) { this.declaredSize = declaredSize; }
+
+    public long getCommittedOffset() { return committedOffset; }
+    public void setCommittedOffset(long committedOffset) { this.committedOffset = committedOffset; }
+
+    public int getSegmentCount() { return segmentCount; }
+    public void setSegmentCount(int segmentCount) { this.segmentCount = segmentCount; }
+
+    public List<Segment> getSegments() { return segments; }
+    public void setSegments(List<Segment> segments) { this.segments = segments == null ? new ArrayList<>() : segments; }
+
+    public Map<String, Part> getParts() { return parts; }
+    public void setParts(Map<String, Part> parts) { this.parts = parts == null ? new HashMap<>() : parts; }
+
+    public byte[] getHashState() { return hashState; }
+    public void setHashState(byte[] hashState) { this.hashState = hashState; }
+
+    public byte[] getHead() { return head; }
+    public void setHead(byte[] head) { this.head = head; }
+
+    public Instant getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+
+    public Instant getExpiresAt() { return expiresAt; }
+    public void setExpiresAt(Instant expiresAt) { this.expiresAt = expiresAt; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof UploadSession)) return false;
+        UploadSession that = (UploadSession) o;
+        return Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() { return Objects.hash(id); }
+
+    @Override
+    public String toString() {
+        return "UploadSession{" +
+                "id='" + id + '\'' +
+                ", ownerId='" + ownerId + '\'' +
+                ", filename='" + filename + '\'' +
+                ", committedOffset=" + committedOffset +
+                ", segmentCount=" + segmentCount +
+                ", expiresAt=" + expiresAt +
+                '}';
+    }
+}
@@ -0,0 +1,28 @@
+package ae.teletronics.storage.ports;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.lang.Nullable;
+import reactor.core.publisher.Flux;
+
+import java.nio.file.Path;
+
+/**
+ * Local copies of blob content as plain files, keyed by SHA-256, so downloads can be sent from
+ * disk (zero-copy) instead of the storage backend.
+ */
+public interface BlobFileCachePort {
+
+    /** The cached file holding exactly {@code size} bytes with digest {@code sha256}, or null. */
+    @Nullable
+    Path lookup(String sha256, long size);
+
+    /**
+     * Passes {@code content} (the whole blob) through unchanged while copying it to the cache.
+     * The copy is kept only if it completes and hashes to {@code sha256}; otherwise, or when the
+     * blob is not cacheable, {@code content} is returned as is.
+     */
+    Flux<DataBuffer> populate(String sha256, long size, Flux<DataBuffer> content);
+
+    /** Records {@code bytes} sent from a file returned by {@link #lookup}. */
+    void served(long bytes);
+}
@@ -0,0 +1,16 @@
+package ae.teletronics.storage.ports;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * Content-type detection from the first bytes of an upload and its filename.
+ */
+public interface ContentTypeDetector {
+
+    /**
+     * Best guess for {@code head}, refined by {@code filename} when the bytes alone are not
+     * specific. Emits {@code application/octet-stream} (or null) when nothing better is known.
+     */
+    @Nullable
+    String detect(byte[] head, @Nullable String filename);
+}
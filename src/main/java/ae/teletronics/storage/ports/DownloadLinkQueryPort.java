@@ -1,6 +1,8 @@
 package ae.teletronics.storage.ports;
 
 import ae.teletronics.storage.domain.model.DownloadLink;
+import ae.teletronics.storage.domain.model.FileEntry;
+import org.springframework.lang.Nullable;
 import reactor.core.publisher.Mono;
 
 public interface DownloadLinkQueryPort {
@@ -9,4 +11,18 @@ public interface DownloadLinkQueryPort {
     Mono<DownloadLink> save(DownloadLink link);
     Mono<Void> deleteAllByFileId(String fileId);
 
-}
\ No newline at end of file
+    /**
+     * Everything a download needs for {@code token}, in one round trip: the link, its file and
+     * the blob's chunk size. Empty when the token is unknown.
+     */
+    Mono<ResolvedLink> resolve(String token);
+
+    /**
+     * Forgets what this instance has cached of {@code fileId}'s links; call after the file was
+     * deleted or changed, so its tokens stop resolving to the old entry here at once.
+     */
+    Mono<Void> evictFile(String fileId);
+
+    /** {@code file} is null when the link outlived its file; {@code chunkSize} is 0 when unknown. */
+    record ResolvedLink(DownloadLink link, @Nullable FileEntry file, int chunkSize) {}
+}
@@ -7,10 +7,13 @@ import org.springframework.lang.Nullable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Collection;
+
 public interface FileEntryQueryPort {
     Mono<FileEntry> findById(String id);
 
-    // Listing with pagination + optional tag filter
+    // Listing with pagination + optional tag filter. Listed rows come without inlineData: they are
+    // for display, not for saving back or serving the bytes (load by id for that).
     Flux<FileEntry> findAllByOwnerId(String ownerId, Pageable pageable, @Nullable String tag);
     Flux<FileEntry> findAllByVisibility(Visibility visibility, Pageable pageable, @Nullable String tag);
 
@@ -30,6 +33,9 @@ public interface FileEntryQueryPort {
     Flux<FileEntry> findPublic(Pageable pageable);
     Flux<FileEntry> findPublicByTag(String tag, Pageable pageable);
 
+    /** The subset of {@code gridFsIds} that some FileEntry points at. */
+    Flux<String> findReferencedGridFsIds(Collection<String> gridFsIds);
+
     // --- NEW ---
     Mono<Void> deleteById(String id);
     Mono<Void> deleteAll();
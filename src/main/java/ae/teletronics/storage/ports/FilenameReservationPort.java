@@ -0,0 +1,16 @@
+package ae.teletronics.storage.ports;
+
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+public interface FilenameReservationPort {
+
+    /**
+     * Claims (ownerId, filenameLc) for {@code ttl}. Emits the reservation id, or empty when
+     * another upload already holds the name.
+     */
+    Mono<String> reserve(String ownerId, String filenameLc, Duration ttl);
+
+    Mono<Void> release(String reservationId);
+}
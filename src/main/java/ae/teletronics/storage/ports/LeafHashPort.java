@@ -0,0 +1,17 @@
+package ae.teletronics.storage.ports;
+
+import ae.teletronics.storage.domain.model.LeafHashes;
+import reactor.core.publisher.Mono;
+
+/**
+ * Persistence of per-blob Merkle leaf digests (TREE fingerprints only).
+ */
+public interface LeafHashPort {
+
+    /** Stores (or replaces) the leaves of {@code hashes.gridFsId}. */
+    Mono<Void> save(LeafHashes hashes);
+
+    Mono<LeafHashes> findByGridFsId(String gridFsId);
+
+    Mono<Void> deleteByGridFsId(String gridFsId);
+}
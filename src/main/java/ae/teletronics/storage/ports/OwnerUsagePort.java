@@ -0,0 +1,26 @@
+package ae.teletronics.storage.ports;
+
+import ae.teletronics.storage.domain.model.OwnerUsage;
+import reactor.core.publisher.Mono;
+
+/**
+ * Per-owner usage counters (bytes and file count), updated atomically.
+ */
+public interface OwnerUsagePort {
+
+    /**
+     * The owner's counters. The first call for an owner seeds them from the owner's existing
+     * files; after that they are only maintained by {@link #charge} and {@link #add}.
+     */
+    Mono<OwnerUsage> get(String ownerId);
+
+    /**
+     * Adds one file of {@code bytes} unless that would take the owner past {@code limit} bytes
+     * (negative = no limit). Emits whether the file was counted. The owner's counters must
+     * exist (see {@link #get}).
+     */
+    Mono<Boolean> charge(String ownerId, long bytes, long limit);
+
+    /** Unconditionally adjusts the counters of an owner that has them (e.g. after a delete). */
+    Mono<Void> add(String ownerId, long bytes, long files);
+}
@@ -1,10 +1,13 @@
 package ae.teletronics.storage.ports;
 
 import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.lang.Nullable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Instant;
+import java.util.List;
 import java.util.Map;
 
 import org.springframework.data.mongodb.gridfs.ReactiveGridFsResource;
@@ -13,7 +16,80 @@ public interface ReactiveStoragePort {
     Mono<StorageSaveResult> save(Flux<DataBuffer> content, String filename,
                                  @Nullable String contentType, Map<String, Object> metadata);
 
+    /**
+     * Same as above, with the expected length ({@code -1} when unknown) so the backend can size
+     * its storage units for the file. The default ignores it.
+     */
+    default Mono<StorageSaveResult> save(Flux<DataBuffer> content, String filename,
+                                         @Nullable String contentType, Map<String, Object> metadata,
+                                         long expectedSize) {
+        return save(content, filename, contentType, metadata);
+    }
+
     Mono<ReactiveGridFsResource> open(String gridFsId);  // <-- reactive type
+
+    /** The full content of an opened blob; backends may add flow control on top of the raw stream. */
+    default Flux<DataBuffer> content(ReactiveGridFsResource resource) {
+        return resource.getDownloadStream();
+    }
+
+    /**
+     * Streams {@code length} bytes starting at byte {@code offset}.
+     * Backends that can seek should override this; the default skips through the full stream.
+     */
+    default Flux<DataBuffer> read(String gridFsId, long offset, long length) {
+        if (length <= 0) return Flux.empty();
+        return open(gridFsId).flatMapMany(res -> DataBufferUtils.takeUntilByteCount(
+                DataBufferUtils.skipUntilByteCount(res.getDownloadStream(), offset), length));
+    }
+
+    /**
+     * Same as above when the caller already knows the blob's chunk size (e.g. from the file
+     * entry), so a backend can seek without reading the blob descriptor first; {@code chunkSize}
+     * 0 means unknown. The default ignores it.
+     */
+    default Flux<DataBuffer> read(String gridFsId, int chunkSize, long offset, long length) {
+        return read(gridFsId, offset, length);
+    }
+
+    /**
+     * Concatenates stored blobs, in order, into one new blob. Sources are consumed:
+     * once the result is emitted they no longer exist. The default copies the bytes.
+     */
+    default Mono<StorageSaveResult> compose(List<String> sourceIds, String filename,
+                                            @Nullable String contentType, Map<String, Object> metadata) {
+        Flux<DataBuffer> joined = Flux.fromIterable(sourceIds)
+                .concatMap(id -> open(id).flatMapMany(ReactiveGridFsResource::getDownloadStream));
+        return save(joined, filename, contentType, metadata)
+                .flatMap(saved -> Flux.fromIterable(sourceIds).concatMap(this::delete).then(Mono.just(saved)));
+    }
+
+    /**
+     * Blobs stored before {@code cutoff}, oldest first; used by the orphan collector.
+     * Backends that cannot enumerate their blobs return nothing and are never swept.
+     */
+    default Flux<StoredBlob> listStoredBefore(Instant cutoff) {
+        return Flux.empty();
+    }
+
+    /**
+     * The storage unit of blobs saved without an expected length (the GridFS chunk size), which
+     * upload session segments must be a multiple of to be composed without copying; 0 when the
+     * backend has none.
+     */
+    default int baseChunkSize() {
+        return 0;
+    }
+
     Mono<Void> delete(String gridFsId);
-    record StorageSaveResult(String gridFsId, long size) {}
+    /** {@code size} is -1 and {@code chunkSize} 0 when the backend doesn't report them. */
+    record StorageSaveResult(String gridFsId, long size, int chunkSize) {
+        public StorageSaveResult(String gridFsId, long size) {
+            this(gridFsId, size, 0);
+        }
+    }
+
+    /** Listing entry; {@code uploadSessionId} is set for segments/parts of an upload session. */
+    record StoredBlob(String gridFsId, long size, int chunkSize, Instant uploadedAt,
+                      @Nullable String uploadSessionId) {}
 }
@@ -0,0 +1,37 @@
+package ae.teletronics.storage.ports;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+/**
+ * Reference-counted, content-addressed blob index (cross-owner deduplication).
+ */
+public interface SharedBlobPort {
+
+    /**
+     * Adds a reference to the blob for {@code sha256}, registering {@code gridFsId} as that blob
+     * if none exists yet. Emits the gridFsId all references share; when it differs from
+     * {@code gridFsId} the caller's copy is redundant.
+     */
+    Mono<String> acquire(String sha256, String gridFsId, long size);
+
+    /**
+     * Adds a reference only if a live blob exists. Emits its gridFsId, or empty when there is none
+     * (or it is being dropped).
+     */
+    Mono<String> acquireExisting(String sha256);
+
+    /** True when a live blob exists for {@code sha256}. */
+    Mono<Boolean> exists(String sha256);
+
+    /**
+     * Drops one reference. Emits the gridFsId when that was the last one (the caller deletes
+     * the bytes); empty otherwise.
+     */
+    Mono<String> release(String sha256);
+
+    /** The subset of {@code gridFsIds} registered as shared blobs. */
+    Flux<String> findReferencedGridFsIds(Collection<String> gridFsIds);
+}
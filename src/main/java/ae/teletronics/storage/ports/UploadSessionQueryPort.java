@@ -0,0 +1,31 @@
+package ae.teletronics.storage.ports;
+
+import ae.teletronics.storage.domain.model.UploadSession;
+import org.springframework.lang.Nullable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+public interface UploadSessionQueryPort {
+    Mono<UploadSession> findById(String id);
+    Mono<UploadSession> save(UploadSession session);
+
+    /**
+     * Atomically appends a segment, advances the offset and stores the new hash checkpoint,
+     * but only if the session is still at {@code expectedOffset}. Empty if another segment won.
+     */
+    Mono<UploadSession> appendSegment(String id, long expectedOffset, UploadSession.Segment segment,
+                                      byte[] hashState, @Nullable byte[] head);
+
+    /**
+     * Sets (or replaces) part {@code part.number()}. Emits the session as it was <em>before</em>
+     * the update so a replaced part's blob can be cleaned up; empty if the session is gone.
+     */
+    Mono<UploadSession> putPart(String id, UploadSession.Part part, @Nullable byte[] head);
+
+    Mono<Void> deleteById(String id);
+
+    /** The subset of {@code ids} that are still live sessions. */
+    Flux<String> findExistingIds(Collection<String> ids);
+}
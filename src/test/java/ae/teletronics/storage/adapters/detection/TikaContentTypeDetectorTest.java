@@ -0,0 +1,50 @@
+package ae.teletronics.storage.adapters.detection;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TikaContentTypeDetectorTest {
+
+    SimpleMeterRegistry meters;
+    TikaContentTypeDetector detector;
+
+    @BeforeEach
+    void setUp() {
+        meters = new SimpleMeterRegistry();
+        detector = new TikaContentTypeDetector(meters, 16);
+    }
+
+    @Test
+    void commonFormats_areMatchedByMagic_withoutTika() {
+        byte[] png = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0, 0};
+
+        assertThat(detector.detect(png, "photo.bin")).isEqualTo("image/png");
+        assertThat(detector.detect("%PDF-1.4 ...".getBytes(StandardCharsets.US_ASCII), null))
+                .isEqualTo("application/pdf");
+        assertThat(meters.timer("storage.detect", "path", "magic").count()).isEqualTo(2);
+        assertThat(meters.timer("storage.detect", "path", "tika").count()).isZero();
+    }
+
+    @Test
+    void genericBytes_areRefinedByCachedExtension() {
+        byte[] text = "a,b,c\n1,2,3\n".getBytes(StandardCharsets.US_ASCII);
+
+        assertThat(detector.detect(text, "one.csv")).isEqualTo("text/csv");
+        assertThat(detector.detect(text, "TWO.CSV")).isEqualTo("text/csv");
+
+        assertThat(meters.counter("storage.detect.extension.cache", "result", "miss").count()).isEqualTo(1);
+        assertThat(meters.counter("storage.detect.extension.cache", "result", "hit").count()).isEqualTo(1);
+    }
+
+    @Test
+    void specificBytes_winOverAMisleadingName() {
+        byte[] html = "<!DOCTYPE html><html><head><title>x</title></head></html>".getBytes(StandardCharsets.US_ASCII);
+
+        assertThat(detector.detect(html, "page.png")).isEqualTo("text/html");
+    }
+}
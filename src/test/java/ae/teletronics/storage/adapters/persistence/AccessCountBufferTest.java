@@ -0,0 +1,158 @@
+package ae.teletronics.storage.adapters.persistence;
+
+import ae.teletronics.storage.domain.model.DownloadLink;
+import com.mongodb.bulk.BulkWriteResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class AccessCountBufferTest {
+
+    ReactiveMongoTemplate mongo;
+    ReactiveBulkOperations bulk;
+    SimpleMeterRegistry meters;
+    Map<String, Long> written; // token -> $inc of the last bulk
+    LongAdder writtenTotal;    // every $inc so far
+
+    @BeforeEach
+    void setUp() {
+        mongo = mock(ReactiveMongoTemplate.class);
+        bulk = mock(ReactiveBulkOperations.class);
+        meters = new SimpleMeterRegistry();
+        written = new ConcurrentHashMap<>();
+        writtenTotal = new LongAdder();
+        when(mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, DownloadLink.class)).thenAnswer(inv -> {
+            written.clear();
+            return bulk;
+        });
+        when(bulk.updateOne(any(Query.class), any(UpdateDefinition.class))).thenAnswer(inv -> {
+            String token = inv.getArgument(0, Query.class).getQueryObject().getString("token");
+            Number inc = (Number) inv.getArgument(1, UpdateDefinition.class).getUpdateObject()
+                    .get("$inc", Document.class).get("accessCount");
+            written.put(token, inc.longValue());
+            writtenTotal.add(inc.longValue());
+            return bulk;
+        });
+        when(bulk.execute()).thenReturn(Mono.just(BulkWriteResult.unacknowledged()));
+    }
+
+    @Test
+    void incrementsAreCoalescedIntoOneBulkPerFlush() {
+        AccessCountBuffer buffer = new AccessCountBuffer(mongo, meters, 1000);
+        for (int i = 0; i < 3; i++) buffer.increment("a");
+        buffer.increment("b");
+        verifyNoInteractions(mongo);
+        assertThat(meters.get("storage.download.access.pending").gauge().value()).isEqualTo(4);
+
+        buffer.flush().block();
+
+        verify(mongo, times(1)).bulkOps(BulkOperations.BulkMode.UNORDERED, DownloadLink.class);
+        verify(bulk, times(1)).execute();
+        assertThat(written).containsExactlyInAnyOrderEntriesOf(Map.of("a", 3L, "b", 1L));
+        assertThat(meters.get("storage.download.access.pending").gauge().value()).isZero();
+        assertThat(meters.get("storage.download.access.flushed").counter().count()).isEqualTo(4);
+    }
+
+    @Test
+    void nothingPending_writesNothing() {
+        AccessCountBuffer buffer = new AccessCountBuffer(mongo, meters, 1000);
+        buffer.increment("a");
+        buffer.flush().block();
+        buffer.flush().block(); // "a" is idle now
+
+        verify(bulk, times(1)).execute();
+    }
+
+    @Test
+    void failedFlush_keepsCountsForTheNextOne() {
+        when(bulk.execute())
+                .thenReturn(Mono.error(new IllegalStateException("down")))
+                .thenReturn(Mono.just(BulkWriteResult.unacknowledged()));
+        AccessCountBuffer buffer = new AccessCountBuffer(mongo, meters, 1000);
+        buffer.increment("a");
+        buffer.increment("a");
+
+        buffer.flush().block();
+        assertThat(meters.get("storage.download.access.flush.failures").counter().count()).isEqualTo(1);
+        assertThat(meters.get("storage.download.access.pending").gauge().value()).isEqualTo(2);
+
+        buffer.increment("a");
+        buffer.flush().block();
+        assertThat(written).containsExactlyEntriesOf(Map.of("a", 3L));
+        assertThat(meters.get("storage.download.access.flushed").counter().count()).isEqualTo(3);
+    }
+
+    @Test
+    void reachingMaxPending_flushesEarly() {
+        AccessCountBuffer buffer = new AccessCountBuffer(mongo, meters, 3);
+        buffer.increment("a");
+        buffer.increment("b");
+        verifyNoInteractions(mongo);
+
+        buffer.increment("a");
+
+        verify(bulk, times(1)).execute();
+        assertThat(written).containsExactlyInAnyOrderEntriesOf(Map.of("a", 2L, "b", 1L));
+    }
+
+    @Test
+    void incrementsRacingWithAnIdleDrop_areNotLost() throws Exception {
+        AccessCountBuffer buffer = new AccessCountBuffer(mongo, meters, Long.MAX_VALUE);
+        int perThread = 20_000;
+        CountDownLatch start = new CountDownLatch(1);
+        Runnable downloads = () -> {
+            await(start);
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < perThread; i++) buffer.increment("t" + random.nextInt(64)); // tokens go idle often
+        };
+        Thread a = new Thread(downloads), b = new Thread(downloads);
+        a.start();
+        b.start();
+        start.countDown();
+        while (a.isAlive() || b.isAlive()) buffer.flush().block();
+        a.join();
+        b.join();
+        buffer.flush().block();
+
+        assertThat(writtenTotal.sum()).isEqualTo(2L * perThread);
+        assertThat(meters.get("storage.download.access.pending").gauge().value()).isZero();
+    }
+
+    @Test
+    void shutdown_flushesWhatIsLeft() {
+        AccessCountBuffer buffer = new AccessCountBuffer(mongo, meters, 1000);
+        buffer.increment("a");
+
+        buffer.destroy();
+
+        verify(bulk).updateOne(any(Query.class), any(UpdateDefinition.class));
+        verify(mongo).bulkOps(eq(BulkOperations.BulkMode.UNORDERED), eq(DownloadLink.class));
+        assertThat(written).containsExactlyEntriesOf(Map.of("a", 1L));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package ae.teletronics.storage.adapters.persistence;
+
+import ae.teletronics.storage.adapters.persistence.repo.DownloadLinkReactiveRepository;
+import ae.teletronics.storage.adapters.storage.ChunkSizePolicy;
+import ae.teletronics.storage.adapters.storage.HotBlobCache;
+import ae.teletronics.storage.adapters.storage.GridFsReactiveAdapter;
+import ae.teletronics.storage.adapters.storage.MemoryBudget;
+import ae.teletronics.storage.domain.model.DownloadLink;
+import ae.teletronics.storage.domain.model.FileEntry;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.SimpleReactiveMongoDatabaseFactory;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.ReactiveGridFsTemplate;
+import org.springframework.data.mongodb.repository.support.ReactiveMongoRepositoryFactory;
+import org.springframework.util.unit.DataSize;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.utility.DockerImageName;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Time to first byte of a token download, p50/p99: the previous four sequential lookups (link,
+ * file, {@code fs.files}, resource) against one {@code $lookup} aggregation, for a GridFS file
+ * and for a 4 KB file kept inline, plus both through the resolved-link cache. Against a local container a round trip is ~0.1 ms, so the
+ * gap understates what a remote replica set shows. Run with {@code ./gradlew benchmark}.
+ */
+@Tag("benchmark")
+class DownloadTtfbBenchmark {
+
+    private static final int WARMUP = 300;
+    private static final int MEASURED = 3000;
+
+    static MongoDBContainer container;
+    static MongoClient client;
+    static ReactiveMongoTemplate mongo;
+    static ReactiveGridFsTemplate gridFs;
+
+    @BeforeAll
+    static void start() {
+        container = new MongoDBContainer(DockerImageName.parse("mongo:7"));
+        container.start();
+        client = MongoClients.create(container.getReplicaSetUrl());
+        SimpleReactiveMongoDatabaseFactory factory = new SimpleReactiveMongoDatabaseFactory(client, "bench");
+        mongo = new ReactiveMongoTemplate(factory);
+        gridFs = new ReactiveGridFsTemplate(factory, mongo.getConverter());
+    }
+
+    @AfterAll
+    static void stop() {
+        client.close();
+        container.stop();
+    }
+
+    @Test
+    void timeToFirstByte() {
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        GridFsReactiveAdapter storage = new GridFsReactiveAdapter(gridFs, mongo, meters,
+                new MemoryBudget(meters, DataSize.ofMegabytes(256)), ChunkSizePolicy.fixed(255 * 1024),
+                HotBlobCache.disabled(), 4, 2, 8, 2, 16);
+        DownloadLinkReactiveRepository repo = new ReactiveMongoRepositoryFactory(mongo)
+                .getRepository(DownloadLinkReactiveRepository.class);
+        AccessCountBuffer accessCounts = new AccessCountBuffer(mongo, meters, 10_000);
+        DownloadLinkAdapter links = new DownloadLinkAdapter(repo, mongo, ResolvedLinkCache.disabled(), accessCounts);
+        DownloadLinkAdapter cached = new DownloadLinkAdapter(repo, mongo,
+                new ResolvedLinkCache(meters, DataSize.ofMegabytes(32), Duration.ofMinutes(5)), accessCounts);
+
+        byte[] payload = new byte[4 * 1024];
+        new Random(29).nextBytes(payload);
+        String gridFsId = storage.save(Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(payload)),
+                "a.bin", null, Map.of()).block().gridFsId();
+        FileEntry stored = entry("a.bin", payload.length);
+        stored.setGridFsId(gridFsId);
+        stored.setChunkSize(255 * 1024);
+        FileEntry inline = entry("b.bin", payload.length);
+        inline.setInlineData(payload);
+        mongo.insert(stored).then(mongo.insert(inline)).block();
+        mongo.insert(new DownloadLink("tok-gridfs", stored.getId(), "u1", null))
+                .then(mongo.insert(new DownloadLink("tok-inline", inline.getId(), "u1", null))).block();
+
+        Supplier<Mono<DataBuffer>> sequential = () -> repo.findByToken("tok-gridfs")
+                .flatMap(link -> mongo.findById(link.getFileId(), FileEntry.class))
+                .flatMap(fe -> gridFs.findOne(Query.query(Criteria.where("_id").is(new ObjectId(fe.getGridFsId())))))
+                .flatMap(gridFs::getResource)
+                .flatMap(res -> res.getDownloadStream().next());
+        Supplier<Mono<DataBuffer>> joined = () -> links.resolve("tok-gridfs")
+                .flatMap(r -> storage.read(r.file().getGridFsId(), r.chunkSize(), 0, r.file().getSize()).next());
+        Supplier<Mono<DataBuffer>> joinedInline = () -> links.resolve("tok-inline")
+                .map(r -> DefaultDataBufferFactory.sharedInstance.wrap(r.file().getInlineData()));
+
+        report("4 lookups, GridFS", sequential);
+        report("1 lookup,  GridFS", joined);
+        report("1 lookup,  inline", joinedInline);
+        report("cached,    GridFS", () -> cached.resolve("tok-gridfs")
+                .flatMap(r -> storage.read(r.file().getGridFsId(), r.chunkSize(), 0, r.file().getSize()).next()));
+        report("cached,    inline", () -> cached.resolve("tok-inline")
+                .map(r -> DefaultDataBufferFactory.sharedInstance.wrap(r.file().getInlineData())));
+    }
+
+    private static FileEntry entry(String name, long size) {
+        FileEntry fe = new FileEntry();
+        fe.setOwnerId("u1");
+        fe.setFilename(name);
+        fe.setSize(size);
+        fe.setContentSha256(name); // unique per owner
+        return fe;
+    }
+
+    private static void report(String label, Supplier<Mono<DataBuffer>> firstByte) {
+        for (int i = 0; i < WARMUP; i++) DataBufferUtils.release(firstByte.get().block());
+        long[] nanos = new long[MEASURED];
+        for (int i = 0; i < MEASURED; i++) {
+            long t0 = System.nanoTime();
+            DataBuffer first = firstByte.get().block();
+            nanos[i] = System.nanoTime() - t0;
+            assertThat(first.readableByteCount()).isPositive();
+            DataBufferUtils.release(first);
+        }
+        Arrays.sort(nanos);
+        System.out.printf("%s: p50 %6.0f us, p99 %6.0f us%n", label,
+                nanos[MEASURED / 2] / 1e3, nanos[MEASURED * 99 / 100] / 1e3);
+    }
+}
@@ -0,0 +1,127 @@
+package ae.teletronics.storage.adapters.persistence;
+
+import ae.teletronics.storage.domain.model.DownloadLink;
+import ae.teletronics.storage.domain.model.FileEntry;
+import ae.teletronics.storage.ports.DownloadLinkQueryPort.ResolvedLink;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResolvedLinkCacheTest {
+
+    MutableClock clock = new MutableClock(Instant.parse("2025-01-01T00:00:00Z"));
+    SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    ResolvedLinkCache cache = new ResolvedLinkCache(meters, 10 * 1024, Duration.ofSeconds(30), clock);
+
+    private static ResolvedLink resolved(String token, String linkId, String fileId, Instant expiresAt) {
+        DownloadLink link = new DownloadLink(token, fileId, "u1", expiresAt);
+        link.setId(linkId);
+        FileEntry fe = new FileEntry();
+        fe.setId(fileId);
+        return new ResolvedLink(link, fe, 261120);
+    }
+
+    @Test
+    void hit_afterPut_untilTheTtl() {
+        ResolvedLink r = resolved("t1", "L1", "F1", null);
+        assertThat(cache.get("t1")).isNull();
+        cache.put("t1", r, cache.generation());
+
+        assertThat(cache.get("t1")).isSameAs(r);
+        clock.advance(Duration.ofSeconds(31));
+        assertThat(cache.get("t1")).isNull();
+
+        assertThat(meters.counter("storage.download.cache", "result", "hit").count()).isEqualTo(1);
+        assertThat(meters.counter("storage.download.cache", "result", "miss").count()).isEqualTo(2);
+        assertThat(meters.counter("storage.download.cache.evictions", "cause", "expired").count()).isEqualTo(1);
+        assertThat(meters.get("storage.download.cache.hit.ratio").gauge().value()).isEqualTo(1.0 / 3);
+    }
+
+    @Test
+    void entry_neverOutlivesItsLink() {
+        cache.put("t1", resolved("t1", "L1", "F1", clock.instant().plusSeconds(5)), cache.generation());
+
+        clock.advance(Duration.ofSeconds(6));
+
+        assertThat(cache.get("t1")).isNull();
+    }
+
+    @Test
+    void fileChange_dropsEveryTokenOfTheFile() {
+        cache.put("t1", resolved("t1", "L1", "F1", null), cache.generation());
+        cache.put("t2", resolved("t2", "L2", "F1", null), cache.generation());
+        cache.put("t3", resolved("t3", "L3", "F2", null), cache.generation());
+
+        cache.invalidateFile("F1");
+
+        assertThat(cache.get("t1")).isNull();
+        assertThat(cache.get("t2")).isNull();
+        assertThat(cache.get("t3")).isNotNull();
+        assertThat(meters.counter("storage.download.cache.evictions", "cause", "invalidated").count()).isEqualTo(2);
+    }
+
+    @Test
+    void linkDelete_dropsItsToken() {
+        cache.put("t1", resolved("t1", "L1", "F1", null), cache.generation());
+
+        cache.invalidateLink("L1");
+
+        assertThat(cache.get("t1")).isNull();
+    }
+
+    @Test
+    void lookupRacingAnInvalidation_isNotCached() {
+        long before = cache.generation();
+        cache.invalidateFile("F1"); // arrives while the lookup is reading the old document
+
+        cache.put("t1", resolved("t1", "L1", "F1", null), before);
+
+        assertThat(cache.get("t1")).isNull();
+    }
+
+    @Test
+    void inlineBytes_countTowardsTheBound_leastRecentlyUsedGoesFirst() {
+        for (int i = 0; i < 4; i++) {
+            ResolvedLink r = resolved("t" + i, "L" + i, "F" + i, null);
+            r.file().setInlineData(new byte[1024]);
+            cache.put("t" + i, r, cache.generation()); // 2 KB each
+        }
+        cache.get("t0"); // recently used
+
+        ResolvedLink big = resolved("big", "LB", "FB", null);
+        big.file().setInlineData(new byte[3 * 1024]);
+        cache.put("big", big, cache.generation());
+
+        assertThat(cache.weight()).isLessThanOrEqualTo(10 * 1024);
+        assertThat(cache.get("t1")).isNull();
+        assertThat(cache.get("t0")).isNotNull();
+        assertThat(cache.get("big")).isNotNull();
+    }
+
+    @Test
+    void disabled_cachesNothing() {
+        ResolvedLinkCache off = ResolvedLinkCache.disabled();
+        off.put("t1", resolved("t1", "L1", "F1", null), off.generation());
+
+        assertThat(off.get("t1")).isNull();
+    }
+
+    static final class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) { this.now = now; }
+
+        void advance(Duration d) { now = now.plus(d); }
+
+        @Override public ZoneId getZone() { return ZoneOffset.UTC; }
+        @Override public Clock withZone(ZoneId zone) { return this; }
+        @Override public Instant instant() { return now; }
+    }
+}
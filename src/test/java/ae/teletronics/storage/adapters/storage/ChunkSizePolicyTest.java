@@ -0,0 +1,43 @@
+package ae.teletronics.storage.adapters.storage;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChunkSizePolicyTest {
+
+    static final int BASE = 255 * 1024;
+
+    ChunkSizePolicy adaptive = new ChunkSizePolicy(DataSize.ofBytes(BASE), true, 1024, DataSize.ofMegabytes(4));
+
+    @Test
+    void smallAndUnknownSizes_keepTheBaseChunk() {
+        assertThat(adaptive.chunkSizeFor(-1)).isEqualTo(BASE);
+        assertThat(adaptive.chunkSizeFor(4 * 1024)).isEqualTo(BASE);
+        assertThat(adaptive.chunkSizeFor(1024L * BASE)).isEqualTo(BASE);
+    }
+
+    @Test
+    void largeFiles_getDoubledChunks_upToTheCap() {
+        assertThat(adaptive.chunkSizeFor(1024L * BASE + 1)).isEqualTo(2 * BASE);
+        assertThat(adaptive.chunkSizeFor(1L << 30)).isEqualTo(8 * BASE);
+        assertThat(adaptive.chunkSizeFor(400L << 30)).isEqualTo(16 * BASE); // 4080 KiB, the last doubling under 4 MB
+    }
+
+    @Test
+    void choices_divideSessionSegments() {
+        long segment = 32L * BASE;
+        for (long size = 1; size < (1L << 42); size *= 3) {
+            assertThat(segment % adaptive.chunkSizeFor(size)).isZero();
+        }
+    }
+
+    @Test
+    void disabled_alwaysUsesTheBase() {
+        ChunkSizePolicy fixed = new ChunkSizePolicy(DataSize.ofKilobytes(512), false, 1024, DataSize.ofMegabytes(4));
+
+        assertThat(fixed.chunkSizeFor(400L << 30)).isEqualTo(512 * 1024);
+        assertThat(ChunkSizePolicy.fixed(1000).chunkSizeFor(1L << 40)).isEqualTo(1000);
+    }
+}
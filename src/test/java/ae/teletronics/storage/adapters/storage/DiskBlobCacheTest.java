@@ -0,0 +1,170 @@
+package ae.teletronics.storage.adapters.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DiskBlobCacheTest {
+
+    @TempDir
+    Path dir;
+    SimpleMeterRegistry meters;
+    DiskBlobCache cache;
+
+    @BeforeEach
+    void setUp() {
+        meters = new SimpleMeterRegistry();
+        cache = new DiskBlobCache(meters, dir, DataSize.ofBytes(250), DataSize.ofBytes(10));
+    }
+
+    @Test
+    void fullRead_isCopiedToDisk_andLaterServedFromThere() throws Exception {
+        byte[] payload = bytes(100, 1);
+        String sha = sha256(payload);
+        assertThat(cache.lookup(sha, 100)).isNull();
+
+        byte[] passedThrough = join(cache.populate(sha, 100, body(payload)).collectList().block());
+
+        assertThat(passedThrough).isEqualTo(payload);
+        await(() -> cache.lookup(sha, 100) != null);
+        Path copy = cache.lookup(sha, 100);
+        assertThat(Files.readAllBytes(copy)).isEqualTo(payload);
+        assertThat(cache.lookup(sha, 99)).isNull(); // size must match too
+        assertThat(cache.size()).isEqualTo(100);
+        assertThat(meters.counter("storage.download.disk-cache.populated").count()).isEqualTo(1);
+        assertThat(meters.counter("storage.download.disk-cache", "result", "hit").count()).isEqualTo(2);
+    }
+
+    @Test
+    void contentNotMatchingItsDigest_isNotKept() throws Exception {
+        byte[] payload = bytes(100, 2);
+        String claimed = sha256(bytes(100, 3));
+
+        cache.populate(claimed, 100, body(payload)).blockLast();
+
+        await(() -> meters.counter("storage.download.disk-cache.rejected").count() == 1);
+        assertThat(cache.lookup(claimed, 100)).isNull();
+        await(() -> files().isEmpty());
+    }
+
+    @Test
+    void abortedDownload_leavesNoCopy() throws Exception {
+        byte[] payload = bytes(100, 4);
+        String sha = sha256(payload);
+
+        cache.populate(sha, 100, body(payload)).take(1).blockLast(); // client went away
+
+        await(() -> files().isEmpty());
+        assertThat(cache.lookup(sha, 100)).isNull();
+        assertThat(meters.counter("storage.download.disk-cache.rejected").count()).isZero();
+    }
+
+    @Test
+    void leastRecentlyUsed_isEvictedPastCapacity() throws Exception {
+        byte[] a = bytes(100, 5), b = bytes(100, 6), c = bytes(100, 7);
+        store(a);
+        store(b);
+        assertThat(cache.lookup(sha256(a), 100)).isNotNull(); // b is now the least recently used
+
+        store(c);
+
+        assertThat(cache.lookup(sha256(b), 100)).isNull();
+        assertThat(cache.lookup(sha256(a), 100)).isNotNull();
+        assertThat(cache.lookup(sha256(c), 100)).isNotNull();
+        assertThat(cache.size()).isEqualTo(200);
+        assertThat(meters.counter("storage.download.disk-cache.evictions").count()).isEqualTo(1);
+    }
+
+    @Test
+    void filesOfAPreviousRun_areIndexed_andPartialCopiesDropped() throws Exception {
+        byte[] payload = bytes(100, 8);
+        store(payload);
+        Files.write(dir.resolve(sha256(bytes(100, 9)) + ".123.part"), new byte[50]);
+
+        DiskBlobCache restarted = new DiskBlobCache(new SimpleMeterRegistry(), dir, DataSize.ofBytes(250),
+                DataSize.ofBytes(10));
+
+        assertThat(restarted.lookup(sha256(payload), 100)).isNotNull();
+        assertThat(restarted.size()).isEqualTo(100);
+        assertThat(files()).containsExactly(sha256(payload));
+    }
+
+    @Test
+    void smallBlobs_andADisabledCache_passContentThrough() {
+        Flux<DataBuffer> small = body(bytes(5, 10));
+        assertThat(cache.populate(sha256(bytes(5, 10)), 5, small)).isSameAs(small);
+
+        DiskBlobCache off = new DiskBlobCache(new SimpleMeterRegistry(), dir.resolve("off"), DataSize.ofBytes(0),
+                DataSize.ofBytes(1));
+        Flux<DataBuffer> any = body(bytes(100, 11));
+        assertThat(off.populate(sha256(bytes(100, 11)), 100, any)).isSameAs(any);
+        assertThat(off.lookup(sha256(bytes(100, 11)), 100)).isNull();
+        assertThat(Files.exists(dir.resolve("off"))).isFalse();
+    }
+
+    private void store(byte[] payload) throws Exception {
+        String sha = sha256(payload);
+        cache.populate(sha, payload.length, body(payload)).blockLast();
+        await(() -> meters.counter("storage.download.disk-cache.populated").count() >= 1
+                && cache.lookup(sha, payload.length) != null);
+    }
+
+    private List<String> files() throws Exception {
+        try (Stream<Path> listing = Files.list(dir)) {
+            return listing.map(p -> p.getFileName().toString()).filter(n -> !n.equals("off")).toList();
+        }
+    }
+
+    /** Two buffers, so the copy is written in more than one piece. */
+    private static Flux<DataBuffer> body(byte[] payload) {
+        int half = payload.length / 2;
+        return Flux.just(Arrays.copyOfRange(payload, 0, half), Arrays.copyOfRange(payload, half, payload.length))
+                .map(DefaultDataBufferFactory.sharedInstance::wrap);
+    }
+
+    private static byte[] join(List<DataBuffer> buffers) {
+        byte[] out = new byte[buffers.stream().mapToInt(DataBuffer::readableByteCount).sum()];
+        int at = 0;
+        for (DataBuffer db : buffers) {
+            int n = db.readableByteCount();
+            db.read(out, at, n);
+            at += n;
+        }
+        return out;
+    }
+
+    private static byte[] bytes(int n, long seed) {
+        byte[] b = new byte[n];
+        new Random(seed).nextBytes(b);
+        return b;
+    }
+
+    private static String sha256(byte[] b) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(b));
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met in time").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
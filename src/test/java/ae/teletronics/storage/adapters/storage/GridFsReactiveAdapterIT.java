@@ -0,0 +1,287 @@
+package ae.teletronics.storage.adapters.storage;
+
+import com.mongodb.MongoException;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.SimpleReactiveMongoDatabaseFactory;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.data.mongodb.gridfs.ReactiveGridFsTemplate;
+import org.springframework.util.unit.DataSize;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.utility.DockerImageName;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * {@link GridFsReactiveAdapter} against a real GridFS: what is left in {@code fs.files} and
+ * {@code fs.chunks} after writes that fail or are cut short.
+ */
+@Tag("integration")
+class GridFsReactiveAdapterIT {
+
+    static final int CHUNK = 1024;
+
+    static MongoDBContainer container;
+    static MongoClient client;
+    static ReactiveMongoTemplate mongo;
+    static ReactiveGridFsTemplate gridFs;
+
+    SimpleMeterRegistry meters;
+
+    @BeforeAll
+    static void start() {
+        container = new MongoDBContainer(DockerImageName.parse("mongo:7"));
+        container.start();
+        client = MongoClients.create(container.getReplicaSetUrl());
+        SimpleReactiveMongoDatabaseFactory factory = new SimpleReactiveMongoDatabaseFactory(client, "adapter-it");
+        mongo = new ReactiveMongoTemplate(factory);
+        gridFs = new ReactiveGridFsTemplate(factory, mongo.getConverter());
+    }
+
+    @AfterAll
+    static void stop() {
+        client.close();
+        container.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        meters = new SimpleMeterRegistry();
+        mongo.dropCollection(GridFsReactiveAdapter.CHUNKS).then(mongo.dropCollection(GridFsReactiveAdapter.FILES))
+                .block();
+    }
+
+    @Test
+    void interruptedRelink_isFinishedByTheNextCompose() {
+        byte[] a = bytes(2 * CHUNK, 1), b = bytes(2 * CHUNK, 2), c = bytes(CHUNK / 2, 3);
+        GridFsReactiveAdapter setup = adapter(mongo);
+        List<String> sources = List.of(store(setup, a), store(setup, b), store(setup, c));
+
+        // the second chunk move fails, as if the connection dropped halfway through
+        ReactiveMongoTemplate flaky = spy(mongo);
+        doCallRealMethod()
+                .doReturn(Mono.error(new MongoException("connection reset")))
+                .doCallRealMethod()
+                .when(flaky)
+                .updateMulti(any(Query.class), any(UpdateDefinition.class), eq(GridFsReactiveAdapter.CHUNKS));
+        GridFsReactiveAdapter adapter = adapter(flaky);
+
+        assertThatThrownBy(() -> adapter.compose(sources, "big.bin", null, Map.of()).block())
+                .hasMessageContaining("connection reset");
+
+        var composed = adapter.compose(sources, "big.bin", null, Map.of()).block();
+
+        assertThat(composed.size()).isEqualTo(a.length + b.length + c.length);
+        assertThat(readAll(adapter, composed.gridFsId(), composed.size())).isEqualTo(concat(a, b, c));
+        assertThat(count(GridFsReactiveAdapter.FILES)).isEqualTo(1); // sources consumed
+        Document target = mongo.findById(new ObjectId(composed.gridFsId()), Document.class,
+                GridFsReactiveAdapter.FILES).block();
+        assertThat(target.get("metadata", Document.class)).doesNotContainKey("relinkBases");
+
+        // composing the same (consumed) sources again returns the finished blob
+        assertThat(adapter.compose(sources, "big.bin", null, Map.of()).block().gridFsId())
+                .isEqualTo(composed.gridFsId());
+    }
+
+    @Test
+    void uploadFailingMidStream_leavesNothingBehind_andIsCounted() {
+        GridFsReactiveAdapter adapter = adapter(mongo);
+        Flux<DataBuffer> failing = body(bytes(8 * CHUNK, 4), CHUNK)
+                .concatWith(Flux.error(new IOException("client went away")));
+
+        assertThatThrownBy(() -> adapter.save(failing, "part.bin", null, Map.of()).block())
+                .hasMessageContaining("client went away");
+
+        awaitEmpty(GridFsReactiveAdapter.CHUNKS);
+        assertThat(count(GridFsReactiveAdapter.FILES)).isZero();
+        assertThat(meters.counter("storage.upload.aborted").count()).isEqualTo(1);
+        assertThat(meters.counter("storage.upload.aborted.bytes").count()).isEqualTo(8 * CHUNK);
+    }
+
+    @Test
+    void uploadCancelledMidStream_leavesNothingBehind_andIsCounted() {
+        GridFsReactiveAdapter adapter = adapter(mongo);
+        Flux<DataBuffer> stalled = body(bytes(4 * CHUNK, 5), CHUNK).concatWith(Flux.never());
+
+        Disposable upload = adapter.save(stalled, "part.bin", null, Map.of()).subscribe();
+        await(() -> count(GridFsReactiveAdapter.CHUNKS) >= 2); // part of the body is already stored
+        upload.dispose();
+
+        awaitEmpty(GridFsReactiveAdapter.CHUNKS);
+        assertThat(count(GridFsReactiveAdapter.FILES)).isZero();
+        assertThat(meters.counter("storage.upload.aborted").count()).isEqualTo(1);
+        assertThat(meters.counter("storage.upload.aborted.bytes").count()).isGreaterThanOrEqualTo(2 * CHUNK);
+    }
+
+    @Test
+    void chunksLandingAfterAFailedUpload_areSweptLater() {
+        // the first chunk insert is on the wire and lands after the upload has failed and been
+        // cleaned up; cancelling the upload does not stop it
+        ReactiveMongoTemplate slow = spy(mongo);
+        AtomicBoolean first = new AtomicBoolean(true);
+        doAnswer(inv -> {
+            @SuppressWarnings("unchecked")
+            Flux<Object> real = (Flux<Object>) inv.callRealMethod();
+            if (!first.getAndSet(false)) return real;
+            CompletableFuture<List<Object>> landed = Mono.delay(Duration.ofMillis(500))
+                    .thenMany(real).collectList().toFuture();
+            return Mono.fromFuture(landed, true).flatMapMany(Flux::fromIterable); // cancelling does not stop it
+        }).when(slow).insert(anyCollection(), eq(GridFsReactiveAdapter.CHUNKS));
+        GridFsReactiveAdapter adapter = adapter(slow);
+        Flux<DataBuffer> failing = body(bytes(4 * CHUNK, 6), CHUNK)
+                .concatWith(Mono.delay(Duration.ofMillis(100))
+                        .then(Mono.<DataBuffer>error(new IOException("client went away"))));
+
+        assertThatThrownBy(() -> adapter.save(failing, "part.bin", null, Map.of()).block())
+                .hasMessageContaining("client went away");
+
+        await(() -> count(GridFsReactiveAdapter.CHUNKS) > 0); // the late insert
+        awaitEmpty(GridFsReactiveAdapter.CHUNKS);
+        assertThat(count(GridFsReactiveAdapter.FILES)).isZero();
+    }
+
+    @Test
+    void deletedBlob_leavesTheHotCache_andALaterReadMisses() {
+        HotBlobCache hot = hotCache();
+        GridFsReactiveAdapter adapter = adapter(mongo, hot);
+        byte[] payload = bytes(3 * CHUNK, 7);
+        String id = store(adapter, payload);
+        assertThat(readAll(adapter, id, payload.length)).isEqualTo(payload); // loaded into the cache
+        assertThat(readAll(adapter, id, payload.length)).isEqualTo(payload);
+        assertThat(hotCache("hit")).isEqualTo(1);
+
+        adapter.delete(id).block();
+
+        assertThat(readAll(adapter, id, payload.length)).isEmpty();
+        assertThat(hotCache("hit")).isEqualTo(1);
+        assertThat(hotCache("miss")).isEqualTo(2);
+        assertThat(hot.size()).isZero();
+    }
+
+    @Test
+    void concurrentMissesOnAColdBlob_shareOneLoad() {
+        ReactiveMongoTemplate counted = spy(mongo);
+        GridFsReactiveAdapter adapter = adapter(counted, hotCache());
+        byte[] payload = bytes(3 * CHUNK, 8);
+        String id = store(adapter(mongo), payload);
+
+        List<byte[]> reads = Flux.range(0, 8)
+                .flatMap(i -> Mono.fromCallable(() -> readAll(adapter, id, payload.length))
+                        .subscribeOn(Schedulers.parallel()))
+                .collectList().block();
+
+        assertThat(reads).hasSize(8).allSatisfy(read -> assertThat(read).isEqualTo(payload));
+        verify(counted, times(1)).find(any(Query.class), eq(Document.class), eq(GridFsReactiveAdapter.CHUNKS));
+    }
+
+    private GridFsReactiveAdapter adapter(ReactiveMongoTemplate template) {
+        return adapter(template, HotBlobCache.disabled());
+    }
+
+    private GridFsReactiveAdapter adapter(ReactiveMongoTemplate template, HotBlobCache hot) {
+        return new GridFsReactiveAdapter(gridFs, template, meters, new MemoryBudget(64L << 20, meters),
+                ChunkSizePolicy.fixed(CHUNK), hot, 4, 2, 0, 1, 0);
+    }
+
+    private HotBlobCache hotCache() {
+        return new HotBlobCache(meters, DataSize.ofKilobytes(64), DataSize.ofKilobytes(16), true);
+    }
+
+    private double hotCache(String result) {
+        return meters.counter("storage.gridfs.hot-cache", "result", result).count();
+    }
+
+    private static String store(GridFsReactiveAdapter adapter, byte[] payload) {
+        return adapter.save(body(payload, CHUNK), "part.bin", null, Map.of()).block().gridFsId();
+    }
+
+    private static Flux<DataBuffer> body(byte[] payload, int bufferSize) {
+        return Flux.range(0, (payload.length + bufferSize - 1) / bufferSize)
+                .map(i -> DefaultDataBufferFactory.sharedInstance.wrap(Arrays.copyOfRange(payload,
+                        i * bufferSize, Math.min(payload.length, (i + 1) * bufferSize))));
+    }
+
+    private static byte[] readAll(GridFsReactiveAdapter adapter, String id, long length) {
+        List<DataBuffer> buffers = adapter.read(id, 0, length).collectList().block();
+        byte[] out = new byte[buffers.stream().mapToInt(DataBuffer::readableByteCount).sum()];
+        int at = 0;
+        for (DataBuffer db : buffers) {
+            int n = db.readableByteCount();
+            db.read(out, at, n);
+            DataBufferUtils.release(db); // returns its memory budget charge
+            at += n;
+        }
+        return out;
+    }
+
+    private static long count(String collection) {
+        return mongo.count(new Query(), collection).block();
+    }
+
+    /** Waits out the delayed sweep for chunk inserts that were already on the wire. */
+    private static void awaitEmpty(String collection) {
+        await(() -> count(collection) == 0);
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(15).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met within 15s").isLessThan(deadline);
+            Mono.delay(Duration.ofMillis(50)).block();
+        }
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int n = 0;
+        for (byte[] p : parts) n += p.length;
+        byte[] out = new byte[n];
+        int at = 0;
+        for (byte[] p : parts) {
+            System.arraycopy(p, 0, out, at, p.length);
+            at += p.length;
+        }
+        return out;
+    }
+
+    private static byte[] bytes(int n, long seed) {
+        byte[] b = new byte[n];
+        new Random(seed).nextBytes(b);
+        return b;
+    }
+}
@@ -0,0 +1,224 @@
+package ae.teletronics.storage.adapters.storage;
+
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.SimpleReactiveMongoDatabaseFactory;
+import org.springframework.data.mongodb.gridfs.ReactiveGridFsTemplate;
+import org.springframework.util.unit.DataSize;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.utility.DockerImageName;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Single-file download MB/s by read-ahead window and parallelism; read-ahead 0 is the driver's
+ * download stream. The client consumes one buffer at a time, like a socket write. Against a
+ * local container the round trip is tiny, so the gain understates what a remote replica set
+ * shows. Also compares small, skewed-popularity reads with and without the hot-blob cache, and
+ * the upstream reads behind a flash crowd with and without shared reads.
+ * Run with {@code ./gradlew benchmark}.
+ */
+@Tag("benchmark")
+class GridFsReadBenchmark {
+
+    private static final int FILE_BYTES = 64 * 1024 * 1024;
+    private static final int BUFFER = 64 * 1024;
+    private static final int WARMUP = 2;
+    private static final int MEASURED = 5;
+
+    static MongoDBContainer container;
+    static MongoClient client;
+    static ReactiveMongoTemplate mongo;
+    static ReactiveGridFsTemplate gridFs;
+
+    @BeforeAll
+    static void start() {
+        container = new MongoDBContainer(DockerImageName.parse("mongo:7"));
+        container.start();
+        client = MongoClients.create(container.getReplicaSetUrl());
+        SimpleReactiveMongoDatabaseFactory factory = new SimpleReactiveMongoDatabaseFactory(client, "bench");
+        mongo = new ReactiveMongoTemplate(factory);
+        gridFs = new ReactiveGridFsTemplate(factory, mongo.getConverter());
+    }
+
+    @AfterAll
+    static void stop() {
+        client.close();
+        container.stop();
+    }
+
+    @Test
+    void throughputByReadAhead() throws Exception {
+        byte[] payload = new byte[FILE_BYTES];
+        new Random(23).nextBytes(payload);
+        byte[] sha = MessageDigest.getInstance("SHA-256").digest(payload);
+        String id = store(adapter(0, 1, 0), payload);
+
+        double baseline = 0;
+        for (int[] config : new int[][]{{0, 1}, {4, 1}, {8, 1}, {8, 2}, {16, 2}, {16, 4}}) {
+            GridFsReactiveAdapter adapter = adapter(config[0], config[1], 0);
+
+            for (int i = 0; i < WARMUP; i++) download(adapter, id);
+            long t0 = System.nanoTime();
+            byte[] last = null;
+            for (int i = 0; i < MEASURED; i++) last = download(adapter, id);
+            double mbPerSec = (double) MEASURED * FILE_BYTES / (1 << 20) / ((System.nanoTime() - t0) / 1e9);
+            if (config[0] == 0) baseline = mbPerSec;
+
+            assertThat(last).isEqualTo(sha);
+            System.out.printf("read-ahead %2d x %d: %7.1f MB/s (%.2fx)%n",
+                    config[0], config[1], mbPerSec, mbPerSec / baseline);
+        }
+    }
+
+    /**
+     * Small files with a skewed popularity (a few hot ones, a long tail), read whole by id and
+     * chunk size as the download path does, with and without the hot-blob cache.
+     */
+    @Test
+    void smallFilesWithHotCache() {
+        GridFsReactiveAdapter writer = adapter(8, 2, 0);
+        Random random = new Random(31);
+        int files = 200;
+        String[] ids = new String[files];
+        int[] sizes = new int[files];
+        for (int i = 0; i < files; i++) {
+            sizes[i] = 4 * 1024 + random.nextInt(60 * 1024);
+            byte[] payload = new byte[sizes[i]];
+            random.nextBytes(payload);
+            ids[i] = writer.save(Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(payload)),
+                    "small-" + i, null, Map.of()).block().gridFsId();
+        }
+        int requests = 20_000;
+        int[] pattern = new int[requests];
+        for (int r = 0; r < requests; r++) {
+            // 80% of requests go to 10 files
+            pattern[r] = random.nextInt(10) < 8 ? random.nextInt(10) : 10 + random.nextInt(files - 10);
+        }
+
+        for (long cacheBytes : new long[]{0, 2L << 20}) {
+            SimpleMeterRegistry meters = new SimpleMeterRegistry();
+            HotBlobCache hot = new HotBlobCache(meters, DataSize.ofBytes(cacheBytes), DataSize.ofKilobytes(64), true);
+            GridFsReactiveAdapter adapter = new GridFsReactiveAdapter(gridFs, mongo, meters,
+                    new MemoryBudget(256L << 20, meters), ChunkSizePolicy.fixed(255 * 1024), hot, 4, 2, 8, 2, 0);
+            long t0 = System.nanoTime();
+            long bytes = 0;
+            for (int r = 0; r < requests; r++) {
+                int f = pattern[r];
+                bytes += adapter.read(ids[f], 255 * 1024, 0, sizes[f])
+                        .map(db -> {
+                            int n = db.readableByteCount();
+                            DataBufferUtils.release(db);
+                            return (long) n;
+                        })
+                        .reduce(0L, Long::sum)
+                        .block();
+            }
+            double seconds = (System.nanoTime() - t0) / 1e9;
+            double hits = meters.counter("storage.gridfs.hot-cache", "result", "hit").count();
+            System.out.printf("hot cache %4d KB: %8.0f req/s, %6.1f MB/s, hit ratio %.2f, cached %d KB%n",
+                    cacheBytes >> 10, requests / seconds, bytes / (1024.0 * 1024) / seconds,
+                    hits / requests, hot.size() >> 10);
+        }
+    }
+
+    /**
+     * A flash crowd: many clients download the same new file at once, a few of them slowly.
+     * Reports how many upstream chunk reads served them (read amplification) with and without
+     * shared reads.
+     */
+    @Test
+    void flashCrowd() throws Exception {
+        int fileBytes = 16 * 1024 * 1024;
+        int clients = 100;
+        byte[] payload = new byte[fileBytes];
+        new Random(37).nextBytes(payload);
+        byte[] sha = MessageDigest.getInstance("SHA-256").digest(payload);
+        String id = store(adapter(8, 2, 0), payload, fileBytes);
+
+        for (int window : new int[]{0, 16}) {
+            SimpleMeterRegistry meters = new SimpleMeterRegistry();
+            GridFsReactiveAdapter adapter = new GridFsReactiveAdapter(gridFs, mongo, meters,
+                    new MemoryBudget(1L << 30, meters), ChunkSizePolicy.fixed(255 * 1024), HotBlobCache.disabled(),
+                    4, 2, 8, 2, window);
+            long t0 = System.nanoTime();
+            List<byte[]> digests = Flux.range(0, clients)
+                    .flatMap(c -> {
+                        MessageDigest digest = sha256();
+                        Flux<DataBuffer> body = adapter.read(id, 255 * 1024, 0, fileBytes);
+                        if (c % 20 == 0) body = body.delayElements(Duration.ofMillis(20)); // slow clients
+                        return body.doOnNext(db -> {
+                                    digest.update(db.asByteBuffer());
+                                    DataBufferUtils.release(db);
+                                })
+                                .then(Mono.fromSupplier(digest::digest));
+                    }, clients)
+                    .collectList()
+                    .block();
+            double seconds = (System.nanoTime() - t0) / 1e9;
+
+            assertThat(digests).allSatisfy(d -> assertThat(d).isEqualTo(sha));
+            double upstream = window == 0 ? clients
+                    : meters.counter("storage.gridfs.shared-read", "role", "leader").count()
+                    + meters.counter("storage.gridfs.shared-read.fallbacks").count();
+            System.out.printf("shared window %2d: %d clients in %5.2fs, %3.0f upstream reads (%.2fx amplification)%n",
+                    window, clients, seconds, upstream, upstream);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static GridFsReactiveAdapter adapter(int readAhead, int readParallelism, int sharedReadWindow) {
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        return new GridFsReactiveAdapter(gridFs, mongo, meters, new MemoryBudget(256L << 20, meters),
+                ChunkSizePolicy.fixed(255 * 1024), HotBlobCache.disabled(), 4, 2, readAhead, readParallelism,
+                sharedReadWindow);
+    }
+
+    private static String store(GridFsReactiveAdapter adapter, byte[] payload) {
+        return store(adapter, payload, FILE_BYTES);
+    }
+
+    private static String store(GridFsReactiveAdapter adapter, byte[] payload, int fileBytes) {
+        Flux<DataBuffer> body = Flux.range(0, fileBytes / BUFFER)
+                .map(i -> DefaultDataBufferFactory.sharedInstance.wrap(ByteBuffer.wrap(payload, i * BUFFER, BUFFER)));
+        return adapter.save(body, "bench.bin", "application/octet-stream", Map.of()).block().gridFsId();
+    }
+
+    private static byte[] download(GridFsReactiveAdapter adapter, String id) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        adapter.open(id)
+                .flatMapMany(adapter::content)
+                .limitRate(1)
+                .doOnNext(db -> {
+                    digest.update(db.asByteBuffer());
+                    DataBufferUtils.release(db);
+                })
+                .blockLast();
+        return digest.digest();
+    }
+}
@@ -0,0 +1,143 @@
+package ae.teletronics.storage.adapters.storage;
+
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.SimpleReactiveMongoDatabaseFactory;
+import org.springframework.data.mongodb.gridfs.ReactiveGridFsTemplate;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.utility.DockerImageName;
+import reactor.core.publisher.Flux;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Upload MB/s into GridFS by write concurrency (0 is the template's one-chunk-per-round-trip
+ * store), and write/read MB/s and {@code fs.chunks} index size by chunk size. Each stored file
+ * is read back through the standard GridFS reader. Against a local
+ * container the round trip is tiny, so the gap understates what a remote replica set shows.
+ * Run with {@code ./gradlew benchmark}.
+ */
+@Tag("benchmark")
+class GridFsWriteBenchmark {
+
+    private static final int FILE_BYTES = 32 * 1024 * 1024;
+    private static final int BUFFER = 64 * 1024;
+    private static final int WARMUP = 2;
+    private static final int MEASURED = 5;
+
+    static MongoDBContainer container;
+    static MongoClient client;
+    static ReactiveMongoTemplate mongo;
+    static ReactiveGridFsTemplate gridFs;
+
+    @BeforeAll
+    static void start() {
+        container = new MongoDBContainer(DockerImageName.parse("mongo:7"));
+        container.start();
+        client = MongoClients.create(container.getReplicaSetUrl());
+        SimpleReactiveMongoDatabaseFactory factory = new SimpleReactiveMongoDatabaseFactory(client, "bench");
+        mongo = new ReactiveMongoTemplate(factory);
+        gridFs = new ReactiveGridFsTemplate(factory, mongo.getConverter());
+    }
+
+    @AfterAll
+    static void stop() {
+        client.close();
+        container.stop();
+    }
+
+    @Test
+    void throughputByWriteConcurrency() throws Exception {
+        byte[] payload = new byte[FILE_BYTES];
+        new Random(17).nextBytes(payload);
+        byte[] sha = MessageDigest.getInstance("SHA-256").digest(payload);
+
+        double baseline = 0;
+        for (int concurrency : new int[]{0, 1, 2, 4, 8}) {
+            SimpleMeterRegistry meters = new SimpleMeterRegistry();
+            GridFsReactiveAdapter adapter = new GridFsReactiveAdapter(gridFs, mongo, meters,
+                    new MemoryBudget(256L << 20, meters), ChunkSizePolicy.fixed(255 * 1024),
+                    HotBlobCache.disabled(), concurrency, 2, 0, 1, 0);
+
+            for (int i = 0; i < WARMUP; i++) store(adapter, payload);
+            String last = null;
+            long t0 = System.nanoTime();
+            for (int i = 0; i < MEASURED; i++) last = store(adapter, payload);
+            double mbPerSec = mbPerSec(MEASURED, System.nanoTime() - t0);
+            if (concurrency == 0) baseline = mbPerSec;
+
+            assertThat(readBack(adapter, last)).isEqualTo(sha);
+            System.out.printf("write-concurrency %d: %7.1f MB/s (%.2fx)%n", concurrency, mbPerSec, mbPerSec / baseline);
+        }
+    }
+
+    @Test
+    void chunkSizeEffect() throws Exception {
+        byte[] payload = new byte[FILE_BYTES];
+        new Random(19).nextBytes(payload);
+        byte[] sha = MessageDigest.getInstance("SHA-256").digest(payload);
+
+        for (int chunkSize : new int[]{255 * 1024, 1020 * 1024, 4080 * 1024}) {
+            mongo.dropCollection(GridFsReactiveAdapter.CHUNKS).then(mongo.dropCollection(GridFsReactiveAdapter.FILES))
+                    .block();
+            SimpleMeterRegistry meters = new SimpleMeterRegistry();
+            GridFsReactiveAdapter adapter = new GridFsReactiveAdapter(gridFs, mongo, meters,
+                    new MemoryBudget(256L << 20, meters), ChunkSizePolicy.fixed(chunkSize),
+                    HotBlobCache.disabled(), 4, 2, 0, 1, 0);
+
+            for (int i = 0; i < WARMUP; i++) store(adapter, payload);
+            List<String> ids = new ArrayList<>();
+            long t0 = System.nanoTime();
+            for (int i = 0; i < MEASURED; i++) ids.add(store(adapter, payload));
+            double writeMbPerSec = mbPerSec(MEASURED, System.nanoTime() - t0);
+
+            t0 = System.nanoTime();
+            for (String id : ids) assertThat(readBack(adapter, id)).isEqualTo(sha);
+            double readMbPerSec = mbPerSec(MEASURED, System.nanoTime() - t0);
+
+            Document stats = mongo.executeCommand(new Document("collStats", GridFsReactiveAdapter.CHUNKS)).block();
+            System.out.printf("chunk %5d KiB: write %7.1f MB/s, read %7.1f MB/s, %6d chunks, index %8d bytes%n",
+                    chunkSize / 1024, writeMbPerSec, readMbPerSec,
+                    ((Number) stats.get("count")).longValue(), ((Number) stats.get("totalIndexSize")).longValue());
+        }
+    }
+
+    private static double mbPerSec(int files, long nanos) {
+        return (double) files * FILE_BYTES / (1 << 20) / (nanos / 1e9);
+    }
+
+    private static String store(GridFsReactiveAdapter adapter, byte[] payload) {
+        Flux<DataBuffer> body = Flux.range(0, FILE_BYTES / BUFFER)
+                .map(i -> DefaultDataBufferFactory.sharedInstance.wrap(ByteBuffer.wrap(payload, i * BUFFER, BUFFER)));
+        return adapter.save(body, "bench.bin", "application/octet-stream", Map.of(), FILE_BYTES).block().gridFsId();
+    }
+
+    private static byte[] readBack(GridFsReactiveAdapter adapter, String id) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        adapter.open(id)
+                .flatMapMany(res -> res.getDownloadStream())
+                .doOnNext(db -> {
+                    digest.update(db.asByteBuffer());
+                    DataBufferUtils.release(db);
+                })
+                .blockLast();
+        return digest.digest();
+    }
+}
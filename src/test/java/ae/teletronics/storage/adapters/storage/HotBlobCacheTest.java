@@ -0,0 +1,107 @@
+package ae.teletronics.storage.adapters.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HotBlobCacheTest {
+
+    SimpleMeterRegistry meters;
+    HotBlobCache cache;
+
+    @BeforeEach
+    void setUp() {
+        meters = new SimpleMeterRegistry();
+        // room for three 100-byte blobs
+        cache = new HotBlobCache(meters, DataSize.ofBytes(300), DataSize.ofBytes(100), true);
+    }
+
+    @Test
+    void putThenGet_returnsTheBytes_readOnlyAndOffHeap() {
+        assertThat(cache.get("a")).isNull();
+        cache.put("a", List.of(new byte[]{1, 2}, new byte[]{3}), 3);
+
+        ByteBuffer blob = cache.get("a");
+        assertThat(blob).isNotNull();
+        assertThat(blob.isReadOnly()).isTrue();
+        assertThat(blob.isDirect()).isTrue();
+        byte[] out = new byte[blob.remaining()];
+        blob.get(out);
+        assertThat(out).containsExactly(1, 2, 3);
+        assertThat(cache.get("a").position()).isZero(); // each caller gets its own view
+        assertThat(meters.counter("storage.gridfs.hot-cache", "result", "hit").count()).isEqualTo(2);
+        assertThat(meters.counter("storage.gridfs.hot-cache", "result", "miss").count()).isEqualTo(1);
+        assertThat(cache.size()).isEqualTo(3);
+    }
+
+    @Test
+    void blobsOverTheEntryLimit_areNotWorthLoading() {
+        assertThat(cache.worthLoading("big", 101)).isFalse();
+        assertThat(cache.worthLoading("small", 100)).isTrue();
+
+        cache.oversized("small");
+        assertThat(cache.worthLoading("small", -1)).isFalse();
+    }
+
+    @Test
+    void whenFull_aRarelyReadBlob_doesNotEvictHotOnes() {
+        for (String id : List.of("a", "b", "c")) {
+            for (int i = 0; i < 5; i++) cache.get(id);
+            cache.put(id, List.of(new byte[100]), 100);
+        }
+
+        cache.get("once");
+        assertThat(cache.worthLoading("once", 100)).isFalse();
+        assertThat(cache.put("once", List.of(new byte[100]), 100)).isNull(); // nothing allocated for it
+
+        assertThat(cache.get("once")).isNull();
+        assertThat(cache.size()).isEqualTo(300);
+        assertThat(cache.get("a")).isNotNull();
+        assertThat(cache.get("b")).isNotNull();
+        assertThat(cache.get("c")).isNotNull();
+        assertThat(meters.counter("storage.gridfs.hot-cache.rejected").count()).isEqualTo(1);
+    }
+
+    @Test
+    void whenFull_aHotterBlob_evictsTheLeastRecentlyUsedColdOne() {
+        for (String id : List.of("a", "b", "c")) {
+            cache.get(id);
+            cache.put(id, List.of(new byte[100]), 100);
+        }
+        cache.get("b");
+        cache.get("c"); // "a" is now the least recently used
+        for (int i = 0; i < 5; i++) cache.get("hot");
+
+        assertThat(cache.worthLoading("hot", 100)).isTrue();
+        cache.put("hot", List.of(new byte[100]), 100);
+
+        assertThat(cache.get("hot")).isNotNull();
+        assertThat(cache.get("a")).isNull();
+        assertThat(cache.size()).isEqualTo(300);
+        assertThat(meters.counter("storage.gridfs.hot-cache.evictions").count()).isEqualTo(1);
+    }
+
+    @Test
+    void invalidate_dropsTheEntry() {
+        cache.put("a", List.of(new byte[10]), 10);
+        cache.invalidate("a");
+
+        assertThat(cache.get("a")).isNull();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void disabled_cachesNothing() {
+        HotBlobCache off = HotBlobCache.disabled();
+        off.put("a", List.of(new byte[1]), 1);
+
+        assertThat(off.get("a")).isNull();
+        assertThat(off.worthLoading("a", 1)).isFalse();
+    }
+}
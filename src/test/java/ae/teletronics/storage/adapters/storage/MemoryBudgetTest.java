@@ -0,0 +1,168 @@
+package ae.teletronics.storage.adapters.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MemoryBudgetTest {
+
+    SimpleMeterRegistry meters;
+    MemoryBudget budget;
+
+    @BeforeEach
+    void setUp() {
+        meters = new SimpleMeterRegistry();
+        budget = new MemoryBudget(10, meters);
+    }
+
+    private static Flux<DataBuffer> buffers(int count, int size) {
+        return Flux.range(0, count).map(i -> DefaultDataBufferFactory.sharedInstance.wrap(new byte[size]));
+    }
+
+    /** Requests one buffer on subscribe and then only when told to. */
+    static final class Manual extends BaseSubscriber<DataBuffer> {
+        final List<DataBuffer> got = new ArrayList<>();
+        boolean done;
+
+        @Override protected void hookOnSubscribe(Subscription s) { request(1); }
+        @Override protected void hookOnNext(DataBuffer db) { got.add(db); }
+        @Override protected void hookOnComplete() { done = true; }
+    }
+
+    @Test
+    void exhaustedBudget_pausesOtherStreams_untilBuffersAreReleased() {
+        Manual a = new Manual();
+        Manual b = new Manual();
+
+        budget.govern(buffers(2, 6), MemoryBudget.Direction.DOWNLOAD).subscribe(a);
+        budget.govern(buffers(1, 6), MemoryBudget.Direction.UPLOAD).subscribe(b);
+
+        assertThat(a.got).hasSize(1);
+        assertThat(b.got).isEmpty(); // 6 + 6 > 10: b waits
+        assertThat(budget.used()).isEqualTo(6);
+
+        a.request(1); // asking for more gives nothing back: a still holds its first buffer
+        assertThat(b.got).isEmpty();
+        assertThat(budget.used()).isEqualTo(6);
+
+        DataBufferUtils.release(a.got.get(0)); // b is first in line
+        assertThat(b.got).hasSize(1);
+        assertThat(a.got).hasSize(1);
+
+        DataBufferUtils.release(b.got.get(0)); // a gets its second buffer
+        b.request(1);
+        assertThat(b.done).isTrue();
+        assertThat(a.got).hasSize(2);
+
+        DataBufferUtils.release(a.got.get(1));
+        a.request(1);
+        assertThat(a.done).isTrue();
+        assertThat(budget.used()).isZero();
+        assertThat(meters.timer("storage.memory.budget.stall", "direction", "upload").count()).isEqualTo(1);
+        assertThat(meters.get("storage.memory.budget.used").gauge().value()).isZero();
+    }
+
+    @Test
+    void buffersHeldDownstream_stayCharged_evenAfterTheStreamEnds() {
+        Manual a = new Manual();
+        budget.govern(buffers(3, 4), MemoryBudget.Direction.DOWNLOAD).subscribe(a);
+
+        a.request(2); // a consumer queueing buffers it has not written yet
+        assertThat(a.got).hasSize(2); // 4 + 4 + 4 > 10: the third waits for one to go
+        assertThat(budget.used()).isEqualTo(8);
+
+        DataBufferUtils.release(a.got.get(0));
+        assertThat(a.got).hasSize(3);
+        assertThat(a.done).isTrue();
+        assertThat(budget.used()).isEqualTo(8); // ended, but two buffers are still out
+
+        a.got.forEach(DataBufferUtils::release); // a second release of the first is a no-op
+        assertThat(budget.used()).isZero();
+    }
+
+    @Test
+    void oversizedBuffer_isAdmittedWhenNothingElseIsCharged() {
+        Manual a = new Manual();
+
+        budget.govern(buffers(1, 64), MemoryBudget.Direction.UPLOAD).subscribe(a);
+
+        assertThat(a.got).hasSize(1);
+        DataBufferUtils.release(a.got.get(0));
+        a.request(1);
+        assertThat(a.done).isTrue();
+        assertThat(budget.used()).isZero();
+    }
+
+    @Test
+    void cancelledWaiter_releasesNothingItDidNotHold() {
+        Manual a = new Manual();
+        Manual b = new Manual();
+        budget.govern(buffers(1, 8), MemoryBudget.Direction.UPLOAD).subscribe(a);
+        budget.govern(buffers(1, 8), MemoryBudget.Direction.UPLOAD).subscribe(b);
+
+        b.cancel();
+        assertThat(budget.used()).isEqualTo(8);
+
+        DataBufferUtils.release(a.got.get(0));
+        assertThat(budget.used()).isZero();
+    }
+
+    /** A grant racing with the stream's end used to stay charged for good. */
+    @Test
+    void grantRacingWithCancellation_isGivenBack() throws Exception {
+        for (int i = 0; i < 500; i++) {
+            Manual a = new Manual();
+            Manual b = new Manual();
+            budget.govern(buffers(1, 8), MemoryBudget.Direction.UPLOAD).subscribe(a);
+            budget.govern(buffers(1, 8), MemoryBudget.Direction.UPLOAD).subscribe(b); // waits behind a
+
+            CountDownLatch go = new CountDownLatch(1);
+            Thread releaser = new Thread(() -> {
+                awaitQuietly(go);
+                DataBufferUtils.release(a.got.get(0)); // grants b
+            });
+            releaser.start();
+            go.countDown();
+            b.cancel();
+            releaser.join();
+
+            b.got.forEach(DataBufferUtils::release); // delivered before the cancel won
+            assertThat(budget.used()).as("round %d", i).isZero();
+        }
+    }
+
+    @Test
+    void hold_neverWaits_butStreamsWaitUntilItIsGivenBack() {
+        Runnable held = budget.hold(12);
+        assertThat(budget.used()).isEqualTo(12);
+
+        Manual a = new Manual();
+        budget.govern(buffers(1, 2), MemoryBudget.Direction.DOWNLOAD).subscribe(a);
+        assertThat(a.got).isEmpty();
+
+        held.run();
+        held.run(); // once only
+        assertThat(a.got).hasSize(1);
+        assertThat(budget.used()).isEqualTo(2);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package ae.teletronics.storage.adapters.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.ReactiveIndexOperations;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PipelinedChunkWriterTest {
+
+    ReactiveMongoTemplate mongo;
+    ReactiveIndexOperations indexOps;
+    MemoryBudget budget;
+    List<Document> chunks;
+    List<String> order; // "chunks" / "files" as each insert is issued
+    List<Long> usedDuringInserts;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        mongo = mock(ReactiveMongoTemplate.class);
+        indexOps = mock(ReactiveIndexOperations.class);
+        when(indexOps.ensureIndex(any())).thenReturn(Mono.just("idx"));
+        when(mongo.indexOps(anyString())).thenReturn(indexOps);
+        budget = new MemoryBudget(1 << 20, new SimpleMeterRegistry());
+        chunks = new ArrayList<>();
+        order = new ArrayList<>();
+        usedDuringInserts = new ArrayList<>();
+        when(mongo.insert(anyCollection(), eq(GridFsReactiveAdapter.CHUNKS))).thenAnswer(inv -> {
+            Collection<Document> batch = inv.getArgument(0);
+            return Flux.defer(() -> {
+                synchronized (chunks) {
+                    chunks.addAll(batch);
+                    order.add("chunks");
+                    usedDuringInserts.add(budget.used());
+                }
+                return Flux.fromIterable(batch);
+            });
+        });
+        when(mongo.insert(any(Document.class), eq(GridFsReactiveAdapter.FILES))).thenAnswer(inv -> {
+            Document doc = inv.getArgument(0);
+            return Mono.fromSupplier(() -> {
+                synchronized (chunks) {
+                    order.add("files");
+                }
+                return doc;
+            });
+        });
+    }
+
+    @Test
+    void recutsBuffersIntoNumberedChunks_andWritesTheFileDocumentLast() {
+        byte[] data = new byte[10 * 7 + 3];
+        new Random(5).nextBytes(data);
+        PipelinedChunkWriter writer = new PipelinedChunkWriter(mongo, budget, 2, 3);
+        ObjectId id = new ObjectId();
+
+        Long length = writer.write(id, 10, buffers(data, 4), "a.bin", "text/plain", Map.of("ownerId", "u1")).block();
+
+        assertThat(length).isEqualTo(data.length);
+        chunks.sort(Comparator.comparingInt(d -> d.getInteger("n")));
+        assertThat(chunks).extracting(d -> d.getInteger("n")).containsExactly(0, 1, 2, 3, 4, 5, 6, 7);
+        assertThat(chunks).allMatch(d -> id.equals(d.get("files_id")));
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        for (Document d : chunks) joined.writeBytes(d.get("data", Binary.class).getData());
+        assertThat(joined.toByteArray()).isEqualTo(data);
+        assertThat(chunks.get(7).get("data", Binary.class).length()).isEqualTo(3);
+        assertThat(order).last().isEqualTo("files");
+        assertThat(order).filteredOn("chunks"::equals).hasSize(4); // 8 chunks, 2 per insertMany
+
+        verify(mongo).insert(argThat((Document d) -> d.get("_id").equals(id)
+                && d.getLong("length") == data.length
+                && d.getInteger("chunkSize") == 10
+                && "text/plain".equals(d.get("metadata", Document.class).getString("_contentType"))
+                && "u1".equals(d.get("metadata", Document.class).getString("ownerId"))), eq(GridFsReactiveAdapter.FILES));
+    }
+
+    @Test
+    void exactMultipleOfChunkSize_hasNoEmptyTrailingChunk() {
+        PipelinedChunkWriter writer = new PipelinedChunkWriter(mongo, budget, 1, 1);
+
+        writer.write(new ObjectId(), 10, buffers(new byte[20], 20), "a", null, Map.of()).block();
+
+        assertThat(chunks).hasSize(2);
+    }
+
+    @Test
+    void batchesInFlight_areChargedToTheBudget_untilTheirInsertEnds() {
+        PipelinedChunkWriter writer = new PipelinedChunkWriter(mongo, budget, 2, 1);
+
+        writer.write(new ObjectId(), 10, buffers(new byte[40], 10), "a", null, Map.of()).block();
+
+        assertThat(usedDuringInserts).containsExactly(20L, 20L); // one batch of two chunks at a time
+        assertThat(budget.used()).isZero();
+    }
+
+    @Test
+    void failedIndexSetup_isRetriedByTheNextWrite_andThenNotRepeated() {
+        when(indexOps.ensureIndex(any()))
+                .thenReturn(Mono.error(new IllegalStateException("not primary")), Mono.just("idx"));
+        PipelinedChunkWriter writer = new PipelinedChunkWriter(mongo, budget, 1, 1);
+
+        for (int i = 0; i < 3; i++) {
+            writer.write(new ObjectId(), 10, buffers(new byte[5], 5), "a", null, Map.of()).block();
+        }
+
+        assertThat(chunks).hasSize(3); // the failed setup did not fail the first write
+        verify(indexOps, times(4)).ensureIndex(any()); // two per attempt, two attempts
+    }
+
+    @Test
+    void failedBody_neverWritesTheFileDocument() {
+        PipelinedChunkWriter writer = new PipelinedChunkWriter(mongo, budget, 1, 2);
+        Flux<DataBuffer> body = buffers(new byte[25], 5).concatWith(Flux.error(new IllegalStateException("gone")));
+
+        assertThatThrownBy(() -> writer.write(new ObjectId(), 10, body, "a", null, Map.of()).block())
+                .hasMessage("gone");
+        assertThat(order).doesNotContain("files");
+        assertThat(budget.used()).isZero();
+    }
+
+    private static Flux<DataBuffer> buffers(byte[] data, int size) {
+        return Flux.range(0, (data.length + size - 1) / size).map(i -> {
+            int from = i * size;
+            byte[] part = new byte[Math.min(size, data.length - from)];
+            System.arraycopy(data, from, part, 0, part.length);
+            return DefaultDataBufferFactory.sharedInstance.wrap(part);
+        });
+    }
+}
@@ -0,0 +1,94 @@
+package ae.teletronics.storage.adapters.storage;
+
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PrefetchingChunkReaderTest {
+
+    ReactiveMongoTemplate mongo;
+    ObjectId id = new ObjectId();
+    Set<Integer> missing = ConcurrentHashMap.newKeySet();
+    List<int[]> queried; // [from, to] of each range query, in subscription order
+
+    @BeforeEach
+    void setUp() {
+        mongo = mock(ReactiveMongoTemplate.class);
+        queried = new ArrayList<>();
+        when(mongo.find(any(Query.class), eq(Document.class), eq(GridFsReactiveAdapter.CHUNKS))).thenAnswer(inv -> {
+            Document n = inv.getArgument(0, Query.class).getQueryObject().get("n", Document.class);
+            int from = n.getInteger("$gte");
+            int to = n.getInteger("$lte");
+            return Flux.defer(() -> {
+                synchronized (queried) {
+                    queried.add(new int[]{from, to});
+                }
+                // later windows answer sooner, so ordering is the reader's job
+                return Flux.range(from, to - from + 1)
+                        .filter(i -> !missing.contains(i))
+                        .map(i -> new Document("files_id", id).append("n", i).append("data", new Binary(new byte[]{(byte) i})))
+                        .delaySubscription(Duration.ofMillis(Math.max(0, 40 - 10L * from)));
+            });
+        });
+    }
+
+    @Test
+    void windowsAreQueriedInParallel_andEmittedInOrder() {
+        PrefetchingChunkReader reader = new PrefetchingChunkReader(mongo, 3, 3);
+
+        List<Integer> ns = reader.chunks(id, 2, 12).map(d -> d.getInteger("n")).collectList().block();
+
+        assertThat(ns).containsExactly(2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12);
+        assertThat(queried).extracting(r -> r[0] + "-" + r[1]).containsExactlyInAnyOrder("2-4", "5-7", "8-10", "11-12");
+    }
+
+    @Test
+    void slowClient_holdsAtMostParallelismWindows() {
+        PrefetchingChunkReader reader = new PrefetchingChunkReader(mongo, 2, 2);
+
+        StepVerifier.create(reader.chunks(id, 0, 99), 1)
+                .expectNextCount(1)
+                .thenAwait(Duration.ofMillis(100))
+                .then(() -> assertThat(queried).hasSize(2))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void gapInChunkNumbers_failsTheStream() {
+        missing.add(5);
+        PrefetchingChunkReader reader = new PrefetchingChunkReader(mongo, 4, 2);
+
+        StepVerifier.create(reader.chunks(id, 0, 9).map(d -> d.getInteger("n")))
+                .expectNext(0, 1, 2, 3, 4)
+                .expectErrorMessage("Missing chunk 5 of GridFS file " + id)
+                .verify();
+    }
+
+    @Test
+    void truncatedFile_failsTheStream() {
+        missing.add(9);
+        PrefetchingChunkReader reader = new PrefetchingChunkReader(mongo, 4, 2);
+
+        StepVerifier.create(reader.chunks(id, 0, 9))
+                .expectNextCount(9)
+                .expectErrorMessage("Missing chunk 9 of GridFS file " + id)
+                .verify();
+    }
+}
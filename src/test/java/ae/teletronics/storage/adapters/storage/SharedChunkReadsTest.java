@@ -0,0 +1,147 @@
+package ae.teletronics.storage.adapters.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+import reactor.test.publisher.TestPublisher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SharedChunkReadsTest {
+
+    static final LongFunction<Flux<DataBuffer>> NO_FALLBACK = skip -> Flux.error(new AssertionError("fell back"));
+
+    SimpleMeterRegistry meters;
+    SharedChunkReads shared;
+    TestPublisher<DataBuffer> upstream;
+    AtomicInteger subscriptions;
+
+    @BeforeEach
+    void setUp() {
+        meters = new SimpleMeterRegistry();
+        shared = new SharedChunkReads(2, meters);
+        upstream = TestPublisher.create();
+        subscriptions = new AtomicInteger();
+    }
+
+    @Test
+    void concurrentReaders_shareOneUpstreamRead() throws Exception {
+        CompletableFuture<byte[]> a = read("f", NO_FALLBACK);
+        CompletableFuture<byte[]> b = read("f", NO_FALLBACK);
+
+        upstream.next(buf(1, 2), buf(3));
+        upstream.complete();
+
+        assertThat(a.get()).containsExactly(1, 2, 3);
+        assertThat(b.get()).containsExactly(1, 2, 3);
+        assertThat(subscriptions).hasValue(1);
+        assertThat(meters.counter("storage.gridfs.shared-read", "role", "leader").count()).isEqualTo(1);
+        assertThat(meters.counter("storage.gridfs.shared-read", "role", "follower").count()).isEqualTo(1);
+    }
+
+    @Test
+    void readerArrivingPastTheWindow_startsItsOwnFlight() throws Exception {
+        CompletableFuture<byte[]> a = read("f", NO_FALLBACK);
+        upstream.next(buf(1), buf(2), buf(3)); // the first buffer has left the window
+
+        byte[] late = join(shared.read("f", () -> Flux.just(buf(1), buf(2), buf(3), buf(4)), NO_FALLBACK)
+                .collectList().block());
+        upstream.next(buf(4));
+        upstream.complete();
+
+        assertThat(late).containsExactly(1, 2, 3, 4);
+        assertThat(a.get()).containsExactly(1, 2, 3, 4);
+        assertThat(meters.counter("storage.gridfs.shared-read", "role", "leader").count()).isEqualTo(2);
+    }
+
+    @Test
+    void slowReader_continuesOnItsOwnRead_fromWhereItWas() throws Exception {
+        CompletableFuture<byte[]> fast = read("f", NO_FALLBACK);
+        List<Long> skips = new ArrayList<>();
+        Flux<Byte> slow = shared.read("f", this::source, skip -> {
+            skips.add(skip);
+            return Flux.just(buf(2), buf(3), buf(4));
+        }).map(db -> db.asByteBuffer().get());
+
+        StepVerifier.create(slow, 1)
+                .then(() -> {
+                    upstream.next(buf(1), buf(2), buf(3), buf(4));
+                    upstream.complete();
+                })
+                .expectNext((byte) 1)
+                .thenRequest(3)
+                .expectNext((byte) 2, (byte) 3, (byte) 4)
+                .verifyComplete();
+
+        assertThat(fast.get()).containsExactly(1, 2, 3, 4);
+        assertThat(skips).containsExactly(1L);
+        assertThat(subscriptions).hasValue(1);
+        assertThat(meters.counter("storage.gridfs.shared-read.fallbacks").count()).isEqualTo(1);
+    }
+
+    @Test
+    void upstreamError_reachesEveryReader() {
+        CompletableFuture<byte[]> a = read("f", NO_FALLBACK);
+        CompletableFuture<byte[]> b = read("f", NO_FALLBACK);
+
+        upstream.next(buf(1));
+        upstream.error(new IllegalStateException("boom"));
+
+        assertThatThrownBy(a::get).isInstanceOf(ExecutionException.class).hasRootCauseMessage("boom");
+        assertThatThrownBy(b::get).isInstanceOf(ExecutionException.class).hasRootCauseMessage("boom");
+    }
+
+    @Test
+    void whenEveryReaderLeaves_theUpstreamReadIsCancelled() {
+        CompletableFuture<List<DataBuffer>> a = shared.read("f", this::source, NO_FALLBACK)
+                .take(1).collectList().toFuture();
+        CompletableFuture<List<DataBuffer>> b = shared.read("f", this::source, NO_FALLBACK)
+                .take(1).collectList().toFuture();
+
+        upstream.next(buf(1));
+
+        assertThat(a).isCompleted();
+        assertThat(b).isCompleted();
+        upstream.assertCancelled();
+
+        read("f", NO_FALLBACK); // the abandoned flight is not joined
+        assertThat(subscriptions).hasValue(2);
+    }
+
+    private CompletableFuture<byte[]> read(String key, LongFunction<Flux<DataBuffer>> own) {
+        return shared.read(key, this::source, own).collectList().map(SharedChunkReadsTest::join).toFuture();
+    }
+
+    private Flux<DataBuffer> source() {
+        return upstream.flux().doOnSubscribe(s -> subscriptions.incrementAndGet());
+    }
+
+    private static DataBuffer buf(int... values) {
+        byte[] b = new byte[values.length];
+        for (int i = 0; i < values.length; i++) b[i] = (byte) values[i];
+        return DefaultDataBufferFactory.sharedInstance.wrap(b);
+    }
+
+    private static byte[] join(List<DataBuffer> buffers) {
+        byte[] out = new byte[buffers.stream().mapToInt(DataBuffer::readableByteCount).sum()];
+        int at = 0;
+        for (DataBuffer db : buffers) {
+            int n = db.readableByteCount();
+            db.read(out, at, n);
+            at += n;
+        }
+        return out;
+    }
+}
@@ -0,0 +1,115 @@
+package ae.teletronics.storage.adapters.web;
+
+import ae.teletronics.storage.application.DeleteFileServiceReactive;
+import ae.teletronics.storage.application.ReactiveUploadService;
+import ae.teletronics.storage.application.RenameFileServiceReactive;
+import ae.teletronics.storage.application.UsageServiceReactive;
+import ae.teletronics.storage.application.dto.UploadFileResult;
+import ae.teletronics.storage.domain.model.FileEntry;
+import ae.teletronics.storage.ports.BlobFileCachePort;
+import ae.teletronics.storage.ports.DownloadLinkQueryPort;
+import ae.teletronics.storage.ports.FileEntryQueryPort;
+import ae.teletronics.storage.ports.ReactiveStoragePort;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.BodyInserters;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Throughput and CPU per byte of {@code PUT /files/{filename}} against multipart {@code POST /files},
+ * in-process, with an upload service that only drains the body. Run with {@code ./gradlew benchmark}.
+ */
+@Tag("benchmark")
+class RawUploadBenchmark {
+
+    private static final int FILE_BYTES = 8 * 1024 * 1024;
+    private static final int WARMUP = 5;
+    private static final int MEASURED = 30;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void rawVersusMultipart() {
+        AtomicLong drained = new AtomicLong();
+        ReactiveUploadService uploads = mock(ReactiveUploadService.class);
+        when(uploads.upload(anyString(), anyString(), any(), anyList(), anyString(), any(Flux.class), any(), anyLong()))
+                .thenAnswer(inv -> {
+                    Flux<DataBuffer> body = inv.getArgument(5);
+                    return body.doOnNext(db -> {
+                                drained.addAndGet(db.readableByteCount());
+                                DataBufferUtils.release(db);
+                            })
+                            .then(Mono.just(new UploadFileResult("F1", "tok", "f.bin")));
+                });
+        FileEntryQueryPort files = mock(FileEntryQueryPort.class);
+        FileEntry fe = new FileEntry();
+        fe.setId("F1");
+        when(files.findById("F1")).thenReturn(Mono.just(fe));
+
+        WebTestClient client = WebTestClient.bindToController(new ReactiveFileController(uploads,
+                        mock(DeleteFileServiceReactive.class), mock(RenameFileServiceReactive.class), files,
+                        mock(DownloadLinkQueryPort.class),
+                        mock(ReactiveStoragePort.class), mock(BlobFileCachePort.class), UsageServiceReactive.untracked()))
+                .configureClient()
+                .codecs(c -> c.defaultCodecs().maxInMemorySize(-1))
+                .responseTimeout(Duration.ofMinutes(1))
+                .build();
+
+        byte[] payload = new byte[FILE_BYTES];
+        new Random(11).nextBytes(payload);
+
+        Result multipart = run("multipart", drained, () -> {
+            MultipartBodyBuilder mb = new MultipartBodyBuilder();
+            mb.part("file", new ByteArrayResource(payload) {
+                @Override public String getFilename() { return "f.bin"; }
+            }).contentType(MediaType.APPLICATION_OCTET_STREAM);
+            client.post().uri("/files").header("X-User-Id", "u1")
+                    .contentType(MediaType.MULTIPART_FORM_DATA)
+                    .body(BodyInserters.fromMultipartData(mb.build()))
+                    .exchange().expectStatus().isOk();
+        });
+        Result raw = run("raw", drained, () -> client.put().uri("/files/f.bin").header("X-User-Id", "u1")
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .bodyValue(payload)
+                .exchange().expectStatus().isOk());
+
+        System.out.printf("raw vs multipart: %.2fx throughput, %.2fx CPU/byte%n",
+                raw.mbPerSec / multipart.mbPerSec, raw.cpuNsPerByte / multipart.cpuNsPerByte);
+    }
+
+    private record Result(double mbPerSec, double cpuNsPerByte) {}
+
+    private static Result run(String name, AtomicLong drained, Runnable upload) {
+        for (int i = 0; i < WARMUP; i++) upload.run();
+
+        com.sun.management.OperatingSystemMXBean os =
+                (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        drained.set(0);
+        long cpu0 = os.getProcessCpuTime();
+        long t0 = System.nanoTime();
+        for (int i = 0; i < MEASURED; i++) upload.run();
+        long nanos = System.nanoTime() - t0;
+        long cpu = os.getProcessCpuTime() - cpu0;
+
+        long bytes = drained.get();
+        assertThat(bytes).isEqualTo((long) MEASURED * FILE_BYTES);
+        Result r = new Result(bytes / (nanos / 1e9) / (1 << 20), (double) cpu / bytes);
+        System.out.printf("%-9s %8.1f MB/s  %6.2f CPU ns/byte%n", name, r.mbPerSec, r.cpuNsPerByte);
+        return r;
+    }
+}
@@ -0,0 +1,243 @@
+package ae.teletronics.storage.adapters.web;
+
+import ae.teletronics.storage.application.DeleteFileServiceReactive;
+import ae.teletronics.storage.application.ReactiveUploadService;
+import ae.teletronics.storage.application.RenameFileServiceReactive;
+import ae.teletronics.storage.application.UsageServiceReactive;
+import ae.teletronics.storage.domain.Visibility;
+import ae.teletronics.storage.domain.model.DownloadLink;
+import ae.teletronics.storage.domain.model.FileEntry;
+import ae.teletronics.storage.ports.BlobFileCachePort;
+import ae.teletronics.storage.ports.DownloadLinkQueryPort;
+import ae.teletronics.storage.ports.FileEntryQueryPort;
+import ae.teletronics.storage.ports.ReactiveStoragePort;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@WebFluxTest(controllers = ReactiveFileController.class)
+class ReactiveFileControllerDownloadRangeTest {
+
+    private static final String CONTENT = "abcdefghij"; // 10 bytes
+    private static final String SHA = "deadbeef";
+
+    @Autowired WebTestClient client;
+
+    @MockBean ReactiveUploadService uploadService;
+    @MockBean DeleteFileServiceReactive deleteService;
+    @MockBean RenameFileServiceReactive renameService;
+    @MockBean FileEntryQueryPort files;
+    @MockBean DownloadLinkQueryPort links;
+    @MockBean ReactiveStoragePort storage;
+    @MockBean BlobFileCachePort diskCache;
+    @MockBean UsageServiceReactive usage;
+
+    @BeforeEach
+    void setUp() {
+        FileEntry fe = new FileEntry();
+        fe.setId("F1");
+        fe.setFilename("a.txt");
+        fe.setContentType("text/plain");
+        fe.setSize(CONTENT.length());
+        fe.setVisibility(Visibility.PUBLIC);
+        fe.setGridFsId("g1");
+        fe.setContentSha256(SHA);
+        fe.setCreatedAt(Instant.parse("2025-01-01T00:00:00Z"));
+
+        when(links.resolve("tok")).thenReturn(Mono.just(
+                new DownloadLinkQueryPort.ResolvedLink(new DownloadLink("tok", "F1", "u1", null), fe, 4)));
+        when(links.incrementAccessCountByToken(anyString())).thenReturn(Mono.empty());
+        when(diskCache.populate(anyString(), anyLong(), any())).thenAnswer(inv -> inv.getArgument(2));
+        when(storage.read(eq("g1"), eq(4), anyLong(), anyLong())).thenAnswer(inv -> {
+            int offset = (int) (long) inv.getArgument(2);
+            int length = (int) (long) inv.getArgument(3);
+            byte[] slice = CONTENT.substring(offset, offset + length).getBytes(StandardCharsets.US_ASCII);
+            return Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(slice));
+        });
+    }
+
+    @Test
+    void singleRange_returns206_withContentRange_andOnlyRequestedBytes() {
+        client.get().uri("/download/tok")
+                .header(HttpHeaders.RANGE, "bytes=2-4")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PARTIAL_CONTENT)
+                .expectHeader().valueEquals(HttpHeaders.CONTENT_RANGE, "bytes 2-4/10")
+                .expectHeader().valueEquals(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .expectHeader().contentLength(3)
+                .expectBody(String.class).isEqualTo("cde");
+
+        verify(storage).read("g1", 4, 2L, 3L);
+        verify(storage, never()).open(anyString());
+        verify(files, never()).findById(anyString()); // link, file and chunk size came from one lookup
+        verify(links).incrementAccessCountByToken("tok");
+    }
+
+    @Test
+    void suffixRange_servesTail() {
+        client.get().uri("/download/tok")
+                .header(HttpHeaders.RANGE, "bytes=-3")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PARTIAL_CONTENT)
+                .expectHeader().valueEquals(HttpHeaders.CONTENT_RANGE, "bytes 7-9/10")
+                .expectBody(String.class).isEqualTo("hij");
+    }
+
+    @Test
+    void unsatisfiableRange_returns416() {
+        client.get().uri("/download/tok")
+                .header(HttpHeaders.RANGE, "bytes=50-60")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                .expectHeader().valueEquals(HttpHeaders.CONTENT_RANGE, "bytes */10");
+
+        verify(storage, never()).read(anyString(), anyInt(), anyLong(), anyLong());
+        verify(links, never()).incrementAccessCountByToken(anyString());
+    }
+
+    @Test
+    void multiRange_returnsMultipartByteranges() {
+        String body = client.get().uri("/download/tok")
+                .header(HttpHeaders.RANGE, "bytes=0-1,8-9")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PARTIAL_CONTENT)
+                .expectHeader().value(HttpHeaders.CONTENT_TYPE, v -> assertThat(v).startsWith("multipart/byteranges"))
+                .expectBody(String.class).returnResult().getResponseBody();
+
+        assertThat(body)
+                .contains("Content-Range: bytes 0-1/10\r\n\r\nab")
+                .contains("Content-Range: bytes 8-9/10\r\n\r\nij");
+        verify(storage).read("g1", 4, 0L, 2L);
+        verify(storage).read("g1", 4, 8L, 2L);
+    }
+
+    @Test
+    void overlappingRanges_areMerged_andEachByteIsSentOnce() {
+        client.get().uri("/download/tok")
+                .header(HttpHeaders.RANGE, "bytes=0-,0-,3-5,0-")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PARTIAL_CONTENT)
+                .expectHeader().valueEquals(HttpHeaders.CONTENT_RANGE, "bytes 0-9/10")
+                .expectBody(String.class).isEqualTo(CONTENT);
+
+        verify(storage, times(1)).read(anyString(), anyInt(), anyLong(), anyLong());
+    }
+
+    @Test
+    void adjacentRanges_areMerged_unsortedOnesSorted() {
+        String body = client.get().uri("/download/tok")
+                .header(HttpHeaders.RANGE, "bytes=8-9,2-3,0-1")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PARTIAL_CONTENT)
+                .expectBody(String.class).returnResult().getResponseBody();
+
+        assertThat(body)
+                .contains("Content-Range: bytes 0-3/10\r\n\r\nabcd")
+                .contains("Content-Range: bytes 8-9/10\r\n\r\nij");
+        assertThat(body.indexOf("bytes 0-3/10")).isLessThan(body.indexOf("bytes 8-9/10"));
+    }
+
+    @Test
+    void tooManyRanges_areIgnored_andTheFullEntityIsServed() {
+        String ranges = "bytes=" + "0-0,".repeat(ByteRanges.MAX_RANGES) + "1-1";
+        client.get().uri("/download/tok")
+                .header(HttpHeaders.RANGE, ranges)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo(CONTENT);
+
+        verify(storage).read("g1", 4, 0L, 10L);
+    }
+
+    @Test
+    void staleIfRange_isIgnored_andRangeNotApplied() {
+        // Stale validator -> full entity is served
+        client.get().uri("/download/tok")
+                .header(HttpHeaders.RANGE, "bytes=2-4")
+                .header(HttpHeaders.IF_RANGE, "\"other\"")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo(CONTENT);
+
+        verify(storage).read("g1", 4, 0L, 10L);
+        verify(storage, never()).open(anyString());
+        verify(diskCache).populate(eq(SHA), eq(10L), any()); // a full read is teed to the disk cache
+    }
+
+    @Test
+    void diskCachedFile_isServedFromTheLocalCopy(@TempDir Path dir) throws Exception {
+        Path copy = Files.writeString(dir.resolve(SHA), CONTENT, StandardCharsets.US_ASCII);
+        when(diskCache.lookup(SHA, 10L)).thenReturn(copy);
+
+        client.get().uri("/download/tok")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo(CONTENT);
+        client.get().uri("/download/tok")
+                .header(HttpHeaders.RANGE, "bytes=6-8")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PARTIAL_CONTENT)
+                .expectBody(String.class).isEqualTo("ghi");
+
+        verify(diskCache).served(10L);
+        verify(diskCache).served(3L);
+        verify(diskCache, never()).populate(anyString(), anyLong(), any());
+        verifyNoInteractions(storage);
+    }
+
+    @Test
+    void inlineFile_isServedFromTheEntry_withRanges() {
+        FileEntry small = new FileEntry();
+        small.setId("F2");
+        small.setFilename("s.txt");
+        small.setContentType("text/plain");
+        small.setSize(CONTENT.length());
+        small.setInlineData(CONTENT.getBytes(StandardCharsets.US_ASCII));
+        when(links.resolve("small")).thenReturn(Mono.just(
+                new DownloadLinkQueryPort.ResolvedLink(new DownloadLink("small", "F2", "u1", null), small, 0)));
+
+        client.get().uri("/download/small")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentLength(10)
+                .expectBody(String.class).isEqualTo(CONTENT);
+        client.get().uri("/download/small")
+                .header(HttpHeaders.RANGE, "bytes=3-5")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PARTIAL_CONTENT)
+                .expectBody(String.class).isEqualTo("def");
+
+        verifyNoInteractions(storage);
+    }
+
+    @Test
+    void linkWithoutFile_is404() {
+        when(links.resolve("orphan")).thenReturn(Mono.just(
+                new DownloadLinkQueryPort.ResolvedLink(new DownloadLink("orphan", "F9", "u1", null), null, 0)));
+        when(links.resolve("unknown")).thenReturn(Mono.empty());
+
+        client.get().uri("/download/orphan").exchange().expectStatus().isNotFound();
+        client.get().uri("/download/unknown").exchange().expectStatus().isNotFound();
+    }
+}
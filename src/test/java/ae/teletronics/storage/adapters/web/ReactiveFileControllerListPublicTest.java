@@ -2,8 +2,11 @@ package ae.teletronics.storage.adapters.web;
 
 import ae.teletronics.storage.application.DeleteFileServiceReactive;
 import ae.teletronics.storage.application.ReactiveUploadService;
+import ae.teletronics.storage.application.RenameFileServiceReactive;
+import ae.teletronics.storage.application.UsageServiceReactive;
 import ae.teletronics.storage.domain.Visibility;
 import ae.teletronics.storage.domain.model.FileEntry;
+import ae.teletronics.storage.ports.BlobFileCachePort;
 import ae.teletronics.storage.ports.DownloadLinkQueryPort;
 import ae.teletronics.storage.ports.FileEntryQueryPort;
 import ae.teletronics.storage.ports.ReactiveStoragePort;
@@ -29,9 +32,12 @@ class ReactiveFileControllerListPublicTest {
     // Controller deps
     @MockBean ReactiveUploadService uploadService;
     @MockBean DeleteFileServiceReactive deleteService;
+    @MockBean RenameFileServiceReactive renameService;
     @MockBean FileEntryQueryPort files;
     @MockBean DownloadLinkQueryPort links;
     @MockBean ReactiveStoragePort storage;
+    @MockBean BlobFileCachePort diskCache;
+    @MockBean UsageServiceReactive usage;
 
     @Test
     void listPublic_defaults_ok() {
@@ -0,0 +1,109 @@
+package ae.teletronics.storage.adapters.web;
+
+import ae.teletronics.storage.application.DeleteFileServiceReactive;
+import ae.teletronics.storage.application.ReactiveUploadService;
+import ae.teletronics.storage.application.RenameFileServiceReactive;
+import ae.teletronics.storage.application.UsageServiceReactive;
+import ae.teletronics.storage.application.dto.DeclaredContent;
+import ae.teletronics.storage.application.dto.UploadFileResult;
+import ae.teletronics.storage.application.exceptions.DuplicateFileException;
+import ae.teletronics.storage.domain.Visibility;
+import ae.teletronics.storage.domain.model.FileEntry;
+import ae.teletronics.storage.ports.BlobFileCachePort;
+import ae.teletronics.storage.ports.DownloadLinkQueryPort;
+import ae.teletronics.storage.ports.FileEntryQueryPort;
+import ae.teletronics.storage.ports.ReactiveStoragePort;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@WebFluxTest(controllers = ReactiveFileController.class)
+class ReactiveFileControllerRawUploadTest {
+
+    static final String SHA = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+    @Autowired WebTestClient client;
+
+    @MockBean ReactiveUploadService uploadService;
+    @MockBean DeleteFileServiceReactive deleteService;
+    @MockBean RenameFileServiceReactive renameService;
+    @MockBean FileEntryQueryPort files;
+    @MockBean DownloadLinkQueryPort links;
+    @MockBean ReactiveStoragePort storage;
+    @MockBean BlobFileCachePort diskCache;
+    @MockBean UsageServiceReactive usage;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void rawBody_isStreamedToTheUploadService_withMetadataFromQueryAndHeaders() {
+        StringBuilder received = new StringBuilder();
+        when(uploadService.upload(anyString(), anyString(), any(), anyList(), anyString(), any(Flux.class), any(), anyLong()))
+                .thenAnswer(inv -> {
+                    Flux<DataBuffer> body = inv.getArgument(5);
+                    return body.doOnNext(db -> {
+                                received.append(db.toString(StandardCharsets.UTF_8));
+                                DataBufferUtils.release(db);
+                            })
+                            .then(Mono.just(new UploadFileResult("F1", "tok", "report.csv")));
+                });
+        FileEntry fe = new FileEntry();
+        fe.setId("F1");
+        fe.setFilename("report.csv");
+        when(files.findById("F1")).thenReturn(Mono.just(fe));
+
+        client.put()
+                .uri("/files/report.csv?visibility=public&tag=a&tag=%20a&tag=b")
+                .header("X-User-Id", "u1")
+                .header(ReactiveFileController.CONTENT_SIZE, "3")
+                .contentType(MediaType.TEXT_PLAIN)
+                .bodyValue("abc")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.id").isEqualTo("F1")
+                .jsonPath("$.filename").isEqualTo("report.csv");
+
+        ArgumentCaptor<List<String>> tags = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<DeclaredContent> declared = ArgumentCaptor.forClass(DeclaredContent.class);
+        verify(uploadService).upload(eq("u1"), eq("report.csv"), eq(Visibility.PUBLIC), tags.capture(),
+                eq("text/plain"), any(Flux.class), declared.capture(), eq(3L));
+        assertThat(tags.getValue()).containsExactly("a", "b");
+        assertThat(declared.getValue().size()).isEqualTo(3);
+        assertThat(received.toString()).isEqualTo("abc");
+    }
+
+    @Test
+    void expectContinue_withKnownHash_isRejectedBeforeTheBody() {
+        when(uploadService.checkDuplicate("u1", SHA)).thenReturn(Mono.error(
+                new DuplicateFileException(DuplicateFileException.Kind.CONTENT, "File content already exists")));
+
+        client.put()
+                .uri("/files/a.bin")
+                .header("X-User-Id", "u1")
+                .header("Expect", "100-continue")
+                .header(ReactiveFileController.CONTENT_SHA256, SHA)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .bodyValue(new byte[]{1, 2, 3})
+                .exchange()
+                .expectStatus().isEqualTo(409)
+                .expectBody()
+                .jsonPath("$.error").isEqualTo("DUPLICATE_CONTENT");
+
+        verify(uploadService, never()).upload(anyString(), anyString(), any(), anyList(), any(), any(), any(), anyLong());
+    }
+}
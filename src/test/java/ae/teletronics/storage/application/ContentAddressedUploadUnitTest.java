@@ -0,0 +1,106 @@
+package ae.teletronics.storage.application;
+
+import ae.teletronics.storage.application.admission.UploadAdmission;
+import ae.teletronics.storage.application.dto.DeclaredContent;
+import ae.teletronics.storage.application.hashing.HashingStage;
+import ae.teletronics.storage.application.hashing.TreeHashing;
+import ae.teletronics.storage.domain.FingerprintMode;
+import ae.teletronics.storage.domain.Visibility;
+import ae.teletronics.storage.domain.model.FileEntry;
+import ae.teletronics.storage.ports.DownloadLinkQueryPort;
+import ae.teletronics.storage.ports.FileEntryQueryPort;
+import ae.teletronics.storage.ports.FilenameReservationPort;
+import ae.teletronics.storage.ports.LeafHashPort;
+import ae.teletronics.storage.ports.ReactiveStoragePort;
+import ae.teletronics.storage.ports.SharedBlobPort;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/** Cross-owner deduplication with {@code storage.cas.enabled=true}. */
+class ContentAddressedUploadUnitTest {
+
+    static final String SHA_OF_ABC = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+    FileEntryQueryPort files;
+    DownloadLinkQueryPort links;
+    ReactiveStoragePort storage;
+    SharedBlobPort sharedBlobs;
+    ReactiveUploadService service;
+
+    @BeforeEach
+    void setUp() {
+        files = mock(FileEntryQueryPort.class);
+        links = mock(DownloadLinkQueryPort.class);
+        storage = mock(ReactiveStoragePort.class);
+        sharedBlobs = mock(SharedBlobPort.class);
+        FilenameReservationPort reservations = mock(FilenameReservationPort.class);
+        when(reservations.reserve(anyString(), anyString(), any())).thenReturn(Mono.just("R1"));
+        when(reservations.release(anyString())).thenReturn(Mono.empty());
+
+        service = new ReactiveUploadService(files, links, storage, reservations, sharedBlobs,
+                HashingStage.inline(),
+                TreeHashing.inline(FingerprintMode.SHA256, 1 << 20), mock(LeafHashPort.class),
+                (head, name) -> null, UploadAdmission.unbounded(),
+                UsageServiceReactive.untracked(), DataSize.ofBytes(0), Duration.ofHours(1), true);
+
+        when(files.existsByOwnerIdAndFilenameLc(anyString(), anyString())).thenReturn(Mono.just(false));
+        when(files.existsByOwnerIdAndContentSha256(anyString(), anyString())).thenReturn(Mono.just(false));
+        when(files.save(any())).thenAnswer(inv -> {
+            FileEntry fe = inv.getArgument(0);
+            fe.setId("F1");
+            return Mono.just(fe);
+        });
+        when(links.save(any())).thenAnswer(inv -> Mono.just(inv.getArgument(0)));
+        when(storage.save(any(), anyString(), any(), anyMap(), anyLong())).thenAnswer(inv -> {
+            Flux<DataBuffer> body = inv.getArgument(0);
+            return body.then(Mono.just(new ReactiveStoragePort.StorageSaveResult("mine", -1L)));
+        });
+        when(storage.delete(anyString())).thenReturn(Mono.empty());
+    }
+
+    private static Flux<DataBuffer> abc() {
+        return Flux.just(DefaultDataBufferFactory.sharedInstance.wrap("abc".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void contentStoredByAnotherOwner_isShared_andOurCopyDropped() {
+        when(sharedBlobs.acquire(SHA_OF_ABC, "mine", 3)).thenReturn(Mono.just("theirs"));
+
+        service.upload("u2", "a.txt", Visibility.PRIVATE, List.of(), null, abc()).block();
+
+        verify(storage).delete("mine");
+        ArgumentCaptor<FileEntry> saved = ArgumentCaptor.forClass(FileEntry.class);
+        verify(files).save(saved.capture());
+        assertThat(saved.getValue().getGridFsId()).isEqualTo("theirs");
+        assertThat(saved.getValue().isSharedBlob()).isTrue();
+    }
+
+    @Test
+    void declaredHashOfSharedBlob_skipsTheWrite() {
+        when(sharedBlobs.exists(SHA_OF_ABC)).thenReturn(Mono.just(true));
+        when(sharedBlobs.acquireExisting(SHA_OF_ABC)).thenReturn(Mono.just("theirs"));
+
+        service.upload("u2", "a.txt", Visibility.PRIVATE, List.of(), null, abc(),
+                new DeclaredContent(SHA_OF_ABC, 3)).block();
+
+        verify(storage, never()).save(any(), anyString(), any(), anyMap(), anyLong());
+        verify(sharedBlobs, never()).acquire(anyString(), anyString(), anyLong());
+        ArgumentCaptor<FileEntry> saved = ArgumentCaptor.forClass(FileEntry.class);
+        verify(files).save(saved.capture());
+        assertThat(saved.getValue().getGridFsId()).isEqualTo("theirs");
+    }
+}
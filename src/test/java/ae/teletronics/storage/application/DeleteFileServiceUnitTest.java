@@ -5,7 +5,9 @@ import ae.teletronics.storage.application.exceptions.NotFoundException;
 import ae.teletronics.storage.domain.model.FileEntry;
 import ae.teletronics.storage.ports.DownloadLinkQueryPort;
 import ae.teletronics.storage.ports.FileEntryQueryPort;
+import ae.teletronics.storage.ports.LeafHashPort;
 import ae.teletronics.storage.ports.ReactiveStoragePort;
+import ae.teletronics.storage.ports.SharedBlobPort;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InOrder;
@@ -26,6 +28,9 @@ class DeleteFileServiceUnitTest {
     @Mock FileEntryQueryPort files;          // << was FileEntryRepository
     @Mock DownloadLinkQueryPort links;
     @Mock ReactiveStoragePort storage;
+    @Mock SharedBlobPort sharedBlobs;
+    @Mock LeafHashPort leafHashes;
+    @Mock UsageServiceReactive usage;
 
     @InjectMocks DeleteFileServiceReactive service;
 
@@ -42,11 +47,14 @@ class DeleteFileServiceUnitTest {
     void delete_owner_ok_removesStorage_thenDb_and_links() {
         var owner = "u1";
         var fe = file("F1", owner, "bucket/key1", "gfs-1");
+        fe.setSize(4096);
 
         when(files.findById("F1")).thenReturn(Mono.just(fe));
         when(links.deleteAllByFileId("F1")).thenReturn(Mono.empty());
         when(storage.delete("gfs-1")).thenReturn(Mono.empty());
         when(files.deleteById("F1")).thenReturn(Mono.empty());
+        when(links.evictFile("F1")).thenReturn(Mono.empty());
+        when(usage.refund(owner, 4096)).thenReturn(Mono.empty());
 
         // subscribe to trigger the pipeline
         service.delete(owner, "F1").block();
@@ -56,7 +64,27 @@ class DeleteFileServiceUnitTest {
         inOrder.verify(links).deleteAllByFileId("F1");
         inOrder.verify(storage).delete("gfs-1");
         inOrder.verify(files).deleteById("F1");
+        inOrder.verify(links).evictFile("F1"); // cached tokens stop resolving on this instance
         verifyNoMoreInteractions(storage, files, links);
+        verify(usage).refund(owner, 4096); // the file's bytes go back to the owner's quota
+    }
+
+    @Test
+    void delete_inlineFile_hasNoBlobToRemove() {
+        var fe = file("F1", "u1", null, null);
+        fe.setInlineData(new byte[]{1, 2, 3});
+        fe.setSize(3);
+        when(files.findById("F1")).thenReturn(Mono.just(fe));
+        when(links.deleteAllByFileId("F1")).thenReturn(Mono.empty());
+        when(files.deleteById("F1")).thenReturn(Mono.empty());
+        when(links.evictFile("F1")).thenReturn(Mono.empty());
+        when(usage.refund("u1", 3)).thenReturn(Mono.empty());
+
+        service.delete("u1", "F1").block();
+
+        verify(files).deleteById("F1");
+        verify(usage).refund("u1", 3);
+        verifyNoInteractions(storage, sharedBlobs, leafHashes);
     }
 
     @Test
@@ -116,5 +144,27 @@ class DeleteFileServiceUnitTest {
 
         verifyNoInteractions(storage, links);
     }
-}
 
+    @Test
+    void delete_sharedBlob_onlyDeletesBytesWithLastReference() {
+        var fe = file("F1", "u1", "k1", "gfs-shared");
+        fe.setSharedBlob(true);
+        fe.setContentSha256("abc");
+        fe.setSize(100);
+        when(files.findById("F1")).thenReturn(Mono.just(fe));
+        when(links.deleteAllByFileId("F1")).thenReturn(Mono.empty());
+        when(files.deleteById("F1")).thenReturn(Mono.empty());
+        when(links.evictFile("F1")).thenReturn(Mono.empty());
+        when(usage.refund("u1", 100)).thenReturn(Mono.empty());
+
+        when(sharedBlobs.release("abc")).thenReturn(Mono.empty()); // other owners still reference it
+        service.delete("u1", "F1").block();
+        verifyNoInteractions(storage);
+
+        when(sharedBlobs.release("abc")).thenReturn(Mono.just("gfs-shared")); // last reference
+        when(storage.delete("gfs-shared")).thenReturn(Mono.empty());
+        service.delete("u1", "F1").block();
+        verify(storage).delete("gfs-shared");
+        verify(usage, times(2)).refund("u1", 100); // each owner's copy is charged in full
+    }
+}
@@ -0,0 +1,79 @@
+package ae.teletronics.storage.application;
+
+import ae.teletronics.storage.IntegrationTestBase;
+import ae.teletronics.storage.domain.Visibility;
+import ae.teletronics.storage.domain.model.DownloadLink;
+import ae.teletronics.storage.domain.model.FileEntry;
+import ae.teletronics.storage.ports.DownloadLinkQueryPort;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The resolved-link cache with no change-stream watch (as against a standalone server): deletes
+ * and renames must still take effect at once on the instance that made them.
+ */
+@TestPropertySource(properties = {
+        "storage.download.cache.max-size=32MB",
+        "storage.download.cache.watch=false"
+})
+class DownloadLinkCacheIT extends IntegrationTestBase {
+
+    @Autowired DeleteFileServiceReactive deleteService;
+    @Autowired RenameFileServiceReactive renameService;
+    @Autowired DownloadLinkQueryPort links;
+    @Autowired ReactiveMongoTemplate mongo;
+    @Autowired MeterRegistry meters;
+
+    @Test
+    void deletedFile_stopsResolving_onTheSameInstance() {
+        String token = stored("u-cache-delete", "gone.txt");
+        assertCached(token);
+
+        deleteService.delete("u-cache-delete", links.resolve(token).block().file().getId()).block();
+
+        assertThat(links.resolve(token).blockOptional()).isEmpty();
+    }
+
+    @Test
+    void renamedFile_resolvesWithTheNewName_onTheSameInstance() {
+        String token = stored("u-cache-rename", "old.txt");
+        assertCached(token);
+
+        renameService.rename("u-cache-rename", links.resolve(token).block().file().getId(), "new.txt").block();
+
+        assertThat(links.resolve(token).block().file().getFilename()).isEqualTo("new.txt");
+    }
+
+    /** An inline file with one link; returns the token. */
+    private String stored(String owner, String filename) {
+        FileEntry fe = new FileEntry();
+        fe.setOwnerId(owner);
+        fe.setFilename(filename);
+        fe.setFilenameLc(filename);
+        fe.setVisibility(Visibility.PRIVATE);
+        fe.setInlineData(new byte[]{1, 2, 3});
+        fe.setSize(3);
+        String fileId = mongo.insert(fe).block().getId();
+        String token = UUID.randomUUID().toString();
+        mongo.insert(new DownloadLink(token, fileId, owner, null)).block();
+        return token;
+    }
+
+    private void assertCached(String token) {
+        links.resolve(token).block();
+        double before = hits();
+        assertThat(links.resolve(token).block().file()).isNotNull();
+        assertThat(hits()).isEqualTo(before + 1);
+    }
+
+    private double hits() {
+        return meters.counter("storage.download.cache", "result", "hit").count();
+    }
+}
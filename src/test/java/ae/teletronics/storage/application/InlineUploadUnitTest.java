@@ -0,0 +1,143 @@
+package ae.teletronics.storage.application;
+
+import ae.teletronics.storage.application.admission.UploadAdmission;
+import ae.teletronics.storage.application.dto.DeclaredContent;
+import ae.teletronics.storage.application.dto.DownloadResult;
+import ae.teletronics.storage.application.exceptions.ChecksumMismatchException;
+import ae.teletronics.storage.application.hashing.HashingStage;
+import ae.teletronics.storage.application.hashing.TreeHashing;
+import ae.teletronics.storage.domain.FingerprintMode;
+import ae.teletronics.storage.domain.Visibility;
+import ae.teletronics.storage.domain.model.DownloadLink;
+import ae.teletronics.storage.domain.model.FileEntry;
+import ae.teletronics.storage.ports.DownloadLinkQueryPort;
+import ae.teletronics.storage.ports.FileEntryQueryPort;
+import ae.teletronics.storage.ports.FilenameReservationPort;
+import ae.teletronics.storage.ports.LeafHashPort;
+import ae.teletronics.storage.ports.ReactiveStoragePort;
+import ae.teletronics.storage.ports.SharedBlobPort;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class InlineUploadUnitTest {
+
+    static final String SHA_OF_ABC = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+    FileEntryQueryPort files;
+    DownloadLinkQueryPort links;
+    ReactiveStoragePort storage;
+    ReactiveUploadService service;
+
+    @BeforeEach
+    void setUp() {
+        files = mock(FileEntryQueryPort.class);
+        links = mock(DownloadLinkQueryPort.class);
+        storage = mock(ReactiveStoragePort.class);
+        FilenameReservationPort reservations = mock(FilenameReservationPort.class);
+        when(reservations.reserve(anyString(), anyString(), any()))
+                .thenAnswer(inv -> Mono.just(UUID.randomUUID().toString()));
+        when(reservations.release(anyString())).thenReturn(Mono.empty());
+
+        service = new ReactiveUploadService(files, links, storage, reservations,
+                mock(SharedBlobPort.class), HashingStage.inline(),
+                TreeHashing.inline(FingerprintMode.SHA256, 1 << 20), mock(LeafHashPort.class),
+                (head, name) -> null, UploadAdmission.unbounded(),
+                UsageServiceReactive.untracked(), DataSize.ofKilobytes(16), Duration.ofHours(1), false);
+
+        when(storage.save(any(), anyString(), any(), anyMap(), anyLong())).thenAnswer(inv -> {
+            Flux<DataBuffer> body = inv.getArgument(0);
+            return body.doOnNext(DataBufferUtils::release)
+                    .then(Mono.just(new ReactiveStoragePort.StorageSaveResult("blob1", -1L)));
+        });
+        when(files.existsByOwnerIdAndFilenameLc(anyString(), anyString())).thenReturn(Mono.just(false));
+        when(files.existsByOwnerIdAndContentSha256(anyString(), anyString())).thenReturn(Mono.just(false));
+        when(files.save(any())).thenAnswer(inv -> {
+            FileEntry fe = inv.getArgument(0);
+            fe.setId("F1");
+            return Mono.just(fe);
+        });
+        when(links.save(any())).thenAnswer(inv -> Mono.just(inv.getArgument(0)));
+    }
+
+    private static Flux<DataBuffer> body(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        int half = bytes.length / 2;
+        return Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(Arrays.copyOfRange(bytes, 0, half)),
+                DefaultDataBufferFactory.sharedInstance.wrap(Arrays.copyOfRange(bytes, half, bytes.length)));
+    }
+
+    @Test
+    void smallFileOfKnownSize_isKeptInTheEntry_withoutGridFs() {
+        service.upload("u1", "a.txt", Visibility.PRIVATE, List.of(), "text/plain", body("abc"), null, 3).block();
+
+        ArgumentCaptor<FileEntry> saved = ArgumentCaptor.forClass(FileEntry.class);
+        verify(files).save(saved.capture());
+        assertThat(saved.getValue().getInlineData()).isEqualTo("abc".getBytes(StandardCharsets.UTF_8));
+        assertThat(saved.getValue().getGridFsId()).isNull();
+        assertThat(saved.getValue().getSize()).isEqualTo(3);
+        assertThat(saved.getValue().getContentSha256()).isEqualTo(SHA_OF_ABC);
+        verifyNoInteractions(storage);
+        verify(files, never()).existsByOwnerIdAndContentSha256(anyString(), anyString()); // the index decides
+    }
+
+    @Test
+    void unknownOrLargeSize_goesToGridFs() {
+        service.upload("u1", "a.txt", Visibility.PRIVATE, List.of(), null, body("abc"), null, -1).block();
+        service.upload("u1", "b.txt", Visibility.PRIVATE, List.of(), null, body("abd"), null, 16 * 1024 + 1).block();
+
+        verify(storage, times(2)).save(any(), anyString(), any(), anyMap(), anyLong());
+        ArgumentCaptor<FileEntry> saved = ArgumentCaptor.forClass(FileEntry.class);
+        verify(files, times(2)).save(saved.capture());
+        assertThat(saved.getAllValues()).allSatisfy(fe -> {
+            assertThat(fe.isInline()).isFalse();
+            assertThat(fe.getGridFsId()).isEqualTo("blob1");
+        });
+    }
+
+    @Test
+    void bodyLargerThanDeclared_isRejected() {
+        String big = "x".repeat(16 * 1024 + 10);
+
+        assertThatThrownBy(() -> service.upload("u1", "a.txt", Visibility.PRIVATE, List.of(), null,
+                body(big), new DeclaredContent(null, 10)).block())
+                .isInstanceOf(ChecksumMismatchException.class);
+        verify(files, never()).save(any());
+    }
+
+    @Test
+    void download_servesInlineBytes_fromTheSingleLookup() {
+        FileEntry fe = new FileEntry();
+        fe.setFilename("a.txt");
+        fe.setSize(3);
+        fe.setInlineData("abc".getBytes(StandardCharsets.UTF_8));
+        when(links.resolve("tok")).thenReturn(Mono.just(
+                new DownloadLinkQueryPort.ResolvedLink(new DownloadLink("tok", "F1", "u1", null), fe, 0)));
+        when(links.incrementAccessCountByToken("tok")).thenReturn(Mono.empty());
+
+        DownloadResult result = new DownloadServiceReactive(links, storage).byToken("tok").block();
+
+        String content = DataBufferUtils.join(result.body())
+                .map(db -> db.toString(StandardCharsets.UTF_8)).block();
+        assertThat(content).isEqualTo("abc");
+        assertThat(result.contentType()).isEqualTo("application/octet-stream");
+        verifyNoInteractions(storage);
+    }
+}
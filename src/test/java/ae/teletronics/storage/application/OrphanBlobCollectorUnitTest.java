@@ -0,0 +1,88 @@
+package ae.teletronics.storage.application;
+
+import ae.teletronics.storage.ports.FileEntryQueryPort;
+import ae.teletronics.storage.ports.LeafHashPort;
+import ae.teletronics.storage.ports.ReactiveStoragePort;
+import ae.teletronics.storage.ports.ReactiveStoragePort.StoredBlob;
+import ae.teletronics.storage.ports.SharedBlobPort;
+import ae.teletronics.storage.ports.UploadSessionQueryPort;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class OrphanBlobCollectorUnitTest {
+
+    ReactiveStoragePort storage;
+    FileEntryQueryPort files;
+    UploadSessionQueryPort sessions;
+    SharedBlobPort sharedBlobs;
+    SimpleMeterRegistry meters;
+    OrphanBlobCollector collector;
+
+    @BeforeEach
+    void setUp() {
+        storage = mock(ReactiveStoragePort.class);
+        files = mock(FileEntryQueryPort.class);
+        sessions = mock(UploadSessionQueryPort.class);
+        sharedBlobs = mock(SharedBlobPort.class);
+        when(sharedBlobs.findReferencedGridFsIds(anyCollection())).thenReturn(Flux.empty());
+        meters = new SimpleMeterRegistry();
+        LeafHashPort leafHashes = mock(LeafHashPort.class);
+        when(leafHashes.deleteByGridFsId(anyString())).thenReturn(Mono.empty());
+        collector = new OrphanBlobCollector(storage, files, sessions, sharedBlobs, leafHashes, meters,
+                Duration.ofHours(1), 2, Duration.ZERO);
+        when(storage.delete(anyString())).thenReturn(Mono.empty());
+    }
+
+    private static StoredBlob blob(String id, long size, String sessionId) {
+        return new StoredBlob(id, size, 100, Instant.EPOCH, sessionId);
+    }
+
+    @Test
+    void deletesOnlyUnreferencedBlobs_andReportsReclaimedSpace() {
+        when(storage.listStoredBefore(any())).thenReturn(Flux.just(
+                blob("referenced", 10, null),
+                blob("orphan", 250, null),
+                blob("liveSessionPart", 10, "S1"),
+                blob("deadSessionPart", 50, "S2")));
+        when(files.findReferencedGridFsIds(anyCollection())).thenAnswer(inv ->
+                inv.<Collection<String>>getArgument(0).contains("referenced")
+                        ? Flux.just("referenced") : Flux.empty());
+        when(sessions.findExistingIds(anyCollection())).thenAnswer(inv ->
+                inv.<Collection<String>>getArgument(0).contains("S1")
+                        ? Flux.just("S1") : Flux.empty());
+
+        OrphanBlobCollector.SweepResult res = collector.sweep().block();
+
+        assertThat(res.blobs()).isEqualTo(2);
+        assertThat(res.bytes()).isEqualTo(300);
+        assertThat(res.chunks()).isEqualTo(4); // 3 + 1
+        verify(storage).delete("orphan");
+        verify(storage).delete("deadSessionPart");
+        verify(storage, never()).delete("referenced");
+        verify(storage, never()).delete("liveSessionPart");
+        assertThat(meters.counter("storage.gc.reclaimed.bytes").count()).isEqualTo(300);
+    }
+
+    @Test
+    void failedDelete_isCountedAndSkipped() {
+        when(storage.listStoredBefore(any())).thenReturn(Flux.just(blob("a", 1, null), blob("b", 1, null)));
+        when(files.findReferencedGridFsIds(anyCollection())).thenReturn(Flux.empty());
+        when(storage.delete("a")).thenReturn(Mono.error(new IllegalStateException("boom")));
+
+        OrphanBlobCollector.SweepResult res = collector.sweep().block();
+
+        assertThat(res.blobs()).isEqualTo(1);
+        assertThat(meters.counter("storage.gc.failures").count()).isEqualTo(1);
+    }
+}
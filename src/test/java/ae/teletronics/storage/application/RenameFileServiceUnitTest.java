@@ -0,0 +1,91 @@
+package ae.teletronics.storage.application;
+
+import ae.teletronics.storage.application.exceptions.DuplicateFileException;
+import ae.teletronics.storage.domain.model.FileEntry;
+import ae.teletronics.storage.ports.DownloadLinkQueryPort;
+import ae.teletronics.storage.ports.FileEntryQueryPort;
+import ae.teletronics.storage.ports.FilenameReservationPort;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class RenameFileServiceUnitTest {
+
+    FileEntryQueryPort files;
+    DownloadLinkQueryPort links;
+    FilenameReservationPort reservations;
+    RenameFileServiceReactive service;
+    FileEntry fe;
+
+    @BeforeEach
+    void setUp() {
+        files = mock(FileEntryQueryPort.class);
+        links = mock(DownloadLinkQueryPort.class);
+        reservations = mock(FilenameReservationPort.class);
+        service = new RenameFileServiceReactive(files, links, reservations, Duration.ofHours(1));
+
+        fe = new FileEntry();
+        fe.setId("F1");
+        fe.setOwnerId("u1");
+        fe.setFilename("old.txt");
+        fe.setFilenameLc("old.txt");
+        when(files.findById("F1")).thenReturn(Mono.just(fe));
+        when(files.existsByOwnerIdAndFilenameLc(anyString(), anyString())).thenReturn(Mono.just(false));
+        when(files.save(any())).thenAnswer(inv -> Mono.just(inv.getArgument(0)));
+        when(reservations.reserve(anyString(), anyString(), any())).thenReturn(Mono.just("R1"));
+        when(reservations.release(anyString())).thenReturn(Mono.empty());
+        when(links.evictFile(anyString())).thenReturn(Mono.empty());
+    }
+
+    @Test
+    void rename_holdsTheFilenameReservation_andReleasesIt() {
+        FileEntry renamed = service.rename("u1", "F1", "New.txt").block();
+
+        assertThat(renamed.getFilename()).isEqualTo("New.txt");
+        assertThat(renamed.getFilenameLc()).isEqualTo("new.txt");
+        var order = inOrder(reservations, files);
+        order.verify(reservations).reserve(eq("u1"), eq("new.txt"), any());
+        order.verify(files).save(fe);
+        order.verify(reservations).release("R1");
+        verify(links).evictFile("F1");
+    }
+
+    @Test
+    void nameClaimedByInFlightUpload_isRejected_withoutSaving() {
+        when(reservations.reserve(eq("u1"), eq("new.txt"), any())).thenReturn(Mono.empty());
+
+        assertThatThrownBy(() -> service.rename("u1", "F1", "new.txt").block())
+                .isInstanceOf(DuplicateFileException.class)
+                .satisfies(ex -> assertThat(((DuplicateFileException) ex).getKind())
+                        .isEqualTo(DuplicateFileException.Kind.FILENAME));
+
+        verify(files, never()).save(any());
+        verify(reservations, never()).release(anyString());
+        verify(links, never()).evictFile(anyString());
+    }
+
+    @Test
+    void nameTakenAtSave_isAFilenameDuplicate_andTheReservationIsReleased() {
+        when(files.save(any())).thenReturn(Mono.error(new DuplicateKeyException("uniq_owner_filename")));
+
+        assertThatThrownBy(() -> service.rename("u1", "F1", "new.txt").block())
+                .isInstanceOf(DuplicateFileException.class);
+
+        verify(reservations).release("R1");
+    }
+
+    @Test
+    void caseOnlyChange_needsNoReservation() {
+        assertThat(service.rename("u1", "F1", "OLD.txt").block().getFilename()).isEqualTo("OLD.txt");
+
+        verify(reservations, never()).reserve(anyString(), anyString(), any());
+    }
+}
@@ -264,6 +264,11 @@ class UploadFileServiceConcurrencyIT extends IntegrationTestBase {
                 public Mono<Void> incrementAccessCountByToken(String token) {
                     return null;
                 }
+
+                @Override
+                public Mono<ResolvedLink> resolve(String token) {
+                    return Mono.error(new UnsupportedOperationException("not used by these tests"));
+                }
             };
         }
     }
@@ -1,13 +1,20 @@
 package ae.teletronics.storage.application;
 
+import ae.teletronics.storage.application.admission.UploadAdmission;
 import ae.teletronics.storage.application.dto.UploadFileResult;
 import ae.teletronics.storage.application.exceptions.DuplicateFileException;
+import ae.teletronics.storage.application.hashing.HashingStage;
+import ae.teletronics.storage.application.hashing.TreeHashing;
+import ae.teletronics.storage.domain.FingerprintMode;
 import ae.teletronics.storage.domain.Visibility;
 import ae.teletronics.storage.domain.model.DownloadLink;
 import ae.teletronics.storage.domain.model.FileEntry;
 import ae.teletronics.storage.ports.DownloadLinkQueryPort;
 import ae.teletronics.storage.ports.FileEntryQueryPort;
+import ae.teletronics.storage.ports.FilenameReservationPort;
+import ae.teletronics.storage.ports.LeafHashPort;
 import ae.teletronics.storage.ports.ReactiveStoragePort;
+import ae.teletronics.storage.ports.SharedBlobPort;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -19,10 +26,12 @@ import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.core.io.buffer.DataBufferFactory;
 import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.util.unit.DataSize;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.*;
@@ -40,6 +49,7 @@ class UploadFileServiceConcurrencyUnitTest {
     FileEntryQueryPort files;
     DownloadLinkQueryPort links;
     ReactiveStoragePort storage;
+    FilenameReservationPort reservations;
 
     ReactiveUploadService service;
 
@@ -54,7 +64,16 @@ class UploadFileServiceConcurrencyUnitTest {
         // download link save always ok (reactive)
         when(links.save(any(DownloadLink.class))).thenAnswer(inv -> Mono.just(inv.getArgument(0)));
 
-        service = new ReactiveUploadService(files, links, storage);
+        reservations = mock(FilenameReservationPort.class);
+        when(reservations.reserve(anyString(), anyString(), any()))
+                .thenAnswer(inv -> Mono.just(UUID.randomUUID().toString()));
+        when(reservations.release(anyString())).thenReturn(Mono.empty());
+
+        service = new ReactiveUploadService(files, links, storage, reservations,
+                mock(SharedBlobPort.class), HashingStage.inline(),
+                TreeHashing.inline(FingerprintMode.SHA256, 1 << 20), mock(LeafHashPort.class),
+                (head, name) -> null, UploadAdmission.unbounded(),
+                UsageServiceReactive.untracked(), DataSize.ofBytes(0), Duration.ofHours(1), false);
     }
 
     // -- helpers ------------------------------------------------------------------
@@ -84,7 +103,7 @@ class UploadFileServiceConcurrencyUnitTest {
                 .thenReturn(Mono.just(false), Mono.just(false));
 
         // Two distinct storage saves (order not guaranteed)
-        when(storage.save(any(Flux.class), eq(filename), any(), anyMap()))
+        when(storage.save(any(Flux.class), eq(filename), any(), anyMap(), anyLong()))
                 .thenReturn(Mono.just(new ReactiveStoragePort.StorageSaveResult("k1", 1L)))
                 .thenReturn(Mono.just(new ReactiveStoragePort.StorageSaveResult("k2", 1L)));
         when(storage.delete(anyString())).thenReturn(Mono.empty());
@@ -133,7 +152,7 @@ class UploadFileServiceConcurrencyUnitTest {
             assertThat(successes).isEqualTo(1);
 
             // storage.save called twice; no delete performed by the service in this path
-            verify(storage, times(2)).save(any(Flux.class), eq(filename), any(), anyMap());
+            verify(storage, times(2)).save(any(Flux.class), eq(filename), any(), anyMap(), anyLong());
             verify(storage, never()).delete(anyString());
         } finally {
             pool.shutdownNow();
@@ -155,7 +174,7 @@ class UploadFileServiceConcurrencyUnitTest {
                 .thenReturn(Mono.just(false), Mono.just(true));
 
         // Two storage saves
-        when(storage.save(any(Flux.class), anyString(), any(), anyMap()))
+        when(storage.save(any(Flux.class), anyString(), any(), anyMap(), anyLong()))
                 .thenReturn(Mono.just(new ReactiveStoragePort.StorageSaveResult("ka", 100L)))
                 .thenReturn(Mono.just(new ReactiveStoragePort.StorageSaveResult("kb", 100L)));
         when(storage.delete(anyString())).thenReturn(Mono.empty());
@@ -196,7 +215,7 @@ class UploadFileServiceConcurrencyUnitTest {
             assertThat(successes).isEqualTo(1);
 
             // storage.save called twice; one delete happened (cleanup of the losing attempt)
-            verify(storage, times(2)).save(any(Flux.class), anyString(), any(), anyMap());
+            verify(storage, times(2)).save(any(Flux.class), anyString(), any(), anyMap(), anyLong());
             ArgumentCaptor<String> deletedKey = ArgumentCaptor.forClass(String.class);
             verify(storage, times(1)).delete(deletedKey.capture());
             assertThat(deletedKey.getValue()).isIn("ka", "kb");
@@ -219,7 +238,7 @@ class UploadFileServiceConcurrencyUnitTest {
         when(files.existsByOwnerIdAndContentSha256(eq(owner), anyString()))
                 .thenReturn(Mono.just(false));
 
-        when(storage.save(any(Flux.class), eq(filename), eq("application/octet-stream"), anyMap()))
+        when(storage.save(any(Flux.class), eq(filename), eq("application/octet-stream"), anyMap(), anyLong()))
                 .thenReturn(Mono.just(new ReactiveStoragePort.StorageSaveResult("hugekey", twoGB)));
         when(storage.delete(anyString())).thenReturn(Mono.empty());
 
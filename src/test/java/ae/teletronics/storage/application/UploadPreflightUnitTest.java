@@ -0,0 +1,211 @@
+package ae.teletronics.storage.application;
+
+import ae.teletronics.storage.application.admission.UploadAdmission;
+import ae.teletronics.storage.application.dto.DeclaredContent;
+import ae.teletronics.storage.application.exceptions.ChecksumMismatchException;
+import ae.teletronics.storage.application.exceptions.DuplicateFileException;
+import ae.teletronics.storage.application.hashing.HashingStage;
+import ae.teletronics.storage.application.hashing.TreeHasher;
+import ae.teletronics.storage.application.hashing.TreeHashing;
+import ae.teletronics.storage.domain.FingerprintMode;
+import ae.teletronics.storage.domain.Visibility;
+import ae.teletronics.storage.domain.model.FileEntry;
+import ae.teletronics.storage.domain.model.LeafHashes;
+import ae.teletronics.storage.ports.DownloadLinkQueryPort;
+import ae.teletronics.storage.ports.FileEntryQueryPort;
+import ae.teletronics.storage.ports.FilenameReservationPort;
+import ae.teletronics.storage.ports.LeafHashPort;
+import ae.teletronics.storage.ports.ReactiveStoragePort;
+import ae.teletronics.storage.ports.SharedBlobPort;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class UploadPreflightUnitTest {
+
+    static final String SHA_OF_ABC = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+    FileEntryQueryPort files;
+    DownloadLinkQueryPort links;
+    ReactiveStoragePort storage;
+    FilenameReservationPort reservations;
+    ReactiveUploadService service;
+
+    @BeforeEach
+    void setUp() {
+        files = mock(FileEntryQueryPort.class);
+        links = mock(DownloadLinkQueryPort.class);
+        storage = mock(ReactiveStoragePort.class);
+        reservations = mock(FilenameReservationPort.class);
+        when(reservations.reserve(anyString(), anyString(), any()))
+                .thenAnswer(inv -> Mono.just(UUID.randomUUID().toString()));
+        when(reservations.release(anyString())).thenReturn(Mono.empty());
+
+        service = new ReactiveUploadService(files, links, storage, reservations,
+                mock(SharedBlobPort.class), HashingStage.inline(),
+                TreeHashing.inline(FingerprintMode.SHA256, 1 << 20), mock(LeafHashPort.class),
+                (head, name) -> null, UploadAdmission.unbounded(),
+                UsageServiceReactive.untracked(), DataSize.ofBytes(0), Duration.ofHours(1), false);
+
+        when(storage.save(any(), anyString(), any(), anyMap(), anyLong())).thenAnswer(inv -> {
+            Flux<DataBuffer> body = inv.getArgument(0);
+            return body.then(Mono.just(new ReactiveStoragePort.StorageSaveResult("blob1", -1L)));
+        });
+        when(storage.delete(anyString())).thenReturn(Mono.empty());
+        when(files.existsByOwnerIdAndFilenameLc(anyString(), anyString())).thenReturn(Mono.just(false));
+    }
+
+    private static Flux<DataBuffer> body(String s, AtomicBoolean subscribed) {
+        return Flux.defer(() -> {
+            subscribed.set(true);
+            return Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(s.getBytes(StandardCharsets.UTF_8)));
+        });
+    }
+
+    @Test
+    void declaredDuplicate_isRejected_withoutReadingTheBody() {
+        when(files.existsByOwnerIdAndContentSha256("u1", SHA_OF_ABC)).thenReturn(Mono.just(true));
+        AtomicBoolean read = new AtomicBoolean();
+
+        assertThatThrownBy(() -> service.upload("u1", "a.txt", Visibility.PRIVATE, List.of(), null,
+                body("abc", read), new DeclaredContent(SHA_OF_ABC.toUpperCase(), 3)).block())
+                .isInstanceOf(DuplicateFileException.class);
+
+        assertThat(read).isFalse();
+        verify(storage, never()).save(any(), anyString(), any(), anyMap(), anyLong());
+    }
+
+    @Test
+    void declaredHashMismatch_discardsBlob() {
+        when(files.existsByOwnerIdAndContentSha256(eq("u1"), anyString())).thenReturn(Mono.just(false));
+        AtomicBoolean read = new AtomicBoolean();
+
+        assertThatThrownBy(() -> service.upload("u1", "a.txt", Visibility.PRIVATE, List.of(), null,
+                body("abd", read), new DeclaredContent(SHA_OF_ABC, -1)).block())
+                .isInstanceOf(ChecksumMismatchException.class);
+
+        verify(storage).delete("blob1");
+        verify(files, never()).save(any());
+    }
+
+    @Test
+    void filenameHeldByInFlightUpload_failsBeforeStoring() {
+        when(reservations.reserve(eq("u1"), eq("a.txt"), any())).thenReturn(Mono.empty());
+        AtomicBoolean read = new AtomicBoolean();
+
+        assertThatThrownBy(() -> service.upload("u1", "A.txt", Visibility.PRIVATE, List.of(), null,
+                body("abc", read)).block())
+                .isInstanceOf(DuplicateFileException.class)
+                .satisfies(ex -> assertThat(((DuplicateFileException) ex).getKind())
+                        .isEqualTo(DuplicateFileException.Kind.FILENAME));
+
+        assertThat(read).isFalse();
+        verify(storage, never()).save(any(), anyString(), any(), anyMap(), anyLong());
+    }
+
+    @Test
+    void reservation_isReleased_afterCommit() {
+        when(files.existsByOwnerIdAndContentSha256(eq("u1"), anyString())).thenReturn(Mono.just(false));
+        when(files.save(any())).thenAnswer(inv -> {
+            FileEntry fe = inv.getArgument(0);
+            fe.setId("F1");
+            return Mono.just(fe);
+        });
+        when(links.save(any())).thenAnswer(inv -> Mono.just(inv.getArgument(0)));
+
+        service.upload("u1", "a.txt", Visibility.PRIVATE, List.of(), null, body("abc", new AtomicBoolean()))
+                .block();
+
+        verify(reservations).reserve(eq("u1"), eq("a.txt"), any());
+        verify(reservations).release(anyString());
+    }
+
+    @Test
+    void filenameTakenAtCommit_discardsBlob_andReleasesTheReservation() {
+        when(files.existsByOwnerIdAndContentSha256(eq("u1"), anyString())).thenReturn(Mono.just(false));
+        when(files.save(any())).thenReturn(Mono.error(new DuplicateKeyException(
+                "E11000 duplicate key error collection: files index: uniq_owner_filename dup key")));
+
+        assertThatThrownBy(() -> service.upload("u1", "a.txt", Visibility.PRIVATE, List.of(), null,
+                body("abc", new AtomicBoolean())).block())
+                .isInstanceOf(DuplicateFileException.class)
+                .satisfies(ex -> assertThat(((DuplicateFileException) ex).getKind())
+                        .isEqualTo(DuplicateFileException.Kind.FILENAME));
+
+        verify(storage).delete("blob1");
+        verify(reservations).release(anyString());
+    }
+
+    @Test
+    void treeMode_keysTheFileOnTheRoot_andStillChecksADeclaredSha256() {
+        LeafHashPort leaves = mock(LeafHashPort.class);
+        when(leaves.save(any())).thenReturn(Mono.empty());
+        ReactiveUploadService tree = treeService(leaves);
+
+        // the declared value is the plain digest, as a client computes it
+        tree.upload("u1", "a.txt", Visibility.PRIVATE, List.of(), null, body("abc", new AtomicBoolean()),
+                new DeclaredContent(SHA_OF_ABC, 3)).block();
+
+        byte[] ab = "ab".getBytes(StandardCharsets.UTF_8), c = "c".getBytes(StandardCharsets.UTF_8);
+        String root = HexFormat.of().formatHex(TreeHasher.root(List.of(
+                TreeHasher.leafHash(ab, 0, 2), TreeHasher.leafHash(c, 0, 1))));
+        verify(files).save(argThat(fe -> ("tree:" + root).equals(fe.getContentSha256())
+                && root.equals(fe.getTreeRoot())
+                && fe.getFingerprintMode() == FingerprintMode.TREE
+                && fe.getLeafSize() == 2));
+        verify(files).existsByOwnerIdAndContentSha256("u1", "tree:" + root);
+        verify(leaves).save(argThat((LeafHashes lh) -> lh.leafCount() == 2));
+    }
+
+    @Test
+    void treeMode_rejectsAWrongDeclaredSha256() {
+        ReactiveUploadService tree = treeService(mock(LeafHashPort.class));
+        String other = SHA_OF_ABC.replace('b', 'c');
+
+        assertThatThrownBy(() -> tree.upload("u1", "a.txt", Visibility.PRIVATE, List.of(), null,
+                body("abc", new AtomicBoolean()), new DeclaredContent(other, 3)).block())
+                .isInstanceOf(ChecksumMismatchException.class);
+
+        verify(storage).delete("blob1");
+        verify(files, never()).save(any());
+    }
+
+    private ReactiveUploadService treeService(LeafHashPort leaves) {
+        when(files.existsByOwnerIdAndContentSha256(eq("u1"), anyString())).thenReturn(Mono.just(false));
+        when(files.save(any())).thenAnswer(inv -> {
+            FileEntry fe = inv.getArgument(0);
+            fe.setId("F1");
+            return Mono.just(fe);
+        });
+        when(links.save(any())).thenAnswer(inv -> Mono.just(inv.getArgument(0)));
+        return new ReactiveUploadService(files, links, storage, reservations,
+                mock(SharedBlobPort.class), HashingStage.inline(),
+                TreeHashing.inline(FingerprintMode.TREE, 2), leaves,
+                (head, name) -> null, UploadAdmission.unbounded(),
+                UsageServiceReactive.untracked(), DataSize.ofBytes(0), Duration.ofHours(1), false);
+    }
+
+    @Test
+    void malformedDeclaredHash_isBadRequest() {
+        assertThatThrownBy(() -> DeclaredContent.of("not-a-hash", null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(DeclaredContent.of(null, null)).isNull();
+    }
+}
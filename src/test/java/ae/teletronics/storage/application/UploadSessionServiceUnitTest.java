@@ -0,0 +1,233 @@
+package ae.teletronics.storage.application;
+
+import ae.teletronics.storage.application.admission.UploadAdmission;
+import ae.teletronics.storage.application.dto.UploadFileResult;
+import ae.teletronics.storage.application.exceptions.OffsetMismatchException;
+import ae.teletronics.storage.application.exceptions.QuotaExceededException;
+import ae.teletronics.storage.application.exceptions.TooManyUploadsException;
+import ae.teletronics.storage.application.hashing.HashingStage;
+import ae.teletronics.storage.domain.FingerprintMode;
+import ae.teletronics.storage.domain.Visibility;
+import ae.teletronics.storage.domain.model.UploadSession;
+import ae.teletronics.storage.ports.ReactiveStoragePort;
+import ae.teletronics.storage.ports.UploadSessionQueryPort;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.util.unit.DataSize;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class UploadSessionServiceUnitTest {
+
+    UploadSessionQueryPort sessionPort;
+    ReactiveStoragePort storage;
+    ReactiveUploadService uploads;
+    UsageServiceReactive usage;
+    UploadSessionServiceReactive service;
+
+    /** In-memory stand-in for the session document. */
+    UploadSession current;
+    Map<String, byte[]> blobs = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        sessionPort = mock(UploadSessionQueryPort.class);
+        storage = mock(ReactiveStoragePort.class);
+        uploads = mock(ReactiveUploadService.class);
+        usage = mock(UsageServiceReactive.class);
+        when(usage.remaining(anyString())).thenReturn(Mono.just(Long.MAX_VALUE));
+        service = new UploadSessionServiceReactive(sessionPort, storage, uploads, HashingStage.inline(),
+                UploadAdmission.unbounded(), usage, Duration.ofHours(1), 1024);
+
+        current = new UploadSession();
+        current.setId("S1");
+        current.setOwnerId("u1");
+        current.setFilename("big.bin");
+        current.setVisibility(Visibility.PRIVATE);
+
+        when(sessionPort.findById("S1")).thenAnswer(inv -> Mono.just(current));
+        when(sessionPort.deleteById("S1")).thenReturn(Mono.empty());
+        when(uploads.releaseFilename(any())).thenReturn(Mono.empty());
+        when(sessionPort.appendSegment(eq("S1"), anyLong(), any(), any(), any())).thenAnswer(inv -> {
+            long expected = inv.getArgument(1);
+            if (expected != current.getCommittedOffset()) return Mono.empty();
+            UploadSession.Segment seg = inv.getArgument(2);
+            current.getSegments().add(seg);
+            current.setSegmentCount(current.getSegmentCount() + 1);
+            current.setCommittedOffset(expected + seg.size());
+            current.setHashState(inv.getArgument(3));
+            byte[] head = inv.getArgument(4);
+            if (head != null) current.setHead(head);
+            return Mono.just(current);
+        });
+
+        when(sessionPort.putPart(eq("S1"), any(), any())).thenAnswer(inv -> {
+            UploadSession before = new UploadSession();
+            before.setParts(new HashMap<>(current.getParts()));
+            UploadSession.Part part = inv.getArgument(1);
+            current.getParts().put(String.valueOf(part.number()), part);
+            return Mono.just(before);
+        });
+
+        AtomicInteger ids = new AtomicInteger();
+        when(storage.save(any(), anyString(), any(), anyMap())).thenAnswer(inv -> {
+            Flux<DataBuffer> body = inv.getArgument(0);
+            String id = "seg" + ids.incrementAndGet();
+            return DataBufferUtils.join(body)
+                    .doOnNext(db -> {
+                        byte[] data = new byte[db.readableByteCount()];
+                        db.read(data);
+                        blobs.put(id, data);
+                    })
+                    .then(Mono.fromSupplier(() -> new ReactiveStoragePort.StorageSaveResult(id, -1L)));
+        });
+        when(storage.read(anyString(), anyLong(), anyLong())).thenAnswer(inv ->
+                Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(blobs.get(inv.<String>getArgument(0)))));
+        when(storage.delete(anyString())).thenReturn(Mono.empty());
+    }
+
+    private static Flux<DataBuffer> bytes(String s) {
+        return Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(s.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void resumedSegments_continueHashFromCheckpoint_andCommitComposes() throws Exception {
+        service.appendAt("u1", "S1", 0, bytes("hello ")).block();
+        service.appendSegment("u1", "S1", 1, bytes("world")).block();
+
+        assertThat(current.getCommittedOffset()).isEqualTo(11);
+        assertThat(current.getSegments()).extracting(UploadSession.Segment::offset).containsExactly(0L, 6L);
+
+        when(storage.compose(eq(List.of("seg1", "seg2")), eq("big.bin"), any(), anyMap()))
+                .thenReturn(Mono.just(new ReactiveStoragePort.StorageSaveResult("final", 11)));
+        when(uploads.complete(anyString(), anyString(), any(), anyList(), any(), any(), anyString(), any()))
+                .thenReturn(Mono.just(new UploadFileResult("F1", "tok", "big.bin")));
+
+        UploadFileResult res = service.commit("u1", "S1").block();
+
+        assertThat(res.fileId()).isEqualTo("F1");
+        ArgumentCaptor<String> sha = ArgumentCaptor.forClass(String.class);
+        verify(uploads).complete(eq("u1"), eq("big.bin"), eq(Visibility.PRIVATE), anyList(), any(),
+                any(), sha.capture(), any());
+        String expected = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                .digest("hello world".getBytes(StandardCharsets.UTF_8)));
+        assertThat(sha.getValue()).isEqualTo(expected);
+        verify(sessionPort).deleteById("S1");
+        // tagged so an interrupted relink survives for the next commit to resume
+        verify(storage).compose(anyList(), anyString(), any(), eq(Map.of("ownerId", "u1", "uploadSessionId", "S1")));
+    }
+
+    @Test
+    void partsUploadedOutOfOrder_areStitchedByNumber_andKeyedOnTheirCompositeDigest() throws Exception {
+        UploadSession.Part p2 = service.putPart("u1", "S1", 2, bytes("world")).block();
+        service.putPart("u1", "S1", 1, bytes("hello ")).block();
+
+        assertThat(p2.size()).isEqualTo(5);
+        assertThat(p2.sha256()).isEqualTo(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                .digest("world".getBytes(StandardCharsets.UTF_8))));
+
+        when(storage.compose(eq(List.of("seg2", "seg1")), eq("big.bin"), any(), anyMap()))
+                .thenReturn(Mono.just(new ReactiveStoragePort.StorageSaveResult("final", 11)));
+        when(uploads.complete(anyString(), anyString(), any(), anyList(), any(), any(), anyString(), any()))
+                .thenReturn(Mono.just(new UploadFileResult("F1", "tok", "big.bin")));
+
+        service.commit("u1", "S1").block();
+
+        ArgumentCaptor<String> sha = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<ReactiveUploadService.SniffResult> sniff =
+                ArgumentCaptor.forClass(ReactiveUploadService.SniffResult.class);
+        verify(uploads).complete(eq("u1"), eq("big.bin"), any(), anyList(), any(), any(), sha.capture(),
+                sniff.capture());
+        MessageDigest composite = MessageDigest.getInstance("SHA-256");
+        composite.update(MessageDigest.getInstance("SHA-256").digest("hello ".getBytes(StandardCharsets.UTF_8)));
+        composite.update(MessageDigest.getInstance("SHA-256").digest("world".getBytes(StandardCharsets.UTF_8)));
+        assertThat(sha.getValue()).isEqualTo(HexFormat.of().formatHex(composite.digest()) + "-2");
+        assertThat(sniff.getValue().mode).isEqualTo(FingerprintMode.PARTS);
+        assertThat(sniff.getValue().size).isEqualTo(11);
+        verify(storage, never()).read(anyString(), anyLong(), anyLong());
+    }
+
+    @Test
+    void segmentAtWrongOffset_isRejected_beforeAnyByteIsStored() {
+        service.appendAt("u1", "S1", 0, bytes("abc")).block();
+
+        assertThatThrownBy(() -> service.appendAt("u1", "S1", 0, bytes("abc")).block())
+                .isInstanceOf(OffsetMismatchException.class)
+                .satisfies(ex -> assertThat(((OffsetMismatchException) ex).getCommittedOffset()).isEqualTo(3));
+
+        verify(storage, times(1)).save(any(), anyString(), any(), anyMap());
+    }
+
+    @Test
+    void parts_countTowardsTheOwnersAdmissionCap() {
+        UploadAdmission onePerOwner = new UploadAdmission(new SimpleMeterRegistry(), 8, 1, 0,
+                Duration.ZERO, Duration.ofSeconds(5), DataSize.ofBytes(1), DataSize.ofBytes(1));
+        UploadSessionServiceReactive capped = new UploadSessionServiceReactive(sessionPort, storage, uploads,
+                HashingStage.inline(), onePerOwner, usage, Duration.ofHours(1), 1024);
+
+        Disposable first = capped.putPart("u1", "S1", 1, Flux.never(), 5).subscribe();
+        assertThatThrownBy(() -> capped.putPart("u1", "S1", 2, bytes("world"), 5).block())
+                .isInstanceOf(TooManyUploadsException.class);
+
+        first.dispose();
+        assertThat(capped.putPart("u1", "S1", 2, bytes("world"), 5).block().size()).isEqualTo(5);
+    }
+
+    @Test
+    void segmentPastTheQuota_isCutOff_countingWhatTheSessionAlreadyStores() {
+        when(usage.remaining("u1")).thenReturn(Mono.just(10L));
+        service.appendAt("u1", "S1", 0, bytes("hello ")).block();
+
+        assertThatThrownBy(() -> service.appendAt("u1", "S1", 6, bytes("world")).block())
+                .isInstanceOf(QuotaExceededException.class);
+
+        assertThat(current.getCommittedOffset()).isEqualTo(6);
+        assertThat(current.getSegments()).hasSize(1);
+    }
+
+    @Test
+    void ownerAtQuota_isRefused_beforeAnyPartIsStored() {
+        when(usage.remaining("u1")).thenReturn(Mono.just(0L));
+
+        assertThatThrownBy(() -> service.putPart("u1", "S1", 1, bytes("hello")).block())
+                .isInstanceOf(QuotaExceededException.class);
+        assertThatThrownBy(() -> service.putPart("u1", "S1", 1, bytes("hello"), 5).block())
+                .isInstanceOf(QuotaExceededException.class);
+
+        verify(storage, never()).save(any(), anyString(), any(), anyMap());
+    }
+
+    @Test
+    void segmentSize_defaultsTo32Chunks_andMustBeAMultipleOfTheChunkSize() {
+        when(storage.baseChunkSize()).thenReturn(1024 * 1024);
+
+        UploadSessionServiceReactive defaulted = new UploadSessionServiceReactive(sessionPort, storage, uploads,
+                HashingStage.inline(), UploadAdmission.unbounded(), usage, Duration.ofHours(1), 0);
+        assertThat(defaulted.segmentSize()).isEqualTo(32L * 1024 * 1024);
+
+        assertThatThrownBy(() -> new UploadSessionServiceReactive(sessionPort, storage, uploads,
+                HashingStage.inline(), UploadAdmission.unbounded(), usage, Duration.ofHours(1), 8355840))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("multiple of the GridFS chunk size (1048576)");
+    }
+}
@@ -0,0 +1,105 @@
+package ae.teletronics.storage.application;
+
+import ae.teletronics.storage.application.admission.UploadAdmission;
+import ae.teletronics.storage.application.dto.DeclaredContent;
+import ae.teletronics.storage.application.exceptions.QuotaExceededException;
+import ae.teletronics.storage.application.hashing.HashingStage;
+import ae.teletronics.storage.application.hashing.TreeHashing;
+import ae.teletronics.storage.domain.FingerprintMode;
+import ae.teletronics.storage.domain.Visibility;
+import ae.teletronics.storage.domain.model.OwnerUsage;
+import ae.teletronics.storage.ports.DownloadLinkQueryPort;
+import ae.teletronics.storage.ports.FileEntryQueryPort;
+import ae.teletronics.storage.ports.FilenameReservationPort;
+import ae.teletronics.storage.ports.LeafHashPort;
+import ae.teletronics.storage.ports.OwnerUsagePort;
+import ae.teletronics.storage.ports.ReactiveStoragePort;
+import ae.teletronics.storage.ports.SharedBlobPort;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class UsageServiceUnitTest {
+
+    OwnerUsagePort port;
+    UsageServiceReactive usage;
+
+    @BeforeEach
+    void setUp() {
+        port = mock(OwnerUsagePort.class);
+        usage = new UsageServiceReactive(port, DataSize.ofBytes(10));
+        when(port.get("u1")).thenReturn(Mono.just(new OwnerUsage("u1", 6, 2)));
+    }
+
+    @Test
+    void usage_readsTheCounters_againstTheDefaultQuota() {
+        var u = usage.usage("u1").block();
+
+        assertThat(u.bytes()).isEqualTo(6);
+        assertThat(u.files()).isEqualTo(2);
+        assertThat(u.remaining()).isEqualTo(4);
+    }
+
+    @Test
+    void perOwnerQuota_overridesTheDefault() {
+        OwnerUsage big = new OwnerUsage("u1", 6, 2);
+        big.setQuotaBytes(100L);
+        when(port.get("u1")).thenReturn(Mono.just(big));
+
+        assertThat(usage.remaining("u1").block()).isEqualTo(94);
+    }
+
+    @Test
+    void refusedCharge_isQuotaExceeded() {
+        when(port.charge("u1", 5, 10)).thenReturn(Mono.just(false));
+
+        assertThatThrownBy(() -> usage.charge("u1", 5).block()).isInstanceOf(QuotaExceededException.class);
+    }
+
+    @Test
+    void upload_isCutOffOnceItPassesTheRemainingQuota() {
+        FileEntryQueryPort files = mock(FileEntryQueryPort.class);
+        ReactiveStoragePort storage = mock(ReactiveStoragePort.class);
+        FilenameReservationPort reservations = mock(FilenameReservationPort.class);
+        when(files.existsByOwnerIdAndFilenameLc(anyString(), anyString())).thenReturn(Mono.just(false));
+        when(reservations.reserve(anyString(), anyString(), any())).thenReturn(Mono.just("r1"));
+        when(reservations.release(anyString())).thenReturn(Mono.empty());
+        when(storage.save(any(), anyString(), any(), anyMap(), anyLong())).thenAnswer(inv -> {
+            Flux<DataBuffer> body = inv.getArgument(0);
+            return body.then(Mono.just(new ReactiveStoragePort.StorageSaveResult("blob1", -1L)));
+        });
+        ReactiveUploadService uploads = new ReactiveUploadService(files, mock(DownloadLinkQueryPort.class),
+                storage, reservations, mock(SharedBlobPort.class), HashingStage.inline(),
+                TreeHashing.inline(FingerprintMode.SHA256, 1 << 20), mock(LeafHashPort.class),
+                (head, name) -> null, UploadAdmission.unbounded(), usage, DataSize.ofBytes(0), Duration.ofHours(1), false);
+
+        AtomicInteger emitted = new AtomicInteger();
+        Flux<DataBuffer> body = Flux.range(0, 100).map(i -> {
+            emitted.incrementAndGet();
+            return DefaultDataBufferFactory.sharedInstance.wrap(new byte[]{1, 2});
+        });
+
+        assertThatThrownBy(() -> uploads.upload("u1", "a.bin", Visibility.PRIVATE, List.of(), null, body).block())
+                .isInstanceOf(QuotaExceededException.class);
+        assertThat(emitted.get()).isEqualTo(3); // 2 + 2 + 2 > 4
+        verify(files, never()).save(any());
+
+        assertThatThrownBy(() -> uploads.upload("u1", "b.bin", Visibility.PRIVATE, List.of(), null,
+                Flux.never(), new DeclaredContent(null, 5)).block())
+                .isInstanceOf(QuotaExceededException.class);
+        verify(reservations, times(1)).reserve(anyString(), anyString(), any());
+    }
+}
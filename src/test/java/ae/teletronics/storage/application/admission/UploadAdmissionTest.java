@@ -0,0 +1,104 @@
+package ae.teletronics.storage.application.admission;
+
+import ae.teletronics.storage.application.exceptions.TooManyUploadsException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UploadAdmissionTest {
+
+    SimpleMeterRegistry meters = new SimpleMeterRegistry();
+
+    private UploadAdmission admission(int global, int perOwner, int queue, Duration maxWait) {
+        return new UploadAdmission(meters, global, perOwner, queue, maxWait, Duration.ofSeconds(7),
+                DataSize.ofKilobytes(64), DataSize.ofMegabytes(64));
+    }
+
+    /** An upload that runs until {@code done} is completed and logs when it starts. */
+    private static Mono<String> upload(String name, Sinks.Empty<Void> done, List<String> started) {
+        return Mono.defer(() -> {
+            started.add(name);
+            return done.asMono().thenReturn(name);
+        });
+    }
+
+    @Test
+    void smallUpload_overtakesQueuedLargeOne() {
+        UploadAdmission admission = admission(1, 4, 10, Duration.ZERO);
+        List<String> started = new ArrayList<>();
+        Sinks.Empty<Void> first = Sinks.empty();
+
+        admission.admit("a", 500_000_000, () -> upload("a-large", first, started)).subscribe();
+        admission.admit("b", -1, () -> upload("b-unknown", Sinks.empty(), started)).subscribe();
+        admission.admit("c", 1_000, () -> upload("c-small", Sinks.empty(), started)).subscribe();
+
+        assertThat(started).containsExactly("a-large");
+        assertThat(admission.queued()).isEqualTo(2);
+
+        first.tryEmitEmpty();
+        assertThat(started).containsExactly("a-large", "c-small");
+        assertThat(admission.active()).isEqualTo(1);
+    }
+
+    @Test
+    void perOwnerCap_letsOtherOwnersThrough() {
+        UploadAdmission admission = admission(10, 1, 10, Duration.ZERO);
+        List<String> started = new ArrayList<>();
+        Sinks.Empty<Void> a1 = Sinks.empty();
+
+        admission.admit("a", 1_000, () -> upload("a1", a1, started)).subscribe();
+        admission.admit("a", 1_000, () -> upload("a2", Sinks.empty(), started)).subscribe();
+        admission.admit("b", 1_000, () -> upload("b1", Sinks.empty(), started)).subscribe();
+
+        assertThat(started).containsExactly("a1", "b1");
+
+        a1.tryEmitEmpty();
+        assertThat(started).containsExactly("a1", "b1", "a2");
+    }
+
+    @Test
+    void fullQueue_isRejectedWithRetryHint() {
+        UploadAdmission admission = admission(1, 1, 1, Duration.ZERO);
+        List<String> started = new ArrayList<>();
+        admission.admit("a", 1, () -> upload("a1", Sinks.empty(), started)).subscribe();
+        admission.admit("a", 1, () -> upload("a2", Sinks.empty(), started)).subscribe();
+
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        admission.admit("b", 1, () -> upload("b1", Sinks.empty(), started)).subscribe(v -> {}, error::set);
+
+        assertThat(error.get()).isInstanceOf(TooManyUploadsException.class);
+        assertThat(((TooManyUploadsException) error.get()).getRetryAfter()).isEqualTo(Duration.ofSeconds(7));
+        assertThat(started).containsExactly("a1");
+        assertThat(meters.counter("storage.upload.admission.rejected", "reason", "queue_full").count()).isEqualTo(1);
+    }
+
+    @Test
+    void waitingTooLong_isRejected_andLeavesTheQueue() {
+        UploadAdmission admission = admission(1, 1, 10, Duration.ofMillis(50));
+        List<String> started = new ArrayList<>();
+        Sinks.Empty<Void> first = Sinks.empty();
+        admission.admit("a", 1, () -> upload("a1", first, started)).subscribe();
+
+        Throwable error = null;
+        try {
+            admission.admit("b", 1, () -> upload("b1", Sinks.empty(), started)).block(Duration.ofSeconds(5));
+        } catch (TooManyUploadsException e) {
+            error = e;
+        }
+
+        assertThat(error).isNotNull();
+        assertThat(admission.queued()).isZero();
+        first.tryEmitEmpty();
+        assertThat(admission.active()).isZero();
+        assertThat(started).containsExactly("a1");
+    }
+}
@@ -0,0 +1,52 @@
+package ae.teletronics.storage.application.hashing;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HashingStageTest {
+
+    @Test
+    void hashesOffTheCallerThread_inOrder_andRecordsMetrics() throws Exception {
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        HashingStage stage = new HashingStage(meters, 2, 4);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            Set<String> threads = ConcurrentHashMap.newKeySet();
+            Flux<DataBuffer> body = Flux.range(0, 100).map(i -> DefaultDataBufferFactory.sharedInstance
+                    .wrap(("part-" + i + ";").getBytes(StandardCharsets.UTF_8)));
+
+            StringBuilder passed = new StringBuilder();
+            stage.apply(body, db -> {
+                        threads.add(Thread.currentThread().getName());
+                        digest.update(db.asByteBuffer().duplicate());
+                    })
+                    .doOnNext(db -> {
+                        passed.append(db.toString(StandardCharsets.UTF_8));
+                        DataBufferUtils.release(db);
+                    })
+                    .blockLast();
+
+            StringBuilder expected = new StringBuilder();
+            for (int i = 0; i < 100; i++) expected.append("part-").append(i).append(';');
+            assertThat(passed.toString()).isEqualTo(expected.toString());
+            assertThat(HexFormat.of().formatHex(digest.digest())).isEqualTo(HexFormat.of().formatHex(
+                    MessageDigest.getInstance("SHA-256").digest(expected.toString().getBytes(StandardCharsets.UTF_8))));
+            assertThat(threads).allMatch(t -> t.startsWith("upload-hash"));
+            assertThat(meters.timer("storage.hash.offloaded").count()).isEqualTo(100);
+        } finally {
+            stage.destroy();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package ae.teletronics.storage.application.hashing;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ResumableSha256Test {
+
+    @Test
+    void matchesJdkDigest_acrossCheckpointsAtArbitraryBoundaries() throws Exception {
+        Random rnd = new Random(42);
+        for (int len : new int[]{0, 1, 55, 56, 63, 64, 65, 119, 120, 4096, 100_003}) {
+            byte[] data = new byte[len];
+            rnd.nextBytes(data);
+            byte[] expected = MessageDigest.getInstance("SHA-256").digest(data);
+
+            ResumableSha256 sha = new ResumableSha256();
+            int off = 0;
+            while (off < len) {
+                int n = Math.min(len - off, 1 + rnd.nextInt(300));
+                sha.update(data, off, n);
+                off += n;
+                sha = ResumableSha256.restore(sha.exportState()); // resume from checkpoint every step
+            }
+            assertThat(sha.digest()).as("len=%d", len).isEqualTo(expected);
+            assertThat(sha.byteCount()).isEqualTo(len);
+        }
+    }
+
+    @Test
+    void directBuffers_areHashedLikeHeapArrays() throws Exception {
+        byte[] data = new byte[10_000];
+        new Random(7).nextBytes(data);
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length).put(data).flip();
+
+        ResumableSha256 sha = new ResumableSha256();
+        sha.update(direct);
+
+        assertThat(direct.hasRemaining()).isFalse();
+        assertThat(sha.digest()).isEqualTo(MessageDigest.getInstance("SHA-256").digest(data));
+    }
+
+    @Test
+    void restore_rejectsCorruptCheckpoint() {
+        assertThatThrownBy(() -> ResumableSha256.restore(new byte[5]))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
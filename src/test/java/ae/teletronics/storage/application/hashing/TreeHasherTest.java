@@ -0,0 +1,136 @@
+package ae.teletronics.storage.application.hashing;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TreeHasherTest {
+
+    @Test
+    void root_isIndependentOfBufferBoundaries_andOfParallelism() {
+        byte[] data = new byte[10 * 1000 + 17];
+        new Random(3).nextBytes(data);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            TreeHasher.Tree sequential = hash(new TreeHasher(1000, 1, Runnable::run), data, 7);
+            TreeHasher.Tree parallel = hash(new TreeHasher(1000, 4, pool), data, 4096);
+
+            assertThat(parallel.rootHex()).isEqualTo(sequential.rootHex());
+            assertThat(parallel.leafCount()).isEqualTo(11);
+            assertThat(parallel.size()).isEqualTo(data.length);
+            assertThat(parallel.root()).isEqualTo(expectedRoot(data, 1000));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void singleLeaf_differsFromPlainSha256() throws Exception {
+        byte[] data = "abc".getBytes();
+        TreeHasher.Tree t = hash(new TreeHasher(1024, 2, Runnable::run), data, 3);
+
+        assertThat(t.leafCount()).isEqualTo(1);
+        assertThat(t.root()).isNotEqualTo(MessageDigest.getInstance("SHA-256").digest(data));
+    }
+
+    @Test
+    void emptyStream_hasOneEmptyLeaf() {
+        TreeHasher.Tree t = hash(new TreeHasher(1024, 2, Runnable::run), new byte[0], 1);
+
+        assertThat(t.leafCount()).isEqualTo(1);
+        assertThat(t.root()).isEqualTo(TreeHasher.leafHash(new byte[0], 0, 0));
+    }
+
+    @Test
+    void storedLeaves_verifyIndividualSegments() {
+        byte[] data = new byte[3500];
+        new Random(9).nextBytes(data);
+        TreeHasher.Tree t = hash(new TreeHasher(1000, 2, Runnable::run), data, 333);
+
+        byte[] leaf2 = Arrays.copyOfRange(t.leafDigests(), 2 * 32, 3 * 32);
+        assertThat(TreeHasher.leafHash(ByteBuffer.wrap(data, 2000, 1000))).isEqualTo(leaf2);
+        assertThat(TreeHasher.leafHash(ByteBuffer.wrap(data, 2001, 1000))).isNotEqualTo(leaf2);
+    }
+
+    @Test
+    void fullSlots_pauseTheStream_withoutBlockingTheCaller() {
+        byte[] data = new byte[5000];
+        new Random(5).nextBytes(data);
+        Queue<Runnable> pool = new ArrayDeque<>();
+        TreeHasher h = new TreeHasher(1000, 2, pool::add);
+        AtomicInteger passed = new AtomicInteger();
+        AtomicBoolean done = new AtomicBoolean();
+
+        h.feed(chunks(data, 1000)).doOnNext(db -> passed.incrementAndGet())
+                .subscribe(DataBufferUtils::release, e -> { }, () -> done.set(true));
+
+        // returned here with two leaves hashing and the third buffer waiting for a slot
+        assertThat(pool).hasSize(2);
+        assertThat(passed).hasValue(2);
+        assertThat(done).isFalse();
+
+        while (!pool.isEmpty()) pool.poll().run();
+        assertThat(done).isTrue();
+        Mono<TreeHasher.Tree> tree = h.finish();
+        while (!pool.isEmpty()) pool.poll().run();
+        assertThat(tree.block().root()).isEqualTo(expectedRoot(data, 1000));
+    }
+
+    @Test
+    void sharedBuffers_capAllStreams_andACancelledStreamGivesItsBack() {
+        LeafBuffers buffers = new LeafBuffers(1000, 1000);
+        TreeHasher first = new TreeHasher(buffers, 2, Runnable::run);
+        TreeHasher second = new TreeHasher(buffers, 2, Runnable::run);
+        AtomicBoolean secondDone = new AtomicBoolean();
+
+        Disposable stalled = first.feed(Flux.concat(chunks(new byte[1500], 1500), Flux.never()))
+                .subscribe(DataBufferUtils::release);
+        assertThat(buffers.inUse()).isEqualTo(1); // the partial second leaf
+
+        byte[] data = "abc".getBytes();
+        second.feed(chunks(data, 3)).subscribe(DataBufferUtils::release, e -> { }, () -> secondDone.set(true));
+        assertThat(secondDone).isFalse();
+
+        stalled.dispose();
+        assertThat(secondDone).isTrue();
+        assertThat(second.finish().block().root()).isEqualTo(TreeHasher.leafHash(data, 0, 3));
+        assertThat(buffers.inUse()).isZero();
+    }
+
+    private static TreeHasher.Tree hash(TreeHasher h, byte[] data, int chunk) {
+        return h.feed(chunks(data, chunk)).doOnNext(DataBufferUtils::release).then(h.finish()).block();
+    }
+
+    private static Flux<DataBuffer> chunks(byte[] data, int chunk) {
+        return Flux.range(0, (data.length + chunk - 1) / chunk)
+                .map(i -> DefaultDataBufferFactory.sharedInstance.wrap(
+                        ByteBuffer.wrap(data, i * chunk, Math.min(chunk, data.length - i * chunk)).slice()));
+    }
+
+    private static byte[] expectedRoot(byte[] data, int leafSize) {
+        List<byte[]> leaves = new ArrayList<>();
+        for (int off = 0; off < data.length; off += leafSize) {
+            leaves.add(TreeHasher.leafHash(data, off, Math.min(leafSize, data.length - off)));
+        }
+        return TreeHasher.root(leaves);
+    }
+}
@@ -0,0 +1,65 @@
+package ae.teletronics.storage.application.hashing;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+
+import java.lang.management.ManagementFactory;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Allocation check for the upload tee: after warm-up, feeding buffers must not allocate.
+ * Run with {@code ./gradlew benchmark}; excluded from the regular test task.
+ */
+@Tag("benchmark")
+class UploadTeeAllocationBenchmark {
+
+    private static final int WARMUP = 20_000;
+    private static final int MEASURED = 200_000;
+
+    @Test
+    void noPerBufferAllocation_afterWarmup() throws Exception {
+        byte[] payload = new byte[16 * 1024];
+        new Random(1).nextBytes(payload);
+
+        List<DataBuffer> kinds = List.of(
+                DefaultDataBufferFactory.sharedInstance.wrap(payload.clone()),
+                new NettyDataBufferFactory(UnpooledByteBufAllocator.DEFAULT).wrap(payload.clone()),
+                new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT).allocateBuffer(payload.length).write(payload));
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().threadId();
+        try {
+            for (DataBuffer db : kinds) {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                UploadTee tee = new UploadTee(digest::update, 16 * 1024);
+                for (int i = 0; i < WARMUP; i++) tee.accept(db);
+
+                long before = threads.getThreadAllocatedBytes(tid);
+                long t0 = System.nanoTime();
+                for (int i = 0; i < MEASURED; i++) tee.accept(db);
+                long nanos = System.nanoTime() - t0;
+                long allocated = threads.getThreadAllocatedBytes(tid) - before;
+
+                System.out.printf("%s: %d bytes allocated over %d buffers, %.0f MB/s%n",
+                        db.getClass().getSimpleName(), allocated, MEASURED,
+                        (double) MEASURED * payload.length / nanos * 1e9 / (1 << 20));
+                // A few bytes may come from the measurement itself; nothing proportional to MEASURED
+                assertThat(allocated).as(db.getClass().getSimpleName()).isLessThan(1024);
+                assertThat(db.readableByteCount()).isEqualTo(payload.length); // read position untouched
+            }
+        } finally {
+            kinds.forEach(DataBufferUtils::release);
+        }
+    }
+}
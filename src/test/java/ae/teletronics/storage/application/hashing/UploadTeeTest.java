@@ -0,0 +1,52 @@
+package ae.teletronics.storage.application.hashing;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UploadTeeTest {
+
+    @Test
+    void hashesAndCapturesHead_acrossBufferKinds_withoutConsumingThem() throws Exception {
+        byte[] data = new byte[50_000];
+        new Random(5).nextBytes(data);
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        UploadTee tee = new UploadTee(digest::update, 16 * 1024);
+
+        DataBuffer heap = DefaultDataBufferFactory.sharedInstance.wrap(Arrays.copyOfRange(data, 0, 10_000));
+        DataBuffer direct = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT)
+                .allocateBuffer(40_000).write(data, 10_000, 40_000);
+        try {
+            tee.accept(heap);
+            tee.accept(direct);
+
+            assertThat(heap.readableByteCount()).isEqualTo(10_000);
+            assertThat(direct.readableByteCount()).isEqualTo(40_000);
+        } finally {
+            DataBufferUtils.release(direct);
+        }
+
+        assertThat(tee.size()).isEqualTo(50_000);
+        assertThat(tee.head()).isEqualTo(Arrays.copyOf(data, 16 * 1024));
+        assertThat(digest.digest()).isEqualTo(MessageDigest.getInstance("SHA-256").digest(data));
+    }
+
+    @Test
+    void seededHead_isContinued_andTrimmedToWhatWasSeen() {
+        UploadTee tee = new UploadTee((b, o, l) -> { }, 8, new byte[]{1, 2, 3});
+
+        tee.accept(DefaultDataBufferFactory.sharedInstance.wrap(new byte[]{4, 5}));
+
+        assertThat(tee.head()).containsExactly(1, 2, 3, 4, 5);
+        assertThat(tee.size()).isEqualTo(2);
+    }
+}